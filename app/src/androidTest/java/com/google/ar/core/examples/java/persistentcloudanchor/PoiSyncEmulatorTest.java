@@ -0,0 +1,199 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that {@link PoiSync} resumes from the watermark of its store, against the Firestore
+ * emulator. Start the emulator with {@code firebase emulators:start --only firestore}, then run:
+ *
+ * <pre>
+ * ./gradlew :app:connectedAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.firestoreEmulatorHost=10.0.2.2
+ * </pre>
+ *
+ * <p>10.0.2.2 is the host machine as seen from the Android emulator. The test is skipped without
+ * the argument. The POIs are written by a second Firestore instance, as by another device, so that
+ * the synced instance only reads them from the emulator.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PoiSyncEmulatorTest {
+  private static final String EMULATOR_HOST_ARGUMENT = "firestoreEmulatorHost";
+  private static final String EMULATOR_PORT_ARGUMENT = "firestoreEmulatorPort";
+  private static final String WRITER_APP_NAME = "writer";
+  private static final long TIMEOUT_MILLIS = 10_000;
+
+  private static FirebaseFirestore syncedDb;
+  private static FirebaseFirestore writerDb;
+
+  private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final Set<String> syncedIds = new HashSet<>();
+  private String collectionPath;
+  private File storeFile;
+
+  @BeforeClass
+  public static void setUpEmulator() {
+    Bundle arguments = InstrumentationRegistry.getArguments();
+    String host = arguments.getString(EMULATOR_HOST_ARGUMENT);
+    assumeTrue("Run with the " + EMULATOR_HOST_ARGUMENT + " argument", host != null);
+    int port = Integer.parseInt(arguments.getString(EMULATOR_PORT_ARGUMENT, "8080"));
+    // The default app is initialized with the app process, from google-services.json.
+    FirebaseApp app = FirebaseApp.getInstance();
+    FirebaseApp writerApp =
+        FirebaseApp.initializeApp(
+            InstrumentationRegistry.getInstrumentation().getTargetContext(),
+            app.getOptions(),
+            WRITER_APP_NAME);
+    syncedDb = FirebaseFirestore.getInstance(app);
+    syncedDb.useEmulator(host, port);
+    writerDb = FirebaseFirestore.getInstance(writerApp);
+    writerDb.useEmulator(host, port);
+  }
+
+  @Before
+  public void setUp() {
+    collectionPath = "poiSyncTest_" + UUID.randomUUID();
+    storeFile = new File(context.getCacheDir(), collectionPath + ".bin");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdown();
+    executor.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    if (!storeFile.delete()) {
+      storeFile.deleteOnExit();
+    }
+  }
+
+  @Test
+  public void restart_resumesFromWatermark() throws Exception {
+    write(poi("before", "Before"));
+    // Written in a later millisecond than the first POI, for the watermark to be past it.
+    SystemClock.sleep(50);
+    write(poi("updated", "Updated"));
+
+    PoiStore store = PoiStore.open(storeFile);
+    PoiSync sync = startSync(store);
+    awaitSize(store, 2);
+    sync.stop();
+    long watermarkMillis = store.getWatermarkMillis();
+    store.close();
+    assertTrue(watermarkMillis > 0);
+
+    write(poi("updated", "Updated again"));
+    write(poi("after", "After"));
+    clearSyncedIds();
+    store = PoiStore.open(storeFile);
+    assertEquals(watermarkMillis, store.getWatermarkMillis());
+    sync = startSync(store);
+    awaitSize(store, 3);
+    awaitName(store, "updated", "Updated again");
+    sync.stop();
+    store.close();
+
+    Set<String> resumedIds = getSyncedIds();
+    assertFalse(resumedIds.contains("before"));
+    assertTrue(resumedIds.contains("updated"));
+    assertTrue(resumedIds.contains("after"));
+  }
+
+  @Test
+  public void deletion_isSyncedAsChange() throws Exception {
+    write(poi("deleted", "Deleted"));
+    PoiStore store = PoiStore.open(storeFile);
+    PoiSync sync = startSync(store);
+    awaitSize(store, 1);
+
+    Tasks.await(
+        writerDb
+            .collection(collectionPath)
+            .document("deleted")
+            .set(PoiDocuments.toDeletedData(), SetOptions.merge()),
+        TIMEOUT_MILLIS,
+        TimeUnit.MILLISECONDS);
+    awaitSize(store, 0);
+    sync.stop();
+    store.close();
+  }
+
+  private PoiSync startSync(PoiStore store) {
+    PoiSync sync =
+        new PoiSync(
+            syncedDb.collection(collectionPath),
+            store,
+            executor,
+            (updated, deletedIds) -> addSyncedIds(updated, deletedIds));
+    sync.start();
+    return sync;
+  }
+
+  private void write(Poi poi) throws Exception {
+    CollectionReference collection = writerDb.collection(collectionPath);
+    Tasks.await(
+        collection.document(poi.id).set(PoiDocuments.toData(poi)),
+        TIMEOUT_MILLIS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized void addSyncedIds(List<Poi> updated, List<String> deletedIds) {
+    for (Poi poi : updated) {
+      syncedIds.add(poi.id);
+    }
+    syncedIds.addAll(deletedIds);
+  }
+
+  private synchronized void clearSyncedIds() {
+    syncedIds.clear();
+  }
+
+  private synchronized Set<String> getSyncedIds() {
+    return new HashSet<>(syncedIds);
+  }
+
+  private static void awaitSize(PoiStore store, int size) {
+    long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+    while (store.size() != size) {
+      assertTrue("Timed out waiting for " + size + " POIs", SystemClock.uptimeMillis() < deadline);
+      SystemClock.sleep(50);
+    }
+  }
+
+  private static void awaitName(PoiStore store, String id, String name) {
+    long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+    while (store.get(id) == null || !name.equals(store.get(id).name)) {
+      assertTrue("Timed out waiting for " + name, SystemClock.uptimeMillis() < deadline);
+      SystemClock.sleep(50);
+    }
+  }
+
+  private static Poi poi(String id, String name) {
+    return new Poi(id, "anchor_" + id, name, 10.05, 76.33, 20.0, 90.0);
+  }
+}
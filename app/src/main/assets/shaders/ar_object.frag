@@ -21,6 +21,7 @@ uniform sampler2D u_Texture;
 uniform vec4 u_LightingParameters;
 uniform vec4 u_MaterialParameters;
 uniform vec4 u_ColorCorrectionParameters;
+uniform float u_LodBias;
 
 #if USE_DEPTH_FOR_OCCLUSION
 uniform sampler2D u_DepthTexture;
@@ -155,7 +156,7 @@ void main() {
     vec3 viewNormal = normalize(v_ViewNormal);
 
     // Flip the y-texture coordinate to address the texture from top-left.
-    vec4 objectColor = texture2D(u_Texture, vec2(v_TexCoord.x, 1.0 - v_TexCoord.y));
+    vec4 objectColor = texture2D(u_Texture, vec2(v_TexCoord.x, 1.0 - v_TexCoord.y), u_LodBias);
 
     // Apply color to grayscale image only if the alpha of u_ObjColor is
     // greater and equal to 255.0.
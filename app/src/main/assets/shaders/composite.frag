@@ -0,0 +1,10 @@
+precision mediump float;
+
+uniform sampler2D u_Texture;
+
+varying vec2 v_TexCoord;
+
+void main() {
+    // The offscreen content already has premultiplied alpha.
+    gl_FragColor = texture2D(u_Texture, v_TexCoord);
+}
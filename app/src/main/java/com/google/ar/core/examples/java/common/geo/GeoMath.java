@@ -0,0 +1,73 @@
+package com.google.ar.core.examples.java.common.geo;
+
+/** Distances and local projections of WGS84 coordinates, in degrees and meters. */
+public final class GeoMath {
+  /** Mean radius of the Earth. */
+  public static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+  /** Returns the great-circle distance between two points, with the haversine formula. */
+  public static double distanceMeters(
+      double latitude1, double longitude1, double latitude2, double longitude2) {
+    double phi1 = Math.toRadians(latitude1);
+    double phi2 = Math.toRadians(latitude2);
+    double sinHalfDeltaPhi = Math.sin(0.5 * (phi2 - phi1));
+    double sinHalfDeltaLambda = Math.sin(0.5 * Math.toRadians(longitude2 - longitude1));
+    double h =
+        sinHalfDeltaPhi * sinHalfDeltaPhi
+            + Math.cos(phi1) * Math.cos(phi2) * sinHalfDeltaLambda * sinHalfDeltaLambda;
+    return 2.0 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(h)));
+  }
+
+  /**
+   * Returns the east offset of ({@code latitude}, {@code longitude}) from the origin, along the
+   * parallel at their mid-latitude. With {@link #northMeters}, the distance from the origin is
+   * accurate to about a millimeter over 5 km, up to 70 degrees of latitude, where taking the
+   * parallel of the origin would be off by up to 2 m.
+   */
+  public static double eastMeters(
+      double originLatitude, double originLongitude, double latitude, double longitude) {
+    double deltaLongitude = longitude - originLongitude;
+    // Wraps around the antimeridian.
+    if (deltaLongitude > 180.0) {
+      deltaLongitude -= 360.0;
+    } else if (deltaLongitude < -180.0) {
+      deltaLongitude += 360.0;
+    }
+    return Math.toRadians(deltaLongitude)
+        * Math.cos(Math.toRadians(0.5 * (originLatitude + latitude)))
+        * EARTH_RADIUS_METERS;
+  }
+
+  /** Returns the north offset of {@code latitude} from {@code originLatitude}. */
+  public static double northMeters(double originLatitude, double latitude) {
+    return Math.toRadians(latitude - originLatitude) * EARTH_RADIUS_METERS;
+  }
+
+  /**
+   * Returns the longitude {@code eastMeters} east of {@code originLongitude}, at {@code latitude},
+   * the inverse of {@link #eastMeters}.
+   */
+  public static double offsetLongitude(
+      double originLatitude, double originLongitude, double latitude, double eastMeters) {
+    double cosLatitude = Math.cos(Math.toRadians(0.5 * (originLatitude + latitude)));
+    double longitude =
+        originLongitude + Math.toDegrees(eastMeters / (cosLatitude * EARTH_RADIUS_METERS));
+    // Wraps around the antimeridian.
+    if (longitude > 180.0) {
+      longitude -= 360.0;
+    } else if (longitude < -180.0) {
+      longitude += 360.0;
+    }
+    return longitude;
+  }
+
+  /**
+   * Returns the latitude {@code northMeters} north of {@code originLatitude}, the inverse of {@link
+   * #northMeters}.
+   */
+  public static double offsetLatitude(double originLatitude, double northMeters) {
+    return originLatitude + Math.toDegrees(northMeters / EARTH_RADIUS_METERS);
+  }
+
+  private GeoMath() {}
+}
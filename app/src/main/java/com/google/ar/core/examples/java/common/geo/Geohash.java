@@ -0,0 +1,123 @@
+package com.google.ar.core.examples.java.common.geo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geohash cell keys, which interleave the bits of the longitude and latitude so that the cells
+ * nested in a cell share its key as a prefix. The points of a cell can then be found with a range
+ * query over sorted keys.
+ */
+public final class Geohash {
+  /** Length of the keys stored with each point, cells of about 1.2 m by 0.6 m. */
+  public static final int MAX_PRECISION = 10;
+
+  private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+  private static final int BITS_PER_CHARACTER = 5;
+  private static final double METERS_PER_DEGREE = Math.toRadians(GeoMath.EARTH_RADIUS_METERS);
+
+  /** Returns the key of length {@code precision} of the cell containing a point. */
+  public static String encode(double latitude, double longitude, int precision) {
+    if (precision < 1 || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException("Invalid precision " + precision);
+    }
+    double minLatitude = -90.0;
+    double maxLatitude = 90.0;
+    double minLongitude = -180.0;
+    double maxLongitude = 180.0;
+    char[] key = new char[precision];
+    boolean isLongitudeBit = true;
+    for (int i = 0; i < precision; i++) {
+      int value = 0;
+      for (int bit = 0; bit < BITS_PER_CHARACTER; bit++) {
+        value <<= 1;
+        if (isLongitudeBit) {
+          double middle = 0.5 * (minLongitude + maxLongitude);
+          if (longitude >= middle) {
+            value |= 1;
+            minLongitude = middle;
+          } else {
+            maxLongitude = middle;
+          }
+        } else {
+          double middle = 0.5 * (minLatitude + maxLatitude);
+          if (latitude >= middle) {
+            value |= 1;
+            minLatitude = middle;
+          } else {
+            maxLatitude = middle;
+          }
+        }
+        isLongitudeBit = !isLongitudeBit;
+      }
+      key[i] = BASE32[value];
+    }
+    return new String(key);
+  }
+
+  /** Returns the height of the cells of keys of length {@code precision}, in degrees. */
+  public static double cellHeightDegrees(int precision) {
+    int latitudeBits = BITS_PER_CHARACTER * precision / 2;
+    return 180.0 / (1L << latitudeBits);
+  }
+
+  /** Returns the width of the cells of keys of length {@code precision}, in degrees. */
+  public static double cellWidthDegrees(int precision) {
+    int longitudeBits = (BITS_PER_CHARACTER * precision + 1) / 2;
+    return 360.0 / (1L << longitudeBits);
+  }
+
+  /**
+   * Returns the keys of the cells covering the circle of {@code radiusMeters} around a point: the
+   * cell of the point, at the finest precision whose cells are larger than the radius, and its
+   * neighbours. Nine keys at most, fewer near the poles and for large radii.
+   */
+  public static List<String> coveringCells(double latitude, double longitude, double radiusMeters) {
+    // Cells are narrowest on the side of the circle closest to the pole.
+    double maxLatitude = Math.min(Math.abs(latitude) + radiusMeters / METERS_PER_DEGREE, 89.0);
+    double cosLatitude = Math.cos(Math.toRadians(maxLatitude));
+    int precision = 1;
+    while (precision < MAX_PRECISION
+        && cellHeightDegrees(precision + 1) * METERS_PER_DEGREE >= radiusMeters
+        && cellWidthDegrees(precision + 1) * METERS_PER_DEGREE * cosLatitude >= radiusMeters) {
+      precision++;
+    }
+    double height = cellHeightDegrees(precision);
+    double width = cellWidthDegrees(precision);
+    List<String> cells = new ArrayList<>(9);
+    for (int dy = -1; dy <= 1; dy++) {
+      double neighbourLatitude = latitude + dy * height;
+      if (neighbourLatitude < -90.0 || neighbourLatitude > 90.0) {
+        continue;
+      }
+      for (int dx = -1; dx <= 1; dx++) {
+        double neighbourLongitude = wrapLongitude(longitude + dx * width);
+        String cell = encode(neighbourLatitude, neighbourLongitude, precision);
+        if (!cells.contains(cell)) {
+          cells.add(cell);
+        }
+      }
+    }
+    return cells;
+  }
+
+  /**
+   * Returns a key sorting after all the keys starting with {@code prefix}, to end a range query
+   * over the cell of {@code prefix}.
+   */
+  public static String rangeEnd(String prefix) {
+    // '~' sorts after all the characters of the base 32 alphabet.
+    return prefix + '~';
+  }
+
+  private static double wrapLongitude(double longitude) {
+    if (longitude >= 180.0) {
+      return longitude - 360.0;
+    } else if (longitude < -180.0) {
+      return longitude + 360.0;
+    }
+    return longitude;
+  }
+
+  private Geohash() {}
+}
@@ -0,0 +1,192 @@
+package com.google.ar.core.examples.java.common.helpers;
+
+import android.opengl.GLSurfaceView;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.google.ar.core.Config;
+import com.google.ar.core.Session;
+
+/**
+ * Helper to pace the rendering of a {@link GLSurfaceView} on the camera frames produced by ARCore.
+ *
+ * <p>In the non-blocking modes {@link Session#update()} returns immediately with the latest camera
+ * image, which may be the same image as in the previous frame. {@link #onFrameUpdated(long)}
+ * detects these duplicates from the frame timestamp, so that the caller can skip the scene work,
+ * and counts them.
+ *
+ * <p>ARCore does not signal when a camera image is available, so in {@link
+ * Mode#ON_NEW_CAMERA_FRAME} the next frame is rendered on a timer, when the next image is expected
+ * from the measured camera frame interval. When the image was not there yet, the timer polls again
+ * with an exponential backoff, so that a stalled camera does not keep the OpenGL thread busy.
+ */
+public final class FramePacingHelper {
+  private static final String TAG = FramePacingHelper.class.getSimpleName();
+
+  /** Frame pacing strategies. */
+  public enum Mode {
+    /** {@link Session#update()} waits for the next camera image; rendering is continuous. */
+    BLOCKING(Config.UpdateMode.BLOCKING, GLSurfaceView.RENDERMODE_CONTINUOUSLY),
+    /** {@link Session#update()} never waits; rendering is continuous. */
+    LATEST_CAMERA_IMAGE(
+        Config.UpdateMode.LATEST_CAMERA_IMAGE, GLSurfaceView.RENDERMODE_CONTINUOUSLY),
+    /**
+     * {@link Session#update()} never waits, and a frame is only rendered when the next camera image
+     * is expected to be available.
+     */
+    ON_NEW_CAMERA_FRAME(
+        Config.UpdateMode.LATEST_CAMERA_IMAGE, GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+
+    final Config.UpdateMode updateMode;
+    final int renderMode;
+
+    Mode(Config.UpdateMode updateMode, int renderMode) {
+      this.updateMode = updateMode;
+      this.renderMode = renderMode;
+    }
+  }
+
+  private static final long NANOS_PER_MILLI = 1_000_000L;
+  // Camera frame interval assumed until it has been measured, matching 30 fps.
+  private static final long DEFAULT_CAMERA_FRAME_INTERVAL_NANOS = 33 * NANOS_PER_MILLI;
+  private static final long MIN_CAMERA_FRAME_INTERVAL_NANOS = 8 * NANOS_PER_MILLI;
+  private static final long MAX_CAMERA_FRAME_INTERVAL_NANOS = 100 * NANOS_PER_MILLI;
+  // Delay before polling again when a frame was rendered before its camera image was ready,
+  // doubled on each consecutive duplicate frame up to the maximum.
+  private static final long MIN_RETRY_DELAY_NANOS = 2 * NANOS_PER_MILLI;
+  private static final long MAX_RETRY_DELAY_NANOS = MAX_CAMERA_FRAME_INTERVAL_NANOS;
+  // Weight of the newest interval in the moving average of the camera frame interval.
+  private static final float INTERVAL_SMOOTHING = 0.1f;
+
+  private final GLSurfaceView surfaceView;
+  private final Mode mode;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Runnable requestRender;
+
+  private long lastTimestampNanos;
+  private long cameraFrameIntervalNanos = DEFAULT_CAMERA_FRAME_INTERVAL_NANOS;
+  private long newFrameUptimeNanos;
+  private boolean lastFrameWasNew;
+  private long retryDelayNanos = MIN_RETRY_DELAY_NANOS;
+  private long scheduledDelayNanos;
+  private long newFrameCount;
+  private long duplicateFrameCount;
+
+  /**
+   * Constructs the helper and applies the render mode of {@code mode} to {@code surfaceView}, which
+   * must already have its renderer set.
+   */
+  public FramePacingHelper(GLSurfaceView surfaceView, Mode mode) {
+    this.surfaceView = surfaceView;
+    this.mode = mode;
+    this.requestRender = surfaceView::requestRender;
+    surfaceView.setRenderMode(mode.renderMode);
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /** Returns whether {@link Session#update()} may return the same camera image twice in a row. */
+  public boolean isNonBlocking() {
+    return mode.updateMode == Config.UpdateMode.LATEST_CAMERA_IMAGE;
+  }
+
+  /** Applies the session update mode of the pacing mode to {@code config}. */
+  public void configure(Config config) {
+    config.setUpdateMode(mode.updateMode);
+  }
+
+  /**
+   * Should be called from the activity's onResume(), after resuming the surface view, and when a
+   * session is created while resumed: in {@link Mode#ON_NEW_CAMERA_FRAME}, no frame is scheduled
+   * while there is no session.
+   */
+  public void onResume() {
+    lastTimestampNanos = 0;
+    retryDelayNanos = MIN_RETRY_DELAY_NANOS;
+    if (mode.renderMode == GLSurfaceView.RENDERMODE_WHEN_DIRTY) {
+      surfaceView.requestRender();
+    }
+  }
+
+  /** Should be called from the activity's onPause(). */
+  public void onPause() {
+    handler.removeCallbacks(requestRender);
+    Log.i(
+        TAG,
+        "Rendered " + newFrameCount + " camera frames, skipped " + duplicateFrameCount
+            + " duplicate frames.");
+  }
+
+  /**
+   * Records the timestamp of the frame returned by {@link Session#update()}. Must be called on the
+   * OpenGL thread, once per update.
+   *
+   * @return {@code true} if the frame holds a new camera image, {@code false} if it is the same
+   *     image as in the previous update and the scene work can be skipped.
+   */
+  public boolean onFrameUpdated(long timestampNanos) {
+    if (timestampNanos == lastTimestampNanos) {
+      duplicateFrameCount++;
+      lastFrameWasNew = false;
+      return false;
+    }
+    if (lastTimestampNanos != 0) {
+      long interval = timestampNanos - lastTimestampNanos;
+      if (interval >= MIN_CAMERA_FRAME_INTERVAL_NANOS
+          && interval <= MAX_CAMERA_FRAME_INTERVAL_NANOS) {
+        cameraFrameIntervalNanos +=
+            (long) (INTERVAL_SMOOTHING * (interval - cameraFrameIntervalNanos));
+      }
+    }
+    lastTimestampNanos = timestampNanos;
+    retryDelayNanos = MIN_RETRY_DELAY_NANOS;
+    newFrameUptimeNanos = System.nanoTime();
+    newFrameCount++;
+    lastFrameWasNew = true;
+    return true;
+  }
+
+  /**
+   * Schedules the next frame in {@link Mode#ON_NEW_CAMERA_FRAME} mode; does nothing in the other
+   * modes. Must be called on the OpenGL thread at the end of every frame that has a session,
+   * including the frames that failed or were skipped, so that rendering never stalls.
+   */
+  public void scheduleNextFrame() {
+    if (mode.renderMode != GLSurfaceView.RENDERMODE_WHEN_DIRTY) {
+      return;
+    }
+    long delayNanos;
+    if (lastFrameWasNew) {
+      // Wake up when the next camera image is expected.
+      long elapsed = System.nanoTime() - newFrameUptimeNanos;
+      delayNanos = Math.max(0, cameraFrameIntervalNanos - elapsed);
+    } else {
+      delayNanos = retryDelayNanos;
+      retryDelayNanos = Math.min(2 * retryDelayNanos, MAX_RETRY_DELAY_NANOS);
+    }
+    lastFrameWasNew = false;
+    scheduledDelayNanos = delayNanos;
+    handler.removeCallbacks(requestRender);
+    handler.postDelayed(requestRender, delayNanos / NANOS_PER_MILLI);
+  }
+
+  /**
+   * Returns how long the current frame was deliberately delayed by {@link #scheduleNextFrame()},
+   * in nanoseconds. Always zero in the continuous modes.
+   */
+  public long getScheduledDelayNanos() {
+    return scheduledDelayNanos;
+  }
+
+  /** Returns the number of frames that held a new camera image. */
+  public long getNewFrameCount() {
+    return newFrameCount;
+  }
+
+  /** Returns the number of updates that returned an already processed camera image. */
+  public long getDuplicateFrameCount() {
+    return duplicateFrameCount;
+  }
+}
@@ -0,0 +1,210 @@
+package com.google.ar.core.examples.java.common.math;
+
+/**
+ * 4x4 matrix functions operating on {@code float[]} arrays at an offset, without allocating.
+ *
+ * <p>Matrices are stored in column-major order, the layout used by OpenGL, {@link
+ * android.opengl.Matrix} and {@link com.google.ar.core.Pose#toMatrix(float[], int)}. Unless stated
+ * otherwise, the output must not overlap the inputs, as with {@link android.opengl.Matrix}.
+ */
+public final class Mat4 {
+  /** Sets {@code m} to the identity matrix. */
+  public static void setIdentity(float[] m, int mOffset) {
+    for (int i = 0; i < 16; i++) {
+      m[mOffset + i] = 0.0f;
+    }
+    m[mOffset] = 1.0f;
+    m[mOffset + 5] = 1.0f;
+    m[mOffset + 10] = 1.0f;
+    m[mOffset + 15] = 1.0f;
+  }
+
+  /**
+   * Sets {@code m} to the rigid transform rotating by the unit quaternion {@code q} (x, y, z, w),
+   * then translating by {@code t}.
+   */
+  public static void setRotationTranslation(
+      float[] m, int mOffset, float[] q, int qOffset, float[] t, int tOffset) {
+    Quat.toRotationMatrix(m, mOffset, q, qOffset);
+    m[mOffset + 3] = 0.0f;
+    m[mOffset + 7] = 0.0f;
+    m[mOffset + 11] = 0.0f;
+    m[mOffset + 12] = t[tOffset];
+    m[mOffset + 13] = t[tOffset + 1];
+    m[mOffset + 14] = t[tOffset + 2];
+    m[mOffset + 15] = 1.0f;
+  }
+
+  /** Computes {@code out = lhs * rhs}, like {@link android.opengl.Matrix#multiplyMM}. */
+  public static void multiply(
+      float[] out, int outOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    float l00 = lhs[lhsOffset];
+    float l10 = lhs[lhsOffset + 1];
+    float l20 = lhs[lhsOffset + 2];
+    float l30 = lhs[lhsOffset + 3];
+    float l01 = lhs[lhsOffset + 4];
+    float l11 = lhs[lhsOffset + 5];
+    float l21 = lhs[lhsOffset + 6];
+    float l31 = lhs[lhsOffset + 7];
+    float l02 = lhs[lhsOffset + 8];
+    float l12 = lhs[lhsOffset + 9];
+    float l22 = lhs[lhsOffset + 10];
+    float l32 = lhs[lhsOffset + 11];
+    float l03 = lhs[lhsOffset + 12];
+    float l13 = lhs[lhsOffset + 13];
+    float l23 = lhs[lhsOffset + 14];
+    float l33 = lhs[lhsOffset + 15];
+    for (int column = 0; column < 16; column += 4) {
+      float r0 = rhs[rhsOffset + column];
+      float r1 = rhs[rhsOffset + column + 1];
+      float r2 = rhs[rhsOffset + column + 2];
+      float r3 = rhs[rhsOffset + column + 3];
+      out[outOffset + column] = l00 * r0 + l01 * r1 + l02 * r2 + l03 * r3;
+      out[outOffset + column + 1] = l10 * r0 + l11 * r1 + l12 * r2 + l13 * r3;
+      out[outOffset + column + 2] = l20 * r0 + l21 * r1 + l22 * r2 + l23 * r3;
+      out[outOffset + column + 3] = l30 * r0 + l31 * r1 + l32 * r2 + l33 * r3;
+    }
+  }
+
+  /**
+   * Computes {@code out = m * v} for the 4-component vector {@code v}, like {@link
+   * android.opengl.Matrix#multiplyMV}.
+   */
+  public static void multiplyVec4(
+      float[] out, int outOffset, float[] m, int mOffset, float[] v, int vOffset) {
+    float x = v[vOffset];
+    float y = v[vOffset + 1];
+    float z = v[vOffset + 2];
+    float w = v[vOffset + 3];
+    out[outOffset] = m[mOffset] * x + m[mOffset + 4] * y + m[mOffset + 8] * z + m[mOffset + 12] * w;
+    out[outOffset + 1] =
+        m[mOffset + 1] * x + m[mOffset + 5] * y + m[mOffset + 9] * z + m[mOffset + 13] * w;
+    out[outOffset + 2] =
+        m[mOffset + 2] * x + m[mOffset + 6] * y + m[mOffset + 10] * z + m[mOffset + 14] * w;
+    out[outOffset + 3] =
+        m[mOffset + 3] * x + m[mOffset + 7] * y + m[mOffset + 11] * z + m[mOffset + 15] * w;
+  }
+
+  /**
+   * Transforms the 3D point {@code p}, with an implicit w of 1, by the affine matrix {@code m}. The
+   * output may alias {@code p}.
+   */
+  public static void transformPoint(
+      float[] out, int outOffset, float[] m, int mOffset, float[] p, int pOffset) {
+    float x = p[pOffset];
+    float y = p[pOffset + 1];
+    float z = p[pOffset + 2];
+    out[outOffset] = m[mOffset] * x + m[mOffset + 4] * y + m[mOffset + 8] * z + m[mOffset + 12];
+    out[outOffset + 1] =
+        m[mOffset + 1] * x + m[mOffset + 5] * y + m[mOffset + 9] * z + m[mOffset + 13];
+    out[outOffset + 2] =
+        m[mOffset + 2] * x + m[mOffset + 6] * y + m[mOffset + 10] * z + m[mOffset + 14];
+  }
+
+  /**
+   * Inverts the rigid transform {@code m}, made of a rotation and a translation only, by
+   * transposing its rotation. Much cheaper than {@link #invert}, but wrong for any other matrix.
+   */
+  public static void invertRigid(float[] out, int outOffset, float[] m, int mOffset) {
+    float r00 = m[mOffset];
+    float r10 = m[mOffset + 1];
+    float r20 = m[mOffset + 2];
+    float r01 = m[mOffset + 4];
+    float r11 = m[mOffset + 5];
+    float r21 = m[mOffset + 6];
+    float r02 = m[mOffset + 8];
+    float r12 = m[mOffset + 9];
+    float r22 = m[mOffset + 10];
+    float tx = m[mOffset + 12];
+    float ty = m[mOffset + 13];
+    float tz = m[mOffset + 14];
+    out[outOffset] = r00;
+    out[outOffset + 1] = r01;
+    out[outOffset + 2] = r02;
+    out[outOffset + 3] = 0.0f;
+    out[outOffset + 4] = r10;
+    out[outOffset + 5] = r11;
+    out[outOffset + 6] = r12;
+    out[outOffset + 7] = 0.0f;
+    out[outOffset + 8] = r20;
+    out[outOffset + 9] = r21;
+    out[outOffset + 10] = r22;
+    out[outOffset + 11] = 0.0f;
+    // -R^T * t
+    out[outOffset + 12] = -(r00 * tx + r10 * ty + r20 * tz);
+    out[outOffset + 13] = -(r01 * tx + r11 * ty + r21 * tz);
+    out[outOffset + 14] = -(r02 * tx + r12 * ty + r22 * tz);
+    out[outOffset + 15] = 1.0f;
+  }
+
+  /**
+   * Inverts the general matrix {@code m}, like {@link android.opengl.Matrix#invertM}.
+   *
+   * @return false, leaving {@code out} unchanged, if the matrix is not invertible.
+   */
+  public static boolean invert(float[] out, int outOffset, float[] m, int mOffset) {
+    float m00 = m[mOffset];
+    float m01 = m[mOffset + 1];
+    float m02 = m[mOffset + 2];
+    float m03 = m[mOffset + 3];
+    float m10 = m[mOffset + 4];
+    float m11 = m[mOffset + 5];
+    float m12 = m[mOffset + 6];
+    float m13 = m[mOffset + 7];
+    float m20 = m[mOffset + 8];
+    float m21 = m[mOffset + 9];
+    float m22 = m[mOffset + 10];
+    float m23 = m[mOffset + 11];
+    float m30 = m[mOffset + 12];
+    float m31 = m[mOffset + 13];
+    float m32 = m[mOffset + 14];
+    float m33 = m[mOffset + 15];
+
+    // 2x2 sub-determinants of the first two and of the last two columns, shared by the cofactors.
+    float b00 = m00 * m11 - m01 * m10;
+    float b01 = m00 * m12 - m02 * m10;
+    float b02 = m00 * m13 - m03 * m10;
+    float b03 = m01 * m12 - m02 * m11;
+    float b04 = m01 * m13 - m03 * m11;
+    float b05 = m02 * m13 - m03 * m12;
+    float b06 = m20 * m31 - m21 * m30;
+    float b07 = m20 * m32 - m22 * m30;
+    float b08 = m20 * m33 - m23 * m30;
+    float b09 = m21 * m32 - m22 * m31;
+    float b10 = m21 * m33 - m23 * m31;
+    float b11 = m22 * m33 - m23 * m32;
+
+    float determinant = b00 * b11 - b01 * b10 + b02 * b09 + b03 * b08 - b04 * b07 + b05 * b06;
+    if (determinant == 0.0f) {
+      return false;
+    }
+    float inverseDeterminant = 1.0f / determinant;
+
+    out[outOffset] = (m11 * b11 - m12 * b10 + m13 * b09) * inverseDeterminant;
+    out[outOffset + 1] = (m02 * b10 - m01 * b11 - m03 * b09) * inverseDeterminant;
+    out[outOffset + 2] = (m31 * b05 - m32 * b04 + m33 * b03) * inverseDeterminant;
+    out[outOffset + 3] = (m22 * b04 - m21 * b05 - m23 * b03) * inverseDeterminant;
+    out[outOffset + 4] = (m12 * b08 - m10 * b11 - m13 * b07) * inverseDeterminant;
+    out[outOffset + 5] = (m00 * b11 - m02 * b08 + m03 * b07) * inverseDeterminant;
+    out[outOffset + 6] = (m32 * b02 - m30 * b05 - m33 * b01) * inverseDeterminant;
+    out[outOffset + 7] = (m20 * b05 - m22 * b02 + m23 * b01) * inverseDeterminant;
+    out[outOffset + 8] = (m10 * b10 - m11 * b08 + m13 * b06) * inverseDeterminant;
+    out[outOffset + 9] = (m01 * b08 - m00 * b10 - m03 * b06) * inverseDeterminant;
+    out[outOffset + 10] = (m30 * b04 - m31 * b02 + m33 * b00) * inverseDeterminant;
+    out[outOffset + 11] = (m21 * b02 - m20 * b04 - m23 * b00) * inverseDeterminant;
+    out[outOffset + 12] = (m11 * b07 - m10 * b09 - m12 * b06) * inverseDeterminant;
+    out[outOffset + 13] = (m00 * b09 - m01 * b07 + m02 * b06) * inverseDeterminant;
+    out[outOffset + 14] = (m31 * b01 - m30 * b03 - m32 * b00) * inverseDeterminant;
+    out[outOffset + 15] = (m20 * b03 - m21 * b01 + m22 * b00) * inverseDeterminant;
+    return true;
+  }
+
+  /** Computes the transpose of {@code m}. */
+  public static void transpose(float[] out, int outOffset, float[] m, int mOffset) {
+    for (int i = 0; i < 4; i++) {
+      for (int j = 0; j < 4; j++) {
+        out[outOffset + 4 * i + j] = m[mOffset + 4 * j + i];
+      }
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package com.google.ar.core.examples.java.common.math;
+
+/**
+ * Quaternion functions operating on {@code float[]} arrays at an offset, without allocating.
+ *
+ * <p>Quaternions are stored as (x, y, z, w), like the rotation of {@link com.google.ar.core.Pose}.
+ * The output may alias any input.
+ */
+public final class Quat {
+  /** Sets {@code out} to the identity rotation. */
+  public static void setIdentity(float[] out, int outOffset) {
+    out[outOffset] = 0.0f;
+    out[outOffset + 1] = 0.0f;
+    out[outOffset + 2] = 0.0f;
+    out[outOffset + 3] = 1.0f;
+  }
+
+  /**
+   * Sets {@code out} to the rotation of {@code angleRadians} around the axis (x, y, z), which must
+   * be normalized.
+   */
+  public static void setAxisAngle(
+      float[] out, int outOffset, float x, float y, float z, float angleRadians) {
+    float halfAngle = 0.5f * angleRadians;
+    float sin = (float) Math.sin(halfAngle);
+    out[outOffset] = x * sin;
+    out[outOffset + 1] = y * sin;
+    out[outOffset + 2] = z * sin;
+    out[outOffset + 3] = (float) Math.cos(halfAngle);
+  }
+
+  /** Computes {@code out = a * b}, the rotation {@code b} followed by {@code a}. */
+  public static void multiply(
+      float[] out, int outOffset, float[] a, int aOffset, float[] b, int bOffset) {
+    float ax = a[aOffset];
+    float ay = a[aOffset + 1];
+    float az = a[aOffset + 2];
+    float aw = a[aOffset + 3];
+    float bx = b[bOffset];
+    float by = b[bOffset + 1];
+    float bz = b[bOffset + 2];
+    float bw = b[bOffset + 3];
+    out[outOffset] = aw * bx + ax * bw + ay * bz - az * by;
+    out[outOffset + 1] = aw * by - ax * bz + ay * bw + az * bx;
+    out[outOffset + 2] = aw * bz + ax * by - ay * bx + az * bw;
+    out[outOffset + 3] = aw * bw - ax * bx - ay * by - az * bz;
+  }
+
+  /** Computes the inverse of the unit quaternion {@code q}. */
+  public static void conjugate(float[] out, int outOffset, float[] q, int qOffset) {
+    out[outOffset] = -q[qOffset];
+    out[outOffset + 1] = -q[qOffset + 1];
+    out[outOffset + 2] = -q[qOffset + 2];
+    out[outOffset + 3] = q[qOffset + 3];
+  }
+
+  /** Computes {@code out = q / |q|}. */
+  public static void normalize(float[] out, int outOffset, float[] q, int qOffset) {
+    float x = q[qOffset];
+    float y = q[qOffset + 1];
+    float z = q[qOffset + 2];
+    float w = q[qOffset + 3];
+    float length = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+    float scale = length > 0.0f ? 1.0f / length : 1.0f;
+    out[outOffset] = x * scale;
+    out[outOffset + 1] = y * scale;
+    out[outOffset + 2] = z * scale;
+    out[outOffset + 3] = w * scale;
+  }
+
+  /** Rotates the 3D vector {@code v} by the unit quaternion {@code q}. */
+  public static void rotateVector(
+      float[] out, int outOffset, float[] q, int qOffset, float[] v, int vOffset) {
+    float qx = q[qOffset];
+    float qy = q[qOffset + 1];
+    float qz = q[qOffset + 2];
+    float qw = q[qOffset + 3];
+    float vx = v[vOffset];
+    float vy = v[vOffset + 1];
+    float vz = v[vOffset + 2];
+    // v' = v + 2w (q x v) + 2 q x (q x v)
+    float tx = 2.0f * (qy * vz - qz * vy);
+    float ty = 2.0f * (qz * vx - qx * vz);
+    float tz = 2.0f * (qx * vy - qy * vx);
+    out[outOffset] = vx + qw * tx + (qy * tz - qz * ty);
+    out[outOffset + 1] = vy + qw * ty + (qz * tx - qx * tz);
+    out[outOffset + 2] = vz + qw * tz + (qx * ty - qy * tx);
+  }
+
+  /**
+   * Writes the rotation of the unit quaternion {@code q} to the upper 3x3 part of the column-major
+   * 4x4 matrix {@code m}. The other elements are left unchanged.
+   */
+  public static void toRotationMatrix(float[] m, int mOffset, float[] q, int qOffset) {
+    float x = q[qOffset];
+    float y = q[qOffset + 1];
+    float z = q[qOffset + 2];
+    float w = q[qOffset + 3];
+    float xx = x * x;
+    float yy = y * y;
+    float zz = z * z;
+    float xy = x * y;
+    float xz = x * z;
+    float yz = y * z;
+    float wx = w * x;
+    float wy = w * y;
+    float wz = w * z;
+    m[mOffset] = 1.0f - 2.0f * (yy + zz);
+    m[mOffset + 1] = 2.0f * (xy + wz);
+    m[mOffset + 2] = 2.0f * (xz - wy);
+    m[mOffset + 4] = 2.0f * (xy - wz);
+    m[mOffset + 5] = 1.0f - 2.0f * (xx + zz);
+    m[mOffset + 6] = 2.0f * (yz + wx);
+    m[mOffset + 8] = 2.0f * (xz + wy);
+    m[mOffset + 9] = 2.0f * (yz - wx);
+    m[mOffset + 10] = 1.0f - 2.0f * (xx + yy);
+  }
+}
@@ -0,0 +1,93 @@
+package com.google.ar.core.examples.java.common.math;
+
+/**
+ * Rigid transform functions operating on {@code float[]} arrays at an offset, without allocating.
+ * They are the allocation-free counterparts of the {@link com.google.ar.core.Pose} methods.
+ *
+ * <p>A transform takes {@link #SIZE} floats: the translation (tx, ty, tz) followed by the rotation
+ * quaternion (qx, qy, qz, qw). It maps a point p to {@code R * p + t}. The output may alias any
+ * input.
+ */
+public final class RigidTransform {
+  /** Number of floats taken by a transform. */
+  public static final int SIZE = 7;
+
+  private static final int ROTATION = 3;
+
+  /** Sets {@code out} to the identity transform. */
+  public static void setIdentity(float[] out, int outOffset) {
+    Vec3.set(out, outOffset, 0.0f, 0.0f, 0.0f);
+    Quat.setIdentity(out, outOffset + ROTATION);
+  }
+
+  /**
+   * Sets {@code out} to a pure translation, like {@link com.google.ar.core.Pose#makeTranslation}.
+   */
+  public static void setTranslation(float[] out, int outOffset, float x, float y, float z) {
+    Vec3.set(out, outOffset, x, y, z);
+    Quat.setIdentity(out, outOffset + ROTATION);
+  }
+
+  /**
+   * Sets {@code out} to a pure rotation by the unit quaternion (qx, qy, qz, qw), like {@link
+   * com.google.ar.core.Pose#makeRotation}.
+   */
+  public static void setRotation(
+      float[] out, int outOffset, float qx, float qy, float qz, float qw) {
+    Vec3.set(out, outOffset, 0.0f, 0.0f, 0.0f);
+    out[outOffset + ROTATION] = qx;
+    out[outOffset + ROTATION + 1] = qy;
+    out[outOffset + ROTATION + 2] = qz;
+    out[outOffset + ROTATION + 3] = qw;
+  }
+
+  /**
+   * Computes {@code out = a * b}, the transform {@code b} followed by {@code a}, like {@code
+   * a.compose(b)} with {@link com.google.ar.core.Pose}.
+   */
+  public static void compose(
+      float[] out, int outOffset, float[] a, int aOffset, float[] b, int bOffset) {
+    // Translation: ta + Ra * tb. Only the translation of a and b may be overwritten before the
+    // rotations are multiplied, in case out aliases one of them.
+    float ax = a[aOffset];
+    float ay = a[aOffset + 1];
+    float az = a[aOffset + 2];
+    Vec3.set(out, outOffset, b[bOffset], b[bOffset + 1], b[bOffset + 2]);
+    Quat.rotateVector(out, outOffset, a, aOffset + ROTATION, out, outOffset);
+    out[outOffset] += ax;
+    out[outOffset + 1] += ay;
+    out[outOffset + 2] += az;
+    Quat.multiply(out, outOffset + ROTATION, a, aOffset + ROTATION, b, bOffset + ROTATION);
+  }
+
+  /** Computes the inverse of {@code a}, like {@link com.google.ar.core.Pose#inverse()}. */
+  public static void invert(float[] out, int outOffset, float[] a, int aOffset) {
+    float tx = a[aOffset];
+    float ty = a[aOffset + 1];
+    float tz = a[aOffset + 2];
+    // R^-1 = conjugate(q), t' = -(R^-1 * t).
+    Quat.conjugate(out, outOffset + ROTATION, a, aOffset + ROTATION);
+    Vec3.set(out, outOffset, -tx, -ty, -tz);
+    Quat.rotateVector(out, outOffset, out, outOffset + ROTATION, out, outOffset);
+  }
+
+  /** Transforms the 3D point {@code p}, like {@link com.google.ar.core.Pose#transformPoint}. */
+  public static void transformPoint(
+      float[] out, int outOffset, float[] a, int aOffset, float[] p, int pOffset) {
+    float tx = a[aOffset];
+    float ty = a[aOffset + 1];
+    float tz = a[aOffset + 2];
+    Quat.rotateVector(out, outOffset, a, aOffset + ROTATION, p, pOffset);
+    out[outOffset] += tx;
+    out[outOffset + 1] += ty;
+    out[outOffset + 2] += tz;
+  }
+
+  /**
+   * Writes {@code a} as a column-major 4x4 matrix, with the same layout as {@link
+   * com.google.ar.core.Pose#toMatrix(float[], int)}.
+   */
+  public static void toMatrix(float[] m, int mOffset, float[] a, int aOffset) {
+    Mat4.setRotationTranslation(m, mOffset, a, aOffset + ROTATION, a, aOffset);
+  }
+}
@@ -0,0 +1,78 @@
+package com.google.ar.core.examples.java.common.math;
+
+/**
+ * 3D vector functions operating on {@code float[]} arrays at an offset, without allocating.
+ *
+ * <p>The output may alias any input.
+ */
+public final class Vec3 {
+  /** Sets {@code out} to (x, y, z). */
+  public static void set(float[] out, int outOffset, float x, float y, float z) {
+    out[outOffset] = x;
+    out[outOffset + 1] = y;
+    out[outOffset + 2] = z;
+  }
+
+  /** Computes {@code out = a + b}. */
+  public static void add(
+      float[] out, int outOffset, float[] a, int aOffset, float[] b, int bOffset) {
+    out[outOffset] = a[aOffset] + b[bOffset];
+    out[outOffset + 1] = a[aOffset + 1] + b[bOffset + 1];
+    out[outOffset + 2] = a[aOffset + 2] + b[bOffset + 2];
+  }
+
+  /** Computes {@code out = a - b}. */
+  public static void subtract(
+      float[] out, int outOffset, float[] a, int aOffset, float[] b, int bOffset) {
+    out[outOffset] = a[aOffset] - b[bOffset];
+    out[outOffset + 1] = a[aOffset + 1] - b[bOffset + 1];
+    out[outOffset + 2] = a[aOffset + 2] - b[bOffset + 2];
+  }
+
+  /** Computes {@code out = v * scale}. */
+  public static void scale(float[] out, int outOffset, float[] v, int vOffset, float scale) {
+    out[outOffset] = v[vOffset] * scale;
+    out[outOffset + 1] = v[vOffset + 1] * scale;
+    out[outOffset + 2] = v[vOffset + 2] * scale;
+  }
+
+  /** Returns the dot product of {@code a} and {@code b}. */
+  public static float dot(float[] a, int aOffset, float[] b, int bOffset) {
+    return a[aOffset] * b[bOffset]
+        + a[aOffset + 1] * b[bOffset + 1]
+        + a[aOffset + 2] * b[bOffset + 2];
+  }
+
+  /** Computes {@code out = a x b}. */
+  public static void cross(
+      float[] out, int outOffset, float[] a, int aOffset, float[] b, int bOffset) {
+    float ax = a[aOffset];
+    float ay = a[aOffset + 1];
+    float az = a[aOffset + 2];
+    float bx = b[bOffset];
+    float by = b[bOffset + 1];
+    float bz = b[bOffset + 2];
+    out[outOffset] = ay * bz - az * by;
+    out[outOffset + 1] = az * bx - ax * bz;
+    out[outOffset + 2] = ax * by - ay * bx;
+  }
+
+  /** Returns the length of {@code v}. */
+  public static float length(float[] v, int vOffset) {
+    return (float) Math.sqrt(dot(v, vOffset, v, vOffset));
+  }
+
+  /** Returns the distance between {@code a} and {@code b}. */
+  public static float distance(float[] a, int aOffset, float[] b, int bOffset) {
+    float dx = a[aOffset] - b[bOffset];
+    float dy = a[aOffset + 1] - b[bOffset + 1];
+    float dz = a[aOffset + 2] - b[bOffset + 2];
+    return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+
+  /** Computes {@code out = v / |v|}. A zero vector is left unchanged. */
+  public static void normalize(float[] out, int outOffset, float[] v, int vOffset) {
+    float length = length(v, vOffset);
+    scale(out, outOffset, v, vOffset, length > 0.0f ? 1.0f / length : 1.0f);
+  }
+}
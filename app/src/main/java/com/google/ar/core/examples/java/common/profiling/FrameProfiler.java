@@ -0,0 +1,169 @@
+package com.google.ar.core.examples.java.common.profiling;
+
+import android.util.Log;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Measures how long the stages of a frame take.
+ *
+ * <p>Stages are timed with {@link #begin()} and {@link #end(int, long)} pairs on a single thread,
+ * typically the OpenGL thread. Samples are packed into a primitive single-producer single-consumer
+ * ring buffer, so recording them neither allocates nor locks. A background thread drains the ring
+ * buffer into one {@link LogLinearHistogram} per stage, which can be written to a file with {@link
+ * #requestDump(File)}. Samples are dropped, and counted, if the ring buffer is full.
+ */
+public class FrameProfiler {
+  private static final String TAG = FrameProfiler.class.getSimpleName();
+
+  // Must be a power of two.
+  private static final int RING_CAPACITY = 4096;
+  private static final int RING_MASK = RING_CAPACITY - 1;
+  // A sample packs the stage in its top bits and the duration in nanoseconds in the others.
+  private static final int DURATION_BITS = 56;
+  private static final long DURATION_MASK = (1L << DURATION_BITS) - 1;
+  private static final int MAX_STAGES = 1 << (63 - DURATION_BITS);
+  private static final long AGGREGATION_PERIOD_MILLIS = 200;
+  private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+  private final List<String> stageNames = new ArrayList<>();
+  private final List<LogLinearHistogram> histograms = new ArrayList<>();
+
+  private final long[] ring = new long[RING_CAPACITY];
+  // Sequence numbers of the next sample to write and to read. The ring buffer is empty when they
+  // are equal.
+  private final AtomicLong writeSequence = new AtomicLong();
+  private final AtomicLong readSequence = new AtomicLong();
+  private final AtomicLong droppedSampleCount = new AtomicLong();
+  private final AtomicReference<File> pendingDump = new AtomicReference<>();
+
+  private volatile Thread aggregatorThread;
+  private boolean started;
+
+  /**
+   * Declares a stage and returns its identifier, to be passed to {@link #end(int, long)}. All the
+   * stages must be added before calling {@link #start()}.
+   */
+  public int addStage(String name) {
+    if (started) {
+      throw new IllegalStateException("Stages must be added before starting the profiler.");
+    }
+    if (stageNames.size() == MAX_STAGES) {
+      throw new IllegalStateException("Too many stages.");
+    }
+    stageNames.add(name);
+    histograms.add(new LogLinearHistogram());
+    return stageNames.size() - 1;
+  }
+
+  /** Starts the background aggregation. */
+  public synchronized void start() {
+    if (aggregatorThread != null) {
+      return;
+    }
+    started = true;
+    aggregatorThread = new Thread(this::runAggregator, TAG);
+    aggregatorThread.setDaemon(true);
+    aggregatorThread.setPriority(Thread.MIN_PRIORITY);
+    aggregatorThread.start();
+  }
+
+  /** Stops the background aggregation. Samples recorded afterwards are dropped once it is full. */
+  public synchronized void stop() {
+    if (aggregatorThread == null) {
+      return;
+    }
+    Thread thread = aggregatorThread;
+    aggregatorThread = null;
+    thread.interrupt();
+  }
+
+  /** Returns the start time of a stage, to be passed to {@link #end(int, long)}. */
+  public long begin() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Records the duration of {@code stage} since {@code beginNanos}. Must always be called from the
+   * same thread.
+   */
+  public void end(int stage, long beginNanos) {
+    long duration = Math.min(Math.max(0, System.nanoTime() - beginNanos), DURATION_MASK);
+    long sequence = writeSequence.get();
+    if (sequence - readSequence.get() >= RING_CAPACITY) {
+      droppedSampleCount.incrementAndGet();
+      return;
+    }
+    ring[(int) (sequence & RING_MASK)] = ((long) stage << DURATION_BITS) | duration;
+    // Publishes the sample to the aggregator thread.
+    writeSequence.lazySet(sequence + 1);
+  }
+
+  /**
+   * Asks the background thread to write the percentiles of every stage to {@code file}, replacing
+   * its content. Returns immediately.
+   */
+  public void requestDump(File file) {
+    pendingDump.set(file);
+    Thread thread = aggregatorThread;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  private void runAggregator() {
+    while (aggregatorThread == Thread.currentThread()) {
+      drain();
+      File dumpFile = pendingDump.getAndSet(null);
+      if (dumpFile != null) {
+        dump(dumpFile);
+      }
+      try {
+        Thread.sleep(AGGREGATION_PERIOD_MILLIS);
+      } catch (InterruptedException e) {
+        // Woken up early by a dump request, or stopped.
+      }
+    }
+  }
+
+  private void drain() {
+    long sequence = readSequence.get();
+    long end = writeSequence.get();
+    for (; sequence < end; sequence++) {
+      long sample = ring[(int) (sequence & RING_MASK)];
+      histograms.get((int) (sample >>> DURATION_BITS)).record(sample & DURATION_MASK);
+    }
+    // Hands the slots back to the producer.
+    readSequence.lazySet(sequence);
+  }
+
+  private void dump(File file) {
+    try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+      writer.println("stage,count,p50_ms,p95_ms,p99_ms,max_ms");
+      for (int i = 0; i < stageNames.size(); i++) {
+        LogLinearHistogram histogram = histograms.get(i);
+        writer.println(
+            String.format(
+                Locale.US,
+                "%s,%d,%.3f,%.3f,%.3f,%.3f",
+                stageNames.get(i),
+                histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile(95) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                histogram.getMaxValue() / NANOS_PER_MILLI));
+      }
+      writer.println("dropped_samples," + droppedSampleCount.get());
+      Log.i(TAG, "Frame profile written to " + file);
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to write the frame profile to " + file, e);
+    }
+  }
+}
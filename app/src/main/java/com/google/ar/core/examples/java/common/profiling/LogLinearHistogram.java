@@ -0,0 +1,86 @@
+package com.google.ar.core.examples.java.common.profiling;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative long values with a bounded relative error.
+ *
+ * <p>Every power-of-two range is split into {@code 2^SUB_BUCKET_BITS} linear buckets, so values are
+ * recorded with a relative error below {@code 1 / 2^SUB_BUCKET_BITS} using a fixed, small number of
+ * buckets. Recording never allocates.
+ *
+ * <p>This class is not thread safe.
+ */
+public class LogLinearHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // Values are clamped to 2^MAX_VALUE_BITS - 1, which is about 18 minutes in nanoseconds.
+  private static final int MAX_VALUE_BITS = 40;
+  private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+  private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+  private final long[] counts = new long[BUCKET_COUNT];
+  private long totalCount;
+  private long maxValue;
+
+  /** Records one occurrence of {@code value}. Negative values are recorded as 0. */
+  public void record(long value) {
+    value = Math.max(0, Math.min(value, MAX_VALUE));
+    counts[bucketIndex(value)]++;
+    totalCount++;
+    maxValue = Math.max(maxValue, value);
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  /** Returns the exact largest recorded value, or 0 if the histogram is empty. */
+  public long getMaxValue() {
+    return maxValue;
+  }
+
+  /**
+   * Returns the value below which {@code percentile} percent of the recorded values fall, rounded
+   * up to the upper bound of its bucket. Returns 0 if the histogram is empty.
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    long targetCount = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+    long cumulativeCount = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      cumulativeCount += counts[i];
+      if (cumulativeCount >= targetCount) {
+        return Math.min(bucketUpperBound(i), maxValue);
+      }
+    }
+    return maxValue;
+  }
+
+  /** Removes all the recorded values. */
+  public void reset() {
+    Arrays.fill(counts, 0);
+    totalCount = 0;
+    maxValue = 0;
+  }
+
+  private static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+  }
+
+  private static long bucketUpperBound(int index) {
+    int shift = index / SUB_BUCKET_COUNT - 1;
+    if (shift <= 0) {
+      return index;
+    }
+    long lowerBound = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,342 @@
+package com.google.ar.core.examples.java.common.recording;
+
+import com.google.ar.core.examples.java.common.math.RigidTransform;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The data of one AR frame consumed by the rendering loop, as recorded in a session trace.
+ *
+ * <p>The fields are public and arrays are reused from frame to frame, so that a frame can be
+ * captured and replayed without allocating. Poses use the {@link RigidTransform} layout. Planes
+ * are stored as parallel arrays indexed by plane, and their polygons are concatenated in {@link
+ * #planePolygons}.
+ *
+ * <p>Does not depend on Android or ARCore: enum values are stored as the constants below.
+ */
+public final class SessionFrame {
+  public static final int TRACKING_STATE_TRACKING = 0;
+  public static final int TRACKING_STATE_PAUSED = 1;
+  public static final int TRACKING_STATE_STOPPED = 2;
+
+  public static final int PLANE_TYPE_HORIZONTAL_UPWARD_FACING = 0;
+  public static final int PLANE_TYPE_HORIZONTAL_DOWNWARD_FACING = 1;
+  public static final int PLANE_TYPE_VERTICAL = 2;
+
+  /** Value of {@link #earthTrackingState} when the session has no Earth. */
+  public static final int NO_EARTH = -1;
+
+  /** Value of {@link #featureMapQuality} when the quality was not estimated this frame. */
+  public static final int QUALITY_NOT_ESTIMATED = -1;
+  public static final int QUALITY_INSUFFICIENT = 0;
+  public static final int QUALITY_SUFFICIENT = 1;
+  public static final int QUALITY_GOOD = 2;
+
+  /** Number of floats per point of {@link #points}: x, y, z and confidence. */
+  public static final int FLOATS_PER_POINT = 4;
+
+  private static final int FLAG_HAS_ANCHOR = 1;
+  private static final int FLAG_ANCHOR_ON_VERTICAL_PLANE = 1 << 1;
+  private static final int FLAG_EARTH_ENABLED = 1 << 2;
+  private static final int FLAG_HAS_GEOSPATIAL_POSE = 1 << 3;
+
+  private static final int BYTES_PER_INT = Integer.SIZE / 8;
+  private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
+  private static final int BYTES_PER_LONG = Long.SIZE / 8;
+  private static final int BYTES_PER_DOUBLE = Double.SIZE / 8;
+  private static final int GEOSPATIAL_POSE_DOUBLES = 7;
+
+  /** Camera image timestamp, in nanoseconds. */
+  public long timestampNanos;
+
+  public int cameraTrackingState;
+  /** Display oriented pose of the camera. */
+  public final float[] cameraPose = new float[RigidTransform.SIZE];
+
+  public final float[] viewMatrix = new float[16];
+  public final float[] projectionMatrix = new float[16];
+
+  public int pointCount;
+  public float[] points = new float[0];
+
+  public int planeCount;
+  public int[] planeTypes = new int[0];
+  public int[] planeTrackingStates = new int[0];
+  /** Center poses of the planes, {@link RigidTransform#SIZE} floats each. */
+  public float[] planePoses = new float[0];
+  /** Extents of the planes along their x and z axes, 2 floats each. */
+  public float[] planeExtents = new float[0];
+  /** Offset of the polygon of each plane in {@link #planePolygons}. */
+  public int[] planePolygonOffsets = new int[0];
+  /** Number of floats of the polygon of each plane, 2 per vertex. */
+  public int[] planePolygonLengths = new int[0];
+  public int planePolygonsLength;
+  /** Polygons of the planes, as x and z coordinates in their center pose frame. */
+  public float[] planePolygons = new float[0];
+
+  public boolean hasAnchor;
+  /** Whether the anchor was created on a vertical plane. */
+  public boolean isAnchorOnVerticalPlane;
+  public int anchorTrackingState;
+  public final float[] anchorPose = new float[RigidTransform.SIZE];
+
+  /** Tracking state of the Earth, or {@link #NO_EARTH}. */
+  public int earthTrackingState = NO_EARTH;
+  public boolean isEarthEnabled;
+  public boolean hasGeospatialPose;
+  public double latitude;
+  public double longitude;
+  public double altitude;
+  public double heading;
+  public double horizontalAccuracy;
+  public double verticalAccuracy;
+  public double headingAccuracy;
+
+  /** Feature map quality estimated this frame, or {@link #QUALITY_NOT_ESTIMATED}. */
+  public int featureMapQuality = QUALITY_NOT_ESTIMATED;
+
+  public int tapCount;
+  /** Coordinates of the taps in the view, 2 floats each. */
+  public float[] taps = new float[0];
+
+  /** Resets the frame to no content, keeping the allocated arrays. */
+  public void clear() {
+    timestampNanos = 0;
+    cameraTrackingState = TRACKING_STATE_STOPPED;
+    RigidTransform.setIdentity(cameraPose, 0);
+    Arrays.fill(viewMatrix, 0.0f);
+    Arrays.fill(projectionMatrix, 0.0f);
+    pointCount = 0;
+    planeCount = 0;
+    planePolygonsLength = 0;
+    hasAnchor = false;
+    isAnchorOnVerticalPlane = false;
+    anchorTrackingState = TRACKING_STATE_STOPPED;
+    RigidTransform.setIdentity(anchorPose, 0);
+    earthTrackingState = NO_EARTH;
+    isEarthEnabled = false;
+    hasGeospatialPose = false;
+    featureMapQuality = QUALITY_NOT_ESTIMATED;
+    tapCount = 0;
+  }
+
+  /** Sets the number of points, growing {@link #points} if needed. */
+  public void setPointCount(int pointCount) {
+    points = ensureCapacity(points, pointCount * FLOATS_PER_POINT);
+    this.pointCount = pointCount;
+  }
+
+  /**
+   * Adds a plane and returns its index. Its polygon must then be written to {@link #planePolygons}
+   * at {@code planePolygonOffsets[index]}.
+   *
+   * @param polygonLength Number of floats of the polygon, 2 per vertex.
+   */
+  public int addPlane(int type, int trackingState, int polygonLength) {
+    int index = planeCount;
+    if (index == planeTypes.length) {
+      int capacity = Math.max(8, 2 * index);
+      planeTypes = Arrays.copyOf(planeTypes, capacity);
+      planeTrackingStates = Arrays.copyOf(planeTrackingStates, capacity);
+      planePoses = Arrays.copyOf(planePoses, capacity * RigidTransform.SIZE);
+      planeExtents = Arrays.copyOf(planeExtents, capacity * 2);
+      planePolygonOffsets = Arrays.copyOf(planePolygonOffsets, capacity);
+      planePolygonLengths = Arrays.copyOf(planePolygonLengths, capacity);
+    }
+    planeTypes[index] = type;
+    planeTrackingStates[index] = trackingState;
+    planePolygonOffsets[index] = planePolygonsLength;
+    planePolygonLengths[index] = polygonLength;
+    planePolygonsLength += polygonLength;
+    planePolygons = ensureCapacity(planePolygons, planePolygonsLength);
+    planeCount++;
+    return index;
+  }
+
+  /** Adds a tap at the given view coordinates. */
+  public void addTap(float x, float y) {
+    taps = ensureCapacity(taps, 2 * (tapCount + 1));
+    taps[2 * tapCount] = x;
+    taps[2 * tapCount + 1] = y;
+    tapCount++;
+  }
+
+  /** Sets the geospatial pose of the camera, which requires an Earth. */
+  public void setGeospatialPose(
+      double latitude,
+      double longitude,
+      double altitude,
+      double heading,
+      double horizontalAccuracy,
+      double verticalAccuracy,
+      double headingAccuracy) {
+    hasGeospatialPose = true;
+    this.latitude = latitude;
+    this.longitude = longitude;
+    this.altitude = altitude;
+    this.heading = heading;
+    this.horizontalAccuracy = horizontalAccuracy;
+    this.verticalAccuracy = verticalAccuracy;
+    this.headingAccuracy = headingAccuracy;
+  }
+
+  /** Returns the number of bytes taken by {@link #encode(ByteBuffer)}. */
+  int getEncodedSize() {
+    int size = BYTES_PER_LONG + 3 * BYTES_PER_INT;
+    size += (RigidTransform.SIZE + 32) * BYTES_PER_FLOAT;
+    size += BYTES_PER_INT + pointCount * FLOATS_PER_POINT * BYTES_PER_FLOAT;
+    size += BYTES_PER_INT + planeCount * (3 * BYTES_PER_INT);
+    size += (planeCount * (RigidTransform.SIZE + 2) + planePolygonsLength) * BYTES_PER_FLOAT;
+    if (hasAnchor) {
+      size += BYTES_PER_INT + RigidTransform.SIZE * BYTES_PER_FLOAT;
+    }
+    if (hasGeospatialPose) {
+      size += GEOSPATIAL_POSE_DOUBLES * BYTES_PER_DOUBLE;
+    }
+    size += 2 * BYTES_PER_INT + 2 * tapCount * BYTES_PER_FLOAT;
+    return size;
+  }
+
+  /** Writes the frame at the position of {@code buffer}, in {@link #getEncodedSize()} bytes. */
+  void encode(ByteBuffer buffer) {
+    int flags = 0;
+    if (hasAnchor) {
+      flags |= FLAG_HAS_ANCHOR;
+    }
+    if (isAnchorOnVerticalPlane) {
+      flags |= FLAG_ANCHOR_ON_VERTICAL_PLANE;
+    }
+    if (isEarthEnabled) {
+      flags |= FLAG_EARTH_ENABLED;
+    }
+    if (hasGeospatialPose) {
+      flags |= FLAG_HAS_GEOSPATIAL_POSE;
+    }
+    buffer.putLong(timestampNanos);
+    buffer.putInt(flags);
+    buffer.putInt(cameraTrackingState);
+    buffer.putInt(earthTrackingState);
+    putFloats(buffer, cameraPose, 0, RigidTransform.SIZE);
+    putFloats(buffer, viewMatrix, 0, 16);
+    putFloats(buffer, projectionMatrix, 0, 16);
+
+    buffer.putInt(pointCount);
+    putFloats(buffer, points, 0, pointCount * FLOATS_PER_POINT);
+
+    buffer.putInt(planeCount);
+    for (int i = 0; i < planeCount; i++) {
+      buffer.putInt(planeTypes[i]);
+      buffer.putInt(planeTrackingStates[i]);
+      putFloats(buffer, planePoses, i * RigidTransform.SIZE, RigidTransform.SIZE);
+      putFloats(buffer, planeExtents, i * 2, 2);
+      buffer.putInt(planePolygonLengths[i]);
+      putFloats(buffer, planePolygons, planePolygonOffsets[i], planePolygonLengths[i]);
+    }
+
+    if (hasAnchor) {
+      buffer.putInt(anchorTrackingState);
+      putFloats(buffer, anchorPose, 0, RigidTransform.SIZE);
+    }
+    if (hasGeospatialPose) {
+      buffer.putDouble(latitude);
+      buffer.putDouble(longitude);
+      buffer.putDouble(altitude);
+      buffer.putDouble(heading);
+      buffer.putDouble(horizontalAccuracy);
+      buffer.putDouble(verticalAccuracy);
+      buffer.putDouble(headingAccuracy);
+    }
+
+    buffer.putInt(featureMapQuality);
+    buffer.putInt(tapCount);
+    putFloats(buffer, taps, 0, 2 * tapCount);
+  }
+
+  /**
+   * Reads a frame written by {@link #encode(ByteBuffer)} from the position of {@code buffer}.
+   *
+   * @throws IllegalArgumentException if the frame is malformed.
+   */
+  void decode(ByteBuffer buffer) {
+    clear();
+    timestampNanos = buffer.getLong();
+    int flags = buffer.getInt();
+    hasAnchor = (flags & FLAG_HAS_ANCHOR) != 0;
+    isAnchorOnVerticalPlane = (flags & FLAG_ANCHOR_ON_VERTICAL_PLANE) != 0;
+    isEarthEnabled = (flags & FLAG_EARTH_ENABLED) != 0;
+    hasGeospatialPose = (flags & FLAG_HAS_GEOSPATIAL_POSE) != 0;
+    cameraTrackingState = buffer.getInt();
+    earthTrackingState = buffer.getInt();
+    getFloats(buffer, cameraPose, 0, RigidTransform.SIZE);
+    getFloats(buffer, viewMatrix, 0, 16);
+    getFloats(buffer, projectionMatrix, 0, 16);
+
+    setPointCount(checkCount(buffer.getInt(), buffer, FLOATS_PER_POINT * BYTES_PER_FLOAT));
+    getFloats(buffer, points, 0, pointCount * FLOATS_PER_POINT);
+
+    int planes = checkCount(buffer.getInt(), buffer, 3 * BYTES_PER_INT);
+    for (int i = 0; i < planes; i++) {
+      int type = buffer.getInt();
+      int trackingState = buffer.getInt();
+      // The polygon length is read after the pose and extents.
+      int poseAndExtentsPosition = buffer.position();
+      buffer.position(poseAndExtentsPosition + (RigidTransform.SIZE + 2) * BYTES_PER_FLOAT);
+      int polygonLength = checkCount(buffer.getInt(), buffer, BYTES_PER_FLOAT);
+      buffer.position(poseAndExtentsPosition);
+      int index = addPlane(type, trackingState, polygonLength);
+      getFloats(buffer, planePoses, index * RigidTransform.SIZE, RigidTransform.SIZE);
+      getFloats(buffer, planeExtents, index * 2, 2);
+      buffer.getInt();
+      getFloats(buffer, planePolygons, planePolygonOffsets[index], polygonLength);
+    }
+
+    if (hasAnchor) {
+      anchorTrackingState = buffer.getInt();
+      getFloats(buffer, anchorPose, 0, RigidTransform.SIZE);
+    }
+    if (hasGeospatialPose) {
+      latitude = buffer.getDouble();
+      longitude = buffer.getDouble();
+      altitude = buffer.getDouble();
+      heading = buffer.getDouble();
+      horizontalAccuracy = buffer.getDouble();
+      verticalAccuracy = buffer.getDouble();
+      headingAccuracy = buffer.getDouble();
+    }
+
+    featureMapQuality = buffer.getInt();
+    int taps = checkCount(buffer.getInt(), buffer, 2 * BYTES_PER_FLOAT);
+    this.taps = ensureCapacity(this.taps, 2 * taps);
+    getFloats(buffer, this.taps, 0, 2 * taps);
+    tapCount = taps;
+  }
+
+  // Element-wise copies do not allocate a view of the buffer for each array, unlike
+  // asFloatBuffer().
+  private static void putFloats(ByteBuffer buffer, float[] values, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      buffer.putFloat(values[i]);
+    }
+  }
+
+  private static void getFloats(ByteBuffer buffer, float[] values, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      values[i] = buffer.getFloat();
+    }
+  }
+
+  /** Checks that {@code count} items of {@code itemBytes} bytes can remain in {@code buffer}. */
+  private static int checkCount(int count, ByteBuffer buffer, int itemBytes) {
+    if (count < 0 || (long) count * itemBytes > buffer.remaining()) {
+      throw new IllegalArgumentException("Malformed frame: count " + count);
+    }
+    return count;
+  }
+
+  private static float[] ensureCapacity(float[] array, int length) {
+    if (length <= array.length) {
+      return array;
+    }
+    return Arrays.copyOf(array, Math.max(length, 2 * array.length));
+  }
+}
@@ -0,0 +1,121 @@
+package com.google.ar.core.examples.java.common.recording;
+
+import com.google.ar.core.Anchor;
+import com.google.ar.core.Camera;
+import com.google.ar.core.Earth;
+import com.google.ar.core.GeospatialPose;
+import com.google.ar.core.Plane;
+import com.google.ar.core.PointCloud;
+import com.google.ar.core.Pose;
+import com.google.ar.core.Session.FeatureMapQuality;
+import com.google.ar.core.TrackingState;
+import com.google.ar.core.examples.java.common.math.RigidTransform;
+import java.nio.FloatBuffer;
+import java.util.Collection;
+
+/** Copies the ARCore state of a frame into a {@link SessionFrame}. */
+public final class SessionFrameCapture {
+
+  /** Captures the camera tracking state and display oriented pose. */
+  public static void captureCamera(SessionFrame out, long timestampNanos, Camera camera) {
+    out.timestampNanos = timestampNanos;
+    out.cameraTrackingState = toTrackingState(camera.getTrackingState());
+    getPose(camera.getDisplayOrientedPose(), out.cameraPose, 0);
+  }
+
+  /** Captures the view and projection matrices, which are only computed while tracking. */
+  public static void captureMatrices(
+      SessionFrame out, float[] viewMatrix, float[] projectionMatrix) {
+    System.arraycopy(viewMatrix, 0, out.viewMatrix, 0, 16);
+    System.arraycopy(projectionMatrix, 0, out.projectionMatrix, 0, 16);
+  }
+
+  public static void capturePointCloud(SessionFrame out, PointCloud pointCloud) {
+    FloatBuffer points = pointCloud.getPoints();
+    int floats = points.remaining();
+    out.setPointCount(floats / SessionFrame.FLOATS_PER_POINT);
+    points.get(out.points, 0, out.pointCount * SessionFrame.FLOATS_PER_POINT);
+    points.rewind();
+  }
+
+  /** Captures the planes that are not subsumed by other planes. */
+  public static void capturePlanes(SessionFrame out, Collection<Plane> planes) {
+    for (Plane plane : planes) {
+      if (plane.getSubsumedBy() != null) {
+        continue;
+      }
+      FloatBuffer polygon = plane.getPolygon();
+      int index =
+          out.addPlane(
+              toPlaneType(plane.getType()),
+              toTrackingState(plane.getTrackingState()),
+              polygon.remaining());
+      getPose(plane.getCenterPose(), out.planePoses, index * RigidTransform.SIZE);
+      out.planeExtents[2 * index] = plane.getExtentX();
+      out.planeExtents[2 * index + 1] = plane.getExtentZ();
+      polygon.get(out.planePolygons, out.planePolygonOffsets[index], polygon.remaining());
+      polygon.rewind();
+    }
+  }
+
+  public static void captureAnchor(SessionFrame out, Anchor anchor, boolean isOnVerticalPlane) {
+    out.hasAnchor = true;
+    out.isAnchorOnVerticalPlane = isOnVerticalPlane;
+    out.anchorTrackingState = toTrackingState(anchor.getTrackingState());
+    getPose(anchor.getPose(), out.anchorPose, 0);
+  }
+
+  /** Captures the Earth state, and the camera geospatial pose if the Earth is tracking. */
+  public static void captureEarth(SessionFrame out, Earth earth) {
+    out.earthTrackingState = toTrackingState(earth.getTrackingState());
+    out.isEarthEnabled = earth.getEarthState() == Earth.EarthState.ENABLED;
+    if (earth.getTrackingState() == TrackingState.TRACKING) {
+      GeospatialPose pose = earth.getCameraGeospatialPose();
+      out.setGeospatialPose(
+          pose.getLatitude(),
+          pose.getLongitude(),
+          pose.getAltitude(),
+          pose.getHeading(),
+          pose.getHorizontalAccuracy(),
+          pose.getVerticalAccuracy(),
+          pose.getHeadingAccuracy());
+    }
+  }
+
+  public static void captureFeatureMapQuality(SessionFrame out, FeatureMapQuality quality) {
+    if (quality == FeatureMapQuality.INSUFFICIENT) {
+      out.featureMapQuality = SessionFrame.QUALITY_INSUFFICIENT;
+    } else if (quality == FeatureMapQuality.SUFFICIENT) {
+      out.featureMapQuality = SessionFrame.QUALITY_SUFFICIENT;
+    } else {
+      out.featureMapQuality = SessionFrame.QUALITY_GOOD;
+    }
+  }
+
+  private static void getPose(Pose pose, float[] out, int offset) {
+    pose.getTranslation(out, offset);
+    pose.getRotationQuaternion(out, offset + 3);
+  }
+
+  private static int toTrackingState(TrackingState trackingState) {
+    if (trackingState == TrackingState.TRACKING) {
+      return SessionFrame.TRACKING_STATE_TRACKING;
+    } else if (trackingState == TrackingState.PAUSED) {
+      return SessionFrame.TRACKING_STATE_PAUSED;
+    } else {
+      return SessionFrame.TRACKING_STATE_STOPPED;
+    }
+  }
+
+  private static int toPlaneType(Plane.Type type) {
+    if (type == Plane.Type.HORIZONTAL_UPWARD_FACING) {
+      return SessionFrame.PLANE_TYPE_HORIZONTAL_UPWARD_FACING;
+    } else if (type == Plane.Type.HORIZONTAL_DOWNWARD_FACING) {
+      return SessionFrame.PLANE_TYPE_HORIZONTAL_DOWNWARD_FACING;
+    } else {
+      return SessionFrame.PLANE_TYPE_VERTICAL;
+    }
+  }
+
+  private SessionFrameCapture() {}
+}
@@ -0,0 +1,79 @@
+package com.google.ar.core.examples.java.common.recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the {@link SessionFrame}s of a trace written by {@link SessionTraceWriter}, in order.
+ *
+ * <p>The file is memory mapped, and frames are decoded into a frame owned by the caller, so reading
+ * does not allocate.
+ */
+public class SessionTraceReader implements Closeable {
+  private final RandomAccessFile file;
+  private final MappedByteBuffer buffer;
+
+  public SessionTraceReader(File file) throws IOException {
+    this.file = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = this.file.getChannel();
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      if (buffer.remaining() < SessionTraceWriter.HEADER_SIZE
+          || buffer.getInt() != SessionTraceWriter.MAGIC
+          || buffer.getInt() != SessionTraceWriter.VERSION) {
+        throw new IOException("Not a session trace, or an unsupported version.");
+      }
+    } catch (IOException | RuntimeException e) {
+      this.file.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Decodes the next frame into {@code frame}.
+   *
+   * @return false, leaving {@code frame} unchanged, at the end of the trace.
+   * @throws IOException if the frame is malformed.
+   */
+  public boolean read(SessionFrame frame) throws IOException {
+    if (buffer.remaining() < SessionTraceWriter.LENGTH_SIZE) {
+      return false;
+    }
+    int start = buffer.position();
+    int length = buffer.getInt();
+    if (length <= 0 || length > buffer.remaining()) {
+      // End of the trace, or a record cut short when the app was killed.
+      buffer.position(start);
+      return false;
+    }
+    int end = buffer.position() + length;
+    // Limits decoding to the record, so that a malformed frame cannot read the next ones.
+    buffer.limit(end);
+    try {
+      frame.decode(buffer);
+    } catch (IllegalArgumentException | BufferUnderflowException e) {
+      throw new IOException("Malformed frame at offset " + start, e);
+    } finally {
+      buffer.limit(buffer.capacity());
+    }
+    buffer.position(end);
+    return true;
+  }
+
+  /** Reads again from the first frame. */
+  public void rewind() {
+    buffer.position(SessionTraceWriter.HEADER_SIZE);
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+}
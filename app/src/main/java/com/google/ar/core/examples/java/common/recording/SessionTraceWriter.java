@@ -0,0 +1,113 @@
+package com.google.ar.core.examples.java.common.recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends {@link SessionFrame}s to a session trace file, to be replayed with {@link
+ * SessionTraceReader}.
+ *
+ * <p>The file is memory mapped in chunks of {@link #CHUNK_SIZE} bytes, so that writing a frame only
+ * copies it to memory, and the operating system writes the pages to the file in the background.
+ * A trace is an 8 byte header followed by records, each made of the length of an encoded frame and
+ * the frame. Mapping extends the file with zeros, and a zero length marks the end of the trace, so
+ * the frames written before the app is killed can still be read.
+ *
+ * <p>This class is not thread safe.
+ */
+public class SessionTraceWriter implements Closeable {
+  static final int MAGIC = 0x41525354;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 8;
+  static final int LENGTH_SIZE = 4;
+
+  private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private MappedByteBuffer chunk;
+  // Offset in the file of the end of the last record.
+  private long size;
+  private int frameCount;
+
+  /** Opens {@code file} and appends to its trace, if any. */
+  public SessionTraceWriter(File file) throws IOException {
+    this.file = new RandomAccessFile(file, "rw");
+    channel = this.file.getChannel();
+    try {
+      size = channel.size() >= HEADER_SIZE ? findEnd() : 0;
+      map(size, CHUNK_SIZE);
+      if (size == 0) {
+        chunk.putInt(MAGIC);
+        chunk.putInt(VERSION);
+        size = HEADER_SIZE;
+      }
+    } catch (IOException | RuntimeException e) {
+      this.file.close();
+      throw e;
+    }
+  }
+
+  /** Returns the number of frames written since the file was opened. */
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  /** Returns the size of the trace, in bytes. */
+  public long getSize() {
+    return size;
+  }
+
+  /** Appends {@code frame} to the trace. */
+  public void write(SessionFrame frame) throws IOException {
+    int length = frame.getEncodedSize();
+    if (chunk.remaining() < LENGTH_SIZE + length) {
+      map(size, Math.max(CHUNK_SIZE, LENGTH_SIZE + length));
+    }
+    chunk.putInt(length);
+    frame.encode(chunk);
+    size += LENGTH_SIZE + length;
+    frameCount++;
+  }
+
+  /** Truncates the file to the end of the trace and closes it. */
+  @Override
+  public void close() throws IOException {
+    try {
+      chunk = null;
+      channel.truncate(size);
+    } finally {
+      file.close();
+    }
+  }
+
+  private void map(long offset, int length) throws IOException {
+    chunk = channel.map(FileChannel.MapMode.READ_WRITE, offset, length);
+    chunk.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /** Returns the offset of the end of the existing trace, skipping its records. */
+  private long findEnd() throws IOException {
+    long fileSize = channel.size();
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+      throw new IOException("Not a session trace, or an unsupported version.");
+    }
+    while (buffer.remaining() >= LENGTH_SIZE) {
+      int length = buffer.getInt();
+      if (length <= 0 || length > buffer.remaining()) {
+        // End of the trace, or a record cut short when the app was killed.
+        buffer.position(buffer.position() - LENGTH_SIZE);
+        break;
+      }
+      buffer.position(buffer.position() + length);
+    }
+    return buffer.position();
+  }
+}
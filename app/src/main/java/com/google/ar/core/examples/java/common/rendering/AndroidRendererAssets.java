@@ -0,0 +1,50 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** {@link RendererAssets} read from the app assets, with the images decoded by Android. */
+public class AndroidRendererAssets implements RendererAssets {
+  private final AssetManager assets;
+
+  public AndroidRendererAssets(Context context) {
+    assets = context.getAssets();
+  }
+
+  @Override
+  public InputStream open(String filename) throws IOException {
+    return assets.open(filename);
+  }
+
+  @Override
+  public Image readImage(String filename) throws IOException {
+    Bitmap bitmap;
+    try (InputStream inputStream = assets.open(filename)) {
+      bitmap = BitmapFactory.decodeStream(inputStream);
+    }
+    if (bitmap == null) {
+      throw new IOException("Could not decode " + filename);
+    }
+    Bitmap rgbaBitmap =
+        bitmap.getConfig() == Bitmap.Config.ARGB_8888
+            ? bitmap
+            : bitmap.copy(Bitmap.Config.ARGB_8888, false);
+    ByteBuffer pixels =
+        ByteBuffer.allocateDirect(rgbaBitmap.getByteCount()).order(ByteOrder.nativeOrder());
+    // ARGB_8888 pixels are stored as R, G, B, A bytes, premultiplied by alpha by default.
+    rgbaBitmap.copyPixelsToBuffer(pixels);
+    pixels.position(0);
+    Image image = new Image(rgbaBitmap.getWidth(), rgbaBitmap.getHeight(), pixels);
+    if (rgbaBitmap != bitmap) {
+      rgbaBitmap.recycle();
+    }
+    bitmap.recycle();
+    return image;
+  }
+}
@@ -16,12 +16,12 @@
 package com.google.ar.core.examples.java.common.rendering;
 
 import android.content.Context;
-import android.opengl.GLES11Ext;
-import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import androidx.annotation.NonNull;
 import com.google.ar.core.Coordinates2d;
 import com.google.ar.core.Frame;
+import com.google.ar.core.examples.java.common.rendering.gl.AndroidGl;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -30,8 +30,12 @@ import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 /**
- * This class renders the AR background from camera feed. It creates and hosts the texture given to
+ * This class renders the AR background from camera feed. It creates and hosts the textures given to
  * ARCore to be filled with the camera image.
+ *
+ * <p>Several textures are handed to ARCore, so that it can write the next camera image into one of
+ * them while the current one is still being sampled, instead of waiting for the GPU to be done with
+ * a single texture.
  */
 public class BackgroundRenderer {
   private static final String TAG = BackgroundRenderer.class.getSimpleName();
@@ -47,6 +51,8 @@ public class BackgroundRenderer {
   private static final int COORDS_PER_VERTEX = 2;
   private static final int TEXCOORDS_PER_VERTEX = 2;
   private static final int FLOAT_SIZE = 4;
+  // Number of textures ARCore cycles through for the camera images.
+  private static final int CAMERA_TEXTURE_COUNT = 3;
 
   private FloatBuffer quadCoords;
   private FloatBuffer quadTexCoords;
@@ -57,6 +63,7 @@ public class BackgroundRenderer {
   private int cameraPositionAttrib;
   private int cameraTexCoordAttrib;
   private int cameraTextureUniform;
+  private final int[] cameraTextureIds = new int[CAMERA_TEXTURE_COUNT];
   private int cameraTextureId = -1;
   private boolean suppressTimestampZeroRendering = true;
 
@@ -65,10 +72,30 @@ public class BackgroundRenderer {
   private int depthTextureUniform;
   private int depthTextureId = -1;
 
+  private final Gl gl;
+
+  public BackgroundRenderer() {
+    this(AndroidGl.INSTANCE);
+  }
+
+  /** Creates a background renderer making its OpenGL calls through {@code gl}. */
+  public BackgroundRenderer(Gl gl) {
+    this.gl = gl;
+  }
+
+  /** Returns the texture holding the camera image of the last frame drawn. */
   public int getTextureId() {
     return cameraTextureId;
   }
 
+  /**
+   * Returns the textures to be given to {@link com.google.ar.core.Session#setCameraTextureNames}.
+   * The returned array must not be modified.
+   */
+  public int[] getTextureIds() {
+    return cameraTextureIds;
+  }
+
   /**
    * Allocates and initializes OpenGL resources needed by the background renderer. Must be called on
    * the OpenGL thread, typically in {@link GLSurfaceView.Renderer#onSurfaceCreated(GL10,
@@ -77,16 +104,18 @@ public class BackgroundRenderer {
    * @param context Needed to access shader source.
    */
   public void createOnGlThread(Context context, int depthTextureId) throws IOException {
-    // Generate the background texture.
-    int[] textures = new int[1];
-    GLES20.glGenTextures(1, textures, 0);
-    cameraTextureId = textures[0];
-    int textureTarget = GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
-    GLES20.glBindTexture(textureTarget, cameraTextureId);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-    GLES20.glTexParameteri(textureTarget, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    ShaderPreprocessor.SourceOpener assets = context.getAssets()::open;
+    // Generate the background textures.
+    gl.glGenTextures(CAMERA_TEXTURE_COUNT, cameraTextureIds, 0);
+    int textureTarget = Gl.GL_TEXTURE_EXTERNAL_OES;
+    for (int textureId : cameraTextureIds) {
+      gl.glBindTexture(textureTarget, textureId);
+      gl.glTexParameteri(textureTarget, Gl.GL_TEXTURE_WRAP_S, Gl.GL_CLAMP_TO_EDGE);
+      gl.glTexParameteri(textureTarget, Gl.GL_TEXTURE_WRAP_T, Gl.GL_CLAMP_TO_EDGE);
+      gl.glTexParameteri(textureTarget, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_LINEAR);
+      gl.glTexParameteri(textureTarget, Gl.GL_TEXTURE_MAG_FILTER, Gl.GL_LINEAR);
+    }
+    cameraTextureId = cameraTextureIds[0];
 
     int numVertices = 4;
     if (numVertices != QUAD_COORDS.length / COORDS_PER_VERTEX) {
@@ -107,44 +136,44 @@ public class BackgroundRenderer {
     // Load render camera feed shader.
     {
       int vertexShader =
-          ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, CAMERA_VERTEX_SHADER_NAME);
+          ShaderUtil.loadGLShader(gl, TAG, assets, Gl.GL_VERTEX_SHADER, CAMERA_VERTEX_SHADER_NAME);
       int fragmentShader =
           ShaderUtil.loadGLShader(
-              TAG, context, GLES20.GL_FRAGMENT_SHADER, CAMERA_FRAGMENT_SHADER_NAME);
-
-      cameraProgram = GLES20.glCreateProgram();
-      GLES20.glAttachShader(cameraProgram, vertexShader);
-      GLES20.glAttachShader(cameraProgram, fragmentShader);
-      GLES20.glLinkProgram(cameraProgram);
-      GLES20.glUseProgram(cameraProgram);
-      cameraPositionAttrib = GLES20.glGetAttribLocation(cameraProgram, "a_Position");
-      cameraTexCoordAttrib = GLES20.glGetAttribLocation(cameraProgram, "a_TexCoord");
-      ShaderUtil.checkGLError(TAG, "Program creation");
-
-      cameraTextureUniform = GLES20.glGetUniformLocation(cameraProgram, "sTexture");
-      ShaderUtil.checkGLError(TAG, "Program parameters");
+              gl, TAG, assets, Gl.GL_FRAGMENT_SHADER, CAMERA_FRAGMENT_SHADER_NAME);
+
+      cameraProgram = gl.glCreateProgram();
+      gl.glAttachShader(cameraProgram, vertexShader);
+      gl.glAttachShader(cameraProgram, fragmentShader);
+      gl.glLinkProgram(cameraProgram);
+      gl.glUseProgram(cameraProgram);
+      cameraPositionAttrib = gl.glGetAttribLocation(cameraProgram, "a_Position");
+      cameraTexCoordAttrib = gl.glGetAttribLocation(cameraProgram, "a_TexCoord");
+      ShaderUtil.checkGLError(gl, TAG, "Program creation");
+
+      cameraTextureUniform = gl.glGetUniformLocation(cameraProgram, "sTexture");
+      ShaderUtil.checkGLError(gl, TAG, "Program parameters");
     }
 
     // Load render depth map shader.
     {
       int vertexShader =
           ShaderUtil.loadGLShader(
-              TAG, context, GLES20.GL_VERTEX_SHADER, DEPTH_VISUALIZER_VERTEX_SHADER_NAME);
+              gl, TAG, assets, Gl.GL_VERTEX_SHADER, DEPTH_VISUALIZER_VERTEX_SHADER_NAME);
       int fragmentShader =
           ShaderUtil.loadGLShader(
-              TAG, context, GLES20.GL_FRAGMENT_SHADER, DEPTH_VISUALIZER_FRAGMENT_SHADER_NAME);
-
-      depthProgram = GLES20.glCreateProgram();
-      GLES20.glAttachShader(depthProgram, vertexShader);
-      GLES20.glAttachShader(depthProgram, fragmentShader);
-      GLES20.glLinkProgram(depthProgram);
-      GLES20.glUseProgram(depthProgram);
-      depthPositionAttrib = GLES20.glGetAttribLocation(depthProgram, "a_Position");
-      depthTexCoordAttrib = GLES20.glGetAttribLocation(depthProgram, "a_TexCoord");
-      ShaderUtil.checkGLError(TAG, "Program creation");
-
-      depthTextureUniform = GLES20.glGetUniformLocation(depthProgram, "u_DepthTexture");
-      ShaderUtil.checkGLError(TAG, "Program parameters");
+              gl, TAG, assets, Gl.GL_FRAGMENT_SHADER, DEPTH_VISUALIZER_FRAGMENT_SHADER_NAME);
+
+      depthProgram = gl.glCreateProgram();
+      gl.glAttachShader(depthProgram, vertexShader);
+      gl.glAttachShader(depthProgram, fragmentShader);
+      gl.glLinkProgram(depthProgram);
+      gl.glUseProgram(depthProgram);
+      depthPositionAttrib = gl.glGetAttribLocation(depthProgram, "a_Position");
+      depthTexCoordAttrib = gl.glGetAttribLocation(depthProgram, "a_TexCoord");
+      ShaderUtil.checkGLError(gl, TAG, "Program creation");
+
+      depthTextureUniform = gl.glGetUniformLocation(depthProgram, "u_DepthTexture");
+      ShaderUtil.checkGLError(gl, TAG, "Program parameters");
     }
 
     this.depthTextureId = depthTextureId;
@@ -185,6 +214,9 @@ public class BackgroundRenderer {
       return;
     }
 
+    // ARCore picks which of the textures holds the image of this frame.
+    cameraTextureId = frame.getCameraTextureName();
+
     draw(debugShowDepthMap);
   }
 
@@ -217,28 +249,25 @@ public class BackgroundRenderer {
     float u = (imageWidth - croppedWidth) / imageWidth * 0.5f;
     float v = (imageHeight - croppedHeight) / imageHeight * 0.5f;
 
-    float[] texCoordTransformed;
+    // Write image texture coordinates.
+    quadTexCoords.position(0);
     switch (cameraToDisplayRotation) {
       case 90:
-        texCoordTransformed = new float[] {1 - u, 1 - v, 1 - u, v, u, 1 - v, u, v};
+        quadTexCoords.put(1 - u).put(1 - v).put(1 - u).put(v).put(u).put(1 - v).put(u).put(v);
         break;
       case 180:
-        texCoordTransformed = new float[] {1 - u, v, u, v, 1 - u, 1 - v, u, 1 - v};
+        quadTexCoords.put(1 - u).put(v).put(u).put(v).put(1 - u).put(1 - v).put(u).put(1 - v);
         break;
       case 270:
-        texCoordTransformed = new float[] {u, v, u, 1 - v, 1 - u, v, 1 - u, 1 - v};
+        quadTexCoords.put(u).put(v).put(u).put(1 - v).put(1 - u).put(v).put(1 - u).put(1 - v);
         break;
       case 0:
-        texCoordTransformed = new float[] {u, 1 - v, 1 - u, 1 - v, u, v, 1 - u, v};
+        quadTexCoords.put(u).put(1 - v).put(1 - u).put(1 - v).put(u).put(v).put(1 - u).put(v);
         break;
       default:
         throw new IllegalArgumentException("Unhandled rotation: " + cameraToDisplayRotation);
     }
 
-    // Write image texture coordinates.
-    quadTexCoords.position(0);
-    quadTexCoords.put(texCoordTransformed);
-
     draw(/*debugShowDepthMap=*/ false);
   }
 
@@ -252,53 +281,53 @@ public class BackgroundRenderer {
 
     // No need to test or write depth, the screen quad has arbitrary depth, and is expected
     // to be drawn first.
-    GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-    GLES20.glDepthMask(false);
+    gl.glDisable(Gl.GL_DEPTH_TEST);
+    gl.glDepthMask(false);
 
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+    gl.glActiveTexture(Gl.GL_TEXTURE0);
 
     if (debugShowDepthMap) {
-      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, depthTextureId);
-      GLES20.glUseProgram(depthProgram);
-      GLES20.glUniform1i(depthTextureUniform, 0);
+      gl.glBindTexture(Gl.GL_TEXTURE_2D, depthTextureId);
+      gl.glUseProgram(depthProgram);
+      gl.glUniform1i(depthTextureUniform, 0);
 
       // Set the vertex positions and texture coordinates.
-      GLES20.glVertexAttribPointer(
-          depthPositionAttrib, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadCoords);
-      GLES20.glVertexAttribPointer(
-          depthTexCoordAttrib, TEXCOORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadTexCoords);
-      GLES20.glEnableVertexAttribArray(depthPositionAttrib);
-      GLES20.glEnableVertexAttribArray(depthTexCoordAttrib);
+      gl.glVertexAttribPointer(
+          depthPositionAttrib, COORDS_PER_VERTEX, Gl.GL_FLOAT, false, 0, quadCoords);
+      gl.glVertexAttribPointer(
+          depthTexCoordAttrib, TEXCOORDS_PER_VERTEX, Gl.GL_FLOAT, false, 0, quadTexCoords);
+      gl.glEnableVertexAttribArray(depthPositionAttrib);
+      gl.glEnableVertexAttribArray(depthTexCoordAttrib);
     } else {
-      GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, cameraTextureId);
-      GLES20.glUseProgram(cameraProgram);
-      GLES20.glUniform1i(cameraTextureUniform, 0);
+      gl.glBindTexture(Gl.GL_TEXTURE_EXTERNAL_OES, cameraTextureId);
+      gl.glUseProgram(cameraProgram);
+      gl.glUniform1i(cameraTextureUniform, 0);
 
       // Set the vertex positions and texture coordinates.
-      GLES20.glVertexAttribPointer(
-          cameraPositionAttrib, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadCoords);
-      GLES20.glVertexAttribPointer(
-          cameraTexCoordAttrib, TEXCOORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadTexCoords);
-      GLES20.glEnableVertexAttribArray(cameraPositionAttrib);
-      GLES20.glEnableVertexAttribArray(cameraTexCoordAttrib);
+      gl.glVertexAttribPointer(
+          cameraPositionAttrib, COORDS_PER_VERTEX, Gl.GL_FLOAT, false, 0, quadCoords);
+      gl.glVertexAttribPointer(
+          cameraTexCoordAttrib, TEXCOORDS_PER_VERTEX, Gl.GL_FLOAT, false, 0, quadTexCoords);
+      gl.glEnableVertexAttribArray(cameraPositionAttrib);
+      gl.glEnableVertexAttribArray(cameraTexCoordAttrib);
     }
 
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    gl.glDrawArrays(Gl.GL_TRIANGLE_STRIP, 0, 4);
 
     // Disable vertex arrays
     if (debugShowDepthMap) {
-      GLES20.glDisableVertexAttribArray(depthPositionAttrib);
-      GLES20.glDisableVertexAttribArray(depthTexCoordAttrib);
+      gl.glDisableVertexAttribArray(depthPositionAttrib);
+      gl.glDisableVertexAttribArray(depthTexCoordAttrib);
     } else {
-      GLES20.glDisableVertexAttribArray(cameraPositionAttrib);
-      GLES20.glDisableVertexAttribArray(cameraTexCoordAttrib);
+      gl.glDisableVertexAttribArray(cameraPositionAttrib);
+      gl.glDisableVertexAttribArray(cameraTexCoordAttrib);
     }
 
     // Restore the depth state for further drawing.
-    GLES20.glDepthMask(true);
-    GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+    gl.glDepthMask(true);
+    gl.glEnable(Gl.GL_DEPTH_TEST);
 
-    ShaderUtil.checkGLError(TAG, "BackgroundRendererDraw");
+    ShaderUtil.checkGLError(gl, TAG, "BackgroundRendererDraw");
   }
 
   /**
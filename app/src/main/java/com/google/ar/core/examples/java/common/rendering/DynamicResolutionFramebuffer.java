@@ -0,0 +1,265 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import com.google.ar.core.examples.java.common.rendering.gl.AndroidGl;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Offscreen render target used to draw virtual content at a reduced resolution, which is then
+ * upscaled and composited over the camera background drawn by {@link BackgroundRenderer}.
+ *
+ * <p>The color texture and depth buffer are allocated once at the full surface resolution, and the
+ * scaled content is drawn into their lower-left corner. The scale can therefore change every frame
+ * without reallocating any GPU memory.
+ *
+ * <p>Content must be drawn with premultiplied alpha, which is what all the renderers in this package
+ * output.
+ */
+public class DynamicResolutionFramebuffer {
+  private static final String TAG = DynamicResolutionFramebuffer.class.getSimpleName();
+
+  // Shader names.
+  private static final String VERTEX_SHADER_NAME = "shaders/screenquad.vert";
+  private static final String FRAGMENT_SHADER_NAME = "shaders/composite.frag";
+
+  private static final int COORDS_PER_VERTEX = 2;
+  private static final int TEXCOORDS_PER_VERTEX = 2;
+  private static final int FLOAT_SIZE = 4;
+
+  // Same layout as the BackgroundRenderer quad, drawn as a GL_TRIANGLE_STRIP.
+  private static final float[] QUAD_COORDS =
+      new float[] {
+        -1.0f, -1.0f, +1.0f, -1.0f, -1.0f, +1.0f, +1.0f, +1.0f,
+      };
+
+  private final int[] framebuffers = new int[1];
+  private final int[] textures = new int[1];
+  private final int[] renderbuffers = new int[1];
+  // Clear color of the default framebuffer, restored after clearing the offscreen one.
+  private final float[] defaultClearColor = new float[4];
+
+  private FloatBuffer quadCoords;
+  private FloatBuffer quadTexCoords;
+
+  private int program;
+  private int positionAttrib;
+  private int texCoordAttrib;
+  private int textureUniform;
+
+  private int surfaceWidth;
+  private int surfaceHeight;
+  private int scaledWidth;
+  private int scaledHeight;
+  private boolean bound;
+  private boolean retainContent;
+  private boolean hasRetainedContent;
+
+  private final Gl gl;
+
+  public DynamicResolutionFramebuffer() {
+    this(AndroidGl.INSTANCE);
+  }
+
+  /** Creates a framebuffer making its OpenGL calls through {@code gl}. */
+  public DynamicResolutionFramebuffer(Gl gl) {
+    this.gl = gl;
+  }
+
+  /**
+   * Allocates the OpenGL objects and loads the composite shader. Must be called on the OpenGL
+   * thread, typically in {@link android.opengl.GLSurfaceView.Renderer#onSurfaceCreated}.
+   *
+   * @param context Needed to access shader source.
+   */
+  public void createOnGlThread(Context context) throws IOException {
+    ShaderPreprocessor.SourceOpener assets = context.getAssets()::open;
+    gl.glGenFramebuffers(1, framebuffers, 0);
+    gl.glGenTextures(1, textures, 0);
+    gl.glGenRenderbuffers(1, renderbuffers, 0);
+
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, textures[0]);
+    gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_WRAP_S, Gl.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_WRAP_T, Gl.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_LINEAR);
+    gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MAG_FILTER, Gl.GL_LINEAR);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+
+    ShaderUtil.checkGLError(gl, TAG, "Framebuffer creation");
+
+    quadCoords =
+        ByteBuffer.allocateDirect(QUAD_COORDS.length * FLOAT_SIZE)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    quadCoords.put(QUAD_COORDS);
+    quadCoords.position(0);
+    quadTexCoords =
+        ByteBuffer.allocateDirect(QUAD_COORDS.length * FLOAT_SIZE)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+
+    int vertexShader =
+        ShaderUtil.loadGLShader(gl, TAG, assets, Gl.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
+    int fragmentShader =
+        ShaderUtil.loadGLShader(gl, TAG, assets, Gl.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
+
+    program = gl.glCreateProgram();
+    gl.glAttachShader(program, vertexShader);
+    gl.glAttachShader(program, fragmentShader);
+    gl.glLinkProgram(program);
+    gl.glUseProgram(program);
+    positionAttrib = gl.glGetAttribLocation(program, "a_Position");
+    texCoordAttrib = gl.glGetAttribLocation(program, "a_TexCoord");
+    textureUniform = gl.glGetUniformLocation(program, "u_Texture");
+    ShaderUtil.checkGLError(gl, TAG, "Program creation");
+
+    gl.glGetFloatv(Gl.GL_COLOR_CLEAR_VALUE, defaultClearColor, 0);
+  }
+
+  /**
+   * (Re)allocates the offscreen storage at the full surface resolution. Must be called on the
+   * OpenGL thread whenever the surface size changes.
+   */
+  public void onSurfaceChanged(int width, int height) {
+    surfaceWidth = width;
+    surfaceHeight = height;
+
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, textures[0]);
+    gl.glTexImage2D(
+        Gl.GL_TEXTURE_2D, 0, Gl.GL_RGBA, width, height, 0, Gl.GL_RGBA, Gl.GL_UNSIGNED_BYTE, null);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+
+    gl.glBindRenderbuffer(Gl.GL_RENDERBUFFER, renderbuffers[0]);
+    gl.glRenderbufferStorage(Gl.GL_RENDERBUFFER, Gl.GL_DEPTH_COMPONENT16, width, height);
+    gl.glBindRenderbuffer(Gl.GL_RENDERBUFFER, 0);
+
+    gl.glBindFramebuffer(Gl.GL_FRAMEBUFFER, framebuffers[0]);
+    gl.glFramebufferTexture2D(
+        Gl.GL_FRAMEBUFFER, Gl.GL_COLOR_ATTACHMENT0, Gl.GL_TEXTURE_2D, textures[0], 0);
+    gl.glFramebufferRenderbuffer(
+        Gl.GL_FRAMEBUFFER, Gl.GL_DEPTH_ATTACHMENT, Gl.GL_RENDERBUFFER, renderbuffers[0]);
+    int status = gl.glCheckFramebufferStatus(Gl.GL_FRAMEBUFFER);
+    gl.glBindFramebuffer(Gl.GL_FRAMEBUFFER, 0);
+    if (status != Gl.GL_FRAMEBUFFER_COMPLETE) {
+      throw new RuntimeException("Incomplete offscreen framebuffer: " + status);
+    }
+
+    ShaderUtil.checkGLError(gl, TAG, "Framebuffer allocation");
+    hasRetainedContent = false;
+  }
+
+  /**
+   * Sets whether the content is always drawn offscreen, even at full scale, so that it can be
+   * composited again with {@link #recomposite()} on frames that do not redraw it.
+   */
+  public void setRetainContent(boolean retainContent) {
+    this.retainContent = retainContent;
+    hasRetainedContent = false;
+  }
+
+  /**
+   * Redirects the subsequent draw calls to the offscreen target, rendered at {@code scale} times
+   * the surface resolution, and clears it. Unless content is retained, a scale of 1 or more
+   * bypasses the offscreen target, so content is drawn directly to the current framebuffer and
+   * {@link #composite()} does nothing.
+   */
+  public void bind(float scale) {
+    hasRetainedContent = false;
+    if ((scale >= 1.0f && !retainContent) || surfaceWidth == 0 || surfaceHeight == 0) {
+      bound = false;
+      return;
+    }
+    scale = Math.min(scale, 1.0f);
+    scaledWidth = Math.max(1, Math.round(surfaceWidth * scale));
+    scaledHeight = Math.max(1, Math.round(surfaceHeight * scale));
+
+    gl.glBindFramebuffer(Gl.GL_FRAMEBUFFER, framebuffers[0]);
+    gl.glViewport(0, 0, scaledWidth, scaledHeight);
+    // Clear the whole target, so that the linear upscale never samples stale texels around the
+    // scaled region.
+    gl.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+    gl.glClear(Gl.GL_COLOR_BUFFER_BIT | Gl.GL_DEPTH_BUFFER_BIT);
+    gl.glClearColor(
+        defaultClearColor[0], defaultClearColor[1], defaultClearColor[2], defaultClearColor[3]);
+    bound = true;
+  }
+
+  /**
+   * Restores the default framebuffer and viewport, then upscales the offscreen content over it. Does
+   * nothing if the last {@link #bind(float)} bypassed the offscreen target.
+   */
+  public void composite() {
+    if (!bound) {
+      return;
+    }
+    bound = false;
+    drawComposite();
+    hasRetainedContent = retainContent;
+  }
+
+  /**
+   * Composites the content of the last frame again, without redrawing it. Only available when
+   * content is retained.
+   *
+   * @return whether there was retained content to composite.
+   */
+  public boolean recomposite() {
+    if (!hasRetainedContent) {
+      return false;
+    }
+    drawComposite();
+    return true;
+  }
+
+  /** Drops the retained content, typically because the last frame had no virtual content. */
+  public void discardRetainedContent() {
+    hasRetainedContent = false;
+  }
+
+  private void drawComposite() {
+    gl.glBindFramebuffer(Gl.GL_FRAMEBUFFER, 0);
+    gl.glViewport(0, 0, surfaceWidth, surfaceHeight);
+
+    // Only sample the lower-left region the content was rendered to.
+    float u = (float) scaledWidth / surfaceWidth;
+    float v = (float) scaledHeight / surfaceHeight;
+    quadTexCoords.position(0);
+    quadTexCoords.put(0.0f).put(0.0f);
+    quadTexCoords.put(u).put(0.0f);
+    quadTexCoords.put(0.0f).put(v);
+    quadTexCoords.put(u).put(v);
+    quadTexCoords.position(0);
+
+    gl.glDisable(Gl.GL_DEPTH_TEST);
+    gl.glDepthMask(false);
+    gl.glEnable(Gl.GL_BLEND);
+    gl.glBlendFunc(Gl.GL_ONE, Gl.GL_ONE_MINUS_SRC_ALPHA);
+
+    gl.glUseProgram(program);
+    gl.glActiveTexture(Gl.GL_TEXTURE0);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, textures[0]);
+    gl.glUniform1i(textureUniform, 0);
+
+    gl.glVertexAttribPointer(positionAttrib, COORDS_PER_VERTEX, Gl.GL_FLOAT, false, 0, quadCoords);
+    gl.glVertexAttribPointer(
+        texCoordAttrib, TEXCOORDS_PER_VERTEX, Gl.GL_FLOAT, false, 0, quadTexCoords);
+    gl.glEnableVertexAttribArray(positionAttrib);
+    gl.glEnableVertexAttribArray(texCoordAttrib);
+
+    gl.glDrawArrays(Gl.GL_TRIANGLE_STRIP, 0, 4);
+
+    gl.glDisableVertexAttribArray(positionAttrib);
+    gl.glDisableVertexAttribArray(texCoordAttrib);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+
+    // Restore the state for further drawing.
+    gl.glDisable(Gl.GL_BLEND);
+    gl.glDepthMask(true);
+    gl.glEnable(Gl.GL_DEPTH_TEST);
+
+    ShaderUtil.checkGLError(gl, TAG, "Composite");
+  }
+}
@@ -0,0 +1,121 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+/**
+ * Chooses the resolution scale of the virtual content from a GPU-bound heuristic.
+ *
+ * <p>There are no GPU timer queries in OpenGL ES 2.0, so GPU load is inferred from the frame
+ * pacing instead. Every frame is split into the time spent waiting for the camera image in {@link
+ * com.google.ar.core.Session#update()} and the remaining busy time, which covers the CPU work of
+ * the frame and the time the next frame is held back by buffer swaps. When the busy time exceeds the
+ * frame budget while the CPU work only accounts for a small part of it, the GPU is the bottleneck
+ * and the scale is lowered. The scale is raised again once the busy time leaves enough headroom.
+ *
+ * <p>This class is not thread safe; it is expected to be driven from the OpenGL thread.
+ */
+public class DynamicResolutionScaler {
+  // Weight of the newest frame in the exponential moving averages.
+  private static final float SMOOTHING = 0.1f;
+  // Number of frames between two scale adjustments.
+  private static final int ADJUSTMENT_INTERVAL_FRAMES = 15;
+  private static final float SCALE_DOWN_STEP = 0.1f;
+  private static final float SCALE_UP_STEP = 0.05f;
+  // The scale is lowered when the busy time is above this fraction of the budget...
+  private static final float OVER_BUDGET_FRACTION = 0.95f;
+  // ...and the CPU work accounts for less than this fraction of the busy time.
+  private static final float GPU_BOUND_CPU_FRACTION = 0.6f;
+  // The scale is raised when the busy time is below this fraction of the budget.
+  private static final float UNDER_BUDGET_FRACTION = 0.75f;
+
+  private final float frameBudgetNanos;
+  private final float minScale;
+  private final float maxScale;
+  private float scale;
+
+  private long frameBeginNanos = -1;
+  private long cameraWaitNanos;
+  private long cpuStartNanos = -1;
+  private long cpuNanos;
+  private float smoothedBusyNanos;
+  private float smoothedCpuNanos;
+  private int framesSinceAdjustment;
+
+  /**
+   * Creates a scaler starting at {@code maxScale}.
+   *
+   * @param frameBudgetMillis the target frame time, in milliseconds.
+   * @param minScale the lowest resolution scale that may be selected, in (0, 1].
+   * @param maxScale the highest resolution scale that may be selected, in [minScale, 1].
+   */
+  public DynamicResolutionScaler(float frameBudgetMillis, float minScale, float maxScale) {
+    if (minScale <= 0.0f || minScale > maxScale || maxScale > 1.0f) {
+      throw new IllegalArgumentException(
+          "Invalid scale range [" + minScale + ", " + maxScale + "].");
+    }
+    this.frameBudgetNanos = frameBudgetMillis * 1_000_000.0f;
+    this.minScale = minScale;
+    this.maxScale = maxScale;
+    this.scale = maxScale;
+  }
+
+  /**
+   * Must be called at the very beginning of each frame, before updating the session.
+   *
+   * @param pacingDelayNanos how long this frame was deliberately held back before being rendered,
+   *     which is not counted as busy time. Zero when rendering continuously.
+   */
+  public void onFrameBegin(long pacingDelayNanos) {
+    long now = System.nanoTime();
+    if (frameBeginNanos >= 0 && cpuNanos > 0) {
+      long busyNanos = Math.max(0, now - frameBeginNanos - cameraWaitNanos - pacingDelayNanos);
+      addSample(busyNanos, cpuNanos);
+    }
+    frameBeginNanos = now;
+    cameraWaitNanos = 0;
+    cpuStartNanos = -1;
+    cpuNanos = 0;
+  }
+
+  /** Must be called right after the session update returned the camera frame. */
+  public void onCameraFrameAvailable() {
+    long now = System.nanoTime();
+    cameraWaitNanos = now - frameBeginNanos;
+    cpuStartNanos = now;
+  }
+
+  /**
+   * Must be called once all the rendering commands of the frame were issued. Frames that do not
+   * reach this point are not sampled.
+   */
+  public void onFrameFinished() {
+    if (cpuStartNanos >= 0) {
+      cpuNanos = System.nanoTime() - cpuStartNanos;
+    }
+  }
+
+  /** Returns the resolution scale to render the virtual content of the current frame with. */
+  public float getScale() {
+    return scale;
+  }
+
+  private void addSample(long busyNanos, long cpuNanos) {
+    if (smoothedBusyNanos == 0.0f) {
+      smoothedBusyNanos = busyNanos;
+      smoothedCpuNanos = cpuNanos;
+    } else {
+      smoothedBusyNanos += SMOOTHING * (busyNanos - smoothedBusyNanos);
+      smoothedCpuNanos += SMOOTHING * (cpuNanos - smoothedCpuNanos);
+    }
+
+    if (++framesSinceAdjustment < ADJUSTMENT_INTERVAL_FRAMES) {
+      return;
+    }
+    framesSinceAdjustment = 0;
+
+    if (smoothedBusyNanos > frameBudgetNanos * OVER_BUDGET_FRACTION
+        && smoothedCpuNanos < smoothedBusyNanos * GPU_BOUND_CPU_FRACTION) {
+      scale = Math.max(minScale, scale - SCALE_DOWN_STEP);
+    } else if (smoothedBusyNanos < frameBudgetNanos * UNDER_BUDGET_FRACTION) {
+      scale = Math.min(maxScale, scale + SCALE_UP_STEP);
+    }
+  }
+}
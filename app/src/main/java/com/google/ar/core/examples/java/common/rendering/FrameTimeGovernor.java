@@ -0,0 +1,176 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.util.Arrays;
+
+/**
+ * Feedback controller that adapts the rendering quality to a target frame budget.
+ *
+ * <p>The CPU time of every frame is recorded into a sliding window, from which the moving 50th and
+ * 90th percentiles are derived. When the 90th percentile exceeds the budget the governor steps one
+ * {@link QualityLevel} down. It only steps back up after the 90th percentile stayed well below the
+ * budget for a sustained period. These asymmetric thresholds, together with the window being
+ * refilled after every transition, keep the level from oscillating.
+ *
+ * <p>This class is not thread safe; it is expected to be driven from the OpenGL thread.
+ */
+public class FrameTimeGovernor {
+
+  /** Rendering quality ladder, ordered from the most to the least expensive level. */
+  public enum QualityLevel {
+    // {pointCloudStride, planeSimplificationToleranceMeters, modelLodBias}
+    FULL(1, 0.0f, 0.0f),
+    MEDIUM(2, 0.02f, 0.5f),
+    LOW(4, 0.05f, 1.0f),
+    MINIMAL(8, 0.1f, 2.0f);
+
+    /** Only every n-th point of the point cloud is drawn. */
+    public final int pointCloudStride;
+    /** Maximum deviation, in meters, tolerated when simplifying plane boundary polygons. */
+    public final float planeSimplificationToleranceMeters;
+    /** Bias added to the texture level of detail when drawing models. */
+    public final float modelLodBias;
+
+    QualityLevel(
+        int pointCloudStride, float planeSimplificationToleranceMeters, float modelLodBias) {
+      this.pointCloudStride = pointCloudStride;
+      this.planeSimplificationToleranceMeters = planeSimplificationToleranceMeters;
+      this.modelLodBias = modelLodBias;
+    }
+  }
+
+  /** Listener notified whenever the governor moves to a different quality level. */
+  public interface Listener {
+
+    /**
+     * Invoked on the thread calling {@link #onFrameEnd()} right after a transition.
+     *
+     * @param previous the level that was active before the transition.
+     * @param current the newly selected level.
+     * @param p50Millis the median frame time that led to the transition, in milliseconds.
+     * @param p90Millis the 90th percentile frame time that led to the transition, in milliseconds.
+     */
+    void onQualityLevelChanged(
+        QualityLevel previous, QualityLevel current, float p50Millis, float p90Millis);
+  }
+
+  // Number of frames the percentiles are computed over.
+  private static final int WINDOW_FRAMES = 30;
+  // The 90th percentile must stay below this fraction of the budget before stepping up.
+  private static final float UPGRADE_HEADROOM = 0.7f;
+  // Consecutive frames with headroom required before stepping up.
+  private static final int UPGRADE_HOLD_FRAMES = 90;
+  private static final float NANOS_PER_MILLI = 1_000_000.0f;
+
+  // QualityLevel.values() clones the array on each call, so keep a copy around.
+  private static final QualityLevel[] LEVELS = QualityLevel.values();
+
+  private final long frameBudgetNanos;
+  private final long[] frameTimesNanos = new long[WINDOW_FRAMES];
+  private final long[] sortedFrameTimesNanos = new long[WINDOW_FRAMES];
+  private int sampleCount;
+  private int nextSampleIndex;
+
+  private long frameStartNanos = -1;
+  private int framesWithHeadroom;
+  private long p50Nanos;
+  private long p90Nanos;
+  private int transitionCount;
+  private QualityLevel level = QualityLevel.FULL;
+  private Listener listener;
+
+  /**
+   * Creates a governor starting at {@link QualityLevel#FULL}.
+   *
+   * @param frameBudgetMillis the CPU time, in milliseconds, a frame is allowed to take.
+   */
+  public FrameTimeGovernor(float frameBudgetMillis) {
+    if (frameBudgetMillis <= 0) {
+      throw new IllegalArgumentException("The frame budget must be positive.");
+    }
+    this.frameBudgetNanos = (long) (frameBudgetMillis * NANOS_PER_MILLI);
+  }
+
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  /** Marks the beginning of the CPU work of a frame. */
+  public void onFrameStart() {
+    frameStartNanos = System.nanoTime();
+  }
+
+  /**
+   * Marks the end of the CPU work of a frame started with {@link #onFrameStart()}, and re-evaluates
+   * the quality level. Frames that were never started are ignored.
+   */
+  public void onFrameEnd() {
+    if (frameStartNanos < 0) {
+      return;
+    }
+    long frameTimeNanos = System.nanoTime() - frameStartNanos;
+    frameStartNanos = -1;
+
+    frameTimesNanos[nextSampleIndex] = frameTimeNanos;
+    nextSampleIndex = (nextSampleIndex + 1) % WINDOW_FRAMES;
+    sampleCount = Math.min(sampleCount + 1, WINDOW_FRAMES);
+    if (sampleCount < WINDOW_FRAMES) {
+      return;
+    }
+
+    updatePercentiles();
+
+    if (p90Nanos > frameBudgetNanos) {
+      framesWithHeadroom = 0;
+      if (level.ordinal() < LEVELS.length - 1) {
+        transitionTo(LEVELS[level.ordinal() + 1]);
+      }
+    } else if (p90Nanos < frameBudgetNanos * UPGRADE_HEADROOM) {
+      if (++framesWithHeadroom >= UPGRADE_HOLD_FRAMES && level.ordinal() > 0) {
+        transitionTo(LEVELS[level.ordinal() - 1]);
+      }
+    } else {
+      framesWithHeadroom = 0;
+    }
+  }
+
+  /** Returns the quality level renderers should currently use. */
+  public QualityLevel getQualityLevel() {
+    return level;
+  }
+
+  /** Returns the moving median of the frame time, in milliseconds. */
+  public float getP50Millis() {
+    return p50Nanos / NANOS_PER_MILLI;
+  }
+
+  /** Returns the moving 90th percentile of the frame time, in milliseconds. */
+  public float getP90Millis() {
+    return p90Nanos / NANOS_PER_MILLI;
+  }
+
+  /** Returns the number of quality level transitions since this governor was created. */
+  public int getTransitionCount() {
+    return transitionCount;
+  }
+
+  private void updatePercentiles() {
+    System.arraycopy(frameTimesNanos, 0, sortedFrameTimesNanos, 0, WINDOW_FRAMES);
+    // Small primitive arrays are sorted in place, without allocating.
+    Arrays.sort(sortedFrameTimesNanos);
+    p50Nanos = sortedFrameTimesNanos[(WINDOW_FRAMES - 1) / 2];
+    p90Nanos = sortedFrameTimesNanos[(int) (0.9f * (WINDOW_FRAMES - 1))];
+  }
+
+  private void transitionTo(QualityLevel newLevel) {
+    QualityLevel previous = level;
+    level = newLevel;
+    transitionCount++;
+    framesWithHeadroom = 0;
+    // Start over with an empty window, so that only frames rendered at the new level drive the next
+    // decision.
+    sampleCount = 0;
+    if (listener != null) {
+      listener.onQualityLevelChanged(previous, newLevel, getP50Millis(), getP90Millis());
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+
+/**
+ * Rejects objects outside of the camera view frustum, or farther from the camera than a maximum
+ * distance, before any of their matrices are computed or any of their OpenGL calls are made.
+ *
+ * <p>The six frustum planes are extracted once per frame from the view-projection matrix by {@link
+ * #update(float[], float[])}. Objects are then tested with bounding spheres or oriented bounding
+ * boxes, which are conservative: an object may be kept while it is just outside of the frustum, but
+ * it is never culled while it is visible.
+ *
+ * <p>The {@code isXxxVisible} methods count the tested objects as visible or culled, until the next
+ * {@link #update(float[], float[])}. The {@code intersectsXxx} methods do not.
+ *
+ * <p>This class is not thread safe; it is expected to be driven from the OpenGL thread.
+ */
+public class FrustumCuller {
+  private static final int PLANE_COUNT = 6;
+
+  // Planes as (a, b, c, d), with unit normals pointing inside the frustum: a point p is inside a
+  // plane if a * px + b * py + c * pz + d >= 0.
+  private final float[] planes = new float[4 * PLANE_COUNT];
+  private final float[] cameraPosition = new float[3];
+  private float maxDistance = Float.POSITIVE_INFINITY;
+
+  private int visibleCount;
+  private int culledCount;
+
+  // Temporary arrays allocated here to reduce number of allocations for each frame.
+  private final float[] viewProjectionMatrix = new float[16];
+  private final float[] cameraMatrix = new float[16];
+
+  /**
+   * Culls the objects farther than {@code maxDistanceMeters} from the camera, in addition to the
+   * far plane of the projection. Infinite by default.
+   */
+  public void setMaxDistance(float maxDistanceMeters) {
+    this.maxDistance = maxDistanceMeters;
+  }
+
+  /**
+   * Extracts the frustum planes of the frame and resets the counters.
+   *
+   * @param viewMatrix a rigid view matrix, as returned by {@code Camera.getViewMatrix}.
+   * @param projectionMatrix the projection matrix, as returned by {@code
+   *     Camera.getProjectionMatrix}.
+   */
+  public void update(float[] viewMatrix, float[] projectionMatrix) {
+    Mat4.multiply(viewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
+    float[] m = viewProjectionMatrix;
+    // Gribb-Hartmann: each plane is the last row of the matrix plus or minus one of the others.
+    for (int i = 0; i < PLANE_COUNT; i++) {
+      int row = i / 2;
+      float sign = i % 2 == 0 ? 1.0f : -1.0f;
+      float a = m[3] + sign * m[row];
+      float b = m[7] + sign * m[4 + row];
+      float c = m[11] + sign * m[8 + row];
+      float d = m[15] + sign * m[12 + row];
+      float inverseLength = 1.0f / (float) Math.sqrt(a * a + b * b + c * c);
+      planes[4 * i] = a * inverseLength;
+      planes[4 * i + 1] = b * inverseLength;
+      planes[4 * i + 2] = c * inverseLength;
+      planes[4 * i + 3] = d * inverseLength;
+    }
+    // The camera position in world space is the translation of the inverse view matrix.
+    Mat4.invertRigid(cameraMatrix, 0, viewMatrix, 0);
+    cameraPosition[0] = cameraMatrix[12];
+    cameraPosition[1] = cameraMatrix[13];
+    cameraPosition[2] = cameraMatrix[14];
+    visibleCount = 0;
+    culledCount = 0;
+  }
+
+  /** Returns whether the sphere of center (x, y, z) may be visible. */
+  public boolean intersectsSphere(float x, float y, float z, float radius) {
+    if (isBeyondMaxDistance(x, y, z, radius)) {
+      return false;
+    }
+    for (int i = 0; i < 4 * PLANE_COUNT; i += 4) {
+      if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns whether a box may be visible.
+   *
+   * @param modelMatrix the rigid model matrix of the box, centered on its origin.
+   * @param halfExtentX half of the size of the box along the x axis of its model matrix.
+   * @param halfExtentY half of the size of the box along the y axis of its model matrix.
+   * @param halfExtentZ half of the size of the box along the z axis of its model matrix.
+   */
+  public boolean intersectsBox(
+      float[] modelMatrix,
+      int modelOffset,
+      float halfExtentX,
+      float halfExtentY,
+      float halfExtentZ) {
+    float[] m = modelMatrix;
+    float x = m[modelOffset + 12];
+    float y = m[modelOffset + 13];
+    float z = m[modelOffset + 14];
+    float radius =
+        (float) Math.sqrt(
+            halfExtentX * halfExtentX + halfExtentY * halfExtentY + halfExtentZ * halfExtentZ);
+    if (isBeyondMaxDistance(x, y, z, radius)) {
+      return false;
+    }
+    for (int i = 0; i < 4 * PLANE_COUNT; i += 4) {
+      float a = planes[i];
+      float b = planes[i + 1];
+      float c = planes[i + 2];
+      // Extent of the box along the plane normal.
+      float extent =
+          halfExtentX * absDot(m, modelOffset, a, b, c)
+              + halfExtentY * absDot(m, modelOffset + 4, a, b, c)
+              + halfExtentZ * absDot(m, modelOffset + 8, a, b, c);
+      if (a * x + b * y + c * z + planes[i + 3] < -extent) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Same as {@link #intersectsSphere}, counting the object as visible or culled. */
+  public boolean isSphereVisible(float x, float y, float z, float radius) {
+    return count(intersectsSphere(x, y, z, radius));
+  }
+
+  /** Same as {@link #intersectsBox}, counting the object as visible or culled. */
+  public boolean isBoxVisible(
+      float[] modelMatrix,
+      int modelOffset,
+      float halfExtentX,
+      float halfExtentY,
+      float halfExtentZ) {
+    return count(intersectsBox(modelMatrix, modelOffset, halfExtentX, halfExtentY, halfExtentZ));
+  }
+
+  /** Counts {@code count} objects as culled, when they were rejected as a group. */
+  public void addCulled(int count) {
+    culledCount += count;
+  }
+
+  /** Returns the number of objects found visible since the last update. */
+  public int getVisibleCount() {
+    return visibleCount;
+  }
+
+  /** Returns the number of objects culled since the last update. */
+  public int getCulledCount() {
+    return culledCount;
+  }
+
+  private boolean isBeyondMaxDistance(float x, float y, float z, float radius) {
+    if (maxDistance == Float.POSITIVE_INFINITY) {
+      return false;
+    }
+    float dx = x - cameraPosition[0];
+    float dy = y - cameraPosition[1];
+    float dz = z - cameraPosition[2];
+    float distance = maxDistance + radius;
+    return dx * dx + dy * dy + dz * dz > distance * distance;
+  }
+
+  /** Returns the absolute dot product of the 3D vector at {@code offset} with (a, b, c). */
+  private static float absDot(float[] v, int offset, float a, float b, float c) {
+    return Math.abs(a * v[offset] + b * v[offset + 1] + c * v[offset + 2]);
+  }
+
+  private boolean count(boolean visible) {
+    if (visible) {
+      visibleCount++;
+    } else {
+      culledCount++;
+    }
+    return visible;
+  }
+}
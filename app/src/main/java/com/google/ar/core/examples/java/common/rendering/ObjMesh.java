@@ -0,0 +1,83 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/** Geometry of an OBJ model, as single-indexed direct buffers that OpenGL ES 2.0 can draw. */
+public class ObjMesh {
+  private final FloatBuffer vertices;
+  private final FloatBuffer texCoords;
+  private final FloatBuffer normals;
+  private final ShortBuffer indices;
+
+  private ObjMesh(
+      FloatBuffer vertices, FloatBuffer texCoords, FloatBuffer normals, ShortBuffer indices) {
+    this.vertices = vertices;
+    this.texCoords = texCoords;
+    this.normals = normals;
+    this.indices = indices;
+  }
+
+  /** Reads an OBJ model and converts it for rendering. */
+  public static ObjMesh read(InputStream objInputStream) throws IOException {
+    Obj obj = ObjReader.read(objInputStream);
+
+    // Prepare the Obj so that its structure is suitable for
+    // rendering with OpenGL:
+    // 1. Triangulate it
+    // 2. Make sure that texture coordinates are not ambiguous
+    // 3. Make sure that normals are not ambiguous
+    // 4. Convert it to single-indexed data
+    obj = ObjUtils.convertToRenderable(obj);
+
+    // OpenGL does not use Java arrays. ByteBuffers are used instead to provide data in a format
+    // that OpenGL understands.
+
+    // Obtain the data from the OBJ, as direct buffers:
+    IntBuffer wideIndices = ObjData.getFaceVertexIndices(obj, 3);
+    FloatBuffer vertices = ObjData.getVertices(obj);
+    FloatBuffer texCoords = ObjData.getTexCoords(obj, 2);
+    FloatBuffer normals = ObjData.getNormals(obj);
+
+    // Convert int indices to shorts for GL ES 2.0 compatibility
+    ShortBuffer indices =
+        ByteBuffer.allocateDirect(2 * wideIndices.limit())
+            .order(ByteOrder.nativeOrder())
+            .asShortBuffer();
+    while (wideIndices.hasRemaining()) {
+      indices.put((short) wideIndices.get());
+    }
+    indices.rewind();
+
+    return new ObjMesh(vertices, texCoords, normals, indices);
+  }
+
+  /** Returns the vertex positions, 3 floats each. */
+  public FloatBuffer getVertices() {
+    return vertices;
+  }
+
+  /** Returns the texture coordinates, 2 floats per vertex. */
+  public FloatBuffer getTexCoords() {
+    return texCoords;
+  }
+
+  /** Returns the vertex normals, 3 floats each. */
+  public FloatBuffer getNormals() {
+    return normals;
+  }
+
+  /** Returns the triangle indices. */
+  public ShortBuffer getIndices() {
+    return indices;
+  }
+}
@@ -15,27 +15,19 @@
  */
 package com.google.ar.core.examples.java.common.rendering;
 
-import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.opengl.GLES20;
-import android.opengl.GLUtils;
-import android.opengl.Matrix;
-import de.javagl.obj.Obj;
-import de.javagl.obj.ObjData;
-import de.javagl.obj.ObjReader;
-import de.javagl.obj.ObjUtils;
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.util.Map;
 import java.util.TreeMap;
 
-/** Renders an object loaded from an OBJ file in OpenGL. */
+/**
+ * Renders an object loaded from an OBJ file in OpenGL. Its assets are loaded through {@link
+ * RendererAssets}, so that it does not depend on Android.
+ */
 public class ObjectRenderer {
   private static final String TAG = ObjectRenderer.class.getSimpleName();
 
@@ -106,12 +98,16 @@ public class ObjectRenderer {
   // Shader location: the aspect ratio of the depth texture.
   private int depthAspectRatioUniform;
 
+  // Shader location: bias applied to the level of detail of the object texture.
+  private int lodBiasUniform;
+
   private BlendMode blendMode = null;
 
   // Temporary matrices allocated here to reduce number of allocations for each frame.
   private final float[] modelMatrix = new float[16];
   private final float[] modelViewMatrix = new float[16];
   private final float[] modelViewProjectionMatrix = new float[16];
+  private final float[] scaleMatrix = new float[16];
 
   // Set some default material properties to use for lighting.
   private float ambient = 0.3f;
@@ -122,74 +118,58 @@ public class ObjectRenderer {
   // Depth-for-Occlusion parameters.
   private static final String USE_DEPTH_FOR_OCCLUSION_SHADER_FLAG = "USE_DEPTH_FOR_OCCLUSION";
   private boolean useDepthForOcclusion = false;
+  private float lodBias = 0.0f;
   private float depthAspectRatio = 0.0f;
   private float[] uvTransform = null;
   private int depthTextureId;
 
+  private final Gl gl;
+
+  /** Creates an object renderer making its OpenGL calls through {@code gl}. */
+  public ObjectRenderer(Gl gl) {
+    this.gl = gl;
+  }
+
   /**
    * Creates and initializes OpenGL resources needed for rendering the model.
    *
-   * @param context Context for loading the shader and below-named model and texture assets.
+   * @param assets Assets for loading the shader and below-named model and texture assets.
    * @param objAssetName Name of the OBJ file containing the model geometry.
    * @param diffuseTextureAssetName Name of the PNG file containing the diffuse texture map.
    */
-  public void createOnGlThread(Context context, String objAssetName, String diffuseTextureAssetName)
+  public void createOnGlThread(
+      RendererAssets assets, String objAssetName, String diffuseTextureAssetName)
       throws IOException {
     // Compiles and loads the shader based on the current configuration.
-    compileAndLoadShaderProgram(context);
+    compileAndLoadShaderProgram(assets);
 
     // Read the texture.
-    Bitmap textureBitmap =
-        BitmapFactory.decodeStream(context.getAssets().open(diffuseTextureAssetName));
-
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glGenTextures(textures.length, textures, 0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+    RendererAssets.Image textureImage = assets.readImage(diffuseTextureAssetName);
 
-    GLES20.glTexParameteri(
-        GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
-    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-    GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, textureBitmap, 0);
-    GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    gl.glActiveTexture(Gl.GL_TEXTURE0);
+    gl.glGenTextures(textures.length, textures, 0);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, textures[0]);
 
-    textureBitmap.recycle();
+    gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_LINEAR_MIPMAP_LINEAR);
+    gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MAG_FILTER, Gl.GL_LINEAR);
+    ShaderUtil.texImage2D(gl, Gl.GL_TEXTURE_2D, 0, textureImage);
+    gl.glGenerateMipmap(Gl.GL_TEXTURE_2D);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
 
-    ShaderUtil.checkGLError(TAG, "Texture loading");
+    ShaderUtil.checkGLError(gl, TAG, "Texture loading");
 
     // Read the obj file.
-    InputStream objInputStream = context.getAssets().open(objAssetName);
-    Obj obj = ObjReader.read(objInputStream);
-
-    // Prepare the Obj so that its structure is suitable for
-    // rendering with OpenGL:
-    // 1. Triangulate it
-    // 2. Make sure that texture coordinates are not ambiguous
-    // 3. Make sure that normals are not ambiguous
-    // 4. Convert it to single-indexed data
-    obj = ObjUtils.convertToRenderable(obj);
-
-    // OpenGL does not use Java arrays. ByteBuffers are used instead to provide data in a format
-    // that OpenGL understands.
-
-    // Obtain the data from the OBJ, as direct buffers:
-    IntBuffer wideIndices = ObjData.getFaceVertexIndices(obj, 3);
-    FloatBuffer vertices = ObjData.getVertices(obj);
-    FloatBuffer texCoords = ObjData.getTexCoords(obj, 2);
-    FloatBuffer normals = ObjData.getNormals(obj);
-
-    // Convert int indices to shorts for GL ES 2.0 compatibility
-    ShortBuffer indices =
-        ByteBuffer.allocateDirect(2 * wideIndices.limit())
-            .order(ByteOrder.nativeOrder())
-            .asShortBuffer();
-    while (wideIndices.hasRemaining()) {
-      indices.put((short) wideIndices.get());
+    ObjMesh mesh;
+    try (InputStream objInputStream = assets.open(objAssetName)) {
+      mesh = ObjMesh.read(objInputStream);
     }
-    indices.rewind();
+    FloatBuffer vertices = mesh.getVertices();
+    FloatBuffer texCoords = mesh.getTexCoords();
+    FloatBuffer normals = mesh.getNormals();
+    ShortBuffer indices = mesh.getIndices();
 
     int[] buffers = new int[2];
-    GLES20.glGenBuffers(2, buffers, 0);
+    gl.glGenBuffers(2, buffers, 0);
     vertexBufferId = buffers[0];
     indexBufferId = buffers[1];
 
@@ -199,26 +179,22 @@ public class ObjectRenderer {
     normalsBaseAddress = texCoordsBaseAddress + 4 * texCoords.limit();
     final int totalBytes = normalsBaseAddress + 4 * normals.limit();
 
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
-    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, totalBytes, null, GLES20.GL_STATIC_DRAW);
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, verticesBaseAddress, 4 * vertices.limit(), vertices);
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, texCoordsBaseAddress, 4 * texCoords.limit(), texCoords);
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, normalsBaseAddress, 4 * normals.limit(), normals);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, vertexBufferId);
+    gl.glBufferData(Gl.GL_ARRAY_BUFFER, totalBytes, null, Gl.GL_STATIC_DRAW);
+    gl.glBufferSubData(Gl.GL_ARRAY_BUFFER, verticesBaseAddress, 4 * vertices.limit(), vertices);
+    gl.glBufferSubData(Gl.GL_ARRAY_BUFFER, texCoordsBaseAddress, 4 * texCoords.limit(), texCoords);
+    gl.glBufferSubData(Gl.GL_ARRAY_BUFFER, normalsBaseAddress, 4 * normals.limit(), normals);
+    gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, 0);
 
     // Load index buffer
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+    gl.glBindBuffer(Gl.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
     indexCount = indices.limit();
-    GLES20.glBufferData(
-        GLES20.GL_ELEMENT_ARRAY_BUFFER, 2 * indexCount, indices, GLES20.GL_STATIC_DRAW);
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    gl.glBufferData(Gl.GL_ELEMENT_ARRAY_BUFFER, 2 * indexCount, indices, Gl.GL_STATIC_DRAW);
+    gl.glBindBuffer(Gl.GL_ELEMENT_ARRAY_BUFFER, 0);
 
-    ShaderUtil.checkGLError(TAG, "OBJ buffer load");
+    ShaderUtil.checkGLError(gl, TAG, "OBJ buffer load");
 
-    Matrix.setIdentityM(modelMatrix, 0);
+    Mat4.setIdentity(modelMatrix, 0);
   }
 
   /**
@@ -239,11 +215,11 @@ public class ObjectRenderer {
    * enable/disable depth-based occlusion. NOTE: recompilation of the shader is inefficient. This
    * code could be optimized to precompile both versions of the shader.
    *
-   * @param context Context for loading the shader.
+   * @param assets Assets for loading the shader.
    * @param useDepthForOcclusion Specifies whether to use the depth texture to perform occlusion
    *     during rendering of virtual objects.
    */
-  public void setUseDepthForOcclusion(Context context, boolean useDepthForOcclusion)
+  public void setUseDepthForOcclusion(RendererAssets assets, boolean useDepthForOcclusion)
       throws IOException {
     if (this.useDepthForOcclusion == useDepthForOcclusion) {
       return; // No change, does nothing.
@@ -251,51 +227,61 @@ public class ObjectRenderer {
 
     // Toggles the occlusion rendering mode and recompiles the shader.
     this.useDepthForOcclusion = useDepthForOcclusion;
-    compileAndLoadShaderProgram(context);
+    compileAndLoadShaderProgram(assets);
+  }
+
+  /**
+   * Sets the bias added to the mipmap level of detail when sampling the object texture. Positive
+   * values select coarser mipmap levels, which reduces texture bandwidth for distant or small
+   * objects.
+   */
+  public void setLodBias(float lodBias) {
+    this.lodBias = lodBias;
   }
 
-  private void compileAndLoadShaderProgram(Context context) throws IOException {
+  private void compileAndLoadShaderProgram(RendererAssets assets) throws IOException {
     // Compiles and loads the shader program based on the selected mode.
     Map<String, Integer> defineValuesMap = new TreeMap<>();
     defineValuesMap.put(USE_DEPTH_FOR_OCCLUSION_SHADER_FLAG, useDepthForOcclusion ? 1 : 0);
 
     final int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
+        ShaderUtil.loadGLShader(gl, TAG, assets, Gl.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
     final int fragmentShader =
         ShaderUtil.loadGLShader(
-            TAG, context, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME, defineValuesMap);
+            gl, TAG, assets, Gl.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME, defineValuesMap);
 
-    program = GLES20.glCreateProgram();
-    GLES20.glAttachShader(program, vertexShader);
-    GLES20.glAttachShader(program, fragmentShader);
-    GLES20.glLinkProgram(program);
-    GLES20.glUseProgram(program);
+    program = gl.glCreateProgram();
+    gl.glAttachShader(program, vertexShader);
+    gl.glAttachShader(program, fragmentShader);
+    gl.glLinkProgram(program);
+    gl.glUseProgram(program);
 
-    ShaderUtil.checkGLError(TAG, "Program creation");
+    ShaderUtil.checkGLError(gl, TAG, "Program creation");
 
-    modelViewUniform = GLES20.glGetUniformLocation(program, "u_ModelView");
-    modelViewProjectionUniform = GLES20.glGetUniformLocation(program, "u_ModelViewProjection");
+    modelViewUniform = gl.glGetUniformLocation(program, "u_ModelView");
+    modelViewProjectionUniform = gl.glGetUniformLocation(program, "u_ModelViewProjection");
 
-    positionAttribute = GLES20.glGetAttribLocation(program, "a_Position");
-    normalAttribute = GLES20.glGetAttribLocation(program, "a_Normal");
-    texCoordAttribute = GLES20.glGetAttribLocation(program, "a_TexCoord");
+    positionAttribute = gl.glGetAttribLocation(program, "a_Position");
+    normalAttribute = gl.glGetAttribLocation(program, "a_Normal");
+    texCoordAttribute = gl.glGetAttribLocation(program, "a_TexCoord");
 
-    textureUniform = GLES20.glGetUniformLocation(program, "u_Texture");
+    textureUniform = gl.glGetUniformLocation(program, "u_Texture");
 
-    lightingParametersUniform = GLES20.glGetUniformLocation(program, "u_LightingParameters");
-    materialParametersUniform = GLES20.glGetUniformLocation(program, "u_MaterialParameters");
+    lightingParametersUniform = gl.glGetUniformLocation(program, "u_LightingParameters");
+    materialParametersUniform = gl.glGetUniformLocation(program, "u_MaterialParameters");
     colorCorrectionParameterUniform =
-        GLES20.glGetUniformLocation(program, "u_ColorCorrectionParameters");
-    colorUniform = GLES20.glGetUniformLocation(program, "u_ObjColor");
+        gl.glGetUniformLocation(program, "u_ColorCorrectionParameters");
+    colorUniform = gl.glGetUniformLocation(program, "u_ObjColor");
+    lodBiasUniform = gl.glGetUniformLocation(program, "u_LodBias");
 
     // Occlusion Uniforms.
     if (useDepthForOcclusion) {
-      depthTextureUniform = GLES20.glGetUniformLocation(program, "u_DepthTexture");
-      depthUvTransformUniform = GLES20.glGetUniformLocation(program, "u_DepthUvTransform");
-      depthAspectRatioUniform = GLES20.glGetUniformLocation(program, "u_DepthAspectRatio");
+      depthTextureUniform = gl.glGetUniformLocation(program, "u_DepthTexture");
+      depthUvTransformUniform = gl.glGetUniformLocation(program, "u_DepthUvTransform");
+      depthAspectRatioUniform = gl.glGetUniformLocation(program, "u_DepthAspectRatio");
     }
 
-    ShaderUtil.checkGLError(TAG, "Program parameters");
+    ShaderUtil.checkGLError(gl, TAG, "Program parameters");
   }
 
   /**
@@ -306,12 +292,11 @@ public class ObjectRenderer {
    * @see android.opengl.Matrix
    */
   public void updateModelMatrix(float[] modelMatrix, float scaleFactor) {
-    float[] scaleMatrix = new float[16];
-    Matrix.setIdentityM(scaleMatrix, 0);
+    Mat4.setIdentity(scaleMatrix, 0);
     scaleMatrix[0] = scaleFactor;
     scaleMatrix[5] = scaleFactor;
     scaleMatrix[10] = scaleFactor;
-    Matrix.multiplyMM(this.modelMatrix, 0, modelMatrix, 0, scaleMatrix, 0);
+    Mat4.multiply(this.modelMatrix, 0, modelMatrix, 0, scaleMatrix, 0);
   }
 
   /**
@@ -353,106 +338,161 @@ public class ObjectRenderer {
       float[] colorCorrectionRgba,
       float[] objColor) {
 
-    ShaderUtil.checkGLError(TAG, "Before draw");
+    ShaderUtil.checkGLError(gl, TAG, "Before draw");
 
-    // Build the ModelView and ModelViewProjection matrices
-    // for calculating object position and light.
-    Matrix.multiplyMM(modelViewMatrix, 0, cameraView, 0, modelMatrix, 0);
-    Matrix.multiplyMM(modelViewProjectionMatrix, 0, cameraPerspective, 0, modelViewMatrix, 0);
+    beginDraw(colorCorrectionRgba, objColor);
+    drawMesh(cameraView, cameraPerspective);
+    endDraw();
+  }
 
-    GLES20.glUseProgram(program);
+  /**
+   * Draws the model once for each of {@code count} model matrices, scaled by {@code scaleFactor}.
+   * The program, textures, vertex attributes and blending are set up once for all of them, and only
+   * the matrix and lighting uniforms are updated between the draw calls.
+   *
+   * @param modelMatrices 4x4 model-to-world transformation matrices, in column-major order, at
+   *     {@code 16 * index}.
+   * @param indices the indices of the model matrices to draw.
+   * @param count the number of indices to draw.
+   * @see #draw(float[], float[], float[], float[])
+   */
+  public void drawInstances(
+      float[] modelMatrices,
+      int[] indices,
+      int count,
+      float scaleFactor,
+      float[] cameraView,
+      float[] cameraPerspective,
+      float[] colorCorrectionRgba,
+      float[] objColor) {
+    if (count == 0) {
+      return;
+    }
 
-    // Set the lighting environment properties.
-    Matrix.multiplyMV(viewLightDirection, 0, modelViewMatrix, 0, LIGHT_DIRECTION, 0);
-    normalizeVec3(viewLightDirection);
-    GLES20.glUniform4f(
-        lightingParametersUniform,
-        viewLightDirection[0],
-        viewLightDirection[1],
-        viewLightDirection[2],
-        1.f);
-    GLES20.glUniform4fv(colorCorrectionParameterUniform, 1, colorCorrectionRgba, 0);
+    ShaderUtil.checkGLError(gl, TAG, "Before draw");
+
+    beginDraw(colorCorrectionRgba, objColor);
+    for (int i = 0; i < count; i++) {
+      int offset = 16 * indices[i];
+      // Same as updateModelMatrix, for a rigid model matrix.
+      for (int j = 0; j < 12; j++) {
+        modelMatrix[j] = modelMatrices[offset + j] * scaleFactor;
+      }
+      System.arraycopy(modelMatrices, offset + 12, modelMatrix, 12, 4);
+      drawMesh(cameraView, cameraPerspective);
+    }
+    endDraw();
+  }
+
+  /** Sets up the state shared by all the draw calls of the model. */
+  private void beginDraw(float[] colorCorrectionRgba, float[] objColor) {
+    gl.glUseProgram(program);
+
+    gl.glUniform4fv(colorCorrectionParameterUniform, 1, colorCorrectionRgba, 0);
 
     // Set the object color property.
-    GLES20.glUniform4fv(colorUniform, 1, objColor, 0);
+    gl.glUniform4fv(colorUniform, 1, objColor, 0);
 
     // Set the object material properties.
-    GLES20.glUniform4f(materialParametersUniform, ambient, diffuse, specular, specularPower);
+    gl.glUniform4f(materialParametersUniform, ambient, diffuse, specular, specularPower);
 
     // Attach the object texture.
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-    GLES20.glUniform1i(textureUniform, 0);
+    gl.glActiveTexture(Gl.GL_TEXTURE0);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, textures[0]);
+    gl.glUniform1i(textureUniform, 0);
+    gl.glUniform1f(lodBiasUniform, lodBias);
 
     // Occlusion parameters.
     if (useDepthForOcclusion) {
       // Attach the depth texture.
-      GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
-      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, depthTextureId);
-      GLES20.glUniform1i(depthTextureUniform, 1);
+      gl.glActiveTexture(Gl.GL_TEXTURE1);
+      gl.glBindTexture(Gl.GL_TEXTURE_2D, depthTextureId);
+      gl.glUniform1i(depthTextureUniform, 1);
 
       // Set the depth texture uv transform.
-      GLES20.glUniformMatrix3fv(depthUvTransformUniform, 1, false, uvTransform, 0);
-      GLES20.glUniform1f(depthAspectRatioUniform, depthAspectRatio);
+      gl.glUniformMatrix3fv(depthUvTransformUniform, 1, false, uvTransform, 0);
+      gl.glUniform1f(depthAspectRatioUniform, depthAspectRatio);
     }
 
     // Set the vertex attributes.
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
+    gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, vertexBufferId);
 
-    GLES20.glVertexAttribPointer(
-        positionAttribute, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, verticesBaseAddress);
-    GLES20.glVertexAttribPointer(normalAttribute, 3, GLES20.GL_FLOAT, false, 0, normalsBaseAddress);
-    GLES20.glVertexAttribPointer(
-        texCoordAttribute, 2, GLES20.GL_FLOAT, false, 0, texCoordsBaseAddress);
+    gl.glVertexAttribPointer(
+        positionAttribute, COORDS_PER_VERTEX, Gl.GL_FLOAT, false, 0, verticesBaseAddress);
+    gl.glVertexAttribPointer(normalAttribute, 3, Gl.GL_FLOAT, false, 0, normalsBaseAddress);
+    gl.glVertexAttribPointer(texCoordAttribute, 2, Gl.GL_FLOAT, false, 0, texCoordsBaseAddress);
 
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-
-    // Set the ModelViewProjection matrix in the shader.
-    GLES20.glUniformMatrix4fv(modelViewUniform, 1, false, modelViewMatrix, 0);
-    GLES20.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjectionMatrix, 0);
+    gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, 0);
 
     // Enable vertex arrays
-    GLES20.glEnableVertexAttribArray(positionAttribute);
-    GLES20.glEnableVertexAttribArray(normalAttribute);
-    GLES20.glEnableVertexAttribArray(texCoordAttribute);
+    gl.glEnableVertexAttribArray(positionAttribute);
+    gl.glEnableVertexAttribArray(normalAttribute);
+    gl.glEnableVertexAttribArray(texCoordAttribute);
 
     if (blendMode != null) {
-      GLES20.glEnable(GLES20.GL_BLEND);
+      gl.glEnable(Gl.GL_BLEND);
       switch (blendMode) {
         case Shadow:
           // Multiplicative blending function for Shadow.
-          GLES20.glDepthMask(false);
-          GLES20.glBlendFunc(GLES20.GL_ZERO, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+          gl.glDepthMask(false);
+          gl.glBlendFunc(Gl.GL_ZERO, Gl.GL_ONE_MINUS_SRC_ALPHA);
           break;
         case AlphaBlending:
           // Alpha blending function, with the depth mask enabled.
-          GLES20.glDepthMask(true);
+          gl.glDepthMask(true);
 
           // Textures are loaded with premultiplied alpha
           // (https://developer.android.com/reference/android/graphics/BitmapFactory.Options#inPremultiplied),
           // so we use the premultiplied alpha blend factors.
-          GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+          gl.glBlendFunc(Gl.GL_ONE, Gl.GL_ONE_MINUS_SRC_ALPHA);
           break;
       }
     }
 
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
-    GLES20.glDrawElements(GLES20.GL_TRIANGLES, indexCount, GLES20.GL_UNSIGNED_SHORT, 0);
-    GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    gl.glBindBuffer(Gl.GL_ELEMENT_ARRAY_BUFFER, indexBufferId);
+  }
+
+  /** Draws the model with the current model matrix, between beginDraw and endDraw. */
+  private void drawMesh(float[] cameraView, float[] cameraPerspective) {
+    // Build the ModelView and ModelViewProjection matrices
+    // for calculating object position and light.
+    Mat4.multiply(modelViewMatrix, 0, cameraView, 0, modelMatrix, 0);
+    Mat4.multiply(modelViewProjectionMatrix, 0, cameraPerspective, 0, modelViewMatrix, 0);
+
+    // Set the lighting environment properties.
+    Mat4.multiplyVec4(viewLightDirection, 0, modelViewMatrix, 0, LIGHT_DIRECTION, 0);
+    normalizeVec3(viewLightDirection);
+    gl.glUniform4f(
+        lightingParametersUniform,
+        viewLightDirection[0],
+        viewLightDirection[1],
+        viewLightDirection[2],
+        1.f);
+
+    // Set the ModelViewProjection matrix in the shader.
+    gl.glUniformMatrix4fv(modelViewUniform, 1, false, modelViewMatrix, 0);
+    gl.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjectionMatrix, 0);
+
+    gl.glDrawElements(Gl.GL_TRIANGLES, indexCount, Gl.GL_UNSIGNED_SHORT, 0);
+  }
+
+  /** Restores the state changed by beginDraw. */
+  private void endDraw() {
+    gl.glBindBuffer(Gl.GL_ELEMENT_ARRAY_BUFFER, 0);
 
     if (blendMode != null) {
-      GLES20.glDisable(GLES20.GL_BLEND);
-      GLES20.glDepthMask(true);
+      gl.glDisable(Gl.GL_BLEND);
+      gl.glDepthMask(true);
     }
 
     // Disable vertex arrays
-    GLES20.glDisableVertexAttribArray(positionAttribute);
-    GLES20.glDisableVertexAttribArray(normalAttribute);
-    GLES20.glDisableVertexAttribArray(texCoordAttribute);
+    gl.glDisableVertexAttribArray(positionAttribute);
+    gl.glDisableVertexAttribArray(normalAttribute);
+    gl.glDisableVertexAttribArray(texCoordAttribute);
 
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
 
-    ShaderUtil.checkGLError(TAG, "After draw");
+    ShaderUtil.checkGLError(gl, TAG, "After draw");
   }
 
   private static void normalizeVec3(float[] v) {
@@ -0,0 +1,199 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Triangle strip mesh of a plane with a fading edge, built from the plane boundary polygon. The
+ * buffers are reused, and only grown, from one plane to the next.
+ */
+public class PlaneMesh {
+  private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
+  private static final int BYTES_PER_SHORT = Short.SIZE / 8;
+  /** Number of floats per vertex: x, z, alpha. */
+  public static final int COORDS_PER_VERTEX = 3;
+
+  private static final int VERTS_PER_BOUNDARY_VERT = 2;
+  private static final int INDICES_PER_BOUNDARY_VERT = 3;
+  private static final int INITIAL_BUFFER_BOUNDARY_VERTS = 64;
+
+  private static final int INITIAL_VERTEX_BUFFER_SIZE_BYTES =
+      BYTES_PER_FLOAT * COORDS_PER_VERTEX * VERTS_PER_BOUNDARY_VERT * INITIAL_BUFFER_BOUNDARY_VERTS;
+
+  private static final int INITIAL_INDEX_BUFFER_SIZE_BYTES =
+      BYTES_PER_SHORT
+          * INDICES_PER_BOUNDARY_VERT
+          * INDICES_PER_BOUNDARY_VERT
+          * INITIAL_BUFFER_BOUNDARY_VERTS;
+
+  private static final float FADE_RADIUS_M = 0.25f;
+
+  private FloatBuffer vertexBuffer =
+      ByteBuffer.allocateDirect(INITIAL_VERTEX_BUFFER_SIZE_BYTES)
+          .order(ByteOrder.nativeOrder())
+          .asFloatBuffer();
+  private ShortBuffer indexBuffer =
+      ByteBuffer.allocateDirect(INITIAL_INDEX_BUFFER_SIZE_BYTES)
+          .order(ByteOrder.nativeOrder())
+          .asShortBuffer();
+  // Boundary polygon (x, z pairs) after simplification, grown on demand.
+  private float[] simplifiedBoundary = new float[2 * INITIAL_BUFFER_BOUNDARY_VERTS];
+
+  private float simplificationToleranceMeters = 0.0f;
+
+  /** See {@link PlaneRenderer#setSimplificationTolerance(float)}. */
+  public void setSimplificationTolerance(float toleranceMeters) {
+    this.simplificationToleranceMeters = Math.max(toleranceMeters, 0.0f);
+  }
+
+  /** Returns the vertices of the last mesh, {@link #COORDS_PER_VERTEX} floats each. */
+  public FloatBuffer getVertexBuffer() {
+    return vertexBuffer;
+  }
+
+  /** Returns the triangle strip indices of the last mesh. */
+  public ShortBuffer getIndexBuffer() {
+    return indexBuffer;
+  }
+
+  /** Empties the mesh. */
+  public void clear() {
+    vertexBuffer.limit(0);
+    indexBuffer.limit(0);
+  }
+
+  /**
+   * Builds the mesh of a plane.
+   *
+   * @param extentX The plane extent along its x axis, as returned by {@code Plane.getExtentX()}.
+   * @param extentZ The plane extent along its z axis, as returned by {@code Plane.getExtentZ()}.
+   * @param boundary The plane boundary polygon, as returned by {@code Plane.getPolygon()}.
+   */
+  public void update(float extentX, float extentZ, FloatBuffer boundary) {
+    // Generate a new set of vertices and a corresponding triangle strip index set so that
+    // the plane boundary polygon has a fading edge. This is done by making a copy of the
+    // boundary polygon vertices and scaling it down around center to push it inwards. Then
+    // the index buffer is setup accordingly.
+    int boundaryVertices = simplifyBoundary(boundary);
+    int numVertices;
+    int numIndices;
+
+    numVertices = boundaryVertices * VERTS_PER_BOUNDARY_VERT;
+    // drawn as GL_TRIANGLE_STRIP with 3n-2 triangles (n-2 for fill, 2n for perimeter).
+    numIndices = boundaryVertices * INDICES_PER_BOUNDARY_VERT;
+
+    if (vertexBuffer.capacity() < numVertices * COORDS_PER_VERTEX) {
+      int size = vertexBuffer.capacity();
+      while (size < numVertices * COORDS_PER_VERTEX) {
+        size *= 2;
+      }
+      vertexBuffer =
+          ByteBuffer.allocateDirect(BYTES_PER_FLOAT * size)
+              .order(ByteOrder.nativeOrder())
+              .asFloatBuffer();
+    }
+    vertexBuffer.rewind();
+    vertexBuffer.limit(numVertices * COORDS_PER_VERTEX);
+
+    if (indexBuffer.capacity() < numIndices) {
+      int size = indexBuffer.capacity();
+      while (size < numIndices) {
+        size *= 2;
+      }
+      indexBuffer =
+          ByteBuffer.allocateDirect(BYTES_PER_SHORT * size)
+              .order(ByteOrder.nativeOrder())
+              .asShortBuffer();
+    }
+    indexBuffer.rewind();
+    indexBuffer.limit(numIndices);
+
+    // Note: when either dimension of the bounding box is smaller than 2*FADE_RADIUS_M we
+    // generate a bunch of 0-area triangles.  These don't get rendered though so it works
+    // out ok.
+    float xScale = Math.max((extentX - 2 * FADE_RADIUS_M) / extentX, 0.0f);
+    float zScale = Math.max((extentZ - 2 * FADE_RADIUS_M) / extentZ, 0.0f);
+
+    for (int i = 0; i < boundaryVertices; ++i) {
+      float x = simplifiedBoundary[i * 2];
+      float z = simplifiedBoundary[i * 2 + 1];
+      vertexBuffer.put(x);
+      vertexBuffer.put(z);
+      vertexBuffer.put(0.0f);
+      vertexBuffer.put(x * xScale);
+      vertexBuffer.put(z * zScale);
+      vertexBuffer.put(1.0f);
+    }
+
+    // step 1, perimeter
+    indexBuffer.put((short) ((boundaryVertices - 1) * 2));
+    for (int i = 0; i < boundaryVertices; ++i) {
+      indexBuffer.put((short) (i * 2));
+      indexBuffer.put((short) (i * 2 + 1));
+    }
+    indexBuffer.put((short) 1);
+    // This leaves us on the interior edge of the perimeter between the inset vertices
+    // for boundary verts n-1 and 0.
+
+    // step 2, interior:
+    for (int i = 1; i < boundaryVertices / 2; ++i) {
+      indexBuffer.put((short) ((boundaryVertices - 1 - i) * 2 + 1));
+      indexBuffer.put((short) (i * 2 + 1));
+    }
+    if (boundaryVertices % 2 != 0) {
+      indexBuffer.put((short) ((boundaryVertices / 2) * 2 + 1));
+    }
+  }
+
+  /**
+   * Copies the boundary polygon into {@link #simplifiedBoundary}, dropping the vertices that lie
+   * within the simplification tolerance of the segment joining the previous kept vertex and the
+   * next vertex. At least three vertices are always kept.
+   *
+   * @return the number of vertices kept.
+   */
+  private int simplifyBoundary(FloatBuffer boundary) {
+    int boundaryVertices = boundary.limit() / 2;
+    if (simplifiedBoundary.length < boundaryVertices * 2) {
+      int size = simplifiedBoundary.length;
+      while (size < boundaryVertices * 2) {
+        size *= 2;
+      }
+      simplifiedBoundary = new float[size];
+    }
+    boundary.rewind();
+    boundary.get(simplifiedBoundary, 0, boundaryVertices * 2);
+    if (simplificationToleranceMeters <= 0.0f || boundaryVertices <= 3) {
+      return boundaryVertices;
+    }
+
+    // Vertices are compacted in place: the kept count never overtakes the vertex being examined,
+    // so the current and next original vertices are still intact when they are read.
+    int kept = 1;
+    for (int i = 1; i < boundaryVertices; ++i) {
+      float x = simplifiedBoundary[i * 2];
+      float z = simplifiedBoundary[i * 2 + 1];
+      boolean keep = kept + (boundaryVertices - i) <= 3;
+      if (!keep) {
+        float prevX = simplifiedBoundary[(kept - 1) * 2];
+        float prevZ = simplifiedBoundary[(kept - 1) * 2 + 1];
+        int next = (i + 1) % boundaryVertices;
+        float segmentX = simplifiedBoundary[next * 2] - prevX;
+        float segmentZ = simplifiedBoundary[next * 2 + 1] - prevZ;
+        float segmentLength = (float) Math.hypot(segmentX, segmentZ);
+        float cross = segmentX * (z - prevZ) - segmentZ * (x - prevX);
+        keep =
+            segmentLength == 0.0f
+                || Math.abs(cross) >= simplificationToleranceMeters * segmentLength;
+      }
+      if (keep) {
+        simplifiedBoundary[kept * 2] = x;
+        simplifiedBoundary[kept * 2 + 1] = z;
+        kept++;
+      }
+    }
+    return kept;
+  }
+}
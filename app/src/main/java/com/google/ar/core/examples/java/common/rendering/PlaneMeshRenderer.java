@@ -0,0 +1,222 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Draws plane outlines with the grid texture. {@link PlaneRenderer} selects and sorts the ARCore
+ * planes, and draws them with this class, which depends on neither ARCore nor Android.
+ *
+ * <p>Planes are drawn between {@link #beginDraw()} and {@link #endDraw()}, which set up and restore
+ * the state shared by all of them.
+ */
+public class PlaneMeshRenderer {
+  private static final String TAG = PlaneMeshRenderer.class.getSimpleName();
+
+  // Shader names.
+  private static final String VERTEX_SHADER_NAME = "shaders/plane.vert";
+  private static final String FRAGMENT_SHADER_NAME = "shaders/plane.frag";
+
+  private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
+
+  private static final float DOTS_PER_METER = 10.0f;
+  private static final float EQUILATERAL_TRIANGLE_SCALE = (float) (1 / Math.sqrt(3));
+
+  // Using the "signed distance field" approach to render sharp lines and circles.
+  // {dotThreshold, lineThreshold, lineFadeSpeed, occlusionScale}
+  // dotThreshold/lineThreshold: red/green intensity above which dots/lines are present
+  // lineFadeShrink:  lines will fade in between alpha = 1-(1/lineFadeShrink) and 1.0
+  // occlusionShrink: occluded planes will fade out between alpha = 0 and 1/occlusionShrink
+  private static final float[] GRID_CONTROL = {0.2f, 0.4f, 2.0f, 1.5f};
+
+  private int planeProgram;
+  private final int[] textures = new int[1];
+
+  private int planeXZPositionAlphaAttribute;
+
+  private int planeModelUniform;
+  private int planeNormalUniform;
+  private int planeModelViewProjectionUniform;
+  private int textureUniform;
+  private int gridControlUniform;
+  private int planeUvMatrixUniform;
+
+  // Temporary matrices allocated here to reduce number of allocations for each frame.
+  private final float[] modelViewMatrix = new float[16];
+  private final float[] modelViewProjectionMatrix = new float[16];
+  private final float[] planeAngleUvMatrix =
+      new float[4]; // 2x2 rotation matrix applied to uv coords.
+
+  private final PlaneMesh mesh = new PlaneMesh();
+
+  private final Gl gl;
+
+  /** Creates a plane mesh renderer making its OpenGL calls through {@code gl}. */
+  public PlaneMeshRenderer(Gl gl) {
+    this.gl = gl;
+  }
+
+  /**
+   * Allocates and initializes the OpenGL resources needed to draw the planes. Must be called on the
+   * OpenGL thread.
+   *
+   * @param assets Needed to access shader source and texture PNG.
+   * @param gridDistanceTextureName Name of the PNG file containing the grid texture.
+   */
+  public void createOnGlThread(RendererAssets assets, String gridDistanceTextureName)
+      throws IOException {
+    int vertexShader =
+        ShaderUtil.loadGLShader(gl, TAG, assets, Gl.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
+    int passthroughShader =
+        ShaderUtil.loadGLShader(gl, TAG, assets, Gl.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
+
+    planeProgram = gl.glCreateProgram();
+    gl.glAttachShader(planeProgram, vertexShader);
+    gl.glAttachShader(planeProgram, passthroughShader);
+    gl.glLinkProgram(planeProgram);
+    gl.glUseProgram(planeProgram);
+
+    ShaderUtil.checkGLError(gl, TAG, "Program creation");
+
+    // Read the texture.
+    RendererAssets.Image textureImage = assets.readImage(gridDistanceTextureName);
+
+    gl.glActiveTexture(Gl.GL_TEXTURE0);
+    gl.glGenTextures(textures.length, textures, 0);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, textures[0]);
+
+    gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MIN_FILTER, Gl.GL_LINEAR_MIPMAP_LINEAR);
+    gl.glTexParameteri(Gl.GL_TEXTURE_2D, Gl.GL_TEXTURE_MAG_FILTER, Gl.GL_LINEAR);
+    ShaderUtil.texImage2D(gl, Gl.GL_TEXTURE_2D, 0, textureImage);
+    gl.glGenerateMipmap(Gl.GL_TEXTURE_2D);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+
+    ShaderUtil.checkGLError(gl, TAG, "Texture loading");
+
+    planeXZPositionAlphaAttribute = gl.glGetAttribLocation(planeProgram, "a_XZPositionAlpha");
+
+    planeModelUniform = gl.glGetUniformLocation(planeProgram, "u_Model");
+    planeNormalUniform = gl.glGetUniformLocation(planeProgram, "u_Normal");
+    planeModelViewProjectionUniform =
+        gl.glGetUniformLocation(planeProgram, "u_ModelViewProjection");
+    textureUniform = gl.glGetUniformLocation(planeProgram, "u_Texture");
+    gridControlUniform = gl.glGetUniformLocation(planeProgram, "u_gridControl");
+    planeUvMatrixUniform = gl.glGetUniformLocation(planeProgram, "u_PlaneUvMatrix");
+
+    ShaderUtil.checkGLError(gl, TAG, "Program parameters");
+  }
+
+  /**
+   * Sets the maximum distance, in meters, a boundary vertex may deviate from the simplified plane
+   * outline. Vertices closer than this to the line joining their neighbors are dropped, which
+   * reduces the number of vertices and triangles drawn per plane. Zero disables simplification.
+   */
+  public void setSimplificationTolerance(float toleranceMeters) {
+    mesh.setSimplificationTolerance(toleranceMeters);
+  }
+
+  /** Sets up the state shared by all the planes drawn until {@link #endDraw()}. */
+  public void beginDraw() {
+    // Disable depth write.
+    gl.glDepthMask(false);
+
+    // Normal alpha blending with premultiplied alpha.
+    gl.glEnable(Gl.GL_BLEND);
+    gl.glBlendFunc(Gl.GL_ONE, Gl.GL_ONE_MINUS_SRC_ALPHA);
+
+    // Set up the shader.
+    gl.glUseProgram(planeProgram);
+
+    // Attach the texture.
+    gl.glActiveTexture(Gl.GL_TEXTURE0);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, textures[0]);
+    gl.glUniform1i(textureUniform, 0);
+
+    // Shared fragment uniforms.
+    gl.glUniform4fv(gridControlUniform, 1, GRID_CONTROL, 0);
+
+    // Enable vertex arrays
+    gl.glEnableVertexAttribArray(planeXZPositionAlphaAttribute);
+
+    ShaderUtil.checkGLError(gl, TAG, "Setting up to draw planes");
+  }
+
+  /**
+   * Draws one plane, between {@link #beginDraw()} and {@link #endDraw()}.
+   *
+   * @param planeMatrix The model matrix of the plane center pose, whose Y axis is the plane normal.
+   * @param extentX The extent of the plane along its X axis, in meters.
+   * @param extentZ The extent of the plane along its Z axis, in meters.
+   * @param boundary The plane polygon, as X and Z coordinates in the plane space, or null.
+   * @param planeIndex A stable index of the plane, which offsets the angle of its grid from the
+   *     other planes.
+   * @param cameraView A 4x4 view matrix, in column-major order.
+   * @param cameraPerspective A 4x4 projection matrix, in column-major order.
+   */
+  public void drawPlane(
+      float[] planeMatrix,
+      float extentX,
+      float extentZ,
+      FloatBuffer boundary,
+      int planeIndex,
+      float[] cameraView,
+      float[] cameraPerspective) {
+    if (boundary == null) {
+      mesh.clear();
+    } else {
+      mesh.update(extentX, extentZ, boundary);
+    }
+
+    // Each plane will have its own angle offset from others, to make them easier to
+    // distinguish. Compute a 2x2 rotation matrix from the angle.
+    float angleRadians = planeIndex * 0.144f;
+    float uScale = DOTS_PER_METER;
+    float vScale = DOTS_PER_METER * EQUILATERAL_TRIANGLE_SCALE;
+    planeAngleUvMatrix[0] = (float) Math.cos(angleRadians) * uScale;
+    planeAngleUvMatrix[1] = -(float) Math.sin(angleRadians) * vScale;
+    planeAngleUvMatrix[2] = (float) Math.sin(angleRadians) * uScale;
+    planeAngleUvMatrix[3] = (float) Math.cos(angleRadians) * vScale;
+    gl.glUniformMatrix2fv(planeUvMatrixUniform, 1, false, planeAngleUvMatrix, 0);
+
+    // Build the ModelView and ModelViewProjection matrices
+    // for calculating cube position and light.
+    Mat4.multiply(modelViewMatrix, 0, cameraView, 0, planeMatrix, 0);
+    Mat4.multiply(modelViewProjectionMatrix, 0, cameraPerspective, 0, modelViewMatrix, 0);
+
+    // Set the position of the plane
+    FloatBuffer vertexBuffer = mesh.getVertexBuffer();
+    vertexBuffer.rewind();
+    gl.glVertexAttribPointer(
+        planeXZPositionAlphaAttribute,
+        PlaneMesh.COORDS_PER_VERTEX,
+        Gl.GL_FLOAT,
+        false,
+        BYTES_PER_FLOAT * PlaneMesh.COORDS_PER_VERTEX,
+        vertexBuffer);
+
+    // Set the Model and ModelViewProjection matrices in the shader. The normal is the Y axis of the
+    // plane's coordinate system.
+    gl.glUniformMatrix4fv(planeModelUniform, 1, false, planeMatrix, 0);
+    gl.glUniform3f(planeNormalUniform, planeMatrix[4], planeMatrix[5], planeMatrix[6]);
+    gl.glUniformMatrix4fv(planeModelViewProjectionUniform, 1, false, modelViewProjectionMatrix, 0);
+
+    ShortBuffer indexBuffer = mesh.getIndexBuffer();
+    indexBuffer.rewind();
+    gl.glDrawElements(Gl.GL_TRIANGLE_STRIP, indexBuffer.limit(), Gl.GL_UNSIGNED_SHORT, indexBuffer);
+    ShaderUtil.checkGLError(gl, TAG, "Drawing plane");
+  }
+
+  /** Restores the state changed by {@link #beginDraw()}. */
+  public void endDraw() {
+    // Clean up the state we set
+    gl.glDisableVertexAttribArray(planeXZPositionAlphaAttribute);
+    gl.glBindTexture(Gl.GL_TEXTURE_2D, 0);
+    gl.glDisable(Gl.GL_BLEND);
+    gl.glDepthMask(true);
+
+    ShaderUtil.checkGLError(gl, TAG, "Cleaning up after drawing planes");
+  }
+}
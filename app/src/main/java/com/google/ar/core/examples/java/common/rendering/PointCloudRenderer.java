@@ -16,9 +16,10 @@
 package com.google.ar.core.examples.java.common.rendering;
 
 import android.content.Context;
-import android.opengl.GLES20;
-import android.opengl.Matrix;
 import com.google.ar.core.PointCloud;
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.rendering.gl.AndroidGl;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
 import java.io.IOException;
 
 /** Renders a point cloud. */
@@ -44,12 +45,25 @@ public class PointCloudRenderer {
   private int pointSizeUniform;
 
   private int numPoints = 0;
+  private int decimation = 1;
 
   // Keep track of the last point cloud rendered to avoid updating the VBO if point cloud
   // was not changed.  Do this using the timestamp since we can't compare PointCloud objects.
   private long lastTimestamp = 0;
 
-  public PointCloudRenderer() {}
+  // Temporary matrix allocated here to reduce number of allocations for each frame.
+  private final float[] modelViewProjection = new float[16];
+
+  private final Gl gl;
+
+  public PointCloudRenderer() {
+    this(AndroidGl.INSTANCE);
+  }
+
+  /** Creates a point cloud renderer making its OpenGL calls through {@code gl}. */
+  public PointCloudRenderer(Gl gl) {
+    this.gl = gl;
+  }
 
   /**
    * Allocates and initializes OpenGL resources needed by the plane renderer. Must be called on the
@@ -58,38 +72,39 @@ public class PointCloudRenderer {
    * @param context Needed to access shader source.
    */
   public void createOnGlThread(Context context) throws IOException {
-    ShaderUtil.checkGLError(TAG, "before create");
+    ShaderPreprocessor.SourceOpener assets = context.getAssets()::open;
+    ShaderUtil.checkGLError(gl, TAG, "before create");
 
     int[] buffers = new int[1];
-    GLES20.glGenBuffers(1, buffers, 0);
+    gl.glGenBuffers(1, buffers, 0);
     vbo = buffers[0];
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+    gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, vbo);
 
     vboSize = INITIAL_BUFFER_POINTS * BYTES_PER_POINT;
-    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glBufferData(Gl.GL_ARRAY_BUFFER, vboSize, null, Gl.GL_DYNAMIC_DRAW);
+    gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, 0);
 
-    ShaderUtil.checkGLError(TAG, "buffer alloc");
+    ShaderUtil.checkGLError(gl, TAG, "buffer alloc");
 
     int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
+        ShaderUtil.loadGLShader(gl, TAG, assets, Gl.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
     int passthroughShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
+        ShaderUtil.loadGLShader(gl, TAG, assets, Gl.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
 
-    programName = GLES20.glCreateProgram();
-    GLES20.glAttachShader(programName, vertexShader);
-    GLES20.glAttachShader(programName, passthroughShader);
-    GLES20.glLinkProgram(programName);
-    GLES20.glUseProgram(programName);
+    programName = gl.glCreateProgram();
+    gl.glAttachShader(programName, vertexShader);
+    gl.glAttachShader(programName, passthroughShader);
+    gl.glLinkProgram(programName);
+    gl.glUseProgram(programName);
 
-    ShaderUtil.checkGLError(TAG, "program");
+    ShaderUtil.checkGLError(gl, TAG, "program");
 
-    positionAttribute = GLES20.glGetAttribLocation(programName, "a_Position");
-    colorUniform = GLES20.glGetUniformLocation(programName, "u_Color");
-    modelViewProjectionUniform = GLES20.glGetUniformLocation(programName, "u_ModelViewProjection");
-    pointSizeUniform = GLES20.glGetUniformLocation(programName, "u_PointSize");
+    positionAttribute = gl.glGetAttribLocation(programName, "a_Position");
+    colorUniform = gl.glGetUniformLocation(programName, "u_Color");
+    modelViewProjectionUniform = gl.glGetUniformLocation(programName, "u_ModelViewProjection");
+    pointSizeUniform = gl.glGetUniformLocation(programName, "u_PointSize");
 
-    ShaderUtil.checkGLError(TAG, "program  params");
+    ShaderUtil.checkGLError(gl, TAG, "program  params");
   }
 
   /**
@@ -101,9 +116,9 @@ public class PointCloudRenderer {
       // Redundant call.
       return;
     }
-    ShaderUtil.checkGLError(TAG, "before update");
+    ShaderUtil.checkGLError(gl, TAG, "before update");
 
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+    gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, vbo);
     lastTimestamp = cloud.getTimestamp();
 
     // If the VBO is not large enough to fit the new point cloud, resize it.
@@ -112,13 +127,23 @@ public class PointCloudRenderer {
       while (numPoints * BYTES_PER_POINT > vboSize) {
         vboSize *= 2;
       }
-      GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
+      gl.glBufferData(Gl.GL_ARRAY_BUFFER, vboSize, null, Gl.GL_DYNAMIC_DRAW);
     }
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, 0, numPoints * BYTES_PER_POINT, cloud.getPoints());
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glBufferSubData(Gl.GL_ARRAY_BUFFER, 0, numPoints * BYTES_PER_POINT, cloud.getPoints());
+    gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, 0);
 
-    ShaderUtil.checkGLError(TAG, "after update");
+    ShaderUtil.checkGLError(gl, TAG, "after update");
+  }
+
+  /**
+   * Draws only every {@code decimation}-th point of the point cloud. The VBO still holds every
+   * point, so changing the decimation does not require a new upload.
+   */
+  public void setDecimation(int decimation) {
+    if (decimation < 1) {
+      throw new IllegalArgumentException("Decimation must be at least 1: " + decimation);
+    }
+    this.decimation = decimation;
   }
 
   /**
@@ -130,23 +155,24 @@ public class PointCloudRenderer {
    *     com.google.ar.core.Camera#getProjectionMatrix(float[], int, float, float)}.
    */
   public void draw(float[] cameraView, float[] cameraPerspective) {
-    float[] modelViewProjection = new float[16];
-    Matrix.multiplyMM(modelViewProjection, 0, cameraPerspective, 0, cameraView, 0);
+    Mat4.multiply(modelViewProjection, 0, cameraPerspective, 0, cameraView, 0);
 
-    ShaderUtil.checkGLError(TAG, "Before draw");
+    ShaderUtil.checkGLError(gl, TAG, "Before draw");
 
-    GLES20.glUseProgram(programName);
-    GLES20.glEnableVertexAttribArray(positionAttribute);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
-    GLES20.glVertexAttribPointer(positionAttribute, 4, GLES20.GL_FLOAT, false, BYTES_PER_POINT, 0);
-    GLES20.glUniform4f(colorUniform, 31.0f / 255.0f, 188.0f / 255.0f, 210.0f / 255.0f, 1.0f);
-    GLES20.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjection, 0);
-    GLES20.glUniform1f(pointSizeUniform, 5.0f);
+    gl.glUseProgram(programName);
+    gl.glEnableVertexAttribArray(positionAttribute);
+    gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, vbo);
+    // Skip decimated points by striding over them.
+    gl.glVertexAttribPointer(
+        positionAttribute, 4, Gl.GL_FLOAT, false, BYTES_PER_POINT * decimation, 0);
+    gl.glUniform4f(colorUniform, 31.0f / 255.0f, 188.0f / 255.0f, 210.0f / 255.0f, 1.0f);
+    gl.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjection, 0);
+    gl.glUniform1f(pointSizeUniform, 5.0f);
 
-    GLES20.glDrawArrays(GLES20.GL_POINTS, 0, numPoints);
-    GLES20.glDisableVertexAttribArray(positionAttribute);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    gl.glDrawArrays(Gl.GL_POINTS, 0, (numPoints + decimation - 1) / decimation);
+    gl.glDisableVertexAttribArray(positionAttribute);
+    gl.glBindBuffer(Gl.GL_ARRAY_BUFFER, 0);
 
-    ShaderUtil.checkGLError(TAG, "Draw");
+    ShaderUtil.checkGLError(gl, TAG, "Draw");
   }
 }
@@ -0,0 +1,27 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Loads the shader sources, models and textures of the renderers, so that the renderers do not
+ * depend on Android. {@link AndroidRendererAssets} loads them from the app assets.
+ */
+public interface RendererAssets extends ShaderPreprocessor.SourceOpener {
+  /** Pixels of a decoded image. */
+  final class Image {
+    public final int width;
+    public final int height;
+    /** The pixels as 8-bit RGBA, with the color channels premultiplied by alpha. */
+    public final ByteBuffer pixels;
+
+    public Image(int width, int height, ByteBuffer pixels) {
+      this.width = width;
+      this.height = height;
+      this.pixels = pixels;
+    }
+  }
+
+  /** Decodes the image file {@code filename}, typically a PNG texture. */
+  Image readImage(String filename) throws IOException;
+}
@@ -0,0 +1,69 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Map;
+
+/** Resolves the {@code #include} directives and {@code #define} values of shader sources. */
+public final class ShaderPreprocessor {
+  /** Opens shader source files, typically from the app assets. */
+  public interface SourceOpener {
+    InputStream open(String filename) throws IOException;
+  }
+
+  /**
+   * Reads a shader source file, replacing each {@code #include "filename"} line with the content
+   * of that file.
+   *
+   * @param opener Opens the shader file and the files it includes.
+   * @param filename The filename of the shader file.
+   */
+  public static String read(SourceOpener opener, String filename) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    append(opener, filename, sb);
+    return sb.toString();
+  }
+
+  /** Prepends a {@code #define} line for each of the {@code defineValuesMap} entries. */
+  public static String prependDefines(Map<String, Integer> defineValuesMap, String code) {
+    if (defineValuesMap.isEmpty()) {
+      return code;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Integer> entry : defineValuesMap.entrySet()) {
+      sb.append("#define ").append(entry.getKey()).append(" ").append(entry.getValue());
+      sb.append("\n");
+    }
+    return sb.append(code).toString();
+  }
+
+  // Included files are appended to the same builder instead of being returned as strings and
+  // copied again into the including file.
+  private static void append(SourceOpener opener, String filename, StringBuilder sb)
+      throws IOException {
+    try (InputStream inputStream = opener.open(filename);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("#include ")) {
+          String includeFilename = line.substring("#include ".length());
+          int end = includeFilename.indexOf(' ');
+          if (end >= 0) {
+            includeFilename = includeFilename.substring(0, end);
+          }
+          includeFilename = includeFilename.replace("\"", "");
+          if (includeFilename.equals(filename)) {
+            throw new IOException("Do not include the calling file.");
+          }
+          append(opener, includeFilename, sb);
+        } else {
+          sb.append(line).append("\n");
+        }
+      }
+    }
+  }
+
+  private ShaderPreprocessor() {}
+}
@@ -15,115 +15,100 @@
  */
 package com.google.ar.core.examples.java.common.rendering;
 
-import android.content.Context;
-import android.opengl.GLES20;
-import android.util.Log;
-import java.io.BufferedReader;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.Map;
 import java.util.TreeMap;
 
-/** Shader helper functions. */
+/** Shader helper functions. They do not depend on Android, and report errors by exceptions. */
 public final class ShaderUtil {
   /**
    * Converts a raw text file, saved as a resource, into an OpenGL ES shader.
    *
+   * @param gl The OpenGL functions to call.
+   * @param opener Opens the shader file and the files it includes, typically from the app assets.
    * @param type The type of shader we will be creating.
    * @param filename The filename of the asset file about to be turned into a shader.
    * @param defineValuesMap The #define values to add to the top of the shader source code.
    * @return The shader object handler.
    */
   public static int loadGLShader(
-      String tag, Context context, int type, String filename, Map<String, Integer> defineValuesMap)
+      Gl gl,
+      String tag,
+      ShaderPreprocessor.SourceOpener opener,
+      int type,
+      String filename,
+      Map<String, Integer> defineValuesMap)
       throws IOException {
     // Load shader source code.
-    String code = readShaderFileFromAssets(context, filename);
+    String code = ShaderPreprocessor.read(opener, filename);
 
     // Prepend any #define values specified during this run.
-    StringBuilder defines = new StringBuilder();
-    for (Map.Entry<String, Integer> entry : defineValuesMap.entrySet()) {
-      defines.append("#define ").append(entry.getKey()).append(" ").append(entry.getValue()).append("\n");
-    }
-    code = defines + code;
+    code = ShaderPreprocessor.prependDefines(defineValuesMap, code);
 
     // Compiles shader code.
-    int shader = GLES20.glCreateShader(type);
-    GLES20.glShaderSource(shader, code);
-    GLES20.glCompileShader(shader);
+    int shader = gl.glCreateShader(type);
+    gl.glShaderSource(shader, code);
+    gl.glCompileShader(shader);
 
     // Get the compilation status.
     final int[] compileStatus = new int[1];
-    GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+    gl.glGetShaderiv(shader, Gl.GL_COMPILE_STATUS, compileStatus, 0);
 
     // If the compilation failed, delete the shader.
     if (compileStatus[0] == 0) {
-      Log.e(tag, "Error compiling shader: " + GLES20.glGetShaderInfoLog(shader));
-      GLES20.glDeleteShader(shader);
-      shader = 0;
-    }
-
-    if (shader == 0) {
-      throw new RuntimeException("Error creating shader.");
+      String infoLog = gl.glGetShaderInfoLog(shader);
+      gl.glDeleteShader(shader);
+      throw new RuntimeException(tag + ": Error compiling shader " + filename + ": " + infoLog);
     }
 
     return shader;
   }
 
   /** Overload of loadGLShader that assumes no additional #define values to add. */
-  public static int loadGLShader(String tag, Context context, int type, String filename)
+  public static int loadGLShader(
+      Gl gl, String tag, ShaderPreprocessor.SourceOpener opener, int type, String filename)
       throws IOException {
     Map<String, Integer> emptyDefineValuesMap = new TreeMap<>();
-    return loadGLShader(tag, context, type, filename, emptyDefineValuesMap);
+    return loadGLShader(gl, tag, opener, type, filename, emptyDefineValuesMap);
   }
 
   /**
    * Checks if we've had an error inside of OpenGL ES, and if so what that error is.
    *
+   * @param gl The OpenGL functions to call.
    * @param label Label to report in case of error.
-   * @throws RuntimeException If an OpenGL error is detected.
+   * @throws RuntimeException If an OpenGL error is detected, listing all the queued errors.
    */
-  public static void checkGLError(String tag, String label) {
-    int lastError = GLES20.GL_NO_ERROR;
-    // Drain the queue of all errors.
-    int error;
-    while ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
-      Log.e(tag, label + ": glError " + error);
-      lastError = error;
-    }
-    if (lastError != GLES20.GL_NO_ERROR) {
-      throw new RuntimeException(label + ": glError " + lastError);
+  public static void checkGLError(Gl gl, String tag, String label) {
+    int error = gl.glGetError();
+    if (error == Gl.GL_NO_ERROR) {
+      return;
     }
+    // Drain the queue of all errors.
+    StringBuilder message = new StringBuilder(tag).append(": ").append(label).append(": glError");
+    do {
+      message.append(' ').append(error);
+    } while ((error = gl.glGetError()) != Gl.GL_NO_ERROR);
+    throw new RuntimeException(message.toString());
   }
 
   /**
-   * Converts a raw shader file into a string.
-   *
-   * @param filename The filename of the shader file about to be turned into a shader.
-   * @return The context of the text file, or null in case of error.
+   * Uploads the pixels of {@code image} to the texture bound to {@code target}, as 8-bit RGBA.
+   * Like with {@code GLUtils.texImage2D}, the color channels are premultiplied by alpha.
    */
-  private static String readShaderFileFromAssets(Context context, String filename)
-      throws IOException {
-    try (InputStream inputStream = context.getAssets().open(filename);
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-      StringBuilder sb = new StringBuilder();
-      String line;
-      while ((line = reader.readLine()) != null) {
-        String[] tokens = line.split(" ", -1);
-        if (tokens[0].equals("#include")) {
-          String includeFilename = tokens[1];
-          includeFilename = includeFilename.replace("\"", "");
-          if (includeFilename.equals(filename)) {
-            throw new IOException("Do not include the calling file.");
-          }
-          sb.append(readShaderFileFromAssets(context, includeFilename));
-        } else {
-          sb.append(line).append("\n");
-        }
-      }
-      return sb.toString();
-    }
+  public static void texImage2D(Gl gl, int target, int level, RendererAssets.Image image) {
+    image.pixels.position(0);
+    gl.glTexImage2D(
+        target,
+        level,
+        Gl.GL_RGBA,
+        image.width,
+        image.height,
+        0,
+        Gl.GL_RGBA,
+        Gl.GL_UNSIGNED_BYTE,
+        image.pixels);
   }
 
   private ShaderUtil() {}
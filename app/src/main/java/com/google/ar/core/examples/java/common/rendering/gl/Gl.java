@@ -0,0 +1,187 @@
+package com.google.ar.core.examples.java.common.rendering.gl;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES 2.0 functions used by the renderers, so that they can be pointed at the device
+ * driver with {@link AndroidGl}, traced with {@link TracingGl} or run headless with {@link
+ * RecordingGl}.
+ *
+ * <p>The functions and constants have the same names, signatures and values as in {@link
+ * android.opengl.GLES20}. This interface does not depend on Android.
+ */
+public interface Gl {
+  int GL_NO_ERROR = 0;
+  int GL_INVALID_ENUM = 0x0500;
+  int GL_INVALID_VALUE = 0x0501;
+  int GL_INVALID_OPERATION = 0x0502;
+
+  int GL_POINTS = 0x0000;
+  int GL_TRIANGLES = 0x0004;
+  int GL_TRIANGLE_STRIP = 0x0005;
+
+  int GL_ZERO = 0;
+  int GL_ONE = 1;
+  int GL_SRC_ALPHA = 0x0302;
+  int GL_ONE_MINUS_SRC_ALPHA = 0x0303;
+
+  int GL_DEPTH_TEST = 0x0B71;
+  int GL_BLEND = 0x0BE2;
+  int GL_COLOR_CLEAR_VALUE = 0x0C22;
+
+  int GL_UNSIGNED_BYTE = 0x1401;
+  int GL_UNSIGNED_SHORT = 0x1403;
+  int GL_FLOAT = 0x1406;
+  int GL_RGBA = 0x1908;
+
+  int GL_TEXTURE_2D = 0x0DE1;
+  int GL_TEXTURE_EXTERNAL_OES = 0x8D65;
+  int GL_TEXTURE_MAG_FILTER = 0x2800;
+  int GL_TEXTURE_MIN_FILTER = 0x2801;
+  int GL_TEXTURE_WRAP_S = 0x2802;
+  int GL_TEXTURE_WRAP_T = 0x2803;
+  int GL_LINEAR = 0x2601;
+  int GL_LINEAR_MIPMAP_LINEAR = 0x2703;
+  int GL_CLAMP_TO_EDGE = 0x812F;
+  int GL_TEXTURE0 = 0x84C0;
+  int GL_TEXTURE1 = 0x84C1;
+
+  int GL_ARRAY_BUFFER = 0x8892;
+  int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+  int GL_STATIC_DRAW = 0x88E4;
+  int GL_DYNAMIC_DRAW = 0x88E8;
+
+  int GL_FRAGMENT_SHADER = 0x8B30;
+  int GL_VERTEX_SHADER = 0x8B31;
+  int GL_COMPILE_STATUS = 0x8B81;
+
+  int GL_FRAMEBUFFER = 0x8D40;
+  int GL_RENDERBUFFER = 0x8D41;
+  int GL_FRAMEBUFFER_COMPLETE = 0x8CD5;
+  int GL_COLOR_ATTACHMENT0 = 0x8CE0;
+  int GL_DEPTH_ATTACHMENT = 0x8D00;
+  int GL_DEPTH_COMPONENT16 = 0x81A5;
+
+  int GL_DEPTH_BUFFER_BIT = 0x00000100;
+  int GL_COLOR_BUFFER_BIT = 0x00004000;
+
+  void glActiveTexture(int texture);
+
+  void glAttachShader(int program, int shader);
+
+  void glBindBuffer(int target, int buffer);
+
+  void glBindFramebuffer(int target, int framebuffer);
+
+  void glBindRenderbuffer(int target, int renderbuffer);
+
+  void glBindTexture(int target, int texture);
+
+  void glBlendFunc(int sfactor, int dfactor);
+
+  void glBufferData(int target, int size, Buffer data, int usage);
+
+  void glBufferSubData(int target, int offset, int size, Buffer data);
+
+  int glCheckFramebufferStatus(int target);
+
+  void glClear(int mask);
+
+  void glClearColor(float red, float green, float blue, float alpha);
+
+  void glCompileShader(int shader);
+
+  int glCreateProgram();
+
+  int glCreateShader(int type);
+
+  void glDeleteShader(int shader);
+
+  void glDepthMask(boolean flag);
+
+  void glDisable(int cap);
+
+  void glDisableVertexAttribArray(int index);
+
+  void glDrawArrays(int mode, int first, int count);
+
+  void glDrawElements(int mode, int count, int type, Buffer indices);
+
+  void glDrawElements(int mode, int count, int type, int offset);
+
+  void glEnable(int cap);
+
+  void glEnableVertexAttribArray(int index);
+
+  void glFramebufferRenderbuffer(
+      int target, int attachment, int renderbuffertarget, int renderbuffer);
+
+  void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level);
+
+  void glGenBuffers(int n, int[] buffers, int offset);
+
+  void glGenFramebuffers(int n, int[] framebuffers, int offset);
+
+  void glGenRenderbuffers(int n, int[] renderbuffers, int offset);
+
+  void glGenTextures(int n, int[] textures, int offset);
+
+  void glGenerateMipmap(int target);
+
+  int glGetAttribLocation(int program, String name);
+
+  int glGetError();
+
+  void glGetFloatv(int pname, float[] params, int offset);
+
+  String glGetShaderInfoLog(int shader);
+
+  void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+  int glGetUniformLocation(int program, String name);
+
+  void glLinkProgram(int program);
+
+  void glRenderbufferStorage(int target, int internalformat, int width, int height);
+
+  void glShaderSource(int shader, String string);
+
+  void glTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int format,
+      int type,
+      Buffer pixels);
+
+  void glTexParameteri(int target, int pname, int param);
+
+  void glUniform1f(int location, float x);
+
+  void glUniform1i(int location, int x);
+
+  void glUniform3f(int location, float x, float y, float z);
+
+  void glUniform4f(int location, float x, float y, float z, float w);
+
+  void glUniform4fv(int location, int count, float[] v, int offset);
+
+  void glUniformMatrix2fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  void glUniformMatrix3fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  void glUseProgram(int program);
+
+  void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer pointer);
+
+  void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset);
+
+  void glViewport(int x, int y, int width, int height);
+}
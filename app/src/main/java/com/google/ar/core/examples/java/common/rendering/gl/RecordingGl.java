@@ -0,0 +1,986 @@
+package com.google.ar.core.examples.java.common.rendering.gl;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Headless {@link Gl} that draws nothing, but tracks the GL state to validate the calls and counts
+ * them, so that rendering code can run and be measured on a plain JVM.
+ *
+ * <p>An invalid call records a GL error, returned by {@link #glGetError()} as a driver would, so
+ * that the usual error checks fail on it. The validation is stricter than the specification where
+ * a call is well-defined but certainly a bug: drawing or setting uniforms without a program in use,
+ * drawing with an enabled attribute that has no pointer, reading indices or attributes at an offset
+ * while no buffer is bound, or passing a client-side pointer while a buffer is bound.
+ *
+ * <p>Counters are accumulated in a {@link FrameStats} until {@link #endFrame()}. Must be used from
+ * a single thread.
+ */
+public class RecordingGl implements Gl {
+  private static final int MAX_VERTEX_ATTRIBS = 16;
+  private static final int MAX_TEXTURE_UNITS = 16;
+
+  private static final int GL_BYTE = 0x1400;
+  private static final int GL_SHORT = 0x1402;
+  private static final int GL_FIXED = 0x140C;
+  private static final int GL_TRIANGLE_FAN = 0x0006;
+
+  /** Counters of the calls made during one frame. */
+  public static final class FrameStats {
+    private int callCount;
+    private int drawCallCount;
+    private long vertexCount;
+    private long uploadedBytes;
+    private int uniformUpdateCount;
+    private int stateChangeCount;
+    private int redundantStateChangeCount;
+    private int errorCount;
+
+    /** Number of GL calls. */
+    public int getCallCount() {
+      return callCount;
+    }
+
+    /** Number of {@code glDrawArrays} and {@code glDrawElements} calls. */
+    public int getDrawCallCount() {
+      return drawCallCount;
+    }
+
+    /** Number of vertices, or indices, submitted by the draw calls. */
+    public long getVertexCount() {
+      return vertexCount;
+    }
+
+    /**
+     * Number of bytes copied to the GPU: buffer and texture data, and the client-side vertex
+     * arrays and indices read by the draw calls.
+     */
+    public long getUploadedBytes() {
+      return uploadedBytes;
+    }
+
+    /** Number of {@code glUniform*} calls. */
+    public int getUniformUpdateCount() {
+      return uniformUpdateCount;
+    }
+
+    /**
+     * Number of calls changing the pipeline state: program, bindings, capabilities, blending,
+     * depth mask, vertex attribute arrays and viewport.
+     */
+    public int getStateChangeCount() {
+      return stateChangeCount;
+    }
+
+    /** Number of state changes that set the value already set. */
+    public int getRedundantStateChangeCount() {
+      return redundantStateChangeCount;
+    }
+
+    /** Number of GL errors recorded. */
+    public int getErrorCount() {
+      return errorCount;
+    }
+
+    @Override
+    public String toString() {
+      return "calls="
+          + callCount
+          + " draws="
+          + drawCallCount
+          + " vertices="
+          + vertexCount
+          + " uploadedBytes="
+          + uploadedBytes
+          + " uniforms="
+          + uniformUpdateCount
+          + " stateChanges="
+          + stateChangeCount
+          + " redundant="
+          + redundantStateChangeCount
+          + " errors="
+          + errorCount;
+    }
+  }
+
+  private FrameStats frameStats = new FrameStats();
+  private int error = GL_NO_ERROR;
+
+  // Object names. All object types share one name space, which GL allows.
+  private int nextName = 1;
+  private final BitSet usedNames = new BitSet();
+  private final BitSet buffers = new BitSet();
+  private final BitSet textures = new BitSet();
+  private final BitSet framebuffers = new BitSet();
+  private final BitSet renderbuffers = new BitSet();
+  private final BitSet shaders = new BitSet();
+  private final BitSet compiledShaders = new BitSet();
+  private final BitSet programs = new BitSet();
+  private final BitSet linkedPrograms = new BitSet();
+  private int[] bufferSizes = new int[64];
+  private final Map<Integer, Map<String, Integer>> attribLocations = new HashMap<>();
+  private final Map<Integer, Map<String, Integer>> uniformLocations = new HashMap<>();
+
+  // Pipeline state.
+  private int currentProgram;
+  private int activeTextureUnit;
+  private final int[] boundTextures2d = new int[MAX_TEXTURE_UNITS];
+  private final int[] boundTexturesExternal = new int[MAX_TEXTURE_UNITS];
+  private int boundArrayBuffer;
+  private int boundElementArrayBuffer;
+  private int boundFramebuffer;
+  private int boundRenderbuffer;
+  private final BitSet enabledCaps = new BitSet();
+  private boolean depthMask = true;
+  private int blendSrcFactor = GL_ONE;
+  private int blendDstFactor = GL_ZERO;
+  private final int[] viewport = new int[4];
+  private final float[] clearColor = new float[4];
+  private final BitSet enabledAttribs = new BitSet();
+  private final BitSet attribPointers = new BitSet();
+  // Bytes per vertex read from client memory by each attribute, or 0 if it reads from a buffer.
+  private final int[] clientAttribBytesPerVertex = new int[MAX_VERTEX_ATTRIBS];
+
+  /** Returns the counters of the current frame. */
+  public FrameStats getFrameStats() {
+    return frameStats;
+  }
+
+  /** Returns the counters of the current frame, and starts counting a new frame. */
+  public FrameStats endFrame() {
+    FrameStats stats = frameStats;
+    frameStats = new FrameStats();
+    return stats;
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    onCall();
+    int unit = texture - GL_TEXTURE0;
+    if (unit < 0 || unit >= MAX_TEXTURE_UNITS) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    onStateChange(unit == activeTextureUnit);
+    activeTextureUnit = unit;
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    onCall();
+    if (!programs.get(program) || !shaders.get(shader)) {
+      setError(GL_INVALID_VALUE);
+    }
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    onCall();
+    if (buffer < 0) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    if (target == GL_ARRAY_BUFFER) {
+      onStateChange(buffer == boundArrayBuffer);
+      boundArrayBuffer = buffer;
+    } else if (target == GL_ELEMENT_ARRAY_BUFFER) {
+      onStateChange(buffer == boundElementArrayBuffer);
+      boundElementArrayBuffer = buffer;
+    } else {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    // Binding an unused name creates the object.
+    markUsed(buffers, buffer);
+  }
+
+  @Override
+  public void glBindFramebuffer(int target, int framebuffer) {
+    onCall();
+    if (target != GL_FRAMEBUFFER) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    if (framebuffer < 0) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    onStateChange(framebuffer == boundFramebuffer);
+    boundFramebuffer = framebuffer;
+    markUsed(framebuffers, framebuffer);
+  }
+
+  @Override
+  public void glBindRenderbuffer(int target, int renderbuffer) {
+    onCall();
+    if (target != GL_RENDERBUFFER) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    if (renderbuffer < 0) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    onStateChange(renderbuffer == boundRenderbuffer);
+    boundRenderbuffer = renderbuffer;
+    markUsed(renderbuffers, renderbuffer);
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    onCall();
+    int[] boundTextures = getBoundTextures(target);
+    if (boundTextures == null) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    if (texture < 0) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    onStateChange(texture == boundTextures[activeTextureUnit]);
+    boundTextures[activeTextureUnit] = texture;
+    markUsed(textures, texture);
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+    onCall();
+    onStateChange(sfactor == blendSrcFactor && dfactor == blendDstFactor);
+    blendSrcFactor = sfactor;
+    blendDstFactor = dfactor;
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    onCall();
+    int buffer = getBoundBuffer(target);
+    if (buffer < 0) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    if (size < 0 || (data != null && getRemainingBytes(data) < size)) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    if (buffer == 0) {
+      setError(GL_INVALID_OPERATION);
+      return;
+    }
+    if (buffer >= bufferSizes.length) {
+      int[] sizes = new int[Math.max(buffer + 1, bufferSizes.length * 2)];
+      System.arraycopy(bufferSizes, 0, sizes, 0, bufferSizes.length);
+      bufferSizes = sizes;
+    }
+    bufferSizes[buffer] = size;
+    if (data != null) {
+      frameStats.uploadedBytes += size;
+    }
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    onCall();
+    int buffer = getBoundBuffer(target);
+    if (buffer < 0) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    if (buffer == 0) {
+      setError(GL_INVALID_OPERATION);
+      return;
+    }
+    if (offset < 0
+        || size < 0
+        || (long) offset + size > getBufferSize(buffer)
+        || getRemainingBytes(data) < size) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    frameStats.uploadedBytes += size;
+  }
+
+  @Override
+  public int glCheckFramebufferStatus(int target) {
+    onCall();
+    if (target != GL_FRAMEBUFFER) {
+      setError(GL_INVALID_ENUM);
+      return 0;
+    }
+    return GL_FRAMEBUFFER_COMPLETE;
+  }
+
+  @Override
+  public void glClear(int mask) {
+    onCall();
+    if ((mask & ~(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT | 0x400)) != 0) {
+      setError(GL_INVALID_VALUE);
+    }
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+    onCall();
+    onStateChange(
+        red == clearColor[0]
+            && green == clearColor[1]
+            && blue == clearColor[2]
+            && alpha == clearColor[3]);
+    clearColor[0] = red;
+    clearColor[1] = green;
+    clearColor[2] = blue;
+    clearColor[3] = alpha;
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    onCall();
+    if (!shaders.get(shader)) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    compiledShaders.set(shader);
+  }
+
+  @Override
+  public int glCreateProgram() {
+    onCall();
+    int program = generateName();
+    programs.set(program);
+    return program;
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    onCall();
+    if (type != GL_VERTEX_SHADER && type != GL_FRAGMENT_SHADER) {
+      setError(GL_INVALID_ENUM);
+      return 0;
+    }
+    int shader = generateName();
+    shaders.set(shader);
+    return shader;
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    onCall();
+    if (shader == 0) {
+      return;
+    }
+    if (!shaders.get(shader)) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    shaders.clear(shader);
+    compiledShaders.clear(shader);
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    onCall();
+    onStateChange(flag == depthMask);
+    depthMask = flag;
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    onCall();
+    onStateChange(!enabledCaps.get(cap));
+    enabledCaps.clear(cap);
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    onCall();
+    if (index < 0 || index >= MAX_VERTEX_ATTRIBS) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    onStateChange(!enabledAttribs.get(index));
+    enabledAttribs.clear(index);
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    onCall();
+    if (!validateDraw(mode)) {
+      return;
+    }
+    if (first < 0 || count < 0) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    onDraw(count, first + count);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, Buffer indices) {
+    onCall();
+    if (!validateDraw(mode)) {
+      return;
+    }
+    int indexBytes = getIndexBytes(type);
+    if (indexBytes == 0) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    if (count < 0 || indices == null || getRemainingBytes(indices) < (long) count * indexBytes) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    if (boundElementArrayBuffer != 0) {
+      setError(GL_INVALID_OPERATION);
+      return;
+    }
+    frameStats.uploadedBytes += (long) count * indexBytes;
+    onDraw(count, getMaxIndex(indices, count) + 1);
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    onCall();
+    if (!validateDraw(mode)) {
+      return;
+    }
+    int indexBytes = getIndexBytes(type);
+    if (indexBytes == 0) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    if (count < 0 || offset < 0) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    if (boundElementArrayBuffer == 0
+        || offset + (long) count * indexBytes > getBufferSize(boundElementArrayBuffer)) {
+      setError(GL_INVALID_OPERATION);
+      return;
+    }
+    // The indices are not known, so neither is the number of client-side vertices they read.
+    onDraw(count, count);
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    onCall();
+    onStateChange(enabledCaps.get(cap));
+    enabledCaps.set(cap);
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    onCall();
+    if (index < 0 || index >= MAX_VERTEX_ATTRIBS) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    onStateChange(enabledAttribs.get(index));
+    enabledAttribs.set(index);
+  }
+
+  @Override
+  public void glFramebufferRenderbuffer(
+      int target, int attachment, int renderbuffertarget, int renderbuffer) {
+    onCall();
+    if (target != GL_FRAMEBUFFER || renderbuffertarget != GL_RENDERBUFFER) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    if (boundFramebuffer == 0 || (renderbuffer != 0 && !renderbuffers.get(renderbuffer))) {
+      setError(GL_INVALID_OPERATION);
+    }
+  }
+
+  @Override
+  public void glFramebufferTexture2D(
+      int target, int attachment, int textarget, int texture, int level) {
+    onCall();
+    if (target != GL_FRAMEBUFFER || textarget != GL_TEXTURE_2D) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    if (level != 0) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    if (boundFramebuffer == 0 || (texture != 0 && !textures.get(texture))) {
+      setError(GL_INVALID_OPERATION);
+    }
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    onCall();
+    generateNames(this.buffers, n, buffers, offset);
+  }
+
+  @Override
+  public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+    onCall();
+    generateNames(this.framebuffers, n, framebuffers, offset);
+  }
+
+  @Override
+  public void glGenRenderbuffers(int n, int[] renderbuffers, int offset) {
+    onCall();
+    generateNames(this.renderbuffers, n, renderbuffers, offset);
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    onCall();
+    generateNames(this.textures, n, textures, offset);
+  }
+
+  @Override
+  public void glGenerateMipmap(int target) {
+    onCall();
+    if (target != GL_TEXTURE_2D) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    if (boundTextures2d[activeTextureUnit] == 0) {
+      setError(GL_INVALID_OPERATION);
+    }
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    onCall();
+    return getLocation(attribLocations, program, name);
+  }
+
+  @Override
+  public int glGetError() {
+    onCall();
+    int result = error;
+    error = GL_NO_ERROR;
+    return result;
+  }
+
+  @Override
+  public void glGetFloatv(int pname, float[] params, int offset) {
+    onCall();
+    if (pname != GL_COLOR_CLEAR_VALUE) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    System.arraycopy(clearColor, 0, params, offset, clearColor.length);
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    onCall();
+    if (!shaders.get(shader)) {
+      setError(GL_INVALID_VALUE);
+    }
+    return "";
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    onCall();
+    if (!shaders.get(shader)) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    if (pname != GL_COMPILE_STATUS) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    params[offset] = compiledShaders.get(shader) ? 1 : 0;
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    onCall();
+    return getLocation(uniformLocations, program, name);
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    onCall();
+    if (!programs.get(program)) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    linkedPrograms.set(program);
+  }
+
+  @Override
+  public void glRenderbufferStorage(int target, int internalformat, int width, int height) {
+    onCall();
+    if (target != GL_RENDERBUFFER) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    if (width < 0 || height < 0) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    if (boundRenderbuffer == 0) {
+      setError(GL_INVALID_OPERATION);
+    }
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    onCall();
+    if (!shaders.get(shader)) {
+      setError(GL_INVALID_VALUE);
+    }
+  }
+
+  @Override
+  public void glTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int format,
+      int type,
+      Buffer pixels) {
+    onCall();
+    if (target != GL_TEXTURE_2D) {
+      setError(GL_INVALID_ENUM);
+      return;
+    }
+    long bytes = (long) width * height * getBytesPerPixel(format, type);
+    if (level < 0
+        || width < 0
+        || height < 0
+        || border != 0
+        || (pixels != null && getRemainingBytes(pixels) < bytes)) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    if (boundTextures2d[activeTextureUnit] == 0) {
+      setError(GL_INVALID_OPERATION);
+      return;
+    }
+    if (pixels != null) {
+      frameStats.uploadedBytes += bytes;
+    }
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+    onCall();
+    if (getBoundTextures(target) == null) {
+      setError(GL_INVALID_ENUM);
+    }
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    onUniform(location, 1, null, 0, 0);
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    onUniform(location, 1, null, 0, 0);
+  }
+
+  @Override
+  public void glUniform3f(int location, float x, float y, float z) {
+    onUniform(location, 1, null, 0, 0);
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {
+    onUniform(location, 1, null, 0, 0);
+  }
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {
+    onUniform(location, count, v, offset, 4);
+  }
+
+  @Override
+  public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    onUniform(location, count, value, offset, 4);
+  }
+
+  @Override
+  public void glUniformMatrix3fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    onUniform(location, count, value, offset, 9);
+  }
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    onUniform(location, count, value, offset, 16);
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    onCall();
+    if (program != 0 && !linkedPrograms.get(program)) {
+      setError(GL_INVALID_OPERATION);
+      return;
+    }
+    onStateChange(program == currentProgram);
+    currentProgram = program;
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer pointer) {
+    onCall();
+    if (!validateAttribPointer(index, size, type, stride)) {
+      return;
+    }
+    if (pointer == null || boundArrayBuffer != 0) {
+      setError(GL_INVALID_OPERATION);
+      return;
+    }
+    attribPointers.set(index);
+    clientAttribBytesPerVertex[index] = stride != 0 ? stride : size * getComponentBytes(type);
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset) {
+    onCall();
+    if (!validateAttribPointer(index, size, type, stride)) {
+      return;
+    }
+    if (offset < 0) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    if (boundArrayBuffer == 0) {
+      setError(GL_INVALID_OPERATION);
+      return;
+    }
+    attribPointers.set(index);
+    clientAttribBytesPerVertex[index] = 0;
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    onCall();
+    if (width < 0 || height < 0) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    onStateChange(
+        x == viewport[0] && y == viewport[1] && width == viewport[2] && height == viewport[3]);
+    viewport[0] = x;
+    viewport[1] = y;
+    viewport[2] = width;
+    viewport[3] = height;
+  }
+
+  private void onCall() {
+    frameStats.callCount++;
+  }
+
+  private void onStateChange(boolean redundant) {
+    frameStats.stateChangeCount++;
+    if (redundant) {
+      frameStats.redundantStateChangeCount++;
+    }
+  }
+
+  private void setError(int code) {
+    // As in GL, only the first error is kept until it is read.
+    if (error == GL_NO_ERROR) {
+      error = code;
+    }
+    frameStats.errorCount++;
+  }
+
+  private boolean validateDraw(int mode) {
+    if (mode < GL_POINTS || mode > GL_TRIANGLE_FAN) {
+      setError(GL_INVALID_ENUM);
+      return false;
+    }
+    if (currentProgram == 0) {
+      setError(GL_INVALID_OPERATION);
+      return false;
+    }
+    for (int i = enabledAttribs.nextSetBit(0); i >= 0; i = enabledAttribs.nextSetBit(i + 1)) {
+      if (!attribPointers.get(i)) {
+        setError(GL_INVALID_OPERATION);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void onDraw(int count, int clientVertexCount) {
+    frameStats.drawCallCount++;
+    frameStats.vertexCount += count;
+    for (int i = enabledAttribs.nextSetBit(0); i >= 0; i = enabledAttribs.nextSetBit(i + 1)) {
+      frameStats.uploadedBytes += (long) clientVertexCount * clientAttribBytesPerVertex[i];
+    }
+  }
+
+  private void onUniform(int location, int count, float[] values, int offset, int floatsPerItem) {
+    onCall();
+    if (currentProgram == 0) {
+      setError(GL_INVALID_OPERATION);
+      return;
+    }
+    if (count < 0
+        || (values != null && (offset < 0 || offset + count * floatsPerItem > values.length))) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    // Location -1 is silently ignored, as in GL.
+    if (location != -1) {
+      frameStats.uniformUpdateCount++;
+    }
+  }
+
+  private boolean validateAttribPointer(int index, int size, int type, int stride) {
+    if (index < 0 || index >= MAX_VERTEX_ATTRIBS || size < 1 || size > 4 || stride < 0) {
+      setError(GL_INVALID_VALUE);
+      return false;
+    }
+    if (getComponentBytes(type) == 0) {
+      setError(GL_INVALID_ENUM);
+      return false;
+    }
+    return true;
+  }
+
+  private int getLocation(Map<Integer, Map<String, Integer>> locations, int program, String name) {
+    if (!programs.get(program)) {
+      setError(GL_INVALID_VALUE);
+      return -1;
+    }
+    if (!linkedPrograms.get(program)) {
+      setError(GL_INVALID_OPERATION);
+      return -1;
+    }
+    Map<String, Integer> programLocations = locations.get(program);
+    if (programLocations == null) {
+      programLocations = new HashMap<>();
+      locations.put(program, programLocations);
+    }
+    Integer location = programLocations.get(name);
+    if (location == null) {
+      location = programLocations.size();
+      programLocations.put(name, location);
+    }
+    return location;
+  }
+
+  private int generateName() {
+    while (usedNames.get(nextName)) {
+      nextName++;
+    }
+    usedNames.set(nextName);
+    return nextName++;
+  }
+
+  private void generateNames(BitSet objects, int n, int[] names, int offset) {
+    if (n < 0) {
+      setError(GL_INVALID_VALUE);
+      return;
+    }
+    for (int i = 0; i < n; i++) {
+      int name = generateName();
+      objects.set(name);
+      names[offset + i] = name;
+    }
+  }
+
+  private void markUsed(BitSet objects, int name) {
+    if (name != 0) {
+      usedNames.set(name);
+      objects.set(name);
+    }
+  }
+
+  /** Returns the buffer bound to {@code target}, or -1 if the target is invalid. */
+  private int getBoundBuffer(int target) {
+    if (target == GL_ARRAY_BUFFER) {
+      return boundArrayBuffer;
+    } else if (target == GL_ELEMENT_ARRAY_BUFFER) {
+      return boundElementArrayBuffer;
+    }
+    return -1;
+  }
+
+  private int getBufferSize(int buffer) {
+    return buffer < bufferSizes.length ? bufferSizes[buffer] : 0;
+  }
+
+  private int[] getBoundTextures(int target) {
+    if (target == GL_TEXTURE_2D) {
+      return boundTextures2d;
+    } else if (target == GL_TEXTURE_EXTERNAL_OES) {
+      return boundTexturesExternal;
+    }
+    return null;
+  }
+
+  private static long getRemainingBytes(Buffer buffer) {
+    if (buffer instanceof ByteBuffer) {
+      return buffer.remaining();
+    } else if (buffer instanceof ShortBuffer || buffer instanceof CharBuffer) {
+      return 2L * buffer.remaining();
+    } else if (buffer instanceof LongBuffer || buffer instanceof DoubleBuffer) {
+      return 8L * buffer.remaining();
+    }
+    // IntBuffer and FloatBuffer.
+    return 4L * buffer.remaining();
+  }
+
+  private static int getMaxIndex(Buffer indices, int count) {
+    int max = -1;
+    int position = indices.position();
+    if (indices instanceof ShortBuffer) {
+      ShortBuffer shortIndices = (ShortBuffer) indices;
+      for (int i = 0; i < count; i++) {
+        max = Math.max(max, shortIndices.get(position + i) & 0xFFFF);
+      }
+    } else if (indices instanceof ByteBuffer) {
+      ByteBuffer byteIndices = (ByteBuffer) indices;
+      for (int i = 0; i < count; i++) {
+        max = Math.max(max, byteIndices.get(position + i) & 0xFF);
+      }
+    }
+    return max;
+  }
+
+  private static int getIndexBytes(int type) {
+    if (type == GL_UNSIGNED_BYTE) {
+      return 1;
+    } else if (type == GL_UNSIGNED_SHORT) {
+      return 2;
+    }
+    return 0;
+  }
+
+  private static int getComponentBytes(int type) {
+    if (type == GL_BYTE || type == GL_UNSIGNED_BYTE) {
+      return 1;
+    } else if (type == GL_SHORT || type == GL_UNSIGNED_SHORT) {
+      return 2;
+    } else if (type == GL_FLOAT || type == GL_FIXED) {
+      return 4;
+    }
+    return 0;
+  }
+
+  private static int getBytesPerPixel(int format, int type) {
+    // Only the RGBA format is used by the renderers; others are counted as 4 bytes per pixel too.
+    return type == GL_UNSIGNED_BYTE ? 4 : 8;
+  }
+}
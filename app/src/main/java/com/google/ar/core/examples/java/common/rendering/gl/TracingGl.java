@@ -0,0 +1,420 @@
+package com.google.ar.core.examples.java.common.rendering.gl;
+
+import android.os.Trace;
+import java.nio.Buffer;
+
+/**
+ * {@link Gl} wrapping each call of another {@link Gl} in a trace section named after the function,
+ * so that the calls of every frame show up in systrace and Perfetto captures.
+ *
+ * <p>The sections are cheap when no capture is running, but not free: only use it while profiling.
+ */
+public final class TracingGl implements Gl {
+  private final Gl delegate;
+
+  public TracingGl(Gl delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    Trace.beginSection("glActiveTexture");
+    delegate.glActiveTexture(texture);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    Trace.beginSection("glAttachShader");
+    delegate.glAttachShader(program, shader);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    Trace.beginSection("glBindBuffer");
+    delegate.glBindBuffer(target, buffer);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glBindFramebuffer(int target, int framebuffer) {
+    Trace.beginSection("glBindFramebuffer");
+    delegate.glBindFramebuffer(target, framebuffer);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glBindRenderbuffer(int target, int renderbuffer) {
+    Trace.beginSection("glBindRenderbuffer");
+    delegate.glBindRenderbuffer(target, renderbuffer);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    Trace.beginSection("glBindTexture");
+    delegate.glBindTexture(target, texture);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+    Trace.beginSection("glBlendFunc");
+    delegate.glBlendFunc(sfactor, dfactor);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    Trace.beginSection("glBufferData");
+    delegate.glBufferData(target, size, data, usage);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    Trace.beginSection("glBufferSubData");
+    delegate.glBufferSubData(target, offset, size, data);
+    Trace.endSection();
+  }
+
+  @Override
+  public int glCheckFramebufferStatus(int target) {
+    Trace.beginSection("glCheckFramebufferStatus");
+    int result = delegate.glCheckFramebufferStatus(target);
+    Trace.endSection();
+    return result;
+  }
+
+  @Override
+  public void glClear(int mask) {
+    Trace.beginSection("glClear");
+    delegate.glClear(mask);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+    Trace.beginSection("glClearColor");
+    delegate.glClearColor(red, green, blue, alpha);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    Trace.beginSection("glCompileShader");
+    delegate.glCompileShader(shader);
+    Trace.endSection();
+  }
+
+  @Override
+  public int glCreateProgram() {
+    Trace.beginSection("glCreateProgram");
+    int result = delegate.glCreateProgram();
+    Trace.endSection();
+    return result;
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    Trace.beginSection("glCreateShader");
+    int result = delegate.glCreateShader(type);
+    Trace.endSection();
+    return result;
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    Trace.beginSection("glDeleteShader");
+    delegate.glDeleteShader(shader);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glDepthMask(boolean flag) {
+    Trace.beginSection("glDepthMask");
+    delegate.glDepthMask(flag);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    Trace.beginSection("glDisable");
+    delegate.glDisable(cap);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    Trace.beginSection("glDisableVertexAttribArray");
+    delegate.glDisableVertexAttribArray(index);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    Trace.beginSection("glDrawArrays");
+    delegate.glDrawArrays(mode, first, count);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, Buffer indices) {
+    Trace.beginSection("glDrawElements");
+    delegate.glDrawElements(mode, count, type, indices);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    Trace.beginSection("glDrawElements");
+    delegate.glDrawElements(mode, count, type, offset);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    Trace.beginSection("glEnable");
+    delegate.glEnable(cap);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    Trace.beginSection("glEnableVertexAttribArray");
+    delegate.glEnableVertexAttribArray(index);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glFramebufferRenderbuffer(
+      int target, int attachment, int renderbuffertarget, int renderbuffer) {
+    Trace.beginSection("glFramebufferRenderbuffer");
+    delegate.glFramebufferRenderbuffer(target, attachment, renderbuffertarget, renderbuffer);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glFramebufferTexture2D(
+      int target, int attachment, int textarget, int texture, int level) {
+    Trace.beginSection("glFramebufferTexture2D");
+    delegate.glFramebufferTexture2D(target, attachment, textarget, texture, level);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    Trace.beginSection("glGenBuffers");
+    delegate.glGenBuffers(n, buffers, offset);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+    Trace.beginSection("glGenFramebuffers");
+    delegate.glGenFramebuffers(n, framebuffers, offset);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glGenRenderbuffers(int n, int[] renderbuffers, int offset) {
+    Trace.beginSection("glGenRenderbuffers");
+    delegate.glGenRenderbuffers(n, renderbuffers, offset);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    Trace.beginSection("glGenTextures");
+    delegate.glGenTextures(n, textures, offset);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glGenerateMipmap(int target) {
+    Trace.beginSection("glGenerateMipmap");
+    delegate.glGenerateMipmap(target);
+    Trace.endSection();
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    Trace.beginSection("glGetAttribLocation");
+    int result = delegate.glGetAttribLocation(program, name);
+    Trace.endSection();
+    return result;
+  }
+
+  @Override
+  public int glGetError() {
+    Trace.beginSection("glGetError");
+    int result = delegate.glGetError();
+    Trace.endSection();
+    return result;
+  }
+
+  @Override
+  public void glGetFloatv(int pname, float[] params, int offset) {
+    Trace.beginSection("glGetFloatv");
+    delegate.glGetFloatv(pname, params, offset);
+    Trace.endSection();
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    Trace.beginSection("glGetShaderInfoLog");
+    String result = delegate.glGetShaderInfoLog(shader);
+    Trace.endSection();
+    return result;
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    Trace.beginSection("glGetShaderiv");
+    delegate.glGetShaderiv(shader, pname, params, offset);
+    Trace.endSection();
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    Trace.beginSection("glGetUniformLocation");
+    int result = delegate.glGetUniformLocation(program, name);
+    Trace.endSection();
+    return result;
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    Trace.beginSection("glLinkProgram");
+    delegate.glLinkProgram(program);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glRenderbufferStorage(int target, int internalformat, int width, int height) {
+    Trace.beginSection("glRenderbufferStorage");
+    delegate.glRenderbufferStorage(target, internalformat, width, height);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    Trace.beginSection("glShaderSource");
+    delegate.glShaderSource(shader, string);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glTexImage2D(
+      int target,
+      int level,
+      int internalformat,
+      int width,
+      int height,
+      int border,
+      int format,
+      int type,
+      Buffer pixels) {
+    Trace.beginSection("glTexImage2D");
+    delegate.glTexImage2D(
+        target, level, internalformat, width, height, border, format, type, pixels);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+    Trace.beginSection("glTexParameteri");
+    delegate.glTexParameteri(target, pname, param);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    Trace.beginSection("glUniform1f");
+    delegate.glUniform1f(location, x);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    Trace.beginSection("glUniform1i");
+    delegate.glUniform1i(location, x);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glUniform3f(int location, float x, float y, float z) {
+    Trace.beginSection("glUniform3f");
+    delegate.glUniform3f(location, x, y, z);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {
+    Trace.beginSection("glUniform4f");
+    delegate.glUniform4f(location, x, y, z, w);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glUniform4fv(int location, int count, float[] v, int offset) {
+    Trace.beginSection("glUniform4fv");
+    delegate.glUniform4fv(location, count, v, offset);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glUniformMatrix2fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    Trace.beginSection("glUniformMatrix2fv");
+    delegate.glUniformMatrix2fv(location, count, transpose, value, offset);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glUniformMatrix3fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    Trace.beginSection("glUniformMatrix3fv");
+    delegate.glUniformMatrix3fv(location, count, transpose, value, offset);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glUniformMatrix4fv(
+      int location, int count, boolean transpose, float[] value, int offset) {
+    Trace.beginSection("glUniformMatrix4fv");
+    delegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    Trace.beginSection("glUseProgram");
+    delegate.glUseProgram(program);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, Buffer pointer) {
+    Trace.beginSection("glVertexAttribPointer");
+    delegate.glVertexAttribPointer(index, size, type, normalized, stride, pointer);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glVertexAttribPointer(
+      int index, int size, int type, boolean normalized, int stride, int offset) {
+    Trace.beginSection("glVertexAttribPointer");
+    delegate.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    Trace.endSection();
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    Trace.beginSection("glViewport");
+    delegate.glViewport(x, y, width, height);
+    Trace.endSection();
+  }
+}
@@ -0,0 +1,243 @@
+package com.google.ar.core.examples.java.common.scene;
+
+import com.google.ar.core.examples.java.common.math.RigidTransform;
+import com.google.ar.core.examples.java.common.rendering.FrustumCuller;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The anchors of a scene, stored as parallel arrays so that hundreds of them can be updated, culled
+ * and drawn each frame without allocations.
+ *
+ * <p>Each anchor has a dense index, a distinct handle such as an ARCore {@code Anchor}, a pose in
+ * the {@link RigidTransform} layout and a model matrix. Poses are set with {@link #setPose}, for
+ * all the anchors or only those reported as updated, looked up with {@link #indexOf}. Only the
+ * anchors whose pose or tracking state changed have their model matrix recomputed and their cell
+ * updated in the {@link SpatialGrid} by {@link #update()}.
+ *
+ * <p>Removing an anchor moves the last anchor to its index. This class is not thread safe.
+ *
+ * @param <T> the type of the anchor handles.
+ */
+public class AnchorScene<T> {
+  // Poses closer than this to the previous one, in meters or in quaternion components, are not
+  // considered changed. ARCore refines anchor poses by much less than this most of the time.
+  private static final float POSE_EPSILON = 1e-4f;
+  private static final int MATRIX_SIZE = 16;
+
+  private final SpatialGrid grid;
+  private final Map<T, Integer> indices = new HashMap<>();
+
+  private int count;
+  private Object[] handles = new Object[16];
+  private float[] poses = new float[16 * RigidTransform.SIZE];
+  private float[] modelMatrices = new float[16 * MATRIX_SIZE];
+  private boolean[] tracking = new boolean[16];
+  private boolean[] dirty = new boolean[16];
+  private int[] dirtyIndices = new int[16];
+  private int dirtyCount;
+  private int[] visibleIndices = new int[16];
+
+  /** Creates a scene indexed by a grid of cubic cells of {@code cellSizeMeters}. */
+  public AnchorScene(float cellSizeMeters) {
+    this.grid = new SpatialGrid(cellSizeMeters);
+  }
+
+  /** Adds an anchor, not tracking until its pose is set, and returns its index. */
+  public int add(T handle) {
+    if (count == handles.length) {
+      grow(2 * handles.length);
+    }
+    int index = count++;
+    handles[index] = handle;
+    indices.put(handle, index);
+    RigidTransform.setIdentity(poses, index * RigidTransform.SIZE);
+    tracking[index] = false;
+    dirty[index] = false;
+    return index;
+  }
+
+  /** Removes the anchor at {@code index}, replacing it with the last anchor. */
+  public void remove(int index) {
+    checkIndex(index);
+    int last = count - 1;
+    grid.remove(index);
+    if (dirty[last]) {
+      unmarkDirty(last);
+    }
+    indices.remove(handles[index]);
+    if (index != last) {
+      handles[index] = handles[last];
+      indices.put(getHandle(index), index);
+      int size = RigidTransform.SIZE;
+      System.arraycopy(poses, last * size, poses, index * size, size);
+      System.arraycopy(
+          modelMatrices, last * MATRIX_SIZE, modelMatrices, index * MATRIX_SIZE, MATRIX_SIZE);
+      tracking[index] = tracking[last];
+      // The moved anchor is put back in the grid under its new index by the next update.
+      grid.remove(last);
+      markDirty(index);
+    }
+    handles[last] = null;
+    count = last;
+  }
+
+  /** Removes all the anchors. */
+  public void clear() {
+    for (int i = 0; i < count; i++) {
+      grid.remove(i);
+      handles[i] = null;
+      dirty[i] = false;
+    }
+    count = 0;
+    dirtyCount = 0;
+    indices.clear();
+  }
+
+  /** Returns the index of {@code handle}, or -1 if it is not in the scene. */
+  public int indexOf(T handle) {
+    Integer index = indices.get(handle);
+    return index != null ? index : -1;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  @SuppressWarnings("unchecked")
+  public T getHandle(int index) {
+    checkIndex(index);
+    return (T) handles[index];
+  }
+
+  public boolean isTracking(int index) {
+    checkIndex(index);
+    return tracking[index];
+  }
+
+  /**
+   * Sets the pose of a tracking anchor.
+   *
+   * @param pose a pose in the {@link RigidTransform} layout, at {@code poseOffset}.
+   * @return whether the pose or the tracking state of the anchor changed.
+   */
+  public boolean setPose(int index, float[] pose, int poseOffset) {
+    checkIndex(index);
+    int offset = index * RigidTransform.SIZE;
+    boolean changed = !tracking[index];
+    for (int i = 0; i < RigidTransform.SIZE && !changed; i++) {
+      changed = Math.abs(poses[offset + i] - pose[poseOffset + i]) > POSE_EPSILON;
+    }
+    if (changed) {
+      System.arraycopy(pose, poseOffset, poses, offset, RigidTransform.SIZE);
+      tracking[index] = true;
+      markDirty(index);
+    }
+    return changed;
+  }
+
+  /**
+   * Marks an anchor as not tracking, which keeps it out of the frustum and nearest queries.
+   *
+   * @return whether the tracking state of the anchor changed.
+   */
+  public boolean setNotTracking(int index) {
+    checkIndex(index);
+    if (!tracking[index]) {
+      return false;
+    }
+    tracking[index] = false;
+    markDirty(index);
+    return true;
+  }
+
+  /**
+   * Recomputes the model matrices and grid cells of the anchors changed since the last update.
+   * Returns the number of anchors updated.
+   */
+  public int update() {
+    int updated = dirtyCount;
+    for (int i = 0; i < dirtyCount; i++) {
+      int index = dirtyIndices[i];
+      dirty[index] = false;
+      if (!tracking[index]) {
+        grid.remove(index);
+        continue;
+      }
+      int pose = index * RigidTransform.SIZE;
+      RigidTransform.toMatrix(modelMatrices, index * MATRIX_SIZE, poses, pose);
+      grid.put(index, poses[pose], poses[pose + 1], poses[pose + 2]);
+    }
+    dirtyCount = 0;
+    return updated;
+  }
+
+  /**
+   * Collects the tracking anchors whose bounding sphere of {@code radius} may be visible in the
+   * frustum of {@code culler}, and returns their number. Their indices are then in {@link
+   * #getVisibleIndices()}. Only valid after {@link #update()}.
+   */
+  public int collectVisible(FrustumCuller culler, float radius) {
+    if (visibleIndices.length < count) {
+      visibleIndices = new int[handles.length];
+    }
+    return grid.queryFrustum(culler, radius, visibleIndices);
+  }
+
+  /** Returns the indices written by the last {@link #collectVisible}. */
+  public int[] getVisibleIndices() {
+    return visibleIndices;
+  }
+
+  /**
+   * Writes to {@code out} the indices of the at most {@code k} tracking anchors closest to (x, y,
+   * z) and within {@code maxDistance} of it, closest first, and returns their number. Only valid
+   * after {@link #update()}.
+   */
+  public int findNearest(float x, float y, float z, int k, float maxDistance, int[] out) {
+    return grid.queryNearest(x, y, z, k, maxDistance, out);
+  }
+
+  /** Returns the model matrices of the anchors, at {@code 16 * index}. Only valid after update. */
+  public float[] getModelMatrices() {
+    return modelMatrices;
+  }
+
+  /** Returns the poses of the anchors, at {@code RigidTransform.SIZE * index}. */
+  public float[] getPoses() {
+    return poses;
+  }
+
+  private void markDirty(int index) {
+    if (!dirty[index]) {
+      dirty[index] = true;
+      dirtyIndices[dirtyCount++] = index;
+    }
+  }
+
+  private void unmarkDirty(int index) {
+    dirty[index] = false;
+    for (int i = 0; i < dirtyCount; i++) {
+      if (dirtyIndices[i] == index) {
+        dirtyIndices[i] = dirtyIndices[--dirtyCount];
+        return;
+      }
+    }
+  }
+
+  private void grow(int capacity) {
+    handles = Arrays.copyOf(handles, capacity);
+    poses = Arrays.copyOf(poses, capacity * RigidTransform.SIZE);
+    modelMatrices = Arrays.copyOf(modelMatrices, capacity * MATRIX_SIZE);
+    tracking = Arrays.copyOf(tracking, capacity);
+    dirty = Arrays.copyOf(dirty, capacity);
+    dirtyIndices = Arrays.copyOf(dirtyIndices, capacity);
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException("Index " + index + ", count " + count);
+    }
+  }
+}
@@ -0,0 +1,283 @@
+package com.google.ar.core.examples.java.common.scene;
+
+import com.google.ar.core.examples.java.common.rendering.FrustumCuller;
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the positions of a set of items, identified by small non-negative integers,
+ * for frustum culling and nearest neighbour queries.
+ *
+ * <p>Only the occupied cells are stored, in a hash table keyed by their integer coordinates, so the
+ * grid is unbounded. The items of a cell are kept in an intrusive linked list. Nothing is allocated
+ * once the arrays have grown to the number of items and cells.
+ *
+ * <p>This class is not thread safe.
+ */
+public class SpatialGrid {
+  private static final int NONE = -1;
+  // Cell coordinates are packed in 21 bits each.
+  private static final int COORDINATE_BITS = 21;
+  private static final int COORDINATE_MASK = (1 << COORDINATE_BITS) - 1;
+
+  private final float cellSize;
+  private final float inverseCellSize;
+  private final float cellBoundingRadius;
+
+  // Occupied cells. A cell is kept once created, with a count of zero when it is empty.
+  private int cellCount;
+  private long[] cellKeys = new long[16];
+  private int[] cellHeads = new int[16];
+  private int[] cellItemCounts = new int[16];
+  // Open addressing table from cell keys to cell indices, with a power-of-two size.
+  private int[] table = newTable(32);
+
+  // Per item: its cell, next item in the cell, and position.
+  private int[] itemCells = new int[0];
+  private int[] itemNext = new int[0];
+  private float[] itemPositions = new float[0];
+
+  // Nearest neighbour candidates, sorted by increasing squared distance.
+  private float[] nearestDistances = new float[0];
+
+  /** Creates a grid of cubic cells of {@code cellSizeMeters}. */
+  public SpatialGrid(float cellSizeMeters) {
+    if (!(cellSizeMeters > 0.0f)) {
+      throw new IllegalArgumentException("Invalid cell size " + cellSizeMeters);
+    }
+    this.cellSize = cellSizeMeters;
+    this.inverseCellSize = 1.0f / cellSizeMeters;
+    this.cellBoundingRadius = 0.5f * (float) Math.sqrt(3.0) * cellSizeMeters;
+  }
+
+  /** Inserts {@code item} at (x, y, z), or moves it there if it is already in the grid. */
+  public void put(int item, float x, float y, float z) {
+    ensureItemCapacity(item + 1);
+    int cell = findOrAddCell(cellCoordinate(x), cellCoordinate(y), cellCoordinate(z));
+    int previousCell = itemCells[item];
+    if (previousCell != cell) {
+      if (previousCell != NONE) {
+        unlink(item, previousCell);
+      }
+      itemCells[item] = cell;
+      itemNext[item] = cellHeads[cell];
+      cellHeads[cell] = item;
+      cellItemCounts[cell]++;
+    }
+    itemPositions[3 * item] = x;
+    itemPositions[3 * item + 1] = y;
+    itemPositions[3 * item + 2] = z;
+  }
+
+  /** Removes {@code item} from the grid, if it is in it. */
+  public void remove(int item) {
+    if (item < itemCells.length && itemCells[item] != NONE) {
+      unlink(item, itemCells[item]);
+      itemCells[item] = NONE;
+    }
+  }
+
+  public boolean contains(int item) {
+    return item < itemCells.length && itemCells[item] != NONE;
+  }
+
+  /**
+   * Writes to {@code out} the items whose bounding sphere of {@code radius} may be visible in the
+   * frustum of {@code culler}, and returns their number. Whole cells are rejected first, and their
+   * items counted as culled by {@code culler}.
+   *
+   * @param out receives the items, and must be large enough for all the items of the grid.
+   */
+  public int queryFrustum(FrustumCuller culler, float radius, int[] out) {
+    int count = 0;
+    float cellRadius = cellBoundingRadius + radius;
+    for (int cell = 0; cell < cellCount; cell++) {
+      if (cellItemCounts[cell] == 0) {
+        continue;
+      }
+      long key = cellKeys[cell];
+      float centerX = (decode(key, 2) + 0.5f) * cellSize;
+      float centerY = (decode(key, 1) + 0.5f) * cellSize;
+      float centerZ = (decode(key, 0) + 0.5f) * cellSize;
+      if (!culler.intersectsSphere(centerX, centerY, centerZ, cellRadius)) {
+        culler.addCulled(cellItemCounts[cell]);
+        continue;
+      }
+      for (int item = cellHeads[cell]; item != NONE; item = itemNext[item]) {
+        if (culler.isSphereVisible(
+            itemPositions[3 * item], itemPositions[3 * item + 1], itemPositions[3 * item + 2],
+            radius)) {
+          out[count++] = item;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Writes to {@code out} the at most {@code k} items closest to (x, y, z) and within {@code
+   * maxDistance} of it, closest first, and returns their number.
+   */
+  public int queryNearest(float x, float y, float z, int k, float maxDistance, int[] out) {
+    if (k <= 0) {
+      return 0;
+    }
+    if (nearestDistances.length < k) {
+      nearestDistances = new float[k];
+    }
+    int cx = cellCoordinate(x);
+    int cy = cellCoordinate(y);
+    int cz = cellCoordinate(z);
+    float maxDistanceSquared = maxDistance * maxDistance;
+    int found = 0;
+    int maxRing = (int) Math.min(Math.ceil(maxDistance * inverseCellSize), COORDINATE_MASK);
+    for (int ring = 0; ring <= maxRing; ring++) {
+      for (int dx = -ring; dx <= ring; dx++) {
+        for (int dy = -ring; dy <= ring; dy++) {
+          boolean onShell = Math.abs(dx) == ring || Math.abs(dy) == ring;
+          // Only the cells on the shell of the cube of radius ring are new.
+          int dzStep = onShell ? 1 : Math.max(1, 2 * ring);
+          for (int dz = -ring; dz <= ring; dz += dzStep) {
+            int cell = findCell(cx + dx, cy + dy, cz + dz);
+            if (cell == NONE) {
+              continue;
+            }
+            for (int item = cellHeads[cell]; item != NONE; item = itemNext[item]) {
+              float ex = itemPositions[3 * item] - x;
+              float ey = itemPositions[3 * item + 1] - y;
+              float ez = itemPositions[3 * item + 2] - z;
+              float distanceSquared = ex * ex + ey * ey + ez * ez;
+              if (distanceSquared <= maxDistanceSquared) {
+                found = insertNearest(item, distanceSquared, found, k, out);
+              }
+            }
+          }
+        }
+      }
+      // The cells of the next rings are all farther than this from (x, y, z).
+      float ringDistance = ring * cellSize;
+      if (found == k && nearestDistances[k - 1] <= ringDistance * ringDistance) {
+        break;
+      }
+    }
+    return found;
+  }
+
+  /** Inserts a candidate in the sorted nearest items, and returns their new number. */
+  private int insertNearest(int item, float distanceSquared, int found, int k, int[] out) {
+    if (found == k && distanceSquared >= nearestDistances[k - 1]) {
+      return found;
+    }
+    int i = found == k ? k - 1 : found++;
+    for (; i > 0 && nearestDistances[i - 1] > distanceSquared; i--) {
+      nearestDistances[i] = nearestDistances[i - 1];
+      out[i] = out[i - 1];
+    }
+    nearestDistances[i] = distanceSquared;
+    out[i] = item;
+    return found;
+  }
+
+  private void unlink(int item, int cell) {
+    if (cellHeads[cell] == item) {
+      cellHeads[cell] = itemNext[item];
+    } else {
+      int previous = cellHeads[cell];
+      while (itemNext[previous] != item) {
+        previous = itemNext[previous];
+      }
+      itemNext[previous] = itemNext[item];
+    }
+    itemNext[item] = NONE;
+    cellItemCounts[cell]--;
+  }
+
+  private int cellCoordinate(float value) {
+    int coordinate = (int) Math.floor(value * inverseCellSize);
+    // Wraps around far away coordinates, which only makes the grid less selective there.
+    return coordinate & COORDINATE_MASK;
+  }
+
+  private static long key(int x, int y, int z) {
+    return ((long) (x & COORDINATE_MASK) << (2 * COORDINATE_BITS))
+        | ((long) (y & COORDINATE_MASK) << COORDINATE_BITS)
+        | (z & COORDINATE_MASK);
+  }
+
+  /** Returns the signed cell coordinate of {@code key} at {@code index}, 0 being z. */
+  private static int decode(long key, int index) {
+    int coordinate = (int) (key >>> (index * COORDINATE_BITS)) & COORDINATE_MASK;
+    // Sign extends the coordinate.
+    return (coordinate << (32 - COORDINATE_BITS)) >> (32 - COORDINATE_BITS);
+  }
+
+  private int findCell(int x, int y, int z) {
+    long key = key(x, y, z);
+    int mask = table.length - 1;
+    for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+      int cell = table[i];
+      if (cell == NONE || cellKeys[cell] == key) {
+        return cell;
+      }
+    }
+  }
+
+  private int findOrAddCell(int x, int y, int z) {
+    int cell = findCell(x, y, z);
+    if (cell != NONE) {
+      return cell;
+    }
+    if (cellCount == cellKeys.length) {
+      int capacity = 2 * cellKeys.length;
+      cellKeys = Arrays.copyOf(cellKeys, capacity);
+      cellHeads = Arrays.copyOf(cellHeads, capacity);
+      cellItemCounts = Arrays.copyOf(cellItemCounts, capacity);
+    }
+    cell = cellCount++;
+    cellKeys[cell] = key(x, y, z);
+    cellHeads[cell] = NONE;
+    cellItemCounts[cell] = 0;
+    // Keeps the table at most half full.
+    if (2 * cellCount > table.length) {
+      table = newTable(2 * table.length);
+      for (int i = 0; i < cellCount; i++) {
+        insertInTable(i);
+      }
+    } else {
+      insertInTable(cell);
+    }
+    return cell;
+  }
+
+  private void insertInTable(int cell) {
+    int mask = table.length - 1;
+    int i = hash(cellKeys[cell]) & mask;
+    while (table[i] != NONE) {
+      i = (i + 1) & mask;
+    }
+    table[i] = cell;
+  }
+
+  private void ensureItemCapacity(int items) {
+    if (items <= itemCells.length) {
+      return;
+    }
+    int capacity = Math.max(items, Math.max(16, 2 * itemCells.length));
+    int previousCapacity = itemCells.length;
+    itemCells = Arrays.copyOf(itemCells, capacity);
+    itemNext = Arrays.copyOf(itemNext, capacity);
+    itemPositions = Arrays.copyOf(itemPositions, 3 * capacity);
+    Arrays.fill(itemCells, previousCapacity, capacity, NONE);
+    Arrays.fill(itemNext, previousCapacity, capacity, NONE);
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private static int[] newTable(int size) {
+    int[] table = new int[size];
+    Arrays.fill(table, NONE);
+    return table;
+  }
+}
@@ -0,0 +1,140 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Binary file of records that are only ever appended, the storage of {@link PoiStore} and {@link
+ * PoiWriteQueue}, which define the records.
+ *
+ * <p>The file starts with a magic number and a format version. Opening the log replays its records,
+ * and drops the last one if it was torn by a crash while it was written. The owner compacts the log
+ * by {@link #rewrite rewriting} it with the records still needed, which replaces the file
+ * atomically.
+ *
+ * <p>This class is not thread safe, its owners synchronize the calls.
+ */
+final class AppendOnlyLog implements Closeable {
+  private static final int HEADER_SIZE = 8;
+
+  /** Reads a record, which starts at the current position of {@code in}. */
+  interface RecordReader {
+    void readRecord(DataInputStream in) throws IOException;
+  }
+
+  /** Writes the records of a rewritten log. */
+  interface RecordWriter {
+    void writeRecords(DataOutputStream out) throws IOException;
+  }
+
+  private final File file;
+  private final int magic;
+  private final int version;
+  private DataOutputStream out;
+
+  private AppendOnlyLog(File file, int magic, int version) {
+    this.file = file;
+    this.magic = magic;
+    this.version = version;
+  }
+
+  /**
+   * Opens the log of {@code file}, passing its records to {@code reader}, or creates it if it does
+   * not exist.
+   *
+   * @param description what the file holds, for the error thrown when it holds something else.
+   */
+  static AppendOnlyLog open(
+      File file, int magic, int version, String description, RecordReader reader)
+      throws IOException {
+    AppendOnlyLog log = new AppendOnlyLog(file, magic, version);
+    if (file.length() < HEADER_SIZE) {
+      log.rewrite(out -> {});
+      return log;
+    }
+    byte[] bytes = readFile(file);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    if (in.readInt() != magic || in.readInt() != version) {
+      throw new IOException("Not a " + description + ": " + file);
+    }
+    long validLength = HEADER_SIZE;
+    try {
+      while (in.available() > 0) {
+        reader.readRecord(in);
+        validLength = bytes.length - in.available();
+      }
+    } catch (EOFException e) {
+      // The last record was torn by a crash while it was written, and is dropped.
+    }
+    if (validLength < bytes.length) {
+      try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+        truncated.setLength(validLength);
+      }
+    }
+    log.out = log.openOutput();
+    return log;
+  }
+
+  /** Returns the stream the records are appended to, which {@link #flush()} writes to the file. */
+  DataOutputStream getOutput() {
+    return out;
+  }
+
+  /** Writes the records appended so far to the file. */
+  void flush() throws IOException {
+    out.flush();
+  }
+
+  /**
+   * Replaces the log with the records written by {@code writer}, atomically: the records are
+   * written and synced to a temporary file, which is then renamed over the log.
+   */
+  void rewrite(RecordWriter writer) throws IOException {
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+    File rewritten = new File(file.getPath() + ".tmp");
+    try (FileOutputStream stream = new FileOutputStream(rewritten)) {
+      DataOutputStream rewrittenOut = new DataOutputStream(new BufferedOutputStream(stream));
+      rewrittenOut.writeInt(magic);
+      rewrittenOut.writeInt(version);
+      writer.writeRecords(rewrittenOut);
+      rewrittenOut.flush();
+      stream.getFD().sync();
+    }
+    if (!rewritten.renameTo(file)) {
+      throw new IOException("Could not replace " + file);
+    }
+    out = openOutput();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+  }
+
+  private DataOutputStream openOutput() throws IOException {
+    return new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file, /*append=*/ true)));
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+      byte[] bytes = new byte[(int) in.length()];
+      in.readFully(bytes);
+      return bytes;
+    }
+  }
+}
@@ -2,7 +2,6 @@ package com.google.ar.core.examples.java.persistentcloudanchor;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
 import android.os.SystemClock;
@@ -19,6 +18,8 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.DialogFragment;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.ar.core.Anchor;
 import com.google.ar.core.Anchor.CloudAnchorState;
 import com.google.ar.core.ArCoreApk;
@@ -38,42 +39,64 @@ import com.google.ar.core.Trackable;
 import com.google.ar.core.TrackingState;
 import com.google.ar.core.examples.java.common.helpers.CameraPermissionHelper;
 import com.google.ar.core.examples.java.common.helpers.DisplayRotationHelper;
+import com.google.ar.core.examples.java.common.helpers.FramePacingHelper;
 import com.google.ar.core.examples.java.common.helpers.FullScreenHelper;
 import com.google.ar.core.examples.java.common.helpers.LocationPermissionHelper;
 import com.google.ar.core.examples.java.common.helpers.TrackingStateHelper;
+import com.google.ar.core.examples.java.common.math.RigidTransform;
+import com.google.ar.core.examples.java.common.profiling.FrameProfiler;
+import com.google.ar.core.examples.java.common.recording.SessionFrame;
+import com.google.ar.core.examples.java.common.recording.SessionFrameCapture;
+import com.google.ar.core.examples.java.common.recording.SessionTraceWriter;
+import com.google.ar.core.examples.java.common.rendering.AndroidRendererAssets;
 import com.google.ar.core.examples.java.common.rendering.BackgroundRenderer;
+import com.google.ar.core.examples.java.common.rendering.DynamicResolutionFramebuffer;
+import com.google.ar.core.examples.java.common.rendering.DynamicResolutionScaler;
+import com.google.ar.core.examples.java.common.rendering.FrameTimeGovernor;
+import com.google.ar.core.examples.java.common.rendering.FrustumCuller;
+import com.google.ar.core.examples.java.common.rendering.FrameTimeGovernor.QualityLevel;
 import com.google.ar.core.examples.java.common.rendering.ObjectRenderer;
 import com.google.ar.core.examples.java.common.rendering.PlaneRenderer;
 import com.google.ar.core.examples.java.common.rendering.PointCloudRenderer;
+import com.google.ar.core.examples.java.common.rendering.RendererAssets;
+import com.google.ar.core.examples.java.common.rendering.gl.AndroidGl;
+import com.google.ar.core.examples.java.common.rendering.gl.Gl;
+import com.google.ar.core.examples.java.common.rendering.gl.TracingGl;
+import com.google.ar.core.examples.java.common.scene.AnchorScene;
 import com.google.ar.core.examples.java.persistentcloudanchor.PrivacyNoticeDialogFragment.HostResolveListener;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
+import com.google.ar.core.exceptions.SessionPausedException;
 import com.google.ar.core.exceptions.UnavailableApkTooOldException;
 import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
 import com.google.ar.core.exceptions.UnavailableSdkTooOldException;
 import com.google.common.base.Preconditions;
 import com.google.firebase.firestore.FirebaseFirestore;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
-enum State {
-    UNINITIALIZED,
-    EARTH_STATE_ERROR,
-    PRETRACKING,
-    LOCALIZING,
-    LOCALIZED
-}
-
 /**
  * Main Activity for the Persistent Cloud Anchor Sample.
  *
  * <p>This is a simple example that shows how to host and resolve anchors using ARCore Cloud Anchors
- * API calls. This app only has at most one anchor at a time, to focus more on the cloud aspect of
- * anchors.
+ * API calls. This app only hosts one anchor at a time, to focus more on the cloud aspect of
+ * anchors. Once hosted, anchors are kept in an {@link AnchorScene}, which only updates the anchors
+ * that moved and draws the visible ones in a single batch, so that hundreds of them stay cheap.
+ * The anchors of the points of interest stored in Firestore are streamed into the same scene by a
+ * {@link PoiStreamer}, only around the device.
  */
 public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceView.Renderer {
     private static final String TAG = CloudAnchorActivity.class.getSimpleName();
@@ -84,20 +107,99 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
     protected static final double MIN_DISTANCE = 0.2f;
     protected static final double MAX_DISTANCE = 10.0f;
 
-    private static final float LOCALIZING_HORIZONTAL_ACCURACY_THRESHOLD_METERS = 10;
-    private static final float LOCALIZING_HEADING_ACCURACY_THRESHOLD_DEGREES = 50;
-
-    private static final double LOCALIZED_HORIZONTAL_ACCURACY_HYSTERESIS_METERS = 10;
-    private static final double LOCALIZED_HEADING_ACCURACY_HYSTERESIS_DEGREES = 10;
-
+    // CPU time budget of a frame, matching the 30 fps camera frame rate.
+    private static final float FRAME_BUDGET_MILLIS = 1000.0f / 30.0f;
+    // Range of the resolution scale applied to the virtual content when the GPU is the bottleneck.
+    private static final float MIN_VIRTUAL_CONTENT_SCALE = 0.5f;
+    private static final float MAX_VIRTUAL_CONTENT_SCALE = 1.0f;
+    // How rendering is paced on the camera frames.
+    private static final FramePacingHelper.Mode FRAME_PACING_MODE =
+            FramePacingHelper.Mode.ON_NEW_CAMERA_FRAME;
+    // Planes and anchors farther than this from the camera are not drawn.
+    private static final float CULLING_DISTANCE_METERS = 30.0f;
+    // Size of the cells of the spatial index of the POI anchors.
+    private static final float SCENE_CELL_SIZE_METERS = 4.0f;
+    // Tint of the POI anchors, to tell them apart from the anchor being hosted.
+    private static final float[] POI_ANCHOR_COLOR = new float[] {52.0f, 168.0f, 82.0f, 255.0f};
+    // The POIs within this radius of the device are loaded once it is on a map, at most so many.
+    private static final double POI_LOAD_RADIUS_METERS = 1000.0;
+    private static final int MAX_LOADED_POIS = 1000;
+    // The device stays on a map until it is this far out of the map, so that the POIs are not
+    // loaded over and over around the edge of the map.
+    private static final double POI_MAP_EXIT_MARGIN_METERS = 100.0;
+    // Whether the geohash and update time were added to the POIs of a map stored before they were,
+    // followed by the map id.
+    private static final String POI_INDEX_FIELDS_BACKFILLED_KEY = "poi_index_fields_backfilled_";
+    // Files of the on-device copy of the POIs of a map, and of its POI writes not yet committed,
+    // in the files directory of the app.
+    private static final String POI_STORE_FILE_NAME_FORMAT = "pois_%s.bin";
+    private static final String POI_WRITE_QUEUE_FILE_NAME_FORMAT = "poi_writes_%s.bin";
+    // Points Firestore to a local emulator, started with `firebase emulators:start`. The emulator
+    // host must also be allowed cleartext traffic.
+    private static final boolean USE_FIRESTORE_EMULATOR = false;
+    private static final String FIRESTORE_EMULATOR_HOST = "10.0.2.2";
+    private static final int FIRESTORE_EMULATOR_PORT = 8080;
+    // POI anchors are created within the enter radius of the device, and detached beyond the exit
+    // radius, at most a few per frame to spread the cost of creating them.
+    private static final double POI_ENTER_RADIUS_METERS = 50.0;
+    private static final double POI_EXIT_RADIUS_METERS = 70.0;
+    private static final int MAX_POI_ANCHORS_CREATED_PER_FRAME = 2;
+    // The cloud anchors of the POIs the device is heading to, within the prefetch radius, are
+    // resolved ahead of time, leaving some of the concurrent resolves to the other operations.
+    private static final double POI_PREFETCH_RADIUS_METERS = 150.0;
+    private static final int MAX_POI_PREFETCH_CANDIDATES = 64;
+    private static final int MAX_POI_PREFETCHES = CloudAnchorManager.MAX_ACTIVE_RESOLVES - 2;
+    // The poses of the resolved cloud anchors are cached across sessions, and place the anchors of
+    // the POIs until they are resolved again.
+    private static final String RESOLVED_ANCHOR_CACHE_FILE_NAME = "resolved_anchors.bin";
+    private static final long MAX_RESOLVED_ANCHOR_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final double MAX_RESOLVED_ANCHOR_DISTANCE_METERS = 10_000.0;
+    // Wraps each OpenGL call in a systrace section, to attribute driver time to individual calls.
+    private static final boolean TRACE_GL_CALLS = false;
 
     // Rendering. The Renderers are created here, and initialized when the GL surface is created.
     private GLSurfaceView surfaceView;
-    private final BackgroundRenderer backgroundRenderer = new BackgroundRenderer();
-    private final ObjectRenderer anchorObject = new ObjectRenderer();
-    private final ObjectRenderer featureMapQualityBarObject = new ObjectRenderer();
-    private final PlaneRenderer planeRenderer = new PlaneRenderer();
-    private final PointCloudRenderer pointCloudRenderer = new PointCloudRenderer();
+    private FramePacingHelper framePacingHelper;
+    private final Gl gl =
+            TRACE_GL_CALLS ? new TracingGl(AndroidGl.INSTANCE) : AndroidGl.INSTANCE;
+    private final BackgroundRenderer backgroundRenderer = new BackgroundRenderer(gl);
+    private final ObjectRenderer anchorObject = new ObjectRenderer(gl);
+    private final ObjectRenderer featureMapQualityBarObject = new ObjectRenderer(gl);
+    private final PlaneRenderer planeRenderer = new PlaneRenderer(gl);
+    private final PointCloudRenderer pointCloudRenderer = new PointCloudRenderer(gl);
+    private final FrameTimeGovernor frameTimeGovernor = new FrameTimeGovernor(FRAME_BUDGET_MILLIS);
+    private final FrustumCuller frustumCuller = new FrustumCuller();
+    private final DynamicResolutionFramebuffer virtualContentFramebuffer =
+            new DynamicResolutionFramebuffer(gl);
+    private final DynamicResolutionScaler resolutionScaler =
+            new DynamicResolutionScaler(
+                    FRAME_BUDGET_MILLIS, MIN_VIRTUAL_CONTENT_SCALE, MAX_VIRTUAL_CONTENT_SCALE);
+
+    // Profiling of the stages of onDrawFrame(). Long press the debug text to dump the results.
+    private static final String FRAME_PROFILE_FILE_NAME = "frame_profile.csv";
+    private final FrameProfiler frameProfiler = new FrameProfiler();
+    private final int updateStage = frameProfiler.addStage("session.update");
+    private final int cloudAnchorUpdateStage = frameProfiler.addStage("cloudAnchorManager.onUpdate");
+    private final int poiAnchorUpdateStage = frameProfiler.addStage("updatePoiAnchors");
+    private final int handleTapStage = frameProfiler.addStage("handleTap");
+    private final int backgroundStage = frameProfiler.addStage("background");
+    private final int pointCloudStage = frameProfiler.addStage("pointCloud");
+    private final int planesStage = frameProfiler.addStage("planes");
+    private final int anchorStage = frameProfiler.addStage("anchor");
+    private final int poiAnchorsStage = frameProfiler.addStage("poiAnchors");
+    private final int geospatialStage = frameProfiler.addStage("updateGeospatialState");
+    private final int featureMapQualityStage =
+            frameProfiler.addStage("updateFeatureMapQualityUi");
+
+    // Recording of the frames to a session trace, to be replayed on a JVM by SessionReplay. The
+    // trace is appended to the app's external files directory. Only accessed on the OpenGL thread,
+    // except for closing the trace once the OpenGL thread is paused.
+    private static final boolean RECORD_SESSION_TRACE = false;
+    private static final String SESSION_TRACE_FILE_NAME = "session_trace.bin";
+    private final SessionFrame sessionFrame = new SessionFrame();
+    private SessionTraceWriter sessionTraceWriter;
+    private boolean sessionTraceFailed;
+    private boolean sessionFramePending;
 
     private final FirebaseFirestore db = FirebaseFirestore.getInstance();
 
@@ -108,6 +210,12 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
     private final float[] viewMatrix = new float[16];
     private final float[] projectionMatrix = new float[16];
     private final float[] anchorTranslation = new float[4];
+    private final float[] colorCorrectionRgba = new float[4];
+    private final float[] poiAnchorPose = new float[RigidTransform.SIZE];
+    private final float[] cameraTranslation = new float[3];
+    private final float[] cameraZAxis = new float[3];
+    private final float[] resolvedAnchorTranslation = new float[3];
+    private final float[] resolvedAnchorZAxis = new float[3];
 
     // Locks needed for synchronization
     private final Object singleTapLock = new Object();
@@ -121,24 +229,76 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
     private TextView userMessageText;
     private SharedPreferences sharedPreferences;
 
+    // Messages shown from the OpenGL thread. Their runnables are allocated once, and a message is
+    // only posted to the UI thread when it changes.
+    private volatile int pendingUserMessageId;
+    private int postedUserMessageId;
+    private final Runnable showPendingUserMessage =
+            () -> {
+                userMessageText.setVisibility(View.VISIBLE);
+                userMessageText.setText(pendingUserMessageId);
+            };
+    // Latest geospatial pose shown in the debug text, guarded by itself.
+    private final double[] geospatialPoseValues = new double[7];
+    private final AtomicBoolean geospatialPoseTextPending = new AtomicBoolean();
+    private final Runnable showGeospatialPoseText = this::showGeospatialPoseText;
+
     // Feature Map Quality Indicator UI
     private FeatureMapQualityUi featureMapQualityUi;
-    private static final float QUALITY_THRESHOLD = 0.6f;
-    private Pose anchorPose;
     private boolean hostedAnchor;
-    private long lastEstimateTimestampMillis;
 
     @GuardedBy("singleTapLock")
     private MotionEvent queuedSingleTap;
 
     private Session session;
-    private State state = State.UNINITIALIZED;
-    private boolean qualityObtained = false;
+    // Session the camera textures were last registered with. Only accessed on the OpenGL thread.
+    private Session cameraTexturesSession;
+    private final LocalizationStateMachine localization = new LocalizationStateMachine();
 
     @GuardedBy("anchorLock")
     private Anchor anchor;
 
+    // Anchors of the points of interest: those hosted during this session, and those streamed in
+    // around the device.
+    @GuardedBy("anchorLock")
+    private final AnchorScene<Anchor> poiAnchors = new AnchorScene<>(SCENE_CELL_SIZE_METERS);
+    // Only accessed on the OpenGL thread.
+    private final PoiStreamer<Anchor> poiStreamer =
+            new PoiStreamer<>(
+                    new PoiAnchorFactory(),
+                    POI_ENTER_RADIUS_METERS,
+                    POI_EXIT_RADIUS_METERS,
+                    MAX_POI_ANCHORS_CREATED_PER_FRAME);
+    private int loggedPoiAnchorCount;
+    // Only accessed on the OpenGL thread.
+    private final PoiResolver poiResolver = new PoiResolver();
+    private final PoiPrefetcher<Anchor> poiPrefetcher =
+            new PoiPrefetcher<>(poiResolver, POI_ENTER_RADIUS_METERS, MAX_POI_PREFETCHES);
+    private final Poi[] nearbyPois = new Poi[MAX_POI_PREFETCH_CANDIDATES];
+    // Cloud anchors resolved, whose pose is cached once they are tracked. Only accessed on the
+    // OpenGL thread.
+    private final List<String> uncachedCloudAnchorIds = new ArrayList<>();
+    private final List<Anchor> uncachedAnchors = new ArrayList<>();
+    // Opened on poiExecutor, null until then or if it could not be opened.
+    private volatile ResolvedAnchorCache resolvedAnchorCache;
+    // The maps of the sites, and the one the device is on. Only its POIs are loaded.
+    private List<PoiMap> poiMaps = Collections.emptyList();
+    // Only accessed on the OpenGL thread.
+    private PoiMap activePoiMap;
+    // The on-device copy of the POIs is opened, read and synced on this thread.
+    private final ExecutorService poiExecutor = Executors.newSingleThreadExecutor();
+    // Only accessed on poiExecutor.
+    private PoiMap loadedPoiMap;
+    private PoiStore poiStore;
+    private PoiSync poiSync;
+    // Where the hosted POIs of each map are written, in batches. Only accessed on the UI thread.
+    private final Map<String, PoiRepository> poiRepositories = new HashMap<>();
+
     private CloudAnchorManager cloudAnchorManager;
+    // Estimates the feature map quality for hosting off the OpenGL thread, with the session.
+    private FeatureMapQualityWorker<Pose, FeatureMapQuality> featureMapQualityWorker;
+    // Created with the worker of each session. Only accessed on the OpenGL thread.
+    private HostingQualityFlow<Pose, FeatureMapQuality> hostingQualityFlow;
 
     private static int getNumStoredAnchors(@NonNull SharedPreferences anchorPreferences) {
         String hostedAnchorIds = anchorPreferences.getString(CloudAnchorActivity.HOSTED_ANCHOR_IDS, "");
@@ -158,13 +318,29 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
         surfaceView.setEGLContextClientVersion(2);
         surfaceView.setEGLConfigChooser(8, 8, 8, 8, 16, 0); // Alpha used for plane blending.
         surfaceView.setRenderer(this);
-        surfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        framePacingHelper = new FramePacingHelper(surfaceView, FRAME_PACING_MODE);
+        // Frames returning an already processed camera image composite the virtual content of the
+        // previous frame again, which requires it to stay in the offscreen target.
+        virtualContentFramebuffer.setRetainContent(framePacingHelper.isNonBlocking());
         surfaceView.setWillNotDraw(false);
+        frameTimeGovernor.setListener(this::onQualityLevelChanged);
+        frustumCuller.setMaxDistance(CULLING_DISTANCE_METERS);
         installRequested = false;
+        if (USE_FIRESTORE_EMULATOR) {
+            db.useEmulator(FIRESTORE_EMULATOR_HOST, FIRESTORE_EMULATOR_PORT);
+        }
+        try {
+            poiMaps = MapCatalog.load(this);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not load the maps", e);
+        }
+        poiExecutor.execute(this::openResolvedAnchorCache);
 
         // Initialize UI components.
         debugText = findViewById(R.id.debug_message);
         userMessageText = findViewById(R.id.user_message);
+        debugText.setOnLongClickListener(v -> dumpFrameProfile());
+        frameProfiler.start();
 
         showPrivacyDialog();
     }
@@ -200,10 +376,22 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
 
     @Override
     protected void onDestroy() {
+        if (featureMapQualityWorker != null) {
+            // Waits for the estimate in progress, which uses the session.
+            featureMapQualityWorker.stop();
+            featureMapQualityWorker = null;
+        }
         if (session != null) {
             session.close();
             session = null;
         }
+        frameProfiler.stop();
+        poiExecutor.execute(this::closePoiStore);
+        poiExecutor.shutdown();
+        for (PoiRepository poiRepository : poiRepositories.values()) {
+            poiRepository.close();
+        }
+        poiRepositories.clear();
 
         super.onDestroy();
     }
@@ -216,6 +404,7 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
         }
         surfaceView.onResume();
         displayRotationHelper.onResume();
+        framePacingHelper.onResume();
     }
 
     private void createSession() {
@@ -243,7 +432,16 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
                 }
 
                 session = new Session(this);
-                cloudAnchorManager = new CloudAnchorManager(session);
+                // The listeners update the UI, so they are invoked on the UI thread.
+                cloudAnchorManager = new CloudAnchorManager(session, this::runOnUiThread);
+                Session estimatingSession = session;
+                featureMapQualityWorker =
+                        new FeatureMapQualityWorker<>(
+                                pose -> estimateFeatureMapQuality(estimatingSession, pose));
+                hostingQualityFlow =
+                        new HostingQualityFlow<>(
+                                featureMapQualityWorker, FeatureMapQualityUi::toQuality);
+                featureMapQualityWorker.start();
             } catch (UnavailableArcoreNotInstalledException e) {
                 messageId = R.string.arcore_unavailable;
                 exception = e;
@@ -269,9 +467,10 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
             Config config = new Config(session);
             config.setCloudAnchorMode(CloudAnchorMode.ENABLED);
             config.setGeospatialMode(Config.GeospatialMode.ENABLED);
+            framePacingHelper.configure(config);
             session.configure(config);
 
-            state = State.PRETRACKING;
+            localization.start();
         }
 
         // Note that order matters - see the note in onPause(), the reverse applies here.
@@ -282,6 +481,20 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
             debugText.setText(R.string.camera_unavailable);
             session = null;
             cloudAnchorManager = null;
+            featureMapQualityWorker.stop();
+            featureMapQualityWorker = null;
+        }
+    }
+
+    /**
+     * Estimates the feature map quality for hosting from {@code pose}, on the worker thread.
+     * Returns null if the session was paused meanwhile.
+     */
+    private static FeatureMapQuality estimateFeatureMapQuality(Session session, Pose pose) {
+        try {
+            return session.estimateFeatureMapQualityForHosting(pose);
+        } catch (SessionPausedException e) {
+            return null;
         }
     }
 
@@ -294,8 +507,11 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
             // still call session.update() and get a SessionPausedException.
             displayRotationHelper.onPause();
             surfaceView.onPause();
+            closeSessionTrace();
+            framePacingHelper.onPause();
             session.pause();
         }
+        poiExecutor.execute(this::saveResolvedAnchorCache);
     }
 
     @Override
@@ -337,7 +553,7 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
     /**
      * Handles the most recent user tap.
      *
-     * <p>We only ever handle one tap at a time, since this app only allows for a single anchor.
+     * <p>We only ever handle one tap at a time, since this app only hosts one anchor at a time.
      *
      * @param frame               the current AR frame
      * @param cameraTrackingState the current camera tracking state
@@ -346,6 +562,9 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
         // Handle taps. Handling only one tap per frame, as taps are usually low frequency
         // compared to frame rate.
         synchronized (singleTapLock) {
+            if (sessionFramePending && queuedSingleTap != null) {
+                sessionFrame.addTap(queuedSingleTap.getX(), queuedSingleTap.getY());
+            }
             synchronized (anchorLock) {
                 // Only handle a tap if the anchor is currently null, the queued tap is non-null and the
                 // camera is currently tracking.
@@ -369,6 +588,11 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
                                                 featureMapQualityBarObject);
                             }
                             setNewAnchor(newAnchor);
+                            // Starts over the hosting flow for the new anchor.
+                            hostedAnchor = false;
+                            hostingQualityFlow.start(
+                                    featureMapQualityUi.tracker, SystemClock.uptimeMillis());
+                            postedUserMessageId = 0;
                             break; // Only handle the first valid hit.
                         }
                     }
@@ -391,21 +615,24 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
     }
 
     @Override
-    public void onSurfaceCreated(GL10 gl, EGLConfig config) {
-        GLES20.glClearColor(0.1f, 0.1f, 0.1f, 1.0f);
+    public void onSurfaceCreated(GL10 gl10, EGLConfig config) {
+        gl.glClearColor(0.1f, 0.1f, 0.1f, 1.0f);
 
         // Prepare the rendering objects. This involves reading shaders, so may throw an IOException.
         try {
-            // Create the texture and pass it to ARCore session to be filled during update().
+            RendererAssets assets = new AndroidRendererAssets(this);
+            // Create the textures and pass them to ARCore session to be filled during update().
             backgroundRenderer.createOnGlThread(this);
-            planeRenderer.createOnGlThread(this, "models/trigrid.png");
+            cameraTexturesSession = null;
+            planeRenderer.createOnGlThread(assets, "models/trigrid.png");
             pointCloudRenderer.createOnGlThread(this);
+            virtualContentFramebuffer.createOnGlThread(this);
 
-            anchorObject.createOnGlThread(this, "models/anchor.obj", "models/anchor.png");
+            anchorObject.createOnGlThread(assets, "models/anchor.obj", "models/anchor.png");
             anchorObject.setMaterialProperties(0.0f, 0.75f, 0.1f, 0.5f);
 
             featureMapQualityBarObject.createOnGlThread(
-                    this, "models/map_quality_bar.obj", "models/map_quality_bar.png");
+                    assets, "models/map_quality_bar.obj", "models/map_quality_bar.png");
             featureMapQualityBarObject.setMaterialProperties(0.0f, 2.0f, 0.02f, 0.5f);
 
         } catch (IOException ex) {
@@ -414,221 +641,662 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
     }
 
     @Override
-    public void onSurfaceChanged(GL10 gl, int width, int height) {
+    public void onSurfaceChanged(GL10 gl10, int width, int height) {
         displayRotationHelper.onSurfaceChanged(width, height);
-        GLES20.glViewport(0, 0, width, height);
+        gl.glViewport(0, 0, width, height);
+        virtualContentFramebuffer.onSurfaceChanged(width, height);
     }
 
     @Override
-    public void onDrawFrame(GL10 gl) {
-        // Clear screen to notify driver it should not load any pixels from previous frame.
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+    public void onDrawFrame(GL10 gl10) {
+        resolutionScaler.onFrameBegin(framePacingHelper.getScheduledDelayNanos());
 
-        if (session == null) {
-            return;
-        }
-        // Notify ARCore session that the view size changed so that the perspective matrix and
-        // the video background can be properly adjusted.
-        displayRotationHelper.updateSessionIfNeeded(session);
+        // Clear screen to notify driver it should not load any pixels from previous frame.
+        gl.glClear(Gl.GL_COLOR_BUFFER_BIT | Gl.GL_DEPTH_BUFFER_BIT);
 
         try {
-            session.setCameraTextureName(backgroundRenderer.getTextureId());
+            if (session == null) {
+                // No frame is scheduled until there is a session, see onResume.
+                return;
+            }
+            // Notify ARCore session that the view size changed so that the perspective matrix and
+            // the video background can be properly adjusted.
+            displayRotationHelper.updateSessionIfNeeded(session);
+
+            if (cameraTexturesSession != session) {
+                session.setCameraTextureNames(backgroundRenderer.getTextureIds());
+                cameraTexturesSession = session;
+            }
 
             // Obtain the current frame from ARSession. When the configuration is set to
-            // UpdateMode.BLOCKING (it is by default), this will throttle the rendering to the
-            // camera framerate.
+            // UpdateMode.BLOCKING, this will throttle the rendering to the camera framerate.
+            // Otherwise it returns immediately, possibly with the camera image of the previous
+            // frame.
+            long stageBegin = frameProfiler.begin();
             Frame frame = session.update();
+            frameProfiler.end(updateStage, stageBegin);
+            if (!framePacingHelper.onFrameUpdated(frame.getTimestamp())) {
+                // Nothing changed since the previous frame: redraw it without any scene work.
+                backgroundRenderer.draw(frame);
+                virtualContentFramebuffer.recomposite();
+                return;
+            }
+            resolutionScaler.onCameraFrameAvailable();
+            frameTimeGovernor.onFrameStart();
             Camera camera = frame.getCamera();
             TrackingState cameraTrackingState = camera.getTrackingState();
+            sessionFramePending = RECORD_SESSION_TRACE && openSessionTrace();
+            if (sessionFramePending) {
+                sessionFrame.clear();
+                SessionFrameCapture.captureCamera(sessionFrame, frame.getTimestamp(), camera);
+            }
 
             // Notify the cloudAnchorManager of all the updates.
+            stageBegin = frameProfiler.begin();
             cloudAnchorManager.onUpdate();
+            frameProfiler.end(cloudAnchorUpdateStage, stageBegin);
+
+            // Updated on every frame, even if not drawn, as ARCore reports each change only once.
+            stageBegin = frameProfiler.begin();
+            synchronized (anchorLock) {
+                updatePoiAnchors(frame);
+            }
+            frameProfiler.end(poiAnchorUpdateStage, stageBegin);
 
             // Handle user input.
+            stageBegin = frameProfiler.begin();
             handleTap(frame, cameraTrackingState);
+            frameProfiler.end(handleTapStage, stageBegin);
 
             // If frame is ready, render camera preview image to the GL surface.
+            stageBegin = frameProfiler.begin();
             backgroundRenderer.draw(frame);
+            frameProfiler.end(backgroundStage, stageBegin);
 
             // Keep the screen unlocked while tracking, but allow it to lock when tracking stops.
             trackingStateHelper.updateKeepScreenOnFlag(camera.getTrackingState());
 
             // If not tracking, don't draw 3d objects.
             if (cameraTrackingState == TrackingState.PAUSED) {
+                virtualContentFramebuffer.discardRetainedContent();
                 return;
             }
 
             // Get camera and projection matrices.
             camera.getViewMatrix(viewMatrix, 0);
             camera.getProjectionMatrix(projectionMatrix, 0, 0.1f, 100.0f);
+            frustumCuller.update(viewMatrix, projectionMatrix);
+            if (sessionFramePending) {
+                SessionFrameCapture.captureMatrices(sessionFrame, viewMatrix, projectionMatrix);
+            }
+
+            // Draw the virtual content offscreen, at a resolution adapted to the GPU load. It is
+            // upscaled over the camera background once all of it has been drawn.
+            virtualContentFramebuffer.bind(resolutionScaler.getScale());
 
             // Visualize tracked points.
             // Use try-with-resources to automatically release the point cloud.
+            stageBegin = frameProfiler.begin();
             try (PointCloud pointCloud = frame.acquirePointCloud()) {
+                if (sessionFramePending) {
+                    SessionFrameCapture.capturePointCloud(sessionFrame, pointCloud);
+                }
                 pointCloudRenderer.update(pointCloud);
                 pointCloudRenderer.draw(viewMatrix, projectionMatrix);
             }
+            frameProfiler.end(pointCloudStage, stageBegin);
 
-            float[] colorCorrectionRgba = new float[4];
             float scaleFactor = 1.0f;
             frame.getLightEstimate().getColorCorrection(colorCorrectionRgba, 0);
             boolean shouldDrawFeatureMapQualityUi = false;
             synchronized (anchorLock) {
                 if (anchor == null) {
+                    if (sessionFramePending) {
+                        SessionFrameCapture.capturePlanes(
+                                sessionFrame, session.getAllTrackables(Plane.class));
+                    }
                     // Visualize planes.
+                    stageBegin = frameProfiler.begin();
                     planeRenderer.drawPlanes(
                             session.getAllTrackables(Plane.class),
                             camera.getDisplayOrientedPose(),
-                            projectionMatrix);
+                            projectionMatrix,
+                            frustumCuller);
+                    frameProfiler.end(planesStage, stageBegin);
                 }
                 // Update the pose of the anchor (to be) hosted if it can be drawn and render the anchor.
                 if (anchor != null && anchor.getTrackingState() == TrackingState.TRACKING) {
-                    anchorPose = anchor.getPose();
+                    Pose anchorPose = anchor.getPose();
                     anchorPose.toMatrix(anchorMatrix, 0);
                     anchorPose.getTranslation(anchorTranslation, 0);
                     anchorTranslation[3] = 1.0f;
-                    drawAnchor(anchorMatrix, scaleFactor, colorCorrectionRgba);
+                    if (sessionFramePending) {
+                        SessionFrameCapture.captureAnchor(
+                                sessionFrame,
+                                anchor,
+                                featureMapQualityUi != null && !featureMapQualityUi.isHorizontal);
+                    }
+                    if (frustumCuller.isSphereVisible(
+                            anchorTranslation[0],
+                            anchorTranslation[1],
+                            anchorTranslation[2],
+                            FeatureMapQualityTracker.ANCHOR_BOUNDING_RADIUS * scaleFactor)) {
+                        stageBegin = frameProfiler.begin();
+                        drawAnchor(anchorMatrix, scaleFactor, colorCorrectionRgba);
+                        frameProfiler.end(anchorStage, stageBegin);
+                    }
 
                     if (!hostedAnchor && featureMapQualityUi != null) {
                         shouldDrawFeatureMapQualityUi = true;
                     }
                 }
+                if (poiAnchors.getCount() > 0) {
+                    stageBegin = frameProfiler.begin();
+                    drawPoiAnchors(scaleFactor, colorCorrectionRgba);
+                    frameProfiler.end(poiAnchorsStage, stageBegin);
+                }
             }
 
             Earth earth = session.getEarth();
             if (earth != null) {
-                updateGeospatialState(earth);
+                if (sessionFramePending) {
+                    SessionFrameCapture.captureEarth(sessionFrame, earth);
+                }
+                stageBegin = frameProfiler.begin();
+                updateGeospatialState(earth, camera);
+                frameProfiler.end(geospatialStage, stageBegin);
             }
 
             // Render the Feature Map Quality Indicator UI.
             // Adaptive UI is drawn here, using the values from the mapping quality API.
             if (shouldDrawFeatureMapQualityUi) {
+                stageBegin = frameProfiler.begin();
                 updateFeatureMapQualityUi(camera, colorCorrectionRgba, earth);
+                frameProfiler.end(featureMapQualityStage, stageBegin);
             }
 
+            resolutionScaler.onFrameFinished();
+            frameTimeGovernor.onFrameEnd();
         } catch (Throwable t) {
             // Avoid crashing the application due to unhandled exceptions.
             Log.e(TAG, "Exception on the OpenGL thread", t);
+        } finally {
+            // Composites the virtual content here only, so that the offscreen target is never left
+            // bound, even when the frame was interrupted.
+            virtualContentFramebuffer.composite();
+            if (session != null) {
+                framePacingHelper.scheduleNextFrame();
+            }
+            if (sessionFramePending) {
+                writeSessionFrame();
+            }
         }
     }
 
-    private void updatePretrackingState(@NonNull Earth earth) {
-        if (earth.getTrackingState() == TrackingState.TRACKING) {
-            state = State.LOCALIZING;
-            return;
+    /**
+     * Opens the session trace on the first recorded frame. Returns false if it cannot be opened,
+     * in which case recording is given up for the rest of the activity.
+     */
+    private boolean openSessionTrace() {
+        if (sessionTraceWriter == null && !sessionTraceFailed) {
+            File file = new File(getOutputDirectory(), SESSION_TRACE_FILE_NAME);
+            try {
+                sessionTraceWriter = new SessionTraceWriter(file);
+                Log.i(TAG, "Recording the session trace to " + file);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to open the session trace " + file, e);
+                sessionTraceFailed = true;
+            }
+        }
+        return sessionTraceWriter != null;
+    }
+
+    private void writeSessionFrame() {
+        sessionFramePending = false;
+        try {
+            sessionTraceWriter.write(sessionFrame);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write to the session trace", e);
+            sessionTraceFailed = true;
+            closeSessionTrace();
         }
+    }
 
-        if (earth.getEarthState() != Earth.EarthState.ENABLED) {
-            state = State.EARTH_STATE_ERROR;
+    /** Closes the session trace. Must not be called while the OpenGL thread is drawing. */
+    private void closeSessionTrace() {
+        if (sessionTraceWriter == null) {
             return;
         }
+        try {
+            sessionTraceWriter.close();
+            Log.i(TAG, "Recorded " + sessionTraceWriter.getFrameCount() + " frames");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close the session trace", e);
+        }
+        sessionTraceWriter = null;
+    }
 
-        runOnUiThread(() -> userMessageText.setText(R.string.geospatial_pose_not_tracking));
+    private File getOutputDirectory() {
+        File directory = getExternalFilesDir(null);
+        return directory != null ? directory : getFilesDir();
     }
 
-    private void updateLocalizingState(@NonNull Earth earth) {
-        GeospatialPose geospatialPose = earth.getCameraGeospatialPose();
+    /** Writes the frame profile to the app's external files directory, off the UI thread. */
+    private boolean dumpFrameProfile() {
+        File file = new File(getOutputDirectory(), FRAME_PROFILE_FILE_NAME);
+        frameProfiler.requestDump(file);
+        if (cloudAnchorManager != null) {
+            Log.i(TAG, "Cloud anchor operations:\n" + cloudAnchorManager.getStatsSummary());
+        }
+        Toast.makeText(this, getString(R.string.frame_profile_dumped, file.getPath()), Toast.LENGTH_SHORT)
+                .show();
+        return true;
+    }
 
-        if (geospatialPose.getHorizontalAccuracy() <= LOCALIZING_HORIZONTAL_ACCURACY_THRESHOLD_METERS
-                && geospatialPose.getHeadingAccuracy() <= LOCALIZING_HEADING_ACCURACY_THRESHOLD_DEGREES) {
-            state = State.LOCALIZED;
+    /**
+     * Applies the rendering settings of a new quality level chosen by the {@link FrameTimeGovernor}.
+     * Invoked on the OpenGL thread.
+     */
+    private void onQualityLevelChanged(
+            QualityLevel previous, QualityLevel current, float p50Millis, float p90Millis) {
+        Log.i(TAG, String.format("Rendering quality %s -> %s (p50 %.1f ms, p90 %.1f ms)",
+                previous, current, p50Millis, p90Millis));
+        pointCloudRenderer.setDecimation(current.pointCloudStride);
+        planeRenderer.setSimplificationTolerance(current.planeSimplificationToleranceMeters);
+        anchorObject.setLodBias(current.modelLodBias);
+        featureMapQualityBarObject.setLodBias(current.modelLodBias);
+    }
 
-            runOnUiThread(() -> userMessageText.setText(R.string.hosting_place_anchor));
+    private void updatePretrackingState(@NonNull Earth earth) {
+        State state = localization.onEarthState(
+                earth.getTrackingState() == TrackingState.TRACKING,
+                earth.getEarthState() == Earth.EarthState.ENABLED);
+        if (state == State.PRETRACKING) {
+            showUserMessageFromGlThread(R.string.geospatial_pose_not_tracking);
+        }
+    }
+
+    private void updateLocalizingState(@NonNull Earth earth) {
+        GeospatialPose geospatialPose = earth.getCameraGeospatialPose();
+        State state = localization.onGeospatialPoseAccuracy(
+                geospatialPose.getHorizontalAccuracy(), geospatialPose.getHeadingAccuracy());
+        if (state == State.LOCALIZED) {
+            showUserMessageFromGlThread(R.string.hosting_place_anchor);
             return;
         }
 
         updateGeospatialPoseText(geospatialPose);
     }
 
-    private void updateGeospatialState(Earth earth) {
+    private void updateGeospatialState(Earth earth, Camera camera) {
+        State state = localization.getState();
         if (state == State.PRETRACKING) {
             updatePretrackingState(earth);
         } else if (state == State.LOCALIZING) {
             updateLocalizingState(earth);
         } else if (state == State.LOCALIZED) {
-            updateLocalizedState(earth);
+            updateLocalizedState(earth, camera);
         }
     }
 
     private void updateGeospatialPoseText(@NonNull GeospatialPose geospatialPose) {
-        String poseText = getResources().getString(
-                R.string.geospatial_pose,
+        // The text is formatted on the UI thread, so that the OpenGL thread does not allocate.
+        synchronized (geospatialPoseValues) {
+            geospatialPoseValues[0] = geospatialPose.getLatitude();
+            geospatialPoseValues[1] = geospatialPose.getLongitude();
+            geospatialPoseValues[2] = geospatialPose.getHorizontalAccuracy();
+            geospatialPoseValues[3] = geospatialPose.getAltitude();
+            geospatialPoseValues[4] = geospatialPose.getVerticalAccuracy();
+            geospatialPoseValues[5] = geospatialPose.getHeading();
+            geospatialPoseValues[6] = geospatialPose.getHeadingAccuracy();
+        }
+        if (geospatialPoseTextPending.compareAndSet(false, true)) {
+            runOnUiThread(showGeospatialPoseText);
+        }
+    }
+
+    private void showGeospatialPoseText() {
+        geospatialPoseTextPending.set(false);
+        String poseText;
+        synchronized (geospatialPoseValues) {
+            poseText = getResources().getString(
+                    R.string.geospatial_pose,
+                    geospatialPoseValues[0],
+                    geospatialPoseValues[1],
+                    geospatialPoseValues[2],
+                    geospatialPoseValues[3],
+                    geospatialPoseValues[4],
+                    geospatialPoseValues[5],
+                    geospatialPoseValues[6]);
+        }
+        debugText.setText(poseText);
+    }
+
+    /**
+     * Shows a user message from the OpenGL thread. Does not allocate, and does nothing if the
+     * message is already the last one posted.
+     */
+    private void showUserMessageFromGlThread(int messageId) {
+        if (messageId == postedUserMessageId) {
+            return;
+        }
+        postedUserMessageId = messageId;
+        pendingUserMessageId = messageId;
+        runOnUiThread(showPendingUserMessage);
+    }
+
+    private void updateLocalizedState(@NonNull Earth earth, @NonNull Camera camera) {
+        GeospatialPose geospatialPose = earth.getCameraGeospatialPose();
+        State state = localization.onGeospatialPoseAccuracy(
+                geospatialPose.getHorizontalAccuracy(), geospatialPose.getHeadingAccuracy());
+        if (state == State.LOCALIZING) {
+            // Accuracies have degenerated, back to the localizing state.
+            showUserMessageFromGlThread(R.string.geospatial_pose_not_tracking);
+            return;
+        }
+        updateActivePoiMap(geospatialPose.getLatitude(), geospatialPose.getLongitude());
+        // Prefetches first, so that the anchors of the POIs entering the radius can be taken.
+        int nearbyCount = poiStreamer.queryNearest(
+                geospatialPose.getLatitude(),
+                geospatialPose.getLongitude(),
+                POI_PREFETCH_RADIUS_METERS,
+                nearbyPois);
+        poiPrefetcher.update(
                 geospatialPose.getLatitude(),
                 geospatialPose.getLongitude(),
-                geospatialPose.getHorizontalAccuracy(),
-                geospatialPose.getAltitude(),
-                geospatialPose.getVerticalAccuracy(),
                 geospatialPose.getHeading(),
-                geospatialPose.getHeadingAccuracy());
+                System.nanoTime(),
+                nearbyPois,
+                nearbyCount);
+        poiStreamer.update(geospatialPose.getLatitude(), geospatialPose.getLongitude());
+        if (!uncachedAnchors.isEmpty()) {
+            cacheResolvedAnchorPoses(camera, geospatialPose);
+        }
+        int poiAnchorCount = poiStreamer.getLiveAnchorCount();
+        if (poiAnchorCount != loggedPoiAnchorCount) {
+            loggedPoiAnchorCount = poiAnchorCount;
+            Log.i(TAG, "POI anchors: " + poiAnchorCount + " of " + poiStreamer.getPoiCount());
+        }
+    }
 
-        runOnUiThread(() -> debugText.setText(poseText));
+    /**
+     * Detects the map the device is on, and switches to its POIs when it changes: the POIs of the
+     * previous map are dropped, and those of the new map loaded.
+     */
+    private void updateActivePoiMap(double latitude, double longitude) {
+        if (activePoiMap != null
+                && activePoiMap.distanceMeters(latitude, longitude)
+                        <= activePoiMap.radiusMeters + POI_MAP_EXIT_MARGIN_METERS) {
+            return;
+        }
+        PoiMap map = PoiMap.find(poiMaps, latitude, longitude);
+        if (map == activePoiMap) {
+            return;
+        }
+        Log.i(TAG, "On map " + (map == null ? "none" : map.name));
+        activePoiMap = map;
+        poiPrefetcher.clear();
+        poiStreamer.setPois(Collections.emptyList());
+        poiExecutor.execute(this::closePoiStore);
+        if (map != null) {
+            loadPois(map, latitude, longitude);
+            poiExecutor.execute(() -> evictResolvedAnchorPoses(latitude, longitude));
+        }
     }
 
-    private void updateLocalizedState(@NonNull Earth earth) {
-        GeospatialPose geospatialPose = earth.getCameraGeospatialPose();
-        // Check if either accuracy has degraded to the point we should enter back into the LOCALIZING
-        // state.
-        if (geospatialPose.getHorizontalAccuracy()
-                > LOCALIZING_HORIZONTAL_ACCURACY_THRESHOLD_METERS
-                + LOCALIZED_HORIZONTAL_ACCURACY_HYSTERESIS_METERS
-                || geospatialPose.getHeadingAccuracy()
-                > LOCALIZING_HEADING_ACCURACY_THRESHOLD_DEGREES
-                + LOCALIZED_HEADING_ACCURACY_HYSTERESIS_DEGREES) {
-            // Accuracies have degenerated, return to the localizing state.
-            state = State.LOCALIZING;
+    /**
+     * Caches the poses of the cloud anchors resolved since the previous frame, once they are
+     * tracked. Called on the OpenGL thread, while the geospatial pose is localized.
+     */
+    private void cacheResolvedAnchorPoses(Camera camera, GeospatialPose geospatialPose) {
+        ResolvedAnchorCache cache = resolvedAnchorCache;
+        if (cache == null || camera.getTrackingState() != TrackingState.TRACKING) {
+            return;
+        }
+        Pose cameraPose = camera.getPose();
+        for (int i = uncachedAnchors.size() - 1; i >= 0; i--) {
+            Anchor resolvedAnchor = uncachedAnchors.get(i);
+            TrackingState trackingState = resolvedAnchor.getTrackingState();
+            if (trackingState == TrackingState.PAUSED) {
+                continue;
+            }
+            if (trackingState == TrackingState.TRACKING) {
+                Pose anchorPose = resolvedAnchor.getPose();
+                cameraPose.getTranslation(cameraTranslation, 0);
+                cameraPose.getTransformedAxis(/*axis=*/ 2, /*scale=*/ 1.0f, cameraZAxis, 0);
+                anchorPose.getTranslation(resolvedAnchorTranslation, 0);
+                anchorPose.getTransformedAxis(
+                        /*axis=*/ 2, /*scale=*/ 1.0f, resolvedAnchorZAxis, 0);
+                cache.put(
+                        ResolvedAnchorCache.fromCameraRelativePose(
+                                uncachedCloudAnchorIds.get(i),
+                                geospatialPose.getLatitude(),
+                                geospatialPose.getLongitude(),
+                                geospatialPose.getAltitude(),
+                                geospatialPose.getHeading(),
+                                geospatialPose.getHorizontalAccuracy(),
+                                geospatialPose.getHeadingAccuracy(),
+                                cameraTranslation,
+                                cameraZAxis,
+                                resolvedAnchorTranslation,
+                                resolvedAnchorZAxis,
+                                System.currentTimeMillis()));
+            }
+            // Stopped anchors were released or detached, and are not cached.
+            uncachedAnchors.remove(i);
+            uncachedCloudAnchorIds.remove(i);
+        }
+    }
 
-            runOnUiThread(() -> runOnUiThread(() -> userMessageText.setText(R.string.geospatial_pose_not_tracking)));
+    private void openResolvedAnchorCache() {
+        File file = new File(getFilesDir(), RESOLVED_ANCHOR_CACHE_FILE_NAME);
+        try {
+            resolvedAnchorCache = ResolvedAnchorCache.open(file);
+        } catch (IOException e) {
+            // The cache only places the anchors sooner, so it is simply started again.
+            Log.e(TAG, "Could not open the resolved anchor cache, starting an empty one", e);
+            resolvedAnchorCache = ResolvedAnchorCache.create(file);
         }
     }
 
-    private void updateFeatureMapQualityUi(@NonNull Camera camera, float[] colorCorrectionRgba, Earth earth) {
-        Pose featureMapQualityUiPose = anchorPose.compose(featureMapQualityUi.getUiTransform());
-        float[] cameraUiFrame =
-                featureMapQualityUiPose.inverse().compose(camera.getPose()).getTranslation();
-        double distance = Math.hypot(/*dx=*/ cameraUiFrame[0], /*dz=*/ cameraUiFrame[2]);
+    private void evictResolvedAnchorPoses(double latitude, double longitude) {
+        if (resolvedAnchorCache != null) {
+            int evicted = resolvedAnchorCache.evict(
+                    System.currentTimeMillis(),
+                    latitude,
+                    longitude,
+                    MAX_RESOLVED_ANCHOR_AGE_MILLIS,
+                    MAX_RESOLVED_ANCHOR_DISTANCE_METERS);
+            Log.i(TAG, "Evicted " + evicted + " resolved anchor poses, "
+                    + resolvedAnchorCache.size() + " left");
+        }
+    }
 
-        if (!qualityObtained)
-            runOnUiThread(
-                    () -> {
-                        if (distance < MIN_DISTANCE) {
-                            userMessageText.setText(R.string.too_close);
-                        } else if (distance > MAX_DISTANCE) {
-                            userMessageText.setText(R.string.too_far);
-                        } else {
-                            userMessageText.setText(R.string.hosting_save);
+    private void saveResolvedAnchorCache() {
+        if (resolvedAnchorCache != null) {
+            try {
+                resolvedAnchorCache.save();
+            } catch (IOException e) {
+                Log.e(TAG, "Could not save the resolved anchor cache", e);
+            }
+        }
+    }
+
+    /**
+     * Loads the points of interest of {@code map} around the device, and hands them to the OpenGL
+     * thread, then keeps them up to date.
+     *
+     * <p>The POIs are read from their on-device copy, so that they are available at once and
+     * offline. The first time, while the copy is empty, they are read from Firestore instead. The
+     * POIs stored without the indexed fields are updated first, once per install.
+     */
+    private void loadPois(PoiMap map, double latitude, double longitude) {
+        poiExecutor.execute(() -> {
+            File storeFile = new File(
+                    getFilesDir(), String.format(Locale.US, POI_STORE_FILE_NAME_FORMAT, map.id));
+            try {
+                poiStore = PoiStore.open(storeFile);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not open the POI store", e);
+                return;
+            }
+            loadedPoiMap = map;
+            if (poiStore.size() > 0) {
+                List<Poi> pois =
+                        poiStore.findNearest(
+                                latitude, longitude, POI_LOAD_RADIUS_METERS, MAX_LOADED_POIS);
+                Log.i(TAG, "Loaded " + pois.size() + " POIs of " + map.name + " from the store");
+                setPoisFromGlThread(map, pois);
+                startPoiSync(map);
+                return;
+            }
+            PoiProximityQuery query = new PoiProximityQuery(db.collection(map.getCollectionPath()));
+            String backfilledKey = POI_INDEX_FIELDS_BACKFILLED_KEY + map.id;
+            Task<?> backfill;
+            if (sharedPreferences.getBoolean(backfilledKey, false)) {
+                backfill = Tasks.forResult(0);
+            } else {
+                backfill = query.backfillIndexFields().addOnSuccessListener(updated -> {
+                    Log.i(TAG, "Added the indexed fields of " + updated + " POIs");
+                    sharedPreferences.edit().putBoolean(backfilledKey, true).apply();
+                });
+            }
+            backfill.continueWithTask(
+                            task -> query.findNearest(
+                                    latitude, longitude, POI_LOAD_RADIUS_METERS, MAX_LOADED_POIS))
+                    .addOnSuccessListener(poiExecutor, pois -> {
+                        if (loadedPoiMap != map) {
+                            // The device left the map meanwhile.
+                            return;
+                        }
+                        Log.i(TAG, "Loaded " + pois.size() + " POIs of " + map.name);
+                        setPoisFromGlThread(map, pois);
+                        startPoiSync(map);
+                    })
+                    .addOnFailureListener(e -> Log.e(TAG, "Could not load the POIs", e));
+        });
+    }
+
+    /**
+     * Hands the POIs loaded for {@code map} to the streamer on the OpenGL thread, unless the device
+     * left the map before they got there.
+     */
+    private void setPoisFromGlThread(PoiMap map, List<Poi> pois) {
+        surfaceView.queueEvent(() -> {
+            if (activePoiMap != map) {
+                return;
+            }
+            poiStreamer.setPois(pois);
+        });
+    }
+
+    /** Syncs the changes to the POIs into the store, and hands them to the OpenGL thread. */
+    private void startPoiSync(PoiMap map) {
+        poiSync = new PoiSync(
+                db.collection(map.getCollectionPath()),
+                poiStore,
+                poiExecutor,
+                (updated, deletedIds) -> {
+                    Log.i(TAG, "Synced " + updated.size() + " POIs, deleted " + deletedIds.size());
+                    surfaceView.queueEvent(() -> {
+                        if (activePoiMap != map) {
+                            // The device left the map meanwhile.
+                            return;
+                        }
+                        for (Poi poi : updated) {
+                            poiStreamer.putPoi(poi);
+                        }
+                        for (String id : deletedIds) {
+                            poiStreamer.removePoi(id);
                         }
                     });
+                });
+        poiSync.start();
+    }
 
-        long now = SystemClock.uptimeMillis();
-        if (now - lastEstimateTimestampMillis > 500
-                && FeatureMapQualityUi.isAnchorInView(anchorTranslation, viewMatrix, projectionMatrix)) {
-            lastEstimateTimestampMillis = now;
-            FeatureMapQuality currentQuality =
-                    session.estimateFeatureMapQualityForHosting(camera.getPose());
-            featureMapQualityUi.updateQualityForViewpoint(cameraUiFrame, currentQuality);
-            float averageQuality = featureMapQualityUi.computeOverallQuality();
-            Log.i(TAG, "History of average mapping quality calls: " + averageQuality);
+    private void closePoiStore() {
+        loadedPoiMap = null;
+        if (poiSync != null) {
+            poiSync.stop();
+            poiSync = null;
+        }
+        if (poiStore != null) {
+            try {
+                poiStore.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Could not close the POI store", e);
+            }
+            poiStore = null;
+        }
+    }
 
-            qualityObtained = averageQuality >= QUALITY_THRESHOLD;
+    /** Returns the repository of the POIs of {@code map}, opening it on first use. */
+    private PoiRepository getPoiRepository(PoiMap map) {
+        PoiRepository poiRepository = poiRepositories.get(map.id);
+        if (poiRepository == null) {
+            poiRepository = new FirestorePoiRepository(
+                    db.collection(map.getCollectionPath()),
+                    new File(
+                            getFilesDir(),
+                            String.format(Locale.US, POI_WRITE_QUEUE_FILE_NAME_FORMAT, map.id)));
+            poiRepositories.put(map.id, poiRepository);
+        }
+        return poiRepository;
+    }
 
-            if (qualityObtained && state == State.LOCALIZED) {
+    private void updateFeatureMapQualityUi(@NonNull Camera camera, float[] colorCorrectionRgba, Earth earth) {
+        // The estimates are made on the worker thread, and applied to the UI for the viewpoint
+        // they were requested from, a few frames later.
+        long now = SystemClock.uptimeMillis();
+        if (hostingQualityFlow.beginFrame(
+                anchorMatrix, anchorTranslation, viewMatrix, frustumCuller, now)) {
+            hostingQualityFlow.submit(camera.getPose(), System.nanoTime());
+        }
+        boolean shouldHost =
+                hostingQualityFlow.endFrame(
+                        localization.getState() == State.LOCALIZED, now, System.nanoTime());
+        FeatureMapQuality polledQuality = hostingQualityFlow.getPolledQuality();
+        if (polledQuality != null) {
+            if (sessionFramePending) {
+                SessionFrameCapture.captureFeatureMapQuality(sessionFrame, polledQuality);
+            }
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "History of average mapping quality calls: "
+                        + hostingQualityFlow.getOverallQuality());
+            }
+        }
 
-                // Host the anchor automatically if the FeatureMapQuality threshold is reached.
-                Log.i(TAG, "FeatureMapQuality has reached SUFFICIENT-GOOD, triggering hostCloudAnchor()");
-                synchronized (anchorLock) {
-                    hostedAnchor = true;
-                    cloudAnchorManager.hostCloudAnchor(anchor, new HostListener(earth.getCameraGeospatialPose()));
-                }
-                runOnUiThread(
-                        () -> {
-                            userMessageText.setText(R.string.hosting_processing);
-                            debugText.setText(R.string.debug_hosting_processing);
-                        });
+        if (!hostingQualityFlow.isQualityObtained()) {
+            float[] cameraUiFrame = hostingQualityFlow.getCameraPositionInUiFrame();
+            double distance = Math.hypot(/*dx=*/ cameraUiFrame[0], /*dz=*/ cameraUiFrame[2]);
+            if (distance < MIN_DISTANCE) {
+                showUserMessageFromGlThread(R.string.too_close);
+            } else if (distance > MAX_DISTANCE) {
+                showUserMessageFromGlThread(R.string.too_far);
+            } else {
+                showUserMessageFromGlThread(R.string.hosting_save);
             }
         }
 
+        if (shouldHost) {
+            // Host the anchor automatically if the FeatureMapQuality threshold is reached.
+            Log.i(TAG, "FeatureMapQuality has reached SUFFICIENT-GOOD, triggering hostCloudAnchor()");
+            Log.i(TAG, "Feature map quality " + hostingQualityFlow.getStatsSummary());
+            synchronized (anchorLock) {
+                hostedAnchor = true;
+                cloudAnchorManager.hostCloudAnchor(anchor, new HostListener(earth.getCameraGeospatialPose()));
+            }
+            runOnUiThread(
+                    () -> {
+                        userMessageText.setText(R.string.hosting_processing);
+                        debugText.setText(R.string.debug_hosting_processing);
+                    });
+        }
+
         // Render the mapping quality UI.
-        featureMapQualityUi.drawUi(anchorPose, viewMatrix, projectionMatrix, colorCorrectionRgba);
+        if (featureMapQualityUi.isVisible(frustumCuller)) {
+            featureMapQualityUi.drawUi(viewMatrix, projectionMatrix, colorCorrectionRgba, now);
+        }
     }
 
     private void drawAnchor(float[] anchorMatrix, float scaleFactor, float[] colorCorrectionRgba) {
@@ -636,6 +1304,77 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
         anchorObject.draw(viewMatrix, projectionMatrix, colorCorrectionRgba);
     }
 
+    /**
+     * Updates the POI anchors that ARCore reports as updated by this frame, instead of querying the
+     * pose of all of them.
+     */
+    @GuardedBy("anchorLock")
+    private void updatePoiAnchors(Frame frame) {
+        if (poiAnchors.getCount() == 0) {
+            return;
+        }
+        for (Anchor updatedAnchor : frame.getUpdatedAnchors()) {
+            // The anchor being hosted is not a POI anchor.
+            int index = poiAnchors.indexOf(updatedAnchor);
+            if (index >= 0) {
+                updatePoiAnchor(index, updatedAnchor);
+            }
+        }
+        poiAnchors.update();
+    }
+
+    /** Copies the pose and tracking state of the POI anchor at {@code index} to the scene. */
+    @GuardedBy("anchorLock")
+    private void updatePoiAnchor(int index, Anchor poiAnchor) {
+        if (poiAnchor.getTrackingState() == TrackingState.TRACKING) {
+            Pose pose = poiAnchor.getPose();
+            pose.getTranslation(poiAnchorPose, 0);
+            pose.getRotationQuaternion(poiAnchorPose, 3);
+            poiAnchors.setPose(index, poiAnchorPose, 0);
+        } else {
+            poiAnchors.setNotTracking(index);
+        }
+    }
+
+    /**
+     * Adds an anchor to the POI anchors with its current pose, as it is then only updated when
+     * ARCore reports it changed, which an anchor resolved or hosted earlier may no longer be.
+     */
+    @GuardedBy("anchorLock")
+    private void addPoiAnchor(Anchor poiAnchor) {
+        updatePoiAnchor(poiAnchors.add(poiAnchor), poiAnchor);
+    }
+
+    /** Draws the visible POI anchors in a single batch. */
+    @GuardedBy("anchorLock")
+    private void drawPoiAnchors(float scaleFactor, float[] colorCorrectionRgba) {
+        float boundingRadius = FeatureMapQualityTracker.ANCHOR_BOUNDING_RADIUS * scaleFactor;
+        int visibleCount = poiAnchors.collectVisible(frustumCuller, boundingRadius);
+        anchorObject.drawInstances(
+                poiAnchors.getModelMatrices(),
+                poiAnchors.getVisibleIndices(),
+                visibleCount,
+                scaleFactor,
+                viewMatrix,
+                projectionMatrix,
+                colorCorrectionRgba,
+                POI_ANCHOR_COLOR);
+    }
+
+    /**
+     * Moves a hosted anchor to the POI anchors, in place of the current anchor, so that the next
+     * anchor can be placed.
+     */
+    private void addHostedAnchor(Anchor cloudAnchor) {
+        synchronized (anchorLock) {
+            if (anchor != null) {
+                anchor.detach();
+            }
+            anchor = null;
+            addPoiAnchor(cloudAnchor);
+        }
+    }
+
     /**
      * Sets the new value of the current anchor. Detaches the old anchor, if it was non-null.
      */
@@ -656,6 +1395,141 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
             throw new AssertionError("Could not save the user preference to SharedPreferences!");
         }
         createSession();
+        // Rendering was not scheduled while there was no session.
+        framePacingHelper.onResume();
+    }
+
+    /**
+     * Creates the anchors of the points of interest, and keeps them in the POI anchors: the cloud
+     * anchor of the POI if the {@link PoiPrefetcher} resolved it, or else an Earth anchor where it
+     * was last resolved, from the {@link ResolvedAnchorCache}, or at the geospatial pose of the
+     * device when it was hosted. Called on the OpenGL thread.
+     */
+    private final class PoiAnchorFactory implements PoiStreamer.AnchorFactory<Anchor> {
+        @Override
+        public Anchor createAnchor(Poi poi) {
+            Anchor resolvedAnchor = poiPrefetcher.takeAnchor(poi.id);
+            if (resolvedAnchor != null) {
+                synchronized (anchorLock) {
+                    addPoiAnchor(resolvedAnchor);
+                }
+                return resolvedAnchor;
+            }
+            Earth earth = session.getEarth();
+            if (earth == null || earth.getTrackingState() != TrackingState.TRACKING) {
+                return null;
+            }
+            ResolvedAnchorCache cache = resolvedAnchorCache;
+            ResolvedAnchorCache.Entry cached =
+                    cache != null && poi.anchorId != null ? cache.get(poi.anchorId) : null;
+            // The heading of the +Z axis of the anchor: that of the anchor where it was resolved,
+            // or the opposite of the heading of the camera that hosted it.
+            double heading = cached != null ? cached.heading : poi.heading + 180.0;
+            // Rotates the anchor about the up axis, for its +Z axis to point to the heading.
+            double angle = Math.toRadians(180.0 - heading);
+            Anchor poiAnchor =
+                    earth.createAnchor(
+                            cached != null ? cached.latitude : poi.latitude,
+                            cached != null ? cached.longitude : poi.longitude,
+                            cached != null ? cached.altitude : poi.altitude,
+                            0.0f,
+                            (float) Math.sin(angle / 2),
+                            0.0f,
+                            (float) Math.cos(angle / 2));
+            synchronized (anchorLock) {
+                addPoiAnchor(poiAnchor);
+            }
+            return poiAnchor;
+        }
+
+        @Override
+        public void detachAnchor(Poi poi, Anchor poiAnchor) {
+            synchronized (anchorLock) {
+                int index = poiAnchors.indexOf(poiAnchor);
+                if (index >= 0) {
+                    poiAnchors.remove(index);
+                }
+            }
+            poiAnchor.detach();
+            // The cloud anchor of the POI is resolved again, in case the device comes back.
+            poiPrefetcher.onAnchorDetached(poi.id);
+        }
+    }
+
+    /**
+     * Resolves the cloud anchors of the POIs for the {@link PoiPrefetcher}, through the {@link
+     * CloudAnchorManager}. Only accessed on the OpenGL thread.
+     */
+    private final class PoiResolver implements PoiPrefetcher.Resolver<Anchor> {
+        private final Map<String, ResolveListener> listeners = new HashMap<>();
+
+        @Override
+        public void resolve(Poi poi, float priority) {
+            ResolveListener listener = new ResolveListener(poi);
+            listeners.put(poi.id, listener);
+            cloudAnchorManager.resolveCloudAnchor(poi.anchorId, priority, listener);
+        }
+
+        @Override
+        public void cancel(Poi poi) {
+            ResolveListener listener = listeners.remove(poi.id);
+            if (listener != null && cloudAnchorManager != null) {
+                cloudAnchorManager.cancelCloudAnchor(listener);
+            }
+        }
+
+        @Override
+        public void release(Anchor resolvedAnchor) {
+            resolvedAnchor.detach();
+        }
+
+        /** Passes a resolved anchor, or null, to the prefetcher. */
+        private void onResolved(ResolveListener listener, Anchor resolvedAnchor) {
+            Poi poi = listener.poi;
+            if (listeners.get(poi.id) == listener) {
+                listeners.remove(poi.id);
+            }
+            if (poiPrefetcher.onResolved(poi.id, resolvedAnchor, System.nanoTime())) {
+                uncachedCloudAnchorIds.add(poi.anchorId);
+                uncachedAnchors.add(resolvedAnchor);
+                // Replaces the Earth anchor of the POI, if it has one already.
+                poiStreamer.detachAnchor(poi.id);
+                Log.i(TAG, "Prefetched POI anchors: " + poiPrefetcher.getStatsSummary());
+            }
+        }
+    }
+
+    /* Listens for the cloud anchor of a POI, resolved ahead of time. */
+    private final class ResolveListener implements CloudAnchorManager.CloudAnchorListener {
+        private final Poi poi;
+
+        ResolveListener(Poi poi) {
+            this.poi = poi;
+        }
+
+        @Override
+        public void onComplete(Anchor resolvedAnchor) {
+            CloudAnchorState state = resolvedAnchor.getCloudAnchorState();
+            if (state.isError()) {
+                Log.w(TAG, "Error resolving the cloud anchor of POI " + poi.id + ": " + state);
+                resolvedAnchor.detach();
+                surfaceView.queueEvent(() -> poiResolver.onResolved(this, null));
+            } else {
+                surfaceView.queueEvent(() -> poiResolver.onResolved(this, resolvedAnchor));
+            }
+        }
+
+        @Override
+        public void onTimeout() {
+            surfaceView.queueEvent(() -> poiResolver.onResolved(this, null));
+        }
+
+        @Override
+        public void onFailed(RuntimeException error) {
+            Log.w(TAG, "Could not resolve the cloud anchor of POI " + poi.id, error);
+            // Frees the prefetch slot of the POI, whose anchor is resolved again later.
+            surfaceView.queueEvent(() -> poiResolver.onResolved(this, null));
+        }
     }
 
     /* Listens for a hosted anchor. */
@@ -669,23 +1543,46 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
 
         @Override
         public void onComplete(Anchor anchor) {
-            runOnUiThread(
-                    () -> {
-                        CloudAnchorState state = anchor.getCloudAnchorState();
-                        if (state.isError()) {
-                            Log.e(TAG, "Error hosting a cloud anchor, state " + state);
-                            userMessageText.setText(getString(R.string.hosting_error, state));
-                            return;
-                        }
-                        Preconditions.checkState(
-                                cloudAnchorId == null, "The cloud anchor ID cannot have been set before.");
-                        cloudAnchorId = anchor.getCloudAnchorId();
-                        setNewAnchor(anchor);
-                        Log.i(TAG, "Anchor " + cloudAnchorId + " created.");
-                        userMessageText.setText(getString(R.string.hosting_success));
-                        debugText.setText(getString(R.string.debug_hosting_success, cloudAnchorId));
-                        saveAnchorWithNickname();
-                    });
+            CloudAnchorState state = anchor.getCloudAnchorState();
+            if (state.isError()) {
+                Log.e(TAG, "Error hosting a cloud anchor, state " + state);
+                userMessageText.setText(getString(R.string.hosting_error, state));
+                return;
+            }
+            Preconditions.checkState(
+                    cloudAnchorId == null, "The cloud anchor ID cannot have been set before.");
+            cloudAnchorId = anchor.getCloudAnchorId();
+            addHostedAnchor(anchor);
+            Log.i(TAG, "Anchor " + cloudAnchorId + " created.");
+            userMessageText.setText(getString(R.string.hosting_success));
+            debugText.setText(getString(R.string.debug_hosting_success, cloudAnchorId));
+            saveAnchorWithNickname();
+        }
+
+        @Override
+        public void onTimeout() {
+            Log.e(TAG, "Timed out hosting a cloud anchor");
+            dropAnchor();
+            userMessageText.setText(R.string.hosting_timeout);
+        }
+
+        @Override
+        public void onFailed(RuntimeException error) {
+            Log.e(TAG, "Could not host a cloud anchor", error);
+            dropAnchor();
+            userMessageText.setText(getString(R.string.hosting_error, error.getMessage()));
+        }
+
+        /** Drops the anchor, whose hosting stopped, for another one to be placed. */
+        private void dropAnchor() {
+            synchronized (anchorLock) {
+                if (anchor != null) {
+                    anchor.detach();
+                }
+                anchor = null;
+                hostedAnchor = false;
+            }
+            debugText.setText(R.string.debug_hosting_place_anchor);
         }
 
         /**
@@ -694,18 +1591,31 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
         private void onAnchorNameEntered(String anchorNickname) {
             userMessageText.setVisibility(View.GONE);
 
-            Map<String, Object> point = new HashMap<>();
-
-            point.put("anchorId", cloudAnchorId);
-            point.put("altitude", geospatialPose.getAltitude());
-            point.put("latitude", geospatialPose.getLatitude());
-            point.put("longitude", geospatialPose.getLongitude());
-            point.put("heading", geospatialPose.getHeading());
-            point.put("name", anchorNickname);
-
-            db.collection("maps/fisat/poi").add(point)
-                    .addOnSuccessListener((d) -> debugText.setText(getString(R.string.debug_hosting_success, anchorNickname)))
-                    .addOnFailureListener((e) -> debugText.setText(e.getLocalizedMessage()));
+            PoiMap map = PoiMap.find(
+                    poiMaps, geospatialPose.getLatitude(), geospatialPose.getLongitude());
+            if (map == null) {
+                debugText.setText(R.string.debug_hosting_no_map);
+                return;
+            }
+            PoiRepository poiRepository = getPoiRepository(map);
+            Poi poi =
+                    new Poi(
+                            poiRepository.newId(),
+                            cloudAnchorId,
+                            anchorNickname,
+                            geospatialPose.getLatitude(),
+                            geospatialPose.getLongitude(),
+                            geospatialPose.getAltitude(),
+                            geospatialPose.getHeading());
+            // The write is batched with the next POIs hosted, and the listener runs in the
+            // background.
+            poiRepository.put(poi, (id, error) -> runOnUiThread(() -> {
+                if (error == null) {
+                    debugText.setText(getString(R.string.debug_hosting_success, anchorNickname));
+                } else {
+                    debugText.setText(error.getLocalizedMessage());
+                }
+            }));
         }
 
         private void saveAnchorWithNickname() {
@@ -5,64 +5,224 @@ package com.google.ar.core.examples.java.persistentcloudanchor;
 import com.google.ar.core.Anchor;
 import com.google.ar.core.Anchor.CloudAnchorState;
 import com.google.ar.core.Session;
+import com.google.ar.core.examples.java.persistentcloudanchor.CloudAnchorScheduler.Kind;
 import com.google.common.base.Preconditions;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A helper class to handle all the Cloud Anchors logic, and add a callback-like mechanism on top of
  * the existing ARCore API.
+ *
+ * <p>At most {@link #MAX_ACTIVE_HOSTS} host and {@link #MAX_ACTIVE_RESOLVES} resolve operations
+ * run at a time, the other ones are queued by priority. Operations still in progress after {@link
+ * #OPERATION_TIMEOUT_SECONDS} are cancelled, and those that fail to start are reported to their
+ * listeners as well.
+ *
+ * <p>The listeners are invoked on the executor given to the constructor, never on the thread
+ * calling {@link #onUpdate()} nor with the lock of the manager held: the completed operations are
+ * queued in a lock-free queue, which is drained on the executor. A slow listener thus cannot stall
+ * the rendering, and listeners may call the manager.
  */
 class CloudAnchorManager {
 
-  /** Listener for the results of a host operation. */
+  /** Listener for the results of a host or resolve operation, invoked on the listener executor. */
   interface CloudAnchorListener {
 
     /** This method is invoked when the results of a Cloud Anchor operation are available. */
     void onComplete(Anchor anchor);
+
+    /** This method is invoked when a Cloud Anchor operation timed out, and was cancelled. */
+    void onTimeout();
+
+    /**
+     * This method is invoked when a Cloud Anchor operation could not be started, such as when the
+     * session is paused.
+     */
+    void onFailed(RuntimeException error);
   }
 
+  /** Priority of the operations submitted without one, started before any prioritized one. */
+  static final float DEFAULT_PRIORITY = 0;
+
+  static final int MAX_ACTIVE_HOSTS = 2;
+  static final int MAX_ACTIVE_RESOLVES = 8;
+  static final long OPERATION_TIMEOUT_SECONDS = 60;
+
+  private static final CloudAnchorScheduler.Operations<Anchor> OPERATIONS =
+      new CloudAnchorScheduler.Operations<Anchor>() {
+        @Override
+        public boolean isInProgress(Anchor anchor) {
+          return !isReturnableState(anchor.getCloudAnchorState());
+        }
+
+        @Override
+        public void cancel(Anchor anchor) {
+          // Detaching the anchor cancels its host or resolve operation.
+          anchor.detach();
+        }
+      };
+
   private final Session session;
-  private final Map<Anchor, CloudAnchorListener> pendingAnchors = new HashMap<>();
+  private final Executor listenerExecutor;
+  // Listener invocations, queued by onUpdate() and run on listenerExecutor.
+  private final Queue<Runnable> events = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean deliveryScheduled = new AtomicBoolean();
+  private final CloudAnchorScheduler<Anchor> scheduler =
+      new CloudAnchorScheduler<>(
+          OPERATIONS,
+          MAX_ACTIVE_HOSTS,
+          MAX_ACTIVE_RESOLVES,
+          TimeUnit.SECONDS.toNanos(OPERATION_TIMEOUT_SECONDS));
 
-  CloudAnchorManager(Session session) {
+  /**
+   * @param listenerExecutor runs the listeners, such as the UI thread or a background executor.
+   */
+  CloudAnchorManager(Session session, Executor listenerExecutor) {
     this.session = Preconditions.checkNotNull(session);
+    this.listenerExecutor = Preconditions.checkNotNull(listenerExecutor);
   }
 
   /** Hosts an anchor. The {@code listener} will be invoked when the results are available. */
-  synchronized void hostCloudAnchor(Anchor anchor, CloudAnchorListener listener) {
+  void hostCloudAnchor(Anchor anchor, CloudAnchorListener listener) {
+    hostCloudAnchor(anchor, DEFAULT_PRIORITY, listener);
+  }
+
+  /**
+   * Hosts an anchor, after the queued operations of lower {@code priority} values. The {@code
+   * listener} will be invoked when the results are available.
+   */
+  void hostCloudAnchor(Anchor anchor, float priority, CloudAnchorListener listener) {
     Preconditions.checkNotNull(listener, "The listener cannot be null.");
-    // Creating a Cloud Anchor with lifetime  = 1 day. This is configurable up to 365 days.
-    Anchor newAnchor = session.hostCloudAnchorWithTtl(anchor, /* ttlDays= */ 1);
-    pendingAnchors.put(newAnchor, listener);
+    synchronized (this) {
+      scheduler.submit(
+          Kind.HOST,
+          priority,
+          // Creating a Cloud Anchor with lifetime  = 1 day. This is configurable up to 365 days.
+          () -> session.hostCloudAnchorWithTtl(anchor, /* ttlDays= */ 1),
+          new QueuedCallback(listener),
+          System.nanoTime());
+    }
+    scheduleDelivery();
   }
 
   /** Resolves an anchor. The {@code listener} will be invoked when the results are available. */
-  synchronized void resolveCloudAnchor(String anchorId, CloudAnchorListener listener) {
+  void resolveCloudAnchor(String anchorId, CloudAnchorListener listener) {
+    resolveCloudAnchor(anchorId, DEFAULT_PRIORITY, listener);
+  }
+
+  /**
+   * Resolves an anchor, after the queued operations of lower {@code priority} values, such as the
+   * distance to the anchor. The {@code listener} will be invoked when the results are available.
+   */
+  void resolveCloudAnchor(String anchorId, float priority, CloudAnchorListener listener) {
     Preconditions.checkNotNull(listener, "The listener cannot be null.");
-    Anchor newAnchor = session.resolveCloudAnchor(anchorId);
-    pendingAnchors.put(newAnchor, listener);
+    synchronized (this) {
+      scheduler.submit(
+          Kind.RESOLVE,
+          priority,
+          () -> session.resolveCloudAnchor(anchorId),
+          new QueuedCallback(listener),
+          System.nanoTime());
+    }
+    scheduleDelivery();
+  }
+
+  /**
+   * Cancels the operation of {@code listener}, whether queued or in progress. The listener may
+   * still be invoked, if the operation completed just before.
+   */
+  void cancelCloudAnchor(CloudAnchorListener listener) {
+    synchronized (this) {
+      scheduler.cancel(new QueuedCallback(listener), System.nanoTime());
+    }
+    scheduleDelivery();
   }
 
-  /** Should be called after a {@link Session#update()} call. */
-  synchronized void onUpdate() {
+  /**
+   * Should be called after a {@link Session#update()} call. Only queues the listeners of the
+   * completed operations, which are invoked later on the listener executor.
+   */
+  void onUpdate() {
     Preconditions.checkNotNull(session, "The session cannot be null.");
-    for (Iterator<Map.Entry<Anchor, CloudAnchorListener>> it = pendingAnchors.entrySet().iterator();
-        it.hasNext(); ) {
-      Map.Entry<Anchor, CloudAnchorListener> entry = it.next();
-      Anchor anchor = entry.getKey();
-      if (isReturnableState(anchor.getCloudAnchorState())) {
-        CloudAnchorListener listener = entry.getValue();
-        listener.onComplete(anchor);
-        it.remove();
-      }
+    int completed;
+    synchronized (this) {
+      completed = scheduler.update(System.nanoTime());
+    }
+    if (completed > 0) {
+      scheduleDelivery();
     }
   }
 
   /** Clears any currently registered listeners, so they won't be called again. */
   synchronized void clearListeners() {
-    pendingAnchors.clear();
+    scheduler.clear();
+    events.clear();
+  }
+
+  /** Returns the queue depths, latencies and timeouts of the host and resolve operations. */
+  synchronized String getStatsSummary() {
+    return scheduler.getStatsSummary();
+  }
+
+  /**
+   * Schedules the delivery of the queued events, if any. Called without the lock held, as the
+   * executor may run the delivery at once.
+   */
+  private void scheduleDelivery() {
+    // A single delivery is scheduled at a time, which runs all the queued events.
+    if (!events.isEmpty() && deliveryScheduled.compareAndSet(false, true)) {
+      listenerExecutor.execute(this::deliverEvents);
+    }
+  }
+
+  private void deliverEvents() {
+    // Cleared first, so that the events queued while delivering schedule another delivery.
+    deliveryScheduled.set(false);
+    Runnable event;
+    while ((event = events.poll()) != null) {
+      event.run();
+    }
+  }
+
+  /**
+   * Queues the invocations of a listener, instead of invoking it. Equal to the callbacks of the
+   * same listener, so that its operation can be cancelled.
+   */
+  private final class QueuedCallback implements CloudAnchorScheduler.Callback<Anchor> {
+    private final CloudAnchorListener listener;
+
+    QueuedCallback(CloudAnchorListener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof QueuedCallback && ((QueuedCallback) other).listener == listener;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(listener);
+    }
+
+    @Override
+    public void onComplete(Anchor anchor) {
+      events.add(() -> listener.onComplete(anchor));
+    }
+
+    @Override
+    public void onTimeout() {
+      events.add(listener::onTimeout);
+    }
+
+    @Override
+    public void onFailed(RuntimeException error) {
+      events.add(() -> listener.onFailed(error));
+    }
   }
 
   private static boolean isReturnableState(CloudAnchorState cloudState) {
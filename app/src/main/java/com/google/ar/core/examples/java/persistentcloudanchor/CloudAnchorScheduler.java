@@ -0,0 +1,314 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.profiling.LogLinearHistogram;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * Runs the cloud anchor operations, at most a few host and a few resolve operations at a time.
+ *
+ * <p>Operations beyond the limit of their kind are queued, and started in the order of their
+ * priority, such as the distance of the POI to the device, then in the order they were submitted.
+ * Only the operations in progress are polled on each {@link #update}, and those still in progress
+ * after the timeout are cancelled. An operation that fails to start is finished at once, through
+ * its callback, and the next queued one is started in its place.
+ *
+ * <p>The latency of the operations, from start to completion, and the time they waited in the queue
+ * are recorded per kind of operation. {@link CloudAnchorManager} synchronizes the calls.
+ *
+ * @param <A> the type of the handles of the operations in progress.
+ */
+class CloudAnchorScheduler<A> {
+
+  enum Kind {
+    HOST,
+    RESOLVE
+  }
+
+  /** Follows the operations in progress. */
+  interface Operations<A> {
+    /** Returns whether the operation of {@code handle} is still in progress. */
+    boolean isInProgress(A handle);
+
+    /** Cancels the operation of {@code handle}, which timed out. */
+    void cancel(A handle);
+  }
+
+  /** Starts an operation. */
+  interface Starter<A> {
+    /** Starts the operation, and returns its handle. Throws if it could not be started. */
+    A start();
+  }
+
+  /** Callback for the result of an operation. */
+  interface Callback<A> {
+    /** Invoked when the operation is no longer in progress, whether it succeeded or not. */
+    void onComplete(A handle);
+
+    /** Invoked instead of {@link #onComplete} when the operation timed out, and was cancelled. */
+    void onTimeout();
+
+    /** Invoked instead of {@link #onComplete} when the operation could not be started. */
+    void onFailed(RuntimeException error);
+  }
+
+  private static final class Operation<A> implements Comparable<Operation<A>> {
+    final float priority;
+    final long sequence;
+    final Starter<A> starter;
+    final Callback<A> callback;
+    final long submitNanos;
+    long startNanos;
+    A handle;
+    boolean timedOut;
+    RuntimeException startError;
+
+    Operation(
+        float priority,
+        long sequence,
+        Starter<A> starter,
+        Callback<A> callback,
+        long submitNanos) {
+      this.priority = priority;
+      this.sequence = sequence;
+      this.starter = starter;
+      this.callback = callback;
+      this.submitNanos = submitNanos;
+    }
+
+    @Override
+    public int compareTo(Operation<A> other) {
+      int byPriority = Float.compare(priority, other.priority);
+      return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+    }
+  }
+
+  private static final int KIND_COUNT = Kind.values().length;
+
+  private final Operations<A> operations;
+  private final int[] maxActive = new int[KIND_COUNT];
+  private final long timeoutNanos;
+  private long nextSequence;
+
+  // Per kind of operation.
+  private final List<PriorityQueue<Operation<A>>> queued = new ArrayList<>(KIND_COUNT);
+  private final List<List<Operation<A>>> active = new ArrayList<>(KIND_COUNT);
+  private final LogLinearHistogram[] latencyNanos = new LogLinearHistogram[KIND_COUNT];
+  private final LogLinearHistogram[] queueWaitNanos = new LogLinearHistogram[KIND_COUNT];
+  private final long[] timeoutCounts = new long[KIND_COUNT];
+  private final long[] startFailureCounts = new long[KIND_COUNT];
+
+  // Temporary list allocated here to reduce number of allocations for each frame.
+  private final List<Operation<A>> finished = new ArrayList<>();
+  private boolean invokingCallbacks;
+
+  /**
+   * @param maxActiveHosts the maximum number of host operations in progress at a time.
+   * @param maxActiveResolves the maximum number of resolve operations in progress at a time.
+   * @param timeoutNanos the time after which an operation in progress is cancelled.
+   */
+  CloudAnchorScheduler(
+      Operations<A> operations, int maxActiveHosts, int maxActiveResolves, long timeoutNanos) {
+    if (maxActiveHosts < 1 || maxActiveResolves < 1) {
+      throw new IllegalArgumentException(
+          "Invalid limits " + maxActiveHosts + ", " + maxActiveResolves);
+    }
+    this.operations = operations;
+    this.maxActive[Kind.HOST.ordinal()] = maxActiveHosts;
+    this.maxActive[Kind.RESOLVE.ordinal()] = maxActiveResolves;
+    this.timeoutNanos = timeoutNanos;
+    for (int i = 0; i < KIND_COUNT; i++) {
+      queued.add(new PriorityQueue<>());
+      active.add(new ArrayList<>());
+      latencyNanos[i] = new LogLinearHistogram();
+      queueWaitNanos[i] = new LogLinearHistogram();
+    }
+  }
+
+  /**
+   * Submits an operation, which is started at once if fewer than the limit of its kind are in
+   * progress, and queued otherwise. If it fails to start, its callback is invoked before this
+   * returns.
+   *
+   * @param priority operations of lower priority values are started first.
+   */
+  void submit(
+      Kind kind, float priority, Starter<A> starter, Callback<A> callback, long nowNanos) {
+    queued
+        .get(kind.ordinal())
+        .add(new Operation<>(priority, nextSequence++, starter, callback, nowNanos));
+    startQueued(kind, nowNanos);
+    invokeCallbacks();
+  }
+
+  /**
+   * Polls the operations in progress, invokes the callbacks of those completed or timed out, and
+   * starts queued operations in their place. Returns the number of operations finished, including
+   * those that failed to start.
+   */
+  int update(long nowNanos) {
+    for (Kind kind : Kind.values()) {
+      List<Operation<A>> kindActive = active.get(kind.ordinal());
+      for (int i = kindActive.size() - 1; i >= 0; i--) {
+        Operation<A> operation = kindActive.get(i);
+        boolean inProgress = operations.isInProgress(operation.handle);
+        if (inProgress && nowNanos - operation.startNanos < timeoutNanos) {
+          continue;
+        }
+        if (inProgress) {
+          operations.cancel(operation.handle);
+          operation.timedOut = true;
+          timeoutCounts[kind.ordinal()]++;
+        } else {
+          latencyNanos[kind.ordinal()].record(nowNanos - operation.startNanos);
+        }
+        kindActive.remove(i);
+        finished.add(operation);
+      }
+      startQueued(kind, nowNanos);
+    }
+    int finishedCount = finished.size();
+    invokeCallbacks();
+    return finishedCount;
+  }
+
+  /**
+   * Cancels the operation of {@code callback}, found by {@link Object#equals}, whether queued or in
+   * progress, without invoking the callback. Returns whether an operation was found. The callbacks
+   * of the queued operations that fail to start in its place are invoked before this returns.
+   */
+  boolean cancel(Callback<A> callback, long nowNanos) {
+    for (Kind kind : Kind.values()) {
+      List<Operation<A>> kindActive = active.get(kind.ordinal());
+      for (int i = 0; i < kindActive.size(); i++) {
+        Operation<A> operation = kindActive.get(i);
+        if (operation.callback.equals(callback)) {
+          operations.cancel(operation.handle);
+          kindActive.remove(i);
+          startQueued(kind, nowNanos);
+          invokeCallbacks();
+          return true;
+        }
+      }
+      for (Iterator<Operation<A>> it = queued.get(kind.ordinal()).iterator(); it.hasNext(); ) {
+        if (it.next().callback.equals(callback)) {
+          it.remove();
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** Drops the queued operations and forgets those in progress, without invoking callbacks. */
+  void clear() {
+    for (int i = 0; i < KIND_COUNT; i++) {
+      queued.get(i).clear();
+      active.get(i).clear();
+    }
+    finished.clear();
+  }
+
+  /** Returns the number of operations of {@code kind} waiting to be started. */
+  int getQueueDepth(Kind kind) {
+    return queued.get(kind.ordinal()).size();
+  }
+
+  /** Returns the number of operations of {@code kind} in progress. */
+  int getActiveCount(Kind kind) {
+    return active.get(kind.ordinal()).size();
+  }
+
+  /** Returns the times from start to completion of the operations of {@code kind}. */
+  LogLinearHistogram getLatencyHistogram(Kind kind) {
+    return latencyNanos[kind.ordinal()];
+  }
+
+  /** Returns the times the operations of {@code kind} waited in the queue before being started. */
+  LogLinearHistogram getQueueWaitHistogram(Kind kind) {
+    return queueWaitNanos[kind.ordinal()];
+  }
+
+  long getTimeoutCount(Kind kind) {
+    return timeoutCounts[kind.ordinal()];
+  }
+
+  long getStartFailureCount(Kind kind) {
+    return startFailureCounts[kind.ordinal()];
+  }
+
+  /** Returns the queue depths, latencies, timeouts and start failures of each kind of operation. */
+  String getStatsSummary() {
+    StringBuilder summary = new StringBuilder();
+    for (Kind kind : Kind.values()) {
+      LogLinearHistogram latency = latencyNanos[kind.ordinal()];
+      LogLinearHistogram queueWait = queueWaitNanos[kind.ordinal()];
+      summary.append(
+          String.format(
+              Locale.US,
+              "%s: %d queued, %d active, %d done, %d timed out, %d failed to start,"
+                  + " latency p50 %.0f ms, p99 %.0f ms, queue wait p50 %.0f ms, p99 %.0f ms\n",
+              kind,
+              getQueueDepth(kind),
+              getActiveCount(kind),
+              latency.getTotalCount(),
+              getTimeoutCount(kind),
+              getStartFailureCount(kind),
+              latency.getValueAtPercentile(50.0) / 1e6,
+              latency.getValueAtPercentile(99.0) / 1e6,
+              queueWait.getValueAtPercentile(50.0) / 1e6,
+              queueWait.getValueAtPercentile(99.0) / 1e6));
+    }
+    return summary.toString();
+  }
+
+  private void startQueued(Kind kind, long nowNanos) {
+    PriorityQueue<Operation<A>> kindQueued = queued.get(kind.ordinal());
+    List<Operation<A>> kindActive = active.get(kind.ordinal());
+    while (kindActive.size() < maxActive[kind.ordinal()] && !kindQueued.isEmpty()) {
+      Operation<A> operation = kindQueued.poll();
+      operation.startNanos = nowNanos;
+      queueWaitNanos[kind.ordinal()].record(nowNanos - operation.submitNanos);
+      try {
+        operation.handle = operation.starter.start();
+      } catch (RuntimeException e) {
+        // Finished through its callback, so that its owner does not wait for it forever, and the
+        // next queued operation is started in its place.
+        operation.startError = e;
+        startFailureCounts[kind.ordinal()]++;
+        finished.add(operation);
+        continue;
+      }
+      kindActive.add(operation);
+    }
+  }
+
+  /**
+   * Invokes the callbacks of the finished operations. Called last, so that the callbacks may submit
+   * or cancel operations: the operations finished meanwhile are appended, and invoked by this loop.
+   */
+  private void invokeCallbacks() {
+    if (invokingCallbacks) {
+      return;
+    }
+    invokingCallbacks = true;
+    try {
+      for (int i = 0; i < finished.size(); i++) {
+        Operation<A> operation = finished.get(i);
+        if (operation.startError != null) {
+          operation.callback.onFailed(operation.startError);
+        } else if (operation.timedOut) {
+          operation.callback.onTimeout();
+        } else {
+          operation.callback.onComplete(operation.handle);
+        }
+      }
+    } finally {
+      finished.clear();
+      invokingCallbacks = false;
+    }
+  }
+}
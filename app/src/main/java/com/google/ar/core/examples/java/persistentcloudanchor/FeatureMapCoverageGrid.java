@@ -0,0 +1,215 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.util.Arrays;
+
+/**
+ * Feature map quality of the viewpoints around an anchor, in a grid of cells over the hemisphere in
+ * front of the UI: by azimuth, one column per bar of the {@link FeatureMapQualityUi}, by elevation
+ * above the plane of the bars, and by distance to the anchor.
+ *
+ * <p>Each cell keeps the best and the most recent quality estimated from its viewpoints, as scores
+ * between 0 and 1 that decay once older than {@link #STALE_AFTER_MILLIS}, as the feature map seen
+ * long ago may no longer match the scene. The score of a cell is the higher of the two, so that an
+ * estimate from a poor viewpoint does not undo a better one of the same cell.
+ *
+ * <p>The score of a column is mostly the score of its best cell, so that one good viewpoint makes
+ * the direction good. The rest is the average score of its elevation bands, and that of its
+ * distance bands, each band scored by its best cell. A column thus only reaches the full score once
+ * it is seen from each elevation and each distance, which {@link #wouldImprove} asks for.
+ *
+ * <p>The cells are kept in primitive arrays, and none of the methods allocate.
+ */
+class FeatureMapCoverageGrid {
+  /** Bands of elevation, of equal angles from the plane of the bars to its normal. */
+  static final int ELEVATION_CELLS = 3;
+  /** Bands of distance, split at {@link #DISTANCE_SPLIT_METERS}. */
+  static final int DISTANCE_CELLS = 2;
+  /** Distance to the anchor from which the viewpoints are far ones. */
+  static final float DISTANCE_SPLIT_METERS = 1.0f;
+  /** Age from which the scores decay, so that those of a usual hosting session count fully. */
+  static final long STALE_AFTER_MILLIS = 60_000;
+  /** Time it takes the stale scores to lose half of their value. */
+  static final long DECAY_HALF_LIFE_MILLIS = 300_000;
+  /** Score of a cell or column never estimated. */
+  static final float NOT_ESTIMATED = -1.0f;
+  /** Weights of the best cell, of the elevation bands and of the distance bands in a column. */
+  static final float BEST_CELL_WEIGHT = 0.7f;
+  static final float ELEVATION_BANDS_WEIGHT = 0.15f;
+  static final float DISTANCE_BANDS_WEIGHT = 0.15f;
+
+  private static final int CELLS_PER_COLUMN = ELEVATION_CELLS * DISTANCE_CELLS;
+  private static final double ELEVATION_CELL_RADIANS = Math.PI / 2.0 / ELEVATION_CELLS;
+  private static final double DECAY_PER_MILLI = Math.log(2.0) / DECAY_HALF_LIFE_MILLIS;
+  private static final long NEVER = Long.MIN_VALUE;
+
+  private final int azimuthCells;
+  private final double azimuthCellRadians;
+
+  private final float[] bestScores;
+  private final long[] bestMillis;
+  private final float[] recentScores;
+  private final long[] recentMillis;
+
+  // Temporary arrays allocated here to reduce number of allocations for each frame.
+  private final float[] elevationBandScores = new float[ELEVATION_CELLS];
+  private final float[] distanceBandScores = new float[DISTANCE_CELLS];
+
+  /**
+   * @param azimuthCells the number of columns, over the half circle in front of the UI.
+   * @param azimuthCellRadians the angle of each column.
+   */
+  FeatureMapCoverageGrid(int azimuthCells, double azimuthCellRadians) {
+    this.azimuthCells = azimuthCells;
+    this.azimuthCellRadians = azimuthCellRadians;
+    int cellCount = azimuthCells * CELLS_PER_COLUMN;
+    bestScores = new float[cellCount];
+    bestMillis = new long[cellCount];
+    recentScores = new float[cellCount];
+    recentMillis = new long[cellCount];
+    clear();
+  }
+
+  int getAzimuthCellCount() {
+    return azimuthCells;
+  }
+
+  int getCellCount() {
+    return bestScores.length;
+  }
+
+  /**
+   * Returns the column facing the camera at ({@code x}, {@code z}) in the plane of the bars, in the
+   * UI coordinate frame. The column is out of range when the camera is behind the UI.
+   */
+  int computeAzimuthCell(float x, float z) {
+    // Negated, so that the columns in front of the UI, at negative z, have positive indices.
+    double rad = -Math.atan2(z, x);
+    return (int) Math.floor(rad / azimuthCellRadians);
+  }
+
+  /**
+   * Returns the cell of the viewpoint of the camera at ({@code x}, {@code y}, {@code z}), in the UI
+   * coordinate frame, or -1 if the camera is behind the UI.
+   */
+  int computeCellIndex(float x, float y, float z) {
+    int azimuth = computeAzimuthCell(x, z);
+    if (azimuth < 0 || azimuth >= azimuthCells) {
+      return -1;
+    }
+    float horizontal = (float) Math.sqrt(x * x + z * z);
+    // Both sides of the plane of the bars are the same viewpoints, for anchors on walls.
+    double elevationRad = Math.atan2(Math.abs(y), horizontal);
+    int elevation = Math.min(ELEVATION_CELLS - 1, (int) (elevationRad / ELEVATION_CELL_RADIANS));
+    int distance =
+        horizontal * horizontal + y * y < DISTANCE_SPLIT_METERS * DISTANCE_SPLIT_METERS ? 0 : 1;
+    return (azimuth * ELEVATION_CELLS + elevation) * DISTANCE_CELLS + distance;
+  }
+
+  /** Returns the column of {@code cell}. */
+  static int getAzimuthCell(int cell) {
+    return cell / CELLS_PER_COLUMN;
+  }
+
+  /** Records the score estimated from a viewpoint of {@code cell}. */
+  void record(int cell, float score, long nowMillis) {
+    recentScores[cell] = score;
+    recentMillis[cell] = nowMillis;
+    if (bestMillis[cell] == NEVER
+        || score >= decay(bestScores[cell], bestMillis[cell], nowMillis)) {
+      bestScores[cell] = score;
+      bestMillis[cell] = nowMillis;
+    }
+  }
+
+  /** Returns the decayed score of {@code cell}, or {@link #NOT_ESTIMATED}. */
+  float getCellScore(int cell, long nowMillis) {
+    if (recentMillis[cell] == NEVER) {
+      return NOT_ESTIMATED;
+    }
+    return Math.max(
+        decay(bestScores[cell], bestMillis[cell], nowMillis),
+        decay(recentScores[cell], recentMillis[cell], nowMillis));
+  }
+
+  /**
+   * Returns the score of {@code column}, from the decayed scores of its best cell and of its bands,
+   * or NOT_ESTIMATED.
+   */
+  float getColumnScore(int column, long nowMillis) {
+    if (!computeBandScores(column, nowMillis)) {
+      return NOT_ESTIMATED;
+    }
+    float best = 0.0f;
+    float elevationSum = 0.0f;
+    for (int elevation = 0; elevation < ELEVATION_CELLS; elevation++) {
+      best = Math.max(best, elevationBandScores[elevation]);
+      elevationSum += elevationBandScores[elevation];
+    }
+    float distanceSum = 0.0f;
+    for (int distance = 0; distance < DISTANCE_CELLS; distance++) {
+      distanceSum += distanceBandScores[distance];
+    }
+    return BEST_CELL_WEIGHT * best
+        + ELEVATION_BANDS_WEIGHT * elevationSum / ELEVATION_CELLS
+        + DISTANCE_BANDS_WEIGHT * distanceSum / DISTANCE_CELLS;
+  }
+
+  /**
+   * Returns whether an estimate of {@code score} from {@code cell} would raise the score of its
+   * column: the elevation band or the distance band of the cell has no viewpoint that good yet.
+   */
+  boolean wouldImprove(int cell, float score, long nowMillis) {
+    computeBandScores(getAzimuthCell(cell), nowMillis);
+    int cellInColumn = cell % CELLS_PER_COLUMN;
+    return elevationBandScores[cellInColumn / DISTANCE_CELLS] < score
+        || distanceBandScores[cellInColumn % DISTANCE_CELLS] < score;
+  }
+
+  /** Returns the average score of the columns, counting those never estimated as 0. */
+  float computeCoverage(long nowMillis) {
+    float sum = 0;
+    for (int column = 0; column < azimuthCells; column++) {
+      sum += Math.max(0.0f, getColumnScore(column, nowMillis));
+    }
+    return sum / azimuthCells;
+  }
+
+  /** Forgets all the estimates. */
+  void clear() {
+    Arrays.fill(bestScores, 0.0f);
+    Arrays.fill(bestMillis, NEVER);
+    Arrays.fill(recentScores, 0.0f);
+    Arrays.fill(recentMillis, NEVER);
+  }
+
+  /**
+   * Sets the scores of the elevation and distance bands of {@code column} to the highest decayed
+   * score of their cells, 0 for the cells never estimated. Returns whether any cell was estimated.
+   */
+  private boolean computeBandScores(int column, long nowMillis) {
+    Arrays.fill(elevationBandScores, 0.0f);
+    Arrays.fill(distanceBandScores, 0.0f);
+    boolean estimated = false;
+    int cell = column * CELLS_PER_COLUMN;
+    for (int elevation = 0; elevation < ELEVATION_CELLS; elevation++) {
+      for (int distance = 0; distance < DISTANCE_CELLS; distance++, cell++) {
+        float score = getCellScore(cell, nowMillis);
+        if (score == NOT_ESTIMATED) {
+          continue;
+        }
+        estimated = true;
+        elevationBandScores[elevation] = Math.max(elevationBandScores[elevation], score);
+        distanceBandScores[distance] = Math.max(distanceBandScores[distance], score);
+      }
+    }
+    return estimated;
+  }
+
+  private static float decay(float score, long estimatedMillis, long nowMillis) {
+    long staleMillis = nowMillis - estimatedMillis - STALE_AFTER_MILLIS;
+    if (staleMillis <= 0) {
+      return score;
+    }
+    return score * (float) Math.exp(-DECAY_PER_MILLI * staleMillis);
+  }
+}
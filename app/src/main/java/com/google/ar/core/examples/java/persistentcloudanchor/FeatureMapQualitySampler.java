@@ -0,0 +1,147 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.util.Locale;
+
+/**
+ * Decides when to estimate the feature map quality for hosting, from the motion of the camera
+ * around the anchor, instead of on a fixed timer.
+ *
+ * <p>An estimate is made when the camera enters another cell of the {@link FeatureMapCoverageGrid},
+ * or moves around the anchor by {@link #MIN_ANGLE_RADIANS} or {@link #MIN_DISTANCE_METERS} since
+ * the last estimate. While the camera stays still, the estimates back off exponentially, up to
+ * {@link #MAX_STATIONARY_INTERVAL_MILLIS}. No estimate is made from behind the UI, or from the
+ * cells whose elevation and distance bands have a GOOD viewpoint already, so that the estimates go
+ * to the viewpoints not covered yet.
+ *
+ * <p>The estimates saved against the fixed timer used before, and the time from the anchor being
+ * placed to the hosting quality being reached, are counted.
+ */
+class FeatureMapQualitySampler {
+  /** Minimum time between estimates, even while the camera moves. */
+  static final long MIN_INTERVAL_MILLIS = 250;
+  /** Interval of the fixed timer, which the saved estimates are counted against. */
+  static final long FIXED_INTERVAL_MILLIS = 500;
+  /** Maximum time between estimates while the camera stays still. */
+  static final long MAX_STATIONARY_INTERVAL_MILLIS = 4000;
+  /** Angle around the anchor the camera moves by to trigger an estimate. */
+  static final double MIN_ANGLE_RADIANS = Math.toRadians(5.0);
+  /** Distance the camera moves by to trigger an estimate. */
+  static final float MIN_DISTANCE_METERS = 0.15f;
+
+  private static final float COS_MIN_ANGLE = (float) Math.cos(MIN_ANGLE_RADIANS);
+  private static final long NOT_REACHED = -1;
+
+  private long startMillis;
+  private boolean hasEstimate;
+  private long lastEstimateMillis;
+  private int lastCell;
+  private final float[] lastPosition = new float[3];
+  private long stationaryIntervalMillis = FIXED_INTERVAL_MILLIS;
+  private long lastFixedTickMillis;
+  private int estimateCount;
+  private int fixedTimerCount;
+  private long timeToHostMillis = NOT_REACHED;
+
+  /** Starts over for a new anchor, placed at {@code nowMillis}. */
+  void reset(long nowMillis) {
+    startMillis = nowMillis;
+    hasEstimate = false;
+    stationaryIntervalMillis = FIXED_INTERVAL_MILLIS;
+    lastFixedTickMillis = nowMillis;
+    estimateCount = 0;
+    fixedTimerCount = 0;
+    timeToHostMillis = NOT_REACHED;
+  }
+
+  /**
+   * Returns whether to estimate the quality for the viewpoint of the camera, and counts the
+   * estimate if so. Called on each frame the anchor is in view.
+   *
+   * @param cameraPosition the position of the camera, in the UI coordinate frame.
+   * @param cell the cell of the viewpoint of the camera.
+   * @param cellNeedsQuality whether an estimate from the cell may improve the quality.
+   */
+  boolean shouldEstimate(
+      long nowMillis, float[] cameraPosition, int cell, boolean cellNeedsQuality) {
+    if (nowMillis - lastFixedTickMillis > FIXED_INTERVAL_MILLIS) {
+      lastFixedTickMillis = nowMillis;
+      fixedTimerCount++;
+    }
+    if (!cellNeedsQuality) {
+      return false;
+    }
+    long sinceLastMillis = nowMillis - lastEstimateMillis;
+    if (hasEstimate && sinceLastMillis < MIN_INTERVAL_MILLIS) {
+      return false;
+    }
+    if (!hasEstimate || cell != lastCell || hasMoved(cameraPosition)) {
+      stationaryIntervalMillis = FIXED_INTERVAL_MILLIS;
+    } else if (sinceLastMillis >= stationaryIntervalMillis) {
+      stationaryIntervalMillis =
+          Math.min(2 * stationaryIntervalMillis, MAX_STATIONARY_INTERVAL_MILLIS);
+    } else {
+      return false;
+    }
+    hasEstimate = true;
+    lastEstimateMillis = nowMillis;
+    lastCell = cell;
+    System.arraycopy(cameraPosition, 0, lastPosition, 0, 3);
+    estimateCount++;
+    return true;
+  }
+
+  /** Records the time the hosting quality was reached. */
+  void onHostingQualityReached(long nowMillis) {
+    if (timeToHostMillis == NOT_REACHED) {
+      timeToHostMillis = nowMillis - startMillis;
+    }
+  }
+
+  int getEstimateCount() {
+    return estimateCount;
+  }
+
+  /** Returns the number of estimates the fixed timer would have made in addition. */
+  int getSavedEstimateCount() {
+    return Math.max(0, fixedTimerCount - estimateCount);
+  }
+
+  /** Returns the time from the anchor being placed to the hosting quality, or -1. */
+  long getTimeToHostMillis() {
+    return timeToHostMillis;
+  }
+
+  String getStatsSummary() {
+    return String.format(
+        Locale.US,
+        "%d estimates, %d saved, time to host %d ms",
+        estimateCount,
+        getSavedEstimateCount(),
+        timeToHostMillis);
+  }
+
+  /** Returns whether the camera moved enough around the anchor since the last estimate. */
+  private boolean hasMoved(float[] cameraPosition) {
+    float dx = cameraPosition[0] - lastPosition[0];
+    float dy = cameraPosition[1] - lastPosition[1];
+    float dz = cameraPosition[2] - lastPosition[2];
+    if (dx * dx + dy * dy + dz * dz >= MIN_DISTANCE_METERS * MIN_DISTANCE_METERS) {
+      return true;
+    }
+    // The anchor is at the origin of the UI frame.
+    float dot =
+        cameraPosition[0] * lastPosition[0]
+            + cameraPosition[1] * lastPosition[1]
+            + cameraPosition[2] * lastPosition[2];
+    float lengths =
+        (float)
+            Math.sqrt(
+                (cameraPosition[0] * cameraPosition[0]
+                        + cameraPosition[1] * cameraPosition[1]
+                        + cameraPosition[2] * cameraPosition[2])
+                    * (lastPosition[0] * lastPosition[0]
+                        + lastPosition[1] * lastPosition[1]
+                        + lastPosition[2] * lastPosition[2]));
+    return dot < COS_MIN_ANGLE * lengths;
+  }
+}
@@ -0,0 +1,188 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.RigidTransform;
+import com.google.ar.core.examples.java.common.rendering.FrustumCuller;
+
+/**
+ * Keeps the feature map quality seen from the viewpoints around an anchor, in a {@link
+ * FeatureMapCoverageGrid} with one column per bar of the {@link FeatureMapQualityUi}, and places
+ * the UI coordinate frame relative to the anchor.
+ */
+class FeatureMapQualityTracker {
+  /** Average quality from which the anchor is hosted. */
+  static final float HOSTING_QUALITY_THRESHOLD = 0.6f;
+  /** Scores of the qualities, averaged over the columns of the grid. */
+  static final float SUFFICIENT_SCORE = 0.6f;
+  static final float GOOD_SCORE = 1.0f;
+  /** Radius of the bounding sphere of the anchor model, around the anchor. */
+  static final float ANCHOR_BOUNDING_RADIUS = 0.17f;
+
+  private static final float[] ROTATION_QUATERNION_180_Y =
+      new float[] {0, (float) Math.sin(Math.PI / 2.0), 0, (float) Math.cos(Math.PI / 2.0)};
+  private static final float[] ROTATION_QUATERNION_90_Y =
+      new float[] {0, (float) Math.sin(-Math.PI / 4.0), 0, (float) Math.cos(-Math.PI / 4.0)};
+  private static final float[] ROTATION_QUATERNION_90_X =
+      new float[] {(float) Math.sin(Math.PI / 4.0), 0, 0, (float) Math.cos(Math.PI / 4.0)};
+  // For anchors on horizontal planes. The UI coordinate frame is rotated 180 degrees with respect
+  // to the anchor frame to simplify calculations. The positive x-axis points to the left of the
+  // screen and the positive z-axis points away from the camera.
+  private static final float[] HORIZONTAL_UI_TRANSFORM_MATRIX =
+      toMatrix(makeRotation(ROTATION_QUATERNION_180_Y));
+  // For anchors on vertical planes. The UI coordinate frame rotated with respect to the anchor
+  // to face outwards toward the user such that the positive x-axis points to the left of the screen
+  // and the positive z-axis points away from the camera into the plane.
+  private static final float[] VERTICAL_UI_TRANSFORM_MATRIX =
+      toMatrix(
+          compose(makeRotation(ROTATION_QUATERNION_90_Y), makeRotation(ROTATION_QUATERNION_90_X)));
+
+  enum Quality {
+    UNKNOWN,
+    INSUFFICIENT,
+    SUFFICIENT,
+    GOOD
+  }
+
+  private final boolean isHorizontal;
+  private final FeatureMapCoverageGrid grid;
+  // Model matrix of the UI, updated by updateUiMatrix().
+  private final float[] uiMatrix = new float[16];
+
+  // Temporary arrays allocated here to reduce number of allocations for each frame.
+  private final float[] inverseUiMatrix = new float[16];
+  private final float[] cameraMatrix = new float[16];
+
+  FeatureMapQualityTracker(boolean isHorizontal, int numBars, double barSpacingRadians) {
+    this.isHorizontal = isHorizontal;
+    grid = new FeatureMapCoverageGrid(numBars, barSpacingRadians);
+  }
+
+  boolean isHorizontal() {
+    return isHorizontal;
+  }
+
+  /** Returns the model matrix of the UI set by the last {@link #updateUiMatrix(float[])}. */
+  float[] getUiMatrix() {
+    return uiMatrix;
+  }
+
+  /** Places the UI relative to the anchor, given as a model matrix. */
+  void updateUiMatrix(float[] anchorMatrix) {
+    float[] transform =
+        isHorizontal ? HORIZONTAL_UI_TRANSFORM_MATRIX : VERTICAL_UI_TRANSFORM_MATRIX;
+    Mat4.multiply(uiMatrix, 0, anchorMatrix, 0, transform, 0);
+    Mat4.invertRigid(inverseUiMatrix, 0, uiMatrix, 0);
+  }
+
+  /**
+   * Writes the position of the camera, in the UI coordinate frame, to the first 3 elements of
+   * {@code outPosition}. Both the view matrix and the UI matrix are rigid transforms, so they are
+   * inverted by transposing their rotations.
+   */
+  void getCameraPositionInUiFrame(float[] viewMatrix, float[] outPosition) {
+    // The camera position in world space is the translation of the inverse view matrix.
+    Mat4.invertRigid(cameraMatrix, 0, viewMatrix, 0);
+    Mat4.transformPoint(outPosition, 0, inverseUiMatrix, 0, cameraMatrix, 12);
+  }
+
+  int getBarCount() {
+    return grid.getAzimuthCellCount();
+  }
+
+  /** Returns the quality of {@code bar}, from the score of its column of the grid. */
+  Quality getQuality(int bar, long nowMillis) {
+    float score = grid.getColumnScore(bar, nowMillis);
+    if (score == FeatureMapCoverageGrid.NOT_ESTIMATED) {
+      return Quality.UNKNOWN;
+    } else if (score >= (SUFFICIENT_SCORE + GOOD_SCORE) / 2) {
+      return Quality.GOOD;
+    } else if (score >= SUFFICIENT_SCORE / 2) {
+      return Quality.SUFFICIENT;
+    }
+    return Quality.INSUFFICIENT;
+  }
+
+  /**
+   * Returns true if the anchor (specified by anchorTranslationWorld) is visible in the camera view
+   * (specified by the frustum of culler, updated for this frame); otherwise false. The whole
+   * bounding sphere of the anchor model is tested, so an anchor partly in view, or whose origin is
+   * behind the camera, is handled correctly.
+   */
+  boolean isAnchorInView(float[] anchorTranslationWorld, FrustumCuller culler) {
+    return culler.intersectsSphere(
+        anchorTranslationWorld[0],
+        anchorTranslationWorld[1],
+        anchorTranslationWorld[2],
+        ANCHOR_BOUNDING_RADIUS);
+  }
+
+  /**
+   * Returns the index of the bar facing the camera at {@code cameraPosition}, given in the UI
+   * coordinate frame. The index is out of range when the camera is behind the UI.
+   */
+  int computeBarIndex(float[] cameraPosition) {
+    return grid.computeAzimuthCell(cameraPosition[0], cameraPosition[2]);
+  }
+
+  /**
+   * Returns the cell of the grid of the viewpoint of the camera at {@code cameraPosition}, given in
+   * the UI coordinate frame, or -1 if the camera is behind the UI.
+   */
+  int computeCellIndex(float[] cameraPosition) {
+    return grid.computeCellIndex(cameraPosition[0], cameraPosition[1], cameraPosition[2]);
+  }
+
+  /**
+   * Returns whether an estimate from a viewpoint of {@code cell} may improve the quality: the cell
+   * is in front of the UI, and its elevation or its distance to the anchor has no GOOD viewpoint
+   * yet in its bar, even if the bar is GOOD already.
+   */
+  boolean needsQuality(int cell, long nowMillis) {
+    return cell >= 0 && grid.wouldImprove(cell, (SUFFICIENT_SCORE + GOOD_SCORE) / 2, nowMillis);
+  }
+
+  /** Records the quality estimated from the viewpoint of the camera at {@code cameraPosition}. */
+  void updateQualityForViewpoint(float[] cameraPosition, Quality quality, long nowMillis) {
+    int cell = computeCellIndex(cameraPosition);
+    if (cell >= 0 && quality != Quality.UNKNOWN) {
+      grid.record(cell, toScore(quality), nowMillis);
+    }
+  }
+
+  /**
+   * Returns the average score of the bars. A bar scores 0.0 for INSUFFICIENT viewpoints, 0.6 for
+   * SUFFICIENT ones, and 1.0 for GOOD ones just estimated, from each elevation and distance band;
+   * one GOOD viewpoint alone scores 0.825.
+   */
+  float computeOverallQuality(long nowMillis) {
+    return grid.computeCoverage(nowMillis);
+  }
+
+  private static float toScore(Quality quality) {
+    if (quality == Quality.GOOD) {
+      return GOOD_SCORE;
+    } else if (quality == Quality.SUFFICIENT) {
+      return SUFFICIENT_SCORE;
+    }
+    return 0.0f;
+  }
+
+  static float[] makeRotation(float[] quaternion) {
+    float[] transform = new float[RigidTransform.SIZE];
+    RigidTransform.setRotation(
+        transform, 0, quaternion[0], quaternion[1], quaternion[2], quaternion[3]);
+    return transform;
+  }
+
+  static float[] compose(float[] a, float[] b) {
+    float[] transform = new float[RigidTransform.SIZE];
+    RigidTransform.compose(transform, 0, a, 0, b, 0);
+    return transform;
+  }
+
+  static float[] toMatrix(float[] transform) {
+    float[] matrix = new float[16];
+    RigidTransform.toMatrix(matrix, 0, transform, 0);
+    return matrix;
+  }
+}
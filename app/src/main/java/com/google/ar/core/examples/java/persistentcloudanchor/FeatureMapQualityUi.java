@@ -15,37 +15,23 @@
 
 package com.google.ar.core.examples.java.persistentcloudanchor;
 
-import android.opengl.Matrix;
-
-import androidx.annotation.NonNull;
-
-import com.google.ar.core.Pose;
 import com.google.ar.core.Session.FeatureMapQuality;
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.RigidTransform;
+import com.google.ar.core.examples.java.common.rendering.FrustumCuller;
 import com.google.ar.core.examples.java.common.rendering.ObjectRenderer;
 
 /** Helper class to display the Feature Map Quality UI for the Persistent Cloud Anchor Sample. */
 class FeatureMapQualityUi {
   private static final String TAG = FeatureMapQualityUi.class.getSimpleName();
-  private static final float[] ROTATION_QUATERNION_180_Y =
-      new float[] {0, (float) Math.sin(Math.PI / 2.0), 0, (float) Math.cos(Math.PI / 2.0)};
-  private static final float[] ROTATION_QUATERNION_90_Y =
-      new float[] {0, (float) Math.sin(-Math.PI / 4.0), 0, (float) Math.cos(-Math.PI / 4.0)};
-  private static final float[] ROTATION_QUATERNION_90_X =
-      new float[] {(float) Math.sin(Math.PI / 4.0), 0, 0, (float) Math.cos(Math.PI / 4.0)};
-  // For anchors on horizontal planes. The UI coordinate frame is rotated 180 degrees with respect
-  // to the anchor frame to simplify calculations. The positive x-axis points to the left of the
-  // screen and the positive z-axis points away from the camera.
-  private static final Pose HORIZONTAL_UI_TRANSFORM = Pose.makeRotation(ROTATION_QUATERNION_180_Y);
-  // For anchors on vertical planes. The UI coordinate frame rotated with respect to the anchor
-  // to face outwards toward the user such that the positive x-axis points to the left of the screen
-  // and the positive z-axis points away from the camera into the plane.
-  private static final Pose VERTICAL_UI_TRANSFORM =
-      Pose.makeRotation(ROTATION_QUATERNION_90_Y)
-          .compose(Pose.makeRotation(ROTATION_QUATERNION_90_X));
   // Spacing between indicator bars.
   private static final double MAPPING_UI_SPACING_RADIANS = Math.toRadians(7.5);
   private static final float MAPPING_UI_RADIUS = 0.2f;
   private static final float BAR_SCALE = 0.3f;
+  // Radius of the bounding sphere of the bar model, and of the whole ring of bars.
+  private static final float BAR_MODEL_BOUNDING_RADIUS = 0.11f;
+  private static final float RING_BOUNDING_RADIUS =
+      MAPPING_UI_RADIUS + BAR_SCALE * BAR_MODEL_BOUNDING_RADIUS;
   private static final float[] BAR_COLOR_UNKNOWN_QUALITY =
       new float[] {218.0f, 220.0f, 240.0f, 255.0f};
   private static final float[] BAR_COLOR_LOW_QUALITY = new float[] {234.0f, 67.0f, 53.0f, 255.0f};
@@ -60,55 +46,41 @@ class FeatureMapQualityUi {
   final float radius;
   final ObjectRenderer objectRenderer;
   final QualityBar[] bars;
-  Pose featureMapQualityUIPose;
-
-  enum Quality {
-    UNKNOWN,
-    INSUFFICIENT,
-    SUFFICIENT,
-    GOOD
-  }
+  final FeatureMapQualityTracker tracker;
 
   class QualityBar {
-    private final Pose localPose;
+    private final float[] localMatrix;
     private final float[] modelMatrix;
-    private Quality quality;
 
     public QualityBar(double rad) {
       modelMatrix = new float[16];
-      localPose = computeLocalPose(rad);
-      quality = Quality.UNKNOWN;
+      localMatrix = FeatureMapQualityTracker.toMatrix(computeLocalPose(rad));
     }
 
-    @NonNull
-    private Pose computeLocalPose(double rad) {
+    private float[] computeLocalPose(double rad) {
       // Rotate around y axis
-      float[] rotation = {0, (float) Math.sin(rad / 2.0), 0, (float) Math.cos(rad / 2.0), 0};
-      float[] translation = {radius, 0, 0};
-      return Pose.makeRotation(rotation).compose(Pose.makeTranslation(translation));
-    }
-
-    public void updateQuality(FeatureMapQuality quality) {
-      if (quality == FeatureMapQuality.INSUFFICIENT) {
-        this.quality = Quality.INSUFFICIENT;
-      } else if (quality == FeatureMapQuality.SUFFICIENT) {
-        this.quality = Quality.SUFFICIENT;
-      } else {
-        this.quality = Quality.GOOD;
-      }
+      float[] rotation = {0, (float) Math.sin(rad / 2.0), 0, (float) Math.cos(rad / 2.0)};
+      float[] translation = new float[RigidTransform.SIZE];
+      RigidTransform.setTranslation(translation, 0, radius, 0, 0);
+      return FeatureMapQualityTracker.compose(
+          FeatureMapQualityTracker.makeRotation(rotation), translation);
     }
 
     public void draw(
-        Pose uiPose, float[] viewMatrix, float[] projectionMatrix, float[] colorCorrectionRgba) {
-      uiPose.compose(localPose).toMatrix(modelMatrix, 0);
+        FeatureMapQualityTracker.Quality quality,
+        float[] uiMatrix,
+        float[] viewMatrix,
+        float[] projectionMatrix,
+        float[] colorCorrectionRgba) {
+      Mat4.multiply(modelMatrix, 0, uiMatrix, 0, localMatrix, 0);
       objectRenderer.updateModelMatrix(modelMatrix, BAR_SCALE);
-      if (this.quality == Quality.UNKNOWN) {
+      if (quality == FeatureMapQualityTracker.Quality.UNKNOWN) {
         objectRenderer.draw(
             viewMatrix, projectionMatrix, colorCorrectionRgba, BAR_COLOR_UNKNOWN_QUALITY);
-      } else if (this.quality == Quality.INSUFFICIENT) {
+      } else if (quality == FeatureMapQualityTracker.Quality.INSUFFICIENT) {
         objectRenderer.draw(
             viewMatrix, projectionMatrix, colorCorrectionRgba, BAR_COLOR_LOW_QUALITY);
-      } else if (this.quality == Quality.SUFFICIENT) {
+      } else if (quality == FeatureMapQualityTracker.Quality.SUFFICIENT) {
         objectRenderer.draw(
             viewMatrix, projectionMatrix, colorCorrectionRgba, BAR_COLOR_MEDIUM_QUALITY);
       } else {
@@ -119,19 +91,12 @@ class FeatureMapQualityUi {
   }
 
   /**
-   * Returns true if the anchor (specified by anchorTranslationWorld is visible in the camera view (
-   * specified by viewMatrix and projectionMatrix); otherwise false.
+   * Returns true if the ring of bars placed by the last update of the tracker may be visible in
+   * the frustum of culler, counting it as visible or culled.
    */
-  public static boolean isAnchorInView(
-      float[] anchorTranslationWorld, float[] viewMatrix, float[] projectionMatrix) {
-    float[] viewProjectionMatrix = new float[16];
-    final float[] anchorTranslationNDC = new float[4];
-    // Project point to Normalized Device Coordinates and check if in bounds.
-    Matrix.multiplyMM(viewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
-    Matrix.multiplyMV(anchorTranslationNDC, 0, viewProjectionMatrix, 0, anchorTranslationWorld, 0);
-    float ndcX = anchorTranslationNDC[0] / anchorTranslationNDC[3];
-    float ndcY = anchorTranslationNDC[1] / anchorTranslationNDC[3];
-    return !(ndcX < -1 || ndcX > 1 || ndcY < -1 || ndcY > 1);
+  public boolean isVisible(FrustumCuller culler) {
+    float[] uiMatrix = tracker.getUiMatrix();
+    return culler.isSphereVisible(uiMatrix[12], uiMatrix[13], uiMatrix[14], RING_BOUNDING_RADIUS);
   }
 
   public static FeatureMapQualityUi createHorizontalFeatureMapQualityUi(
@@ -152,57 +117,35 @@ class FeatureMapQualityUi {
     arcEndRad = Math.PI;
     numBars = (int) Math.round(Math.PI / MAPPING_UI_SPACING_RADIANS);
 
+    tracker = new FeatureMapQualityTracker(isHorizontal, numBars, MAPPING_UI_SPACING_RADIANS);
     bars = new QualityBar[numBars];
     for (int i = 0; i < numBars; ++i) {
       bars[i] = new QualityBar(Math.PI / (double) numBars * i);
     }
   }
 
-  public Pose getUiTransform() {
-    if (this.isHorizontal) {
-      return HORIZONTAL_UI_TRANSFORM;
-    } else {
-      return VERTICAL_UI_TRANSFORM;
-    }
-  }
-
-  // Average quality value computed over all bars (0.0 for INSUFFICIENT, 0.6 for
-  // SUFFICIENT, and 1.0 for GOOD)
-  public float computeOverallQuality() {
-    float sumQuality = 0;
-    for (QualityBar bar : bars) {
-      if (bar.quality == Quality.SUFFICIENT) {
-        sumQuality += 0.6f;
-      } else if (bar.quality == Quality.GOOD) {
-        sumQuality += 1.0f;
-      }
-    }
-    return sumQuality / numBars;
-  }
-
-  public void updateQualityForViewpoint(float[] cameraPosition, FeatureMapQuality quality) {
-    int idx = computeBarIndex(cameraPosition);
-    if (idx >= 0 && idx < numBars) {
-      QualityBar barInView = bars[idx];
-      barInView.updateQuality(quality);
+  /** Draws the UI at the place set by the last update of the tracker. */
+  public void drawUi(
+      float[] viewMatrix, float[] projectionMatrix, float[] colorCorrectionRgba, long nowMillis) {
+    float[] uiMatrix = tracker.getUiMatrix();
+    for (int i = 0; i < numBars; ++i) {
+      bars[i].draw(
+          tracker.getQuality(i, nowMillis),
+          uiMatrix,
+          viewMatrix,
+          projectionMatrix,
+          colorCorrectionRgba);
     }
   }
 
-  public void drawUi(
-      Pose anchorPose, float[] viewMatrix, float[] projectionMatrix, float[] colorCorrectionRgba) {
-    if (isHorizontal) {
-      featureMapQualityUIPose = anchorPose.compose(HORIZONTAL_UI_TRANSFORM);
+  /** Converts the quality estimated by the session to that of the tracker. */
+  static FeatureMapQualityTracker.Quality toQuality(FeatureMapQuality quality) {
+    if (quality == FeatureMapQuality.INSUFFICIENT) {
+      return FeatureMapQualityTracker.Quality.INSUFFICIENT;
+    } else if (quality == FeatureMapQuality.SUFFICIENT) {
+      return FeatureMapQualityTracker.Quality.SUFFICIENT;
     } else {
-      featureMapQualityUIPose = anchorPose.compose(VERTICAL_UI_TRANSFORM);
-    }
-    for (QualityBar bar : bars) {
-      bar.draw(featureMapQualityUIPose, viewMatrix, projectionMatrix, colorCorrectionRgba);
+      return FeatureMapQualityTracker.Quality.GOOD;
     }
   }
-
-  private static int computeBarIndex(float[] viewRay) {
-    // positive indices.
-    double rad = -Math.atan2(viewRay[2], viewRay[0]);
-    return (int) Math.floor(rad / MAPPING_UI_SPACING_RADIANS);
-  }
 }
@@ -0,0 +1,201 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.profiling.LogLinearHistogram;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Estimates the feature map quality for hosting on a dedicated thread, so that the OpenGL thread
+ * never waits on the estimator.
+ *
+ * <p>The OpenGL thread {@link #submit submits} snapshots of the camera pose, and {@link #poll
+ * polls} the estimates on the following frames. Both go through single-slot atomic mailboxes: a
+ * snapshot submitted while the previous one is still waiting replaces it, as only the latest
+ * viewpoint matters, and so does an estimate not polled yet. The estimates submitted before {@link
+ * #clear()}, such as for a previous anchor, are dropped.
+ *
+ * <p>The time each call to the estimator takes, and the time from each snapshot to its estimate
+ * being polled, are recorded.
+ *
+ * <p>Apart from {@link #start()} and {@link #stop()}, the methods must be called from the thread
+ * that submits the snapshots.
+ *
+ * @param <P> the type of the camera poses.
+ * @param <Q> the type of the qualities.
+ */
+class FeatureMapQualityWorker<P, Q> {
+  private static final String TAG = FeatureMapQualityWorker.class.getSimpleName();
+
+  /** Estimates the quality for hosting from a camera pose. Called on the worker thread. */
+  interface Estimator<P, Q> {
+    /** Returns the quality for hosting from {@code pose}, or null if it cannot be estimated. */
+    Q estimate(P pose);
+  }
+
+  /** A snapshot of the camera pose, and then its estimate. */
+  static final class Estimate<P, Q> {
+    final P pose;
+    /** The position of the camera, in the UI coordinate frame, when the pose was submitted. */
+    final float[] cameraPosition = new float[3];
+
+    final long generation;
+    final long submitNanos;
+    // Written on the worker thread before the estimate is published.
+    Q quality;
+    long estimateNanos;
+
+    private Estimate(P pose, float[] cameraPosition, long generation, long submitNanos) {
+      this.pose = pose;
+      System.arraycopy(cameraPosition, 0, this.cameraPosition, 0, 3);
+      this.generation = generation;
+      this.submitNanos = submitNanos;
+    }
+  }
+
+  private final Estimator<P, Q> estimator;
+  private final AtomicReference<Estimate<P, Q>> pendingSnapshot = new AtomicReference<>();
+  private final AtomicReference<Estimate<P, Q>> pendingEstimate = new AtomicReference<>();
+
+  private volatile Thread workerThread;
+  private long generation;
+
+  // Statistics, only accessed on the thread polling the estimates.
+  private final LogLinearHistogram estimateLatencyNanos = new LogLinearHistogram();
+  private final LogLinearHistogram snapshotToEstimateNanos = new LogLinearHistogram();
+  private long submittedCount;
+  private long supersededCount;
+  private long failedCount;
+
+  FeatureMapQualityWorker(Estimator<P, Q> estimator) {
+    this.estimator = estimator;
+  }
+
+  /** Starts the worker thread. */
+  synchronized void start() {
+    if (workerThread != null) {
+      return;
+    }
+    workerThread = new Thread(this::runWorker, TAG);
+    workerThread.setDaemon(true);
+    workerThread.start();
+  }
+
+  /**
+   * Stops the worker thread, and waits for the estimate in progress, if any, so that the estimator
+   * is no longer called once this returns.
+   */
+  synchronized void stop() {
+    if (workerThread == null) {
+      return;
+    }
+    Thread thread = workerThread;
+    workerThread = null;
+    LockSupport.unpark(thread);
+    boolean interrupted = false;
+    while (thread.isAlive()) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Submits a snapshot of the camera pose to estimate, replacing the one submitted before if it is
+   * still waiting. Returns immediately.
+   *
+   * @param cameraPosition the position of the camera in the UI coordinate frame, which is copied.
+   */
+  void submit(P pose, float[] cameraPosition, long nowNanos) {
+    Estimate<P, Q> previous =
+        pendingSnapshot.getAndSet(new Estimate<>(pose, cameraPosition, generation, nowNanos));
+    submittedCount++;
+    if (previous != null) {
+      supersededCount++;
+    }
+    Thread thread = workerThread;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  /**
+   * Returns the latest estimate completed since the last poll, or null if there is none. The
+   * estimates the estimator could not make, or submitted before {@link #clear()}, are dropped.
+   */
+  Estimate<P, Q> poll(long nowNanos) {
+    Estimate<P, Q> estimate = pendingEstimate.getAndSet(null);
+    if (estimate == null || estimate.generation != generation) {
+      return null;
+    }
+    estimateLatencyNanos.record(estimate.estimateNanos);
+    if (estimate.quality == null) {
+      failedCount++;
+      return null;
+    }
+    snapshotToEstimateNanos.record(nowNanos - estimate.submitNanos);
+    return estimate;
+  }
+
+  /**
+   * Estimates the snapshot waiting, if any, on the calling thread, for replays that must make the
+   * same estimates on every run. The worker thread must not be started.
+   */
+  void estimatePending() {
+    Estimate<P, Q> estimate = pendingSnapshot.getAndSet(null);
+    if (estimate != null) {
+      estimate(estimate);
+    }
+  }
+
+  /** Drops the snapshots and estimates submitted so far, such as for a previous anchor. */
+  void clear() {
+    generation++;
+    pendingSnapshot.set(null);
+    pendingEstimate.set(null);
+  }
+
+  /** Returns the times the calls to the estimator took. */
+  LogLinearHistogram getEstimateLatencyHistogram() {
+    return estimateLatencyNanos;
+  }
+
+  String getStatsSummary() {
+    return String.format(
+        Locale.US,
+        "%d submitted, %d superseded, %d failed, estimate p50 %.1f ms, p99 %.1f ms, snapshot to"
+            + " estimate p50 %.1f ms, p99 %.1f ms",
+        submittedCount,
+        supersededCount,
+        failedCount,
+        estimateLatencyNanos.getValueAtPercentile(50.0) / 1e6,
+        estimateLatencyNanos.getValueAtPercentile(99.0) / 1e6,
+        snapshotToEstimateNanos.getValueAtPercentile(50.0) / 1e6,
+        snapshotToEstimateNanos.getValueAtPercentile(99.0) / 1e6);
+  }
+
+  private void runWorker() {
+    while (workerThread == Thread.currentThread()) {
+      Estimate<P, Q> estimate = pendingSnapshot.getAndSet(null);
+      if (estimate == null) {
+        // Woken up by a new snapshot, or when stopped.
+        LockSupport.park(this);
+        continue;
+      }
+      estimate(estimate);
+    }
+  }
+
+  private void estimate(Estimate<P, Q> estimate) {
+    long beginNanos = System.nanoTime();
+    estimate.quality = estimator.estimate(estimate.pose);
+    estimate.estimateNanos = System.nanoTime() - beginNanos;
+    // Publishes the estimate to the polling thread.
+    pendingEstimate.set(estimate);
+  }
+}
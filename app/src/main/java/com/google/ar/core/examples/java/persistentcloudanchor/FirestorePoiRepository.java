@@ -0,0 +1,247 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import android.util.Log;
+import com.google.android.gms.tasks.Task;
+import com.google.ar.core.examples.java.common.profiling.LogLinearHistogram;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PoiRepository} of the Firestore POI collection, which commits the writes in batches.
+ *
+ * <p>Writes are queued in a {@link PoiWriteQueue}, so that they survive the app being killed or
+ * offline, and committed in a {@link WriteBatch} once {@link #MAX_BATCH_WRITES} are queued, or
+ * shortly after the first one. Successive writes of the same POI are coalesced into one. A single
+ * batch is committed at a time, and a failed or cancelled batch is retried with an exponential
+ * backoff, during which no batch is committed, even once the queue is full.
+ *
+ * <p>The queue, the batches and the listeners all run on a single background thread. The number of
+ * writes committed per second and their latency, from queued to committed, are logged after each
+ * batch.
+ */
+class FirestorePoiRepository implements PoiRepository {
+  private static final String TAG = FirestorePoiRepository.class.getSimpleName();
+
+  /** Maximum number of writes in a Firestore batch. */
+  static final int MAX_BATCH_WRITES = 500;
+  // Time a write waits for more writes to batch with.
+  private static final long FLUSH_DELAY_MILLIS = 250;
+  private static final long MIN_RETRY_DELAY_MILLIS = 1000;
+  private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+
+  private final CollectionReference collection;
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+  // Runs the completion of the batches on executor, unless the repository is closed.
+  private final Executor commitExecutor =
+      command -> {
+        try {
+          executor.execute(command);
+        } catch (RejectedExecutionException e) {
+          // The batch is committed again on the next run, which is harmless.
+        }
+      };
+
+  // Only accessed on executor.
+  private PoiWriteQueue queue;
+  private IOException openError;
+  private final Map<Long, WriteListener> listeners = new HashMap<>();
+  private boolean flushScheduled;
+  private boolean committing;
+  private boolean retryScheduled;
+  private long retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+
+  // Write statistics, only accessed on executor.
+  private final LogLinearHistogram latencyMillis = new LogLinearHistogram();
+  private long committedWrites;
+  private long committedBatches;
+  private long firstCommitStartMillis;
+  private long lastCommitEndMillis;
+
+  /**
+   * Opens the queue of {@code queueFile} in the background, and commits the writes left pending by
+   * the previous runs.
+   */
+  FirestorePoiRepository(CollectionReference collection, File queueFile) {
+    this.collection = collection;
+    executor.execute(
+        () -> {
+          try {
+            queue = PoiWriteQueue.open(queueFile);
+          } catch (IOException e) {
+            Log.e(TAG, "Could not open the POI write queue", e);
+            openError = e;
+            return;
+          }
+          if (queue.size() > 0) {
+            Log.i(TAG, "Committing " + queue.size() + " writes left pending");
+            flush();
+          }
+        });
+  }
+
+  @Override
+  public String newId() {
+    // Ids are generated on the device, without a round trip.
+    return collection.document().getId();
+  }
+
+  @Override
+  public void put(Poi poi, WriteListener listener) {
+    executor.execute(() -> enqueue(poi.id, poi, listener));
+  }
+
+  @Override
+  public void delete(String id, WriteListener listener) {
+    executor.execute(() -> enqueue(id, /*poi=*/ null, listener));
+  }
+
+  @Override
+  public void flush() {
+    executor.execute(this::commitBatch);
+  }
+
+  @Override
+  public void close() {
+    executor.execute(
+        () -> {
+          commitBatch();
+          try {
+            if (queue != null) {
+              queue.close();
+              queue = null;
+            }
+          } catch (IOException e) {
+            Log.e(TAG, "Could not close the POI write queue", e);
+          }
+        });
+    // The batches still being committed are committed again on the next run.
+    executor.shutdown();
+  }
+
+  private void enqueue(String id, Poi poi, WriteListener listener) {
+    PoiWriteQueue.Write write;
+    try {
+      if (queue == null) {
+        throw new IOException("The POI write queue is not open", openError);
+      }
+      write = queue.enqueue(id, poi, System.currentTimeMillis());
+    } catch (IOException e) {
+      if (listener != null) {
+        listener.onWriteComplete(id, e);
+      }
+      return;
+    }
+    if (listener != null) {
+      listeners.put(write.sequence, listener);
+    }
+    if (queue.size() >= MAX_BATCH_WRITES) {
+      commitBatch();
+    } else if (!flushScheduled) {
+      flushScheduled = true;
+      executor.schedule(this::commitBatch, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void commitBatch() {
+    flushScheduled = false;
+    if (committing || retryScheduled || queue == null || queue.size() == 0) {
+      return;
+    }
+    List<PoiWriteQueue.Write> writes = queue.peek(MAX_BATCH_WRITES);
+    WriteBatch batch = collection.getFirestore().batch();
+    for (PoiWriteQueue.Write write : PoiWriteQueue.coalesce(writes)) {
+      if (write.isDelete()) {
+        batch.set(
+            collection.document(write.id), PoiDocuments.toDeletedData(), SetOptions.merge());
+      } else {
+        batch.set(collection.document(write.id), PoiDocuments.toData(write.poi));
+      }
+    }
+    committing = true;
+    long startMillis = System.currentTimeMillis();
+    if (committedBatches == 0) {
+      firstCommitStartMillis = startMillis;
+    }
+    batch
+        .commit()
+        .addOnCompleteListener(
+            commitExecutor, task -> onBatchCommitted(writes, task, startMillis));
+  }
+
+  private void onBatchCommitted(
+      List<PoiWriteQueue.Write> writes, Task<Void> task, long startMillis) {
+    committing = false;
+    long endMillis = System.currentTimeMillis();
+    Exception error = null;
+    if (task.isCanceled()) {
+      // A cancelled task has no exception, but its writes are not committed.
+      error = new CancellationException("The commit of the POI writes was cancelled");
+    } else if (!task.isSuccessful()) {
+      error = task.getException();
+    }
+    if (error == null) {
+      try {
+        queue.acknowledge(writes.get(writes.size() - 1).sequence);
+      } catch (IOException e) {
+        // The writes are committed again on the next run, which is harmless.
+        Log.e(TAG, "Could not acknowledge the POI writes", e);
+      }
+      for (PoiWriteQueue.Write write : writes) {
+        latencyMillis.record(endMillis - write.queuedAtMillis);
+      }
+      committedWrites += writes.size();
+      committedBatches++;
+      lastCommitEndMillis = endMillis;
+      Log.i(
+          TAG,
+          "Committed " + writes.size() + " writes in " + (endMillis - startMillis) + " ms, "
+              + getStatsSummary());
+      retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+      commitBatch();
+    } else {
+      Log.w(TAG, "Could not commit " + writes.size() + " writes, retrying", error);
+      retryScheduled = true;
+      executor.schedule(this::retryBatch, retryDelayMillis, TimeUnit.MILLISECONDS);
+      retryDelayMillis = Math.min(2 * retryDelayMillis, MAX_RETRY_DELAY_MILLIS);
+    }
+    // Listeners are only told of the first failure of their write, which is still retried.
+    for (PoiWriteQueue.Write write : writes) {
+      WriteListener listener = listeners.remove(write.sequence);
+      if (listener != null) {
+        listener.onWriteComplete(write.id, error);
+      }
+    }
+  }
+
+  private void retryBatch() {
+    retryScheduled = false;
+    commitBatch();
+  }
+
+  /** Returns the throughput and latency of the writes committed so far. */
+  private String getStatsSummary() {
+    long elapsedMillis = Math.max(1, lastCommitEndMillis - firstCommitStartMillis);
+    return String.format(
+        Locale.US,
+        "%d writes in %d batches, %.1f writes/s, latency p50 %d ms, p99 %d ms, max %d ms",
+        committedWrites,
+        committedBatches,
+        1000.0 * committedWrites / elapsedMillis,
+        latencyMillis.getValueAtPercentile(50.0),
+        latencyMillis.getValueAtPercentile(99.0),
+        latencyMillis.getMaxValue());
+  }
+}
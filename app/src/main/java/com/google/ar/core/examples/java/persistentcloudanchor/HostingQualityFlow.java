@@ -0,0 +1,130 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.rendering.FrustumCuller;
+
+/**
+ * The per frame work of hosting a placed anchor, from the feature map quality estimates to the
+ * decision to host it, shared by {@link CloudAnchorActivity} and {@link SessionReplay}.
+ *
+ * <p>Each frame the anchor is tracked and not hosted yet, {@link #beginFrame} places the UI around
+ * the anchor and asks the {@link FeatureMapQualitySampler} whether to estimate the quality from the
+ * current camera pose, which is then {@link #submit submitted} to the {@link
+ * FeatureMapQualityWorker}. {@link #endFrame} applies the estimate polled from the worker to the
+ * {@link FeatureMapQualityTracker}, and returns whether to host the anchor.
+ *
+ * @param <P> the type of the camera poses.
+ * @param <Q> the type of the qualities estimated by the worker.
+ */
+class HostingQualityFlow<P, Q> {
+  /** Converts the qualities estimated by the worker to those of the tracker. */
+  interface QualityConverter<Q> {
+    FeatureMapQualityTracker.Quality toQuality(Q quality);
+  }
+
+  private final FeatureMapQualitySampler sampler = new FeatureMapQualitySampler();
+  private final FeatureMapQualityWorker<P, Q> worker;
+  private final QualityConverter<Q> converter;
+  private FeatureMapQualityTracker tracker;
+  private boolean qualityObtained;
+  private Q polledQuality;
+  private float overallQuality;
+
+  // Temporary arrays allocated here to reduce number of allocations for each frame.
+  private final float[] cameraUiFrame = new float[3];
+
+  HostingQualityFlow(FeatureMapQualityWorker<P, Q> worker, QualityConverter<Q> converter) {
+    this.worker = worker;
+    this.converter = converter;
+  }
+
+  /**
+   * Starts over for an anchor placed at {@code nowMillis}, whose quality is kept by {@code
+   * tracker}. Must be called before the first frame of each anchor.
+   */
+  void start(FeatureMapQualityTracker tracker, long nowMillis) {
+    this.tracker = tracker;
+    qualityObtained = false;
+    polledQuality = null;
+    overallQuality = 0.0f;
+    sampler.reset(nowMillis);
+    worker.clear();
+  }
+
+  /**
+   * Places the UI at the anchor, and returns whether to {@link #submit} the camera pose of this
+   * frame for an estimate.
+   *
+   * @param anchorMatrix the model matrix of the anchor.
+   * @param anchorTranslation the position of the anchor, as homogeneous coordinates.
+   * @param viewMatrix the view matrix of the camera.
+   * @param culler the frustum culler, updated for this frame.
+   */
+  boolean beginFrame(
+      float[] anchorMatrix,
+      float[] anchorTranslation,
+      float[] viewMatrix,
+      FrustumCuller culler,
+      long nowMillis) {
+    tracker.updateUiMatrix(anchorMatrix);
+    tracker.getCameraPositionInUiFrame(viewMatrix, cameraUiFrame);
+    // Estimates the quality only as the camera moves around the anchor, or faces a cell that is not
+    // GOOD yet.
+    int cell = tracker.computeCellIndex(cameraUiFrame);
+    return tracker.isAnchorInView(anchorTranslation, culler)
+        && sampler.shouldEstimate(
+            nowMillis, cameraUiFrame, cell, tracker.needsQuality(cell, nowMillis));
+  }
+
+  /** Submits the camera pose of this frame to the worker, after {@link #beginFrame}. */
+  void submit(P cameraPose, long nowNanos) {
+    worker.submit(cameraPose, cameraUiFrame, nowNanos);
+  }
+
+  /**
+   * Applies the estimate polled from the worker, if any, for the viewpoint it was submitted from,
+   * and returns whether to host the anchor: the hosting quality was reached, and the device is
+   * {@code localized}. Checked on each frame, as no more estimates may be made once all the cells
+   * are GOOD.
+   */
+  boolean endFrame(boolean localized, long nowMillis, long nowNanos) {
+    FeatureMapQualityWorker.Estimate<P, Q> estimate = worker.poll(nowNanos);
+    polledQuality = null;
+    if (estimate != null) {
+      polledQuality = estimate.quality;
+      tracker.updateQualityForViewpoint(
+          estimate.cameraPosition, converter.toQuality(estimate.quality), nowMillis);
+      overallQuality = tracker.computeOverallQuality(nowMillis);
+      qualityObtained = overallQuality >= FeatureMapQualityTracker.HOSTING_QUALITY_THRESHOLD;
+      if (qualityObtained) {
+        sampler.onHostingQualityReached(nowMillis);
+      }
+    }
+    return qualityObtained && localized;
+  }
+
+  /** Returns the position of the camera in the UI coordinate frame, set by {@link #beginFrame}. */
+  float[] getCameraPositionInUiFrame() {
+    return cameraUiFrame;
+  }
+
+  /** Returns the quality polled by the last {@link #endFrame}, or null if there was none. */
+  Q getPolledQuality() {
+    return polledQuality;
+  }
+
+  /** Returns the overall quality computed from the last estimate applied. */
+  float getOverallQuality() {
+    return overallQuality;
+  }
+
+  boolean isQualityObtained() {
+    return qualityObtained;
+  }
+
+  String getStatsSummary() {
+    return "sampling: "
+        + sampler.getStatsSummary()
+        + ", estimates: "
+        + worker.getStatsSummary();
+  }
+}
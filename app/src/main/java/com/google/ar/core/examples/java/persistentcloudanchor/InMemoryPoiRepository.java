@@ -0,0 +1,65 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link PoiRepository} keeping the POIs in memory, to run the code writing POIs without Firestore.
+ * Writes are committed at once.
+ *
+ * <p>Does not depend on Android. This class is thread safe.
+ */
+class InMemoryPoiRepository implements PoiRepository {
+  private final Executor listenerExecutor;
+  private final Map<String, Poi> pois = new HashMap<>();
+
+  /** @param listenerExecutor runs the listeners of the writes. */
+  InMemoryPoiRepository(Executor listenerExecutor) {
+    this.listenerExecutor = listenerExecutor;
+  }
+
+  @Override
+  public String newId() {
+    return UUID.randomUUID().toString();
+  }
+
+  @Override
+  public void put(Poi poi, WriteListener listener) {
+    synchronized (this) {
+      pois.put(poi.id, poi);
+    }
+    notifyComplete(poi.id, listener);
+  }
+
+  @Override
+  public void delete(String id, WriteListener listener) {
+    synchronized (this) {
+      pois.remove(id);
+    }
+    notifyComplete(id, listener);
+  }
+
+  @Override
+  public void flush() {}
+
+  @Override
+  public void close() {}
+
+  synchronized Poi get(String id) {
+    return pois.get(id);
+  }
+
+  synchronized List<Poi> getAll() {
+    return new ArrayList<>(pois.values());
+  }
+
+  private void notifyComplete(String id, WriteListener listener) {
+    if (listener != null) {
+      listenerExecutor.execute(() -> listener.onWriteComplete(id, /*error=*/ null));
+    }
+  }
+}
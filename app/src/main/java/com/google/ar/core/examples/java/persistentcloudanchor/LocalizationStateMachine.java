@@ -0,0 +1,70 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+/**
+ * Tracks whether the device is localized accurately enough with the Earth API to host an anchor
+ * with its geospatial pose. Leaving the {@link State#LOCALIZED} state takes a larger error than
+ * entering it, so that the state does not flicker around the thresholds.
+ *
+ * <p>Does not depend on ARCore, so that recorded sessions can be replayed on a plain JVM.
+ */
+class LocalizationStateMachine {
+  private static final double LOCALIZING_HORIZONTAL_ACCURACY_THRESHOLD_METERS = 10;
+  private static final double LOCALIZING_HEADING_ACCURACY_THRESHOLD_DEGREES = 50;
+
+  private static final double LOCALIZED_HORIZONTAL_ACCURACY_HYSTERESIS_METERS = 10;
+  private static final double LOCALIZED_HEADING_ACCURACY_HYSTERESIS_DEGREES = 10;
+
+  private State state = State.UNINITIALIZED;
+
+  State getState() {
+    return state;
+  }
+
+  /** Starts localizing, once the session is configured. */
+  void start() {
+    state = State.PRETRACKING;
+  }
+
+  /**
+   * Updates the {@link State#PRETRACKING} state from the state of the Earth.
+   *
+   * @return the new state.
+   */
+  State onEarthState(boolean isTracking, boolean isEnabled) {
+    if (state == State.PRETRACKING) {
+      if (isTracking) {
+        state = State.LOCALIZING;
+      } else if (!isEnabled) {
+        state = State.EARTH_STATE_ERROR;
+      }
+    }
+    return state;
+  }
+
+  /**
+   * Updates the {@link State#LOCALIZING} and {@link State#LOCALIZED} states from the accuracy of
+   * the camera geospatial pose.
+   *
+   * @return the new state.
+   */
+  State onGeospatialPoseAccuracy(double horizontalAccuracyMeters, double headingAccuracyDegrees) {
+    if (state == State.LOCALIZING) {
+      if (horizontalAccuracyMeters <= LOCALIZING_HORIZONTAL_ACCURACY_THRESHOLD_METERS
+          && headingAccuracyDegrees <= LOCALIZING_HEADING_ACCURACY_THRESHOLD_DEGREES) {
+        state = State.LOCALIZED;
+      }
+    } else if (state == State.LOCALIZED) {
+      // Check if either accuracy has degraded to the point we should enter back into the
+      // LOCALIZING state.
+      if (horizontalAccuracyMeters
+              > LOCALIZING_HORIZONTAL_ACCURACY_THRESHOLD_METERS
+                  + LOCALIZED_HORIZONTAL_ACCURACY_HYSTERESIS_METERS
+          || headingAccuracyDegrees
+              > LOCALIZING_HEADING_ACCURACY_THRESHOLD_DEGREES
+                  + LOCALIZED_HEADING_ACCURACY_HYSTERESIS_DEGREES) {
+        state = State.LOCALIZING;
+      }
+    }
+    return state;
+  }
+}
@@ -0,0 +1,55 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import android.content.Context;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The maps configured in the {@code maps.json} asset: an array of objects with the fields of
+ * {@link PoiMap}. A site is added by adding its map there.
+ */
+final class MapCatalog {
+  private static final String ASSET_NAME = "maps.json";
+
+  /** Returns the maps of the asset. */
+  static List<PoiMap> load(Context context) throws IOException {
+    StringBuilder json = new StringBuilder();
+    try (InputStream inputStream = context.getAssets().open(ASSET_NAME);
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        json.append(line).append('\n');
+      }
+    }
+    try {
+      JSONArray array = new JSONArray(json.toString());
+      List<PoiMap> maps = new ArrayList<>(array.length());
+      for (int i = 0; i < array.length(); i++) {
+        JSONObject map = array.getJSONObject(i);
+        String id = map.getString("id");
+        maps.add(
+            new PoiMap(
+                id,
+                map.optString("name", id),
+                map.getDouble("latitude"),
+                map.getDouble("longitude"),
+                map.getDouble("radiusMeters")));
+      }
+      return Collections.unmodifiableList(maps);
+    } catch (JSONException | IllegalArgumentException e) {
+      throw new IOException("Invalid " + ASSET_NAME, e);
+    }
+  }
+
+  private MapCatalog() {}
+}
@@ -0,0 +1,97 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.geo.GeoMath;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A point of interest of the campus map, as stored in Firestore by {@link CloudAnchorActivity}: the
+ * cloud anchor hosted for it, and the geospatial pose of the device when it was hosted.
+ */
+final class Poi {
+  final String id;
+  final String anchorId;
+  final String name;
+  final double latitude;
+  final double longitude;
+  final double altitude;
+  /**
+   * Direction the camera of the device looked at when the anchor was hosted, clockwise from north.
+   * The +Z axis of the anchor, placed by a hit test, faces roughly back to the device.
+   */
+  final double heading;
+
+  Poi(
+      String id,
+      String anchorId,
+      String name,
+      double latitude,
+      double longitude,
+      double altitude,
+      double heading) {
+    this.id = id;
+    this.anchorId = anchorId;
+    this.name = name;
+    this.latitude = latitude;
+    this.longitude = longitude;
+    this.altitude = altitude;
+    this.heading = heading;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Poi)) {
+      return false;
+    }
+    Poi other = (Poi) o;
+    return id.equals(other.id)
+        && Objects.equals(anchorId, other.anchorId)
+        && Objects.equals(name, other.name)
+        && Double.compare(latitude, other.latitude) == 0
+        && Double.compare(longitude, other.longitude) == 0
+        && Double.compare(altitude, other.altitude) == 0
+        && Double.compare(heading, other.heading) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, anchorId, name, latitude, longitude, altitude, heading);
+  }
+
+  /**
+   * Returns the at most {@code k} distinct {@code candidates} within {@code radiusMeters} of a
+   * point, closest first.
+   */
+  static List<Poi> selectNearest(
+      List<Poi> candidates, double latitude, double longitude, double radiusMeters, int k) {
+    List<Poi> selected = new ArrayList<>();
+    List<Double> distances = new ArrayList<>();
+    Set<String> ids = new HashSet<>();
+    for (Poi poi : candidates) {
+      double distance = GeoMath.distanceMeters(latitude, longitude, poi.latitude, poi.longitude);
+      if (distance > radiusMeters || !ids.add(poi.id)) {
+        continue;
+      }
+      // Insertion in the sorted selection, which is short.
+      int index = Collections.binarySearch(distances, distance);
+      index = index < 0 ? -index - 1 : index;
+      if (index >= k) {
+        continue;
+      }
+      selected.add(index, poi);
+      distances.add(index, distance);
+      if (selected.size() > k) {
+        selected.remove(k);
+        distances.remove(k);
+      }
+    }
+    return selected;
+  }
+}
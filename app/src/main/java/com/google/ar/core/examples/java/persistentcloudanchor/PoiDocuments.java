@@ -0,0 +1,77 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.geo.Geohash;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fields of the POI documents stored in Firestore, in the collection of each {@link PoiMap}, and
+ * their conversions to {@link Poi}.
+ */
+final class PoiDocuments {
+  static final String ANCHOR_ID = "anchorId";
+  static final String NAME = "name";
+  static final String LATITUDE = "latitude";
+  static final String LONGITUDE = "longitude";
+  static final String ALTITUDE = "altitude";
+  static final String HEADING = "heading";
+  /** Geohash of the position, of {@link Geohash#MAX_PRECISION} characters, for range queries. */
+  static final String GEOHASH = "geohash";
+  /** Server time of the last write of the document, from which {@link PoiSync} resumes. */
+  static final String UPDATED_AT = "updatedAt";
+  /**
+   * Set instead of deleting the document, so that the deletion is synced to the devices like any
+   * other change.
+   */
+  static final String DELETED = "deleted";
+
+  /** Returns the fields of the document of {@code poi}. */
+  static Map<String, Object> toData(Poi poi) {
+    Map<String, Object> data = new HashMap<>();
+    data.put(ANCHOR_ID, poi.anchorId);
+    data.put(ALTITUDE, poi.altitude);
+    data.put(LATITUDE, poi.latitude);
+    data.put(LONGITUDE, poi.longitude);
+    data.put(HEADING, poi.heading);
+    data.put(NAME, poi.name);
+    data.put(GEOHASH, Geohash.encode(poi.latitude, poi.longitude, Geohash.MAX_PRECISION));
+    data.put(UPDATED_AT, FieldValue.serverTimestamp());
+    return data;
+  }
+
+  /** Returns the fields merged into the document of a deleted POI. */
+  static Map<String, Object> toDeletedData() {
+    Map<String, Object> data = new HashMap<>();
+    data.put(DELETED, true);
+    data.put(UPDATED_AT, FieldValue.serverTimestamp());
+    return data;
+  }
+
+  /** Returns whether a document is of a deleted POI. */
+  static boolean isDeleted(DocumentSnapshot document) {
+    return Boolean.TRUE.equals(document.getBoolean(DELETED));
+  }
+
+  /** Returns the POI of a document, or null if its position is incomplete. */
+  static Poi toPoi(DocumentSnapshot document) {
+    Double latitude = document.getDouble(LATITUDE);
+    Double longitude = document.getDouble(LONGITUDE);
+    Double altitude = document.getDouble(ALTITUDE);
+    Double heading = document.getDouble(HEADING);
+    if (latitude == null || longitude == null || altitude == null || heading == null) {
+      return null;
+    }
+    return new Poi(
+        document.getId(),
+        document.getString(ANCHOR_ID),
+        document.getString(NAME),
+        latitude,
+        longitude,
+        altitude,
+        heading);
+  }
+
+  private PoiDocuments() {}
+}
@@ -0,0 +1,64 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.geo.GeoMath;
+import java.util.List;
+
+/**
+ * A site with its own points of interest, such as a campus. The POIs of each map are stored in
+ * their own Firestore collection, and cached in their own files on the device.
+ */
+final class PoiMap {
+  /** Identifier of the map, in its collection path and in the names of its files. */
+  final String id;
+  final String name;
+  /** Center and radius of the area of the map, in which the device is on the map. */
+  final double latitude;
+  final double longitude;
+  final double radiusMeters;
+
+  PoiMap(String id, String name, double latitude, double longitude, double radiusMeters) {
+    if (!id.matches("[A-Za-z0-9_-]+")) {
+      throw new IllegalArgumentException("Invalid map id " + id);
+    }
+    this.id = id;
+    this.name = name;
+    this.latitude = latitude;
+    this.longitude = longitude;
+    this.radiusMeters = radiusMeters;
+  }
+
+  /** Returns the path of the POI collection of the map of {@code id}. */
+  static String collectionPath(String id) {
+    return "maps/" + id + "/poi";
+  }
+
+  String getCollectionPath() {
+    return collectionPath(id);
+  }
+
+  /** Returns the distance from the center of the map to a point, in meters. */
+  double distanceMeters(double latitude, double longitude) {
+    return GeoMath.distanceMeters(this.latitude, this.longitude, latitude, longitude);
+  }
+
+  boolean contains(double latitude, double longitude) {
+    return distanceMeters(latitude, longitude) <= radiusMeters;
+  }
+
+  /**
+   * Returns the map containing a point, the one with the closest center if several do, or null if
+   * none does.
+   */
+  static PoiMap find(List<PoiMap> maps, double latitude, double longitude) {
+    PoiMap closest = null;
+    double closestDistance = Double.POSITIVE_INFINITY;
+    for (PoiMap map : maps) {
+      double distance = map.distanceMeters(latitude, longitude);
+      if (distance <= map.radiusMeters && distance < closestDistance) {
+        closest = map;
+        closestDistance = distance;
+      }
+    }
+    return closest;
+  }
+}
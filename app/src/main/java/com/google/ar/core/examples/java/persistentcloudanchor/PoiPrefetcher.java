@@ -0,0 +1,378 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.geo.GeoMath;
+import com.google.ar.core.examples.java.common.profiling.LogLinearHistogram;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resolves the cloud anchors of the POIs the device is heading to, before they come into view.
+ *
+ * <p>The device is predicted to move along its heading, at its recent speed, for {@link
+ * #LOOKAHEAD_SECONDS}. The POIs near the device are ranked by the distance to travel to them along
+ * that path: first along the path to the closest point to the POI, then straight to it. The cloud
+ * anchors of the first ones are resolved, at most a few at a time, and those of the POIs no longer
+ * ranked among the first ones, or out of the prefetch radius, are cancelled.
+ *
+ * <p>The resolved anchors are kept until {@link #takeAnchor taken} for their POI, or released when
+ * the POI goes out of the prefetch radius. A POI is prefetched again once its anchor taken is
+ * {@link #onAnchorDetached detached}, and a failed resolution is retried with an exponential
+ * backoff. The time from a POI entering the enter radius to its anchor being resolved, zero if it
+ * was resolved before, is recorded.
+ *
+ * @param <A> the type of the anchors.
+ */
+class PoiPrefetcher<A> {
+
+  /** Resolves the cloud anchors of the POIs. */
+  interface Resolver<A> {
+    /**
+     * Starts resolving the cloud anchor of {@code poi}, and calls {@link #onResolved} once it is
+     * done. Lower {@code priority} values are more urgent.
+     */
+    void resolve(Poi poi, float priority);
+
+    /** Cancels the resolution of the cloud anchor of {@code poi}. */
+    void cancel(Poi poi);
+
+    /** Detaches an anchor that was resolved, and is no longer needed. */
+    void release(A anchor);
+  }
+
+  /** Time the device is predicted to move along its heading. */
+  static final double LOOKAHEAD_SECONDS = 30.0;
+
+  // Bounds of the speed of the device, walking to driving, in meters per second.
+  private static final double MIN_SPEED = 1.0;
+  private static final double MAX_SPEED = 15.0;
+  // Minimum time between the positions the speed is measured from.
+  private static final long SPEED_INTERVAL_NANOS = 1_000_000_000L;
+  // Weight of a new speed measurement in the smoothed speed.
+  private static final double SPEED_SMOOTHING = 0.3;
+  // Bounds of the time a failed resolution waits before it is retried.
+  private static final long MIN_RETRY_DELAY_NANOS = 10_000_000_000L;
+  private static final long MAX_RETRY_DELAY_NANOS = 300_000_000_000L;
+
+  private static final int RESOLVING = 0;
+  private static final int RESOLVED = 1;
+  private static final int TAKEN = 2;
+  private static final int FAILED = 3;
+
+  private static final long NOT_ENTERED = -1;
+
+  private static final class Entry<A> {
+    final Poi poi;
+    int state = RESOLVING;
+    A anchor;
+    long enteredNanos = NOT_ENTERED;
+    // Rank of the POI among those not resolved yet in the last update, -1 if it was not ranked.
+    int rank;
+    // Time a failed resolution is retried at, and the delay of the next retry.
+    long retryNanos;
+    long retryDelayNanos = MIN_RETRY_DELAY_NANOS;
+
+    Entry(Poi poi) {
+      this.poi = poi;
+    }
+  }
+
+  private final Resolver<A> resolver;
+  private final double enterRadiusMeters;
+  private final int maxResolving;
+
+  private final List<Entry<A>> entries = new ArrayList<>();
+  private final Map<String, Entry<A>> entriesById = new HashMap<>();
+
+  private boolean hasSpeedOrigin;
+  private double speedOriginLatitude;
+  private double speedOriginLongitude;
+  private long speedOriginNanos;
+  private double speed = MIN_SPEED;
+
+  // Statistics.
+  private final LogLinearHistogram enterToResolvedNanos = new LogLinearHistogram();
+  private long resolvedCount;
+  private long takenCount;
+  private long cancelledCount;
+  private long failedCount;
+  private long retriedCount;
+
+  // Temporary arrays allocated here to reduce number of allocations for each frame.
+  private Poi[] ranked = new Poi[16];
+  private float[] priorities = new float[16];
+  private float[] distances = new float[16];
+
+  /**
+   * @param enterRadiusMeters the radius within which the POIs are expected to be localized.
+   * @param maxResolving the maximum number of cloud anchors being resolved at a time.
+   */
+  PoiPrefetcher(Resolver<A> resolver, double enterRadiusMeters, int maxResolving) {
+    if (maxResolving < 1) {
+      throw new IllegalArgumentException("Invalid maximum " + maxResolving);
+    }
+    this.resolver = resolver;
+    this.enterRadiusMeters = enterRadiusMeters;
+    this.maxResolving = maxResolving;
+  }
+
+  /**
+   * Ranks the POIs near the device, cancels the resolutions of those no longer among the first
+   * ones, and starts resolving the first ones. Returns the number of resolutions started.
+   *
+   * @param headingDegrees the heading of the device, clockwise from north.
+   * @param nearbyPois the POIs within the prefetch radius of the device, such as those of {@link
+   *     PoiStreamer#queryNearest}. The anchors of the other POIs are cancelled or released.
+   */
+  int update(
+      double latitude,
+      double longitude,
+      double headingDegrees,
+      long nowNanos,
+      Poi[] nearbyPois,
+      int nearbyCount) {
+    updateSpeed(latitude, longitude, nowNanos);
+    double heading = Math.toRadians(headingDegrees);
+    float directionEast = (float) Math.sin(heading);
+    float directionNorth = (float) Math.cos(heading);
+    float pathLength = (float) (speed * LOOKAHEAD_SECONDS);
+
+    // Ranks the POIs with a cloud anchor, by insertion as there are few of them.
+    ensureCapacity(nearbyCount);
+    int rankedCount = 0;
+    for (int i = 0; i < nearbyCount; i++) {
+      Poi poi = nearbyPois[i];
+      if (poi.anchorId == null) {
+        continue;
+      }
+      float east = (float) GeoMath.eastMeters(latitude, longitude, poi.latitude, poi.longitude);
+      float north = (float) GeoMath.northMeters(latitude, poi.latitude);
+      float along = east * directionEast + north * directionNorth;
+      along = Math.max(0.0f, Math.min(pathLength, along));
+      float offEast = east - along * directionEast;
+      float offNorth = north - along * directionNorth;
+      float priority = along + (float) Math.sqrt(offEast * offEast + offNorth * offNorth);
+      int j = rankedCount++;
+      for (; j > 0 && priorities[j - 1] > priority; j--) {
+        ranked[j] = ranked[j - 1];
+        priorities[j] = priorities[j - 1];
+        distances[j] = distances[j - 1];
+      }
+      ranked[j] = poi;
+      priorities[j] = priority;
+      distances[j] = (float) Math.sqrt(east * east + north * north);
+    }
+
+    // The POIs already resolved, or failed and waiting to be retried, are not ranked against those
+    // to resolve.
+    for (int i = 0; i < entries.size(); i++) {
+      entries.get(i).rank = -1;
+    }
+    int pendingRank = 0;
+    for (int i = 0; i < rankedCount; i++) {
+      Entry<A> entry = entriesById.get(ranked[i].id);
+      if (entry == null) {
+        pendingRank++;
+        continue;
+      }
+      if (distances[i] <= enterRadiusMeters) {
+        onEntered(entry, nowNanos);
+      }
+      entry.rank = entry.state == RESOLVING || isRetryDue(entry, nowNanos) ? pendingRank++ : 0;
+    }
+
+    // The resolutions ranked a little beyond the maximum are kept, so that POIs ranked about the
+    // same are not cancelled and resolved again over and over.
+    int keptRanks = 2 * maxResolving;
+    int resolvingCount = 0;
+    for (int i = entries.size() - 1; i >= 0; i--) {
+      Entry<A> entry = entries.get(i);
+      if (entry.rank < 0 || (entry.state == RESOLVING && entry.rank >= keptRanks)) {
+        remove(i);
+      } else if (entry.state == RESOLVING) {
+        resolvingCount++;
+      }
+    }
+
+    int started = 0;
+    pendingRank = 0;
+    for (int i = 0; i < rankedCount && pendingRank < keptRanks; i++) {
+      Poi poi = ranked[i];
+      Entry<A> existing = entriesById.get(poi.id);
+      if (existing != null) {
+        if (isRetryDue(existing, nowNanos)) {
+          if (resolvingCount == maxResolving) {
+            break;
+          }
+          existing.state = RESOLVING;
+          resolver.resolve(poi, priorities[i]);
+          resolvingCount++;
+          retriedCount++;
+          started++;
+        }
+        if (existing.state == RESOLVING) {
+          pendingRank++;
+        }
+        continue;
+      }
+      if (resolvingCount == maxResolving) {
+        break;
+      }
+      Entry<A> entry = new Entry<>(poi);
+      entry.rank = pendingRank++;
+      entries.add(entry);
+      entriesById.put(poi.id, entry);
+      if (distances[i] <= enterRadiusMeters) {
+        onEntered(entry, nowNanos);
+      }
+      resolver.resolve(poi, priorities[i]);
+      resolvingCount++;
+      started++;
+    }
+    return started;
+  }
+
+  /**
+   * Keeps the anchor resolved for the POI of {@code poiId}, or releases it if its resolution was
+   * cancelled meanwhile. Returns whether the anchor is kept.
+   *
+   * @param anchor the resolved anchor, or null if it could not be resolved.
+   */
+  boolean onResolved(String poiId, A anchor, long nowNanos) {
+    Entry<A> entry = entriesById.get(poiId);
+    if (entry == null || entry.state != RESOLVING) {
+      if (anchor != null) {
+        resolver.release(anchor);
+      }
+      return false;
+    }
+    if (anchor == null) {
+      entry.state = FAILED;
+      entry.retryNanos = nowNanos + entry.retryDelayNanos;
+      entry.retryDelayNanos = Math.min(2 * entry.retryDelayNanos, MAX_RETRY_DELAY_NANOS);
+      failedCount++;
+      return false;
+    }
+    entry.state = RESOLVED;
+    entry.anchor = anchor;
+    entry.retryDelayNanos = MIN_RETRY_DELAY_NANOS;
+    resolvedCount++;
+    if (entry.enteredNanos != NOT_ENTERED) {
+      enterToResolvedNanos.record(nowNanos - entry.enteredNanos);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the resolved anchor of the POI of {@code poiId}, which the caller then owns, or null if
+   * it is not resolved.
+   */
+  A takeAnchor(String poiId) {
+    Entry<A> entry = entriesById.get(poiId);
+    if (entry == null || entry.state != RESOLVED) {
+      return null;
+    }
+    A anchor = entry.anchor;
+    entry.anchor = null;
+    entry.state = TAKEN;
+    takenCount++;
+    return anchor;
+  }
+
+  /**
+   * Forgets the anchor taken for the POI of {@code poiId}, once its owner detached it, so that the
+   * anchor of the POI is prefetched again.
+   */
+  void onAnchorDetached(String poiId) {
+    Entry<A> entry = entriesById.get(poiId);
+    if (entry == null || entry.state != TAKEN) {
+      return;
+    }
+    remove(entries.indexOf(entry));
+  }
+
+  /** Cancels all the resolutions and releases all the resolved anchors, such as for a new map. */
+  void clear() {
+    for (int i = entries.size() - 1; i >= 0; i--) {
+      remove(i);
+    }
+    hasSpeedOrigin = false;
+  }
+
+  /** Returns the times from POIs entering the enter radius to their anchor being resolved. */
+  LogLinearHistogram getEnterToResolvedHistogram() {
+    return enterToResolvedNanos;
+  }
+
+  String getStatsSummary() {
+    return String.format(
+        Locale.US,
+        "%d resolved, %d taken, %d cancelled, %d failed, %d retried, enter to resolved p50 %.0f"
+            + " ms, p99 %.0f ms",
+        resolvedCount,
+        takenCount,
+        cancelledCount,
+        failedCount,
+        retriedCount,
+        enterToResolvedNanos.getValueAtPercentile(50.0) / 1e6,
+        enterToResolvedNanos.getValueAtPercentile(99.0) / 1e6);
+  }
+
+  private void onEntered(Entry<A> entry, long nowNanos) {
+    if (entry.enteredNanos != NOT_ENTERED) {
+      return;
+    }
+    entry.enteredNanos = nowNanos;
+    if (entry.state == RESOLVED || entry.state == TAKEN) {
+      // Prefetched in time.
+      enterToResolvedNanos.record(0);
+    }
+  }
+
+  private static boolean isRetryDue(Entry<?> entry, long nowNanos) {
+    return entry.state == FAILED && nowNanos >= entry.retryNanos;
+  }
+
+  private void remove(int index) {
+    Entry<A> entry = entries.get(index);
+    if (entry.state == RESOLVING) {
+      resolver.cancel(entry.poi);
+      cancelledCount++;
+    } else if (entry.state == RESOLVED) {
+      resolver.release(entry.anchor);
+    }
+    int last = entries.size() - 1;
+    entries.set(index, entries.get(last));
+    entries.remove(last);
+    entriesById.remove(entry.poi.id);
+  }
+
+  private void updateSpeed(double latitude, double longitude, long nowNanos) {
+    if (!hasSpeedOrigin) {
+      hasSpeedOrigin = true;
+    } else if (nowNanos - speedOriginNanos >= SPEED_INTERVAL_NANOS) {
+      double distance =
+          GeoMath.distanceMeters(speedOriginLatitude, speedOriginLongitude, latitude, longitude);
+      double measured = distance * 1e9 / (nowNanos - speedOriginNanos);
+      speed += SPEED_SMOOTHING * (measured - speed);
+      speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+    } else {
+      return;
+    }
+    speedOriginLatitude = latitude;
+    speedOriginLongitude = longitude;
+    speedOriginNanos = nowNanos;
+  }
+
+  private void ensureCapacity(int count) {
+    if (ranked.length >= count) {
+      return;
+    }
+    int capacity = Math.max(count, 2 * ranked.length);
+    ranked = new Poi[capacity];
+    priorities = new float[capacity];
+    distances = new float[capacity];
+  }
+}
@@ -0,0 +1,101 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.ar.core.examples.java.common.geo.Geohash;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the POIs nearest to a point, reading only the documents of the geohash cells around it
+ * instead of the whole collection.
+ *
+ * <p>The cells covering the search radius are read with range queries over the {@link
+ * PoiDocuments#GEOHASH} field, then the POIs are filtered and sorted by their great-circle
+ * distance. The collection is passed in, so that the queries can be run against the Firestore
+ * emulator.
+ */
+class PoiProximityQuery {
+  // Maximum number of writes in a Firestore batch.
+  private static final int MAX_BATCH_WRITES = 500;
+
+  private final CollectionReference collection;
+
+  PoiProximityQuery(CollectionReference collection) {
+    this.collection = collection;
+  }
+
+  /**
+   * Returns the at most {@code k} POIs within {@code radiusMeters} of a point, closest first. POIs
+   * stored without a geohash are not found until {@link #backfillIndexFields()} is run.
+   */
+  Task<List<Poi>> findNearest(double latitude, double longitude, double radiusMeters, int k) {
+    List<Task<QuerySnapshot>> cellQueries = new ArrayList<>();
+    for (String cell : Geohash.coveringCells(latitude, longitude, radiusMeters)) {
+      cellQueries.add(
+          collection
+              .orderBy(PoiDocuments.GEOHASH)
+              .startAt(cell)
+              .endAt(Geohash.rangeEnd(cell))
+              .get());
+    }
+    return Tasks.<QuerySnapshot>whenAllSuccess(cellQueries)
+        .continueWith(
+            task -> {
+              List<Poi> candidates = new ArrayList<>();
+              for (QuerySnapshot snapshot : task.getResult()) {
+                for (DocumentSnapshot document : snapshot.getDocuments()) {
+                  Poi poi = PoiDocuments.toPoi(document);
+                  if (poi != null) {
+                    candidates.add(poi);
+                  }
+                }
+              }
+              return Poi.selectNearest(candidates, latitude, longitude, radiusMeters, k);
+            });
+  }
+
+  /**
+   * Adds the fields indexed by {@link #findNearest} and {@link PoiSync} to the documents written
+   * before they were stored, reading the whole collection once. Returns the number of documents
+   * updated.
+   */
+  Task<Integer> backfillIndexFields() {
+    return collection
+        .get()
+        .continueWithTask(
+            task -> {
+              List<Task<Void>> commits = new ArrayList<>();
+              WriteBatch batch = collection.getFirestore().batch();
+              int writes = 0;
+              for (DocumentSnapshot document : task.getResult().getDocuments()) {
+                Poi poi = PoiDocuments.toPoi(document);
+                if (poi == null
+                    || (document.getString(PoiDocuments.GEOHASH) != null
+                        && document.get(PoiDocuments.UPDATED_AT) != null)) {
+                  continue;
+                }
+                batch.update(
+                    document.getReference(),
+                    PoiDocuments.GEOHASH,
+                    Geohash.encode(poi.latitude, poi.longitude, Geohash.MAX_PRECISION),
+                    PoiDocuments.UPDATED_AT,
+                    FieldValue.serverTimestamp());
+                if (++writes % MAX_BATCH_WRITES == 0) {
+                  commits.add(batch.commit());
+                  batch = collection.getFirestore().batch();
+                }
+              }
+              if (writes % MAX_BATCH_WRITES != 0) {
+                commits.add(batch.commit());
+              }
+              int updated = writes;
+              return Tasks.whenAll(commits).continueWith(commit -> updated);
+            });
+  }
+}
@@ -0,0 +1,43 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/** Binary encoding of the POIs in the files of {@link PoiStore} and {@link PoiWriteQueue}. */
+final class PoiRecords {
+
+  static void writePoi(DataOutput out, Poi poi) throws IOException {
+    out.writeUTF(poi.id);
+    writeNullableUtf(out, poi.anchorId);
+    writeNullableUtf(out, poi.name);
+    out.writeDouble(poi.latitude);
+    out.writeDouble(poi.longitude);
+    out.writeDouble(poi.altitude);
+    out.writeDouble(poi.heading);
+  }
+
+  static Poi readPoi(DataInput in) throws IOException {
+    String id = in.readUTF();
+    String anchorId = readNullableUtf(in);
+    String name = readNullableUtf(in);
+    double latitude = in.readDouble();
+    double longitude = in.readDouble();
+    double altitude = in.readDouble();
+    double heading = in.readDouble();
+    return new Poi(id, anchorId, name, latitude, longitude, altitude, heading);
+  }
+
+  static void writeNullableUtf(DataOutput out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  static String readNullableUtf(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private PoiRecords() {}
+}
@@ -0,0 +1,34 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.io.Closeable;
+
+/**
+ * Where the POIs hosted by {@link CloudAnchorActivity} are written.
+ *
+ * <p>Writes are queued and return at once. Their listeners are invoked on a background thread of
+ * the repository, never on the main thread.
+ */
+interface PoiRepository extends Closeable {
+
+  /** Listener for the result of a write. */
+  interface WriteListener {
+    /** Invoked once the write is committed, or with the error if it failed. */
+    void onWriteComplete(String id, Exception error);
+  }
+
+  /** Returns a new unique POI id. */
+  String newId();
+
+  /** Queues the write of {@code poi}, replacing the POI of the same id if any. */
+  void put(Poi poi, WriteListener listener);
+
+  /** Queues the deletion of the POI of {@code id}. */
+  void delete(String id, WriteListener listener);
+
+  /** Commits the queued writes now, instead of waiting for more writes to batch. */
+  void flush();
+
+  /** Commits the queued writes if possible, then releases the resources of the repository. */
+  @Override
+  void close();
+}
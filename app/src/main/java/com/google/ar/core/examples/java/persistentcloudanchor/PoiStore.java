@@ -0,0 +1,209 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.geo.Geohash;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * On-device copy of the POI collection, so that POIs can be read without a round trip to Firestore
+ * and while offline.
+ *
+ * <p>The POIs are kept in memory, indexed by id, by anchor id and by geohash, and every change is
+ * appended to a compact binary {@link AppendOnlyLog}. The log also records the watermark of the
+ * last synced change, from which {@link PoiSync} resumes. Opening the store replays the log, drops
+ * a record torn by a crash, and compacts the log if most of its records are obsolete.
+ *
+ * <p>Does not depend on Android. This class is thread safe.
+ */
+class PoiStore implements Closeable {
+  private static final int MAGIC = 0x504f4953; // "POIS"
+  private static final int VERSION = 1;
+
+  private static final byte RECORD_PUT = 1;
+  private static final byte RECORD_DELETE = 2;
+  private static final byte RECORD_WATERMARK = 3;
+
+  // The log is compacted when it holds more than this many obsolete records per POI.
+  static final int MAX_OBSOLETE_RECORDS_PER_POI = 1;
+  static final int MIN_OBSOLETE_RECORDS_TO_COMPACT = 256;
+
+  private final File file;
+  private final Map<String, Poi> poisById = new HashMap<>();
+  private final Map<String, Poi> poisByAnchorId = new HashMap<>();
+  // Keyed by geohash then id, so that the POIs of a cell are a range of keys.
+  private final TreeMap<String, Poi> poisByGeohash = new TreeMap<>();
+  private long watermarkMillis;
+  private int recordCount;
+  private AppendOnlyLog log;
+
+  private PoiStore(File file) {
+    this.file = file;
+  }
+
+  /** Opens the store of {@code file}, creating it if it does not exist. */
+  static PoiStore open(File file) throws IOException {
+    PoiStore store = new PoiStore(file);
+    store.load();
+    return store;
+  }
+
+  synchronized Poi get(String id) {
+    return poisById.get(id);
+  }
+
+  synchronized Poi getByAnchorId(String anchorId) {
+    return poisByAnchorId.get(anchorId);
+  }
+
+  synchronized int size() {
+    return poisById.size();
+  }
+
+  synchronized List<Poi> getAll() {
+    return new ArrayList<>(poisById.values());
+  }
+
+  /** Returns the POIs whose geohash starts with {@code prefix}. */
+  synchronized List<Poi> findInCell(String prefix) {
+    return new ArrayList<>(poisByGeohash.subMap(prefix, Geohash.rangeEnd(prefix)).values());
+  }
+
+  /**
+   * Returns the at most {@code k} POIs within {@code radiusMeters} of a point, closest first, like
+   * {@link PoiProximityQuery#findNearest} does remotely.
+   */
+  synchronized List<Poi> findNearest(
+      double latitude, double longitude, double radiusMeters, int k) {
+    List<Poi> candidates = new ArrayList<>();
+    for (String cell : Geohash.coveringCells(latitude, longitude, radiusMeters)) {
+      candidates.addAll(poisByGeohash.subMap(cell, Geohash.rangeEnd(cell)).values());
+    }
+    return Poi.selectNearest(candidates, latitude, longitude, radiusMeters, k);
+  }
+
+  /** Returns the update time of the last change applied, in milliseconds since the epoch. */
+  synchronized long getWatermarkMillis() {
+    return watermarkMillis;
+  }
+
+  /**
+   * Applies the changes synced up to {@code watermarkMillis}, and appends them to the log.
+   *
+   * @param updated the POIs added or modified.
+   * @param deletedIds the ids of the POIs deleted.
+   */
+  synchronized void apply(
+      Collection<Poi> updated, Collection<String> deletedIds, long watermarkMillis)
+      throws IOException {
+    DataOutputStream out = log.getOutput();
+    for (Poi poi : updated) {
+      put(poi);
+      writePut(out, poi);
+    }
+    for (String id : deletedIds) {
+      if (delete(id)) {
+        out.writeByte(RECORD_DELETE);
+        out.writeUTF(id);
+        recordCount++;
+      }
+    }
+    if (watermarkMillis > this.watermarkMillis) {
+      this.watermarkMillis = watermarkMillis;
+      writeWatermark(out);
+    }
+    log.flush();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (log != null) {
+      log.close();
+      log = null;
+    }
+  }
+
+  private void load() throws IOException {
+    log = AppendOnlyLog.open(file, MAGIC, VERSION, "POI store", this::readRecord);
+    int obsoleteRecords = recordCount - poisById.size();
+    if (obsoleteRecords >= MIN_OBSOLETE_RECORDS_TO_COMPACT
+        && obsoleteRecords > MAX_OBSOLETE_RECORDS_PER_POI * poisById.size()) {
+      compact();
+    }
+  }
+
+  /** Rewrites the log with one record per POI, and the watermark. */
+  private void compact() throws IOException {
+    recordCount = 0;
+    log.rewrite(
+        out -> {
+          for (Poi poi : poisById.values()) {
+            writePut(out, poi);
+          }
+          writeWatermark(out);
+        });
+  }
+
+  private void readRecord(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case RECORD_PUT:
+        put(PoiRecords.readPoi(in));
+        break;
+      case RECORD_DELETE:
+        delete(in.readUTF());
+        break;
+      case RECORD_WATERMARK:
+        watermarkMillis = Math.max(watermarkMillis, in.readLong());
+        break;
+      default:
+        throw new IOException("Unknown record type " + type + " in " + file);
+    }
+    recordCount++;
+  }
+
+  private void writePut(DataOutputStream out, Poi poi) throws IOException {
+    out.writeByte(RECORD_PUT);
+    PoiRecords.writePoi(out, poi);
+    recordCount++;
+  }
+
+  private void writeWatermark(DataOutputStream out) throws IOException {
+    out.writeByte(RECORD_WATERMARK);
+    out.writeLong(watermarkMillis);
+    recordCount++;
+  }
+
+  private void put(Poi poi) {
+    delete(poi.id);
+    poisById.put(poi.id, poi);
+    if (poi.anchorId != null) {
+      poisByAnchorId.put(poi.anchorId, poi);
+    }
+    poisByGeohash.put(geohashKey(poi), poi);
+  }
+
+  private boolean delete(String id) {
+    Poi previous = poisById.remove(id);
+    if (previous == null) {
+      return false;
+    }
+    if (previous.anchorId != null) {
+      poisByAnchorId.remove(previous.anchorId, previous);
+    }
+    poisByGeohash.remove(geohashKey(previous));
+    return true;
+  }
+
+  private static String geohashKey(Poi poi) {
+    return Geohash.encode(poi.latitude, poi.longitude, Geohash.MAX_PRECISION) + '/' + poi.id;
+  }
+}
@@ -0,0 +1,275 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.geo.GeoMath;
+import com.google.ar.core.examples.java.common.scene.SpatialGrid;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Materializes anchors only for the points of interest around the device, as it moves.
+ *
+ * <p>The known POIs are indexed in a {@link SpatialGrid}, by their east and north offsets from the
+ * first POI. On each {@link #update}, the anchors of the POIs farther than the exit radius from the
+ * device are detached, then anchors are created for the POIs within the enter radius, closest
+ * first and at most a few per update. The exit radius is larger than the enter radius, so that
+ * anchors are not created and detached over and over around the radius.
+ *
+ * @param <A> the type of the anchors.
+ */
+class PoiStreamer<A> {
+
+  /** Creates and detaches the anchors of the POIs. */
+  interface AnchorFactory<A> {
+    /** Returns a new anchor for {@code poi}, or null if it cannot be created now. */
+    A createAnchor(Poi poi);
+
+    /** Detaches an anchor created by {@link #createAnchor}. */
+    void detachAnchor(Poi poi, A anchor);
+  }
+
+  private final AnchorFactory<A> factory;
+  private final double enterRadiusMeters;
+  private final double exitRadiusMeters;
+  private final int maxCreationsPerUpdate;
+  private final SpatialGrid grid;
+
+  private final List<Poi> pois = new ArrayList<>();
+  private final Map<String, Integer> indicesById = new HashMap<>();
+  private boolean hasOrigin;
+  private double originLatitude;
+  private double originLongitude;
+  // Per POI: east and north offsets from the origin, and anchor if it is live.
+  private float[] positions = new float[32];
+  private Object[] anchors = new Object[16];
+  // Indices of the POIs that have an anchor.
+  private int[] liveIndices = new int[16];
+  private int liveCount;
+
+  // Temporary array allocated here to reduce number of allocations for each frame.
+  private int[] nearestIndices = new int[16];
+
+  /**
+   * @param enterRadiusMeters anchors are created for the POIs closer than this to the device.
+   * @param exitRadiusMeters anchors are detached for the POIs farther than this from the device.
+   * @param maxCreationsPerUpdate the maximum number of anchors created by each update.
+   */
+  PoiStreamer(
+      AnchorFactory<A> factory,
+      double enterRadiusMeters,
+      double exitRadiusMeters,
+      int maxCreationsPerUpdate) {
+    if (!(enterRadiusMeters > 0 && exitRadiusMeters >= enterRadiusMeters)) {
+      throw new IllegalArgumentException(
+          "Invalid radii " + enterRadiusMeters + ", " + exitRadiusMeters);
+    }
+    this.factory = factory;
+    this.enterRadiusMeters = enterRadiusMeters;
+    this.exitRadiusMeters = exitRadiusMeters;
+    this.maxCreationsPerUpdate = maxCreationsPerUpdate;
+    this.grid = new SpatialGrid((float) enterRadiusMeters);
+  }
+
+  /**
+   * Replaces all the POIs, detaching all the anchors. The origin is moved to the first new POI, so
+   * that the POIs of a site far from the previous one are indexed precisely.
+   */
+  void setPois(Collection<Poi> newPois) {
+    detachAll();
+    for (int i = 0; i < pois.size(); i++) {
+      grid.remove(i);
+    }
+    pois.clear();
+    indicesById.clear();
+    hasOrigin = false;
+    for (Poi poi : newPois) {
+      putPoi(poi);
+    }
+  }
+
+  /**
+   * Adds a POI, or replaces the POI of the same id and detaches its anchor. Does nothing if the POI
+   * is unchanged.
+   */
+  void putPoi(Poi poi) {
+    if (!hasOrigin) {
+      hasOrigin = true;
+      originLatitude = poi.latitude;
+      originLongitude = poi.longitude;
+    }
+    Integer existing = indicesById.get(poi.id);
+    int index;
+    if (existing != null) {
+      index = existing;
+      if (pois.get(index).equals(poi)) {
+        return;
+      }
+      detach(index);
+      pois.set(index, poi);
+    } else {
+      index = pois.size();
+      pois.add(poi);
+      indicesById.put(poi.id, index);
+      ensureCapacity(pois.size());
+    }
+    float east =
+        (float) GeoMath.eastMeters(originLatitude, originLongitude, poi.latitude, poi.longitude);
+    float north = (float) GeoMath.northMeters(originLatitude, poi.latitude);
+    positions[2 * index] = east;
+    positions[2 * index + 1] = north;
+    grid.put(index, east, 0.0f, north);
+  }
+
+  /** Removes the POI of {@code id}, if any, and detaches its anchor. */
+  void removePoi(String id) {
+    Integer removed = indicesById.remove(id);
+    if (removed == null) {
+      return;
+    }
+    int index = removed;
+    detach(index);
+    grid.remove(index);
+    int last = pois.size() - 1;
+    if (index != last) {
+      // Moves the last POI to the removed index.
+      Poi moved = pois.get(last);
+      pois.set(index, moved);
+      indicesById.put(moved.id, index);
+      positions[2 * index] = positions[2 * last];
+      positions[2 * index + 1] = positions[2 * last + 1];
+      anchors[index] = anchors[last];
+      anchors[last] = null;
+      for (int i = 0; i < liveCount; i++) {
+        if (liveIndices[i] == last) {
+          liveIndices[i] = index;
+        }
+      }
+      grid.remove(last);
+      grid.put(index, positions[2 * index], 0.0f, positions[2 * index + 1]);
+    }
+    pois.remove(last);
+  }
+
+  /**
+   * Detaches the anchors out of the exit radius of the device, and creates anchors for the POIs
+   * within the enter radius. Returns the number of anchors created.
+   */
+  int update(double latitude, double longitude) {
+    if (!hasOrigin) {
+      return 0;
+    }
+    float x = (float) GeoMath.eastMeters(originLatitude, originLongitude, latitude, longitude);
+    float z = (float) GeoMath.northMeters(originLatitude, latitude);
+
+    float exitRadiusSquared = (float) (exitRadiusMeters * exitRadiusMeters);
+    for (int i = liveCount - 1; i >= 0; i--) {
+      int index = liveIndices[i];
+      float dx = positions[2 * index] - x;
+      float dz = positions[2 * index + 1] - z;
+      if (dx * dx + dz * dz > exitRadiusSquared) {
+        detach(index);
+      }
+    }
+
+    // The closest POIs without anchors are among the live ones and the next few.
+    int k = Math.min(pois.size(), liveCount + maxCreationsPerUpdate);
+    if (nearestIndices.length < k) {
+      nearestIndices = new int[Math.max(k, 2 * nearestIndices.length)];
+    }
+    int nearestCount =
+        grid.queryNearest(x, 0.0f, z, k, (float) enterRadiusMeters, nearestIndices);
+    int attempts = 0;
+    int created = 0;
+    for (int i = 0; i < nearestCount && attempts < maxCreationsPerUpdate; i++) {
+      int index = nearestIndices[i];
+      if (anchors[index] != null) {
+        continue;
+      }
+      attempts++;
+      A anchor = factory.createAnchor(pois.get(index));
+      if (anchor != null) {
+        anchors[index] = anchor;
+        liveIndices[liveCount++] = index;
+        created++;
+      }
+    }
+    return created;
+  }
+
+  /**
+   * Writes to {@code out} the at most {@code out.length} POIs closest to the position and within
+   * {@code radiusMeters} of it, closest first, and returns their number.
+   */
+  int queryNearest(double latitude, double longitude, double radiusMeters, Poi[] out) {
+    if (!hasOrigin) {
+      return 0;
+    }
+    float x = (float) GeoMath.eastMeters(originLatitude, originLongitude, latitude, longitude);
+    float z = (float) GeoMath.northMeters(originLatitude, latitude);
+    if (nearestIndices.length < out.length) {
+      nearestIndices = new int[out.length];
+    }
+    int count =
+        grid.queryNearest(x, 0.0f, z, out.length, (float) radiusMeters, nearestIndices);
+    for (int i = 0; i < count; i++) {
+      out[i] = pois.get(nearestIndices[i]);
+    }
+    return count;
+  }
+
+  /**
+   * Detaches the anchor of the POI of {@code id}, if it is live, so that it is created again by the
+   * next updates.
+   */
+  void detachAnchor(String id) {
+    Integer index = indicesById.get(id);
+    if (index != null) {
+      detach(index);
+    }
+  }
+
+  /** Detaches all the anchors. They are created again by the next updates. */
+  void detachAll() {
+    while (liveCount > 0) {
+      detach(liveIndices[liveCount - 1]);
+    }
+  }
+
+  int getPoiCount() {
+    return pois.size();
+  }
+
+  /** Returns the number of anchors currently attached. */
+  int getLiveAnchorCount() {
+    return liveCount;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void detach(int index) {
+    A anchor = (A) anchors[index];
+    if (anchor == null) {
+      return;
+    }
+    anchors[index] = null;
+    for (int i = 0; i < liveCount; i++) {
+      if (liveIndices[i] == index) {
+        liveIndices[i] = liveIndices[--liveCount];
+        break;
+      }
+    }
+    factory.detachAnchor(pois.get(index), anchor);
+  }
+
+  private void ensureCapacity(int count) {
+    if (count <= anchors.length) {
+      return;
+    }
+    int capacity = Math.max(count, 2 * anchors.length);
+    positions = Arrays.copyOf(positions, 2 * capacity);
+    anchors = Arrays.copyOf(anchors, capacity);
+    liveIndices = Arrays.copyOf(liveIndices, capacity);
+  }
+}
@@ -0,0 +1,114 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import android.util.Log;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QuerySnapshot;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps a {@link PoiStore} up to date with the POI collection, reading only the documents written
+ * since the watermark of the store.
+ *
+ * <p>A snapshot listener is registered on the documents whose {@link PoiDocuments#UPDATED_AT} is
+ * after the watermark. Its first snapshot holds the changes made while the app was not running,
+ * and the next ones the changes made since. Documents flagged {@link PoiDocuments#DELETED} are
+ * removed from the store.
+ */
+class PoiSync {
+  private static final String TAG = PoiSync.class.getSimpleName();
+
+  /** Listener for the changes applied to the store. */
+  interface PoiChangeListener {
+    /** Invoked on the executor of the sync, after the changes are applied to the store. */
+    void onPoisChanged(List<Poi> updated, List<String> deletedIds);
+  }
+
+  private final CollectionReference collection;
+  private final PoiStore store;
+  private final Executor executor;
+  private final PoiChangeListener listener;
+  private ListenerRegistration registration;
+
+  /**
+   * @param executor runs the store updates and the {@code listener}, off the main thread.
+   */
+  PoiSync(
+      CollectionReference collection,
+      PoiStore store,
+      Executor executor,
+      PoiChangeListener listener) {
+    this.collection = collection;
+    this.store = store;
+    this.executor = executor;
+    this.listener = listener;
+  }
+
+  /** Starts syncing from the watermark of the store. */
+  synchronized void start() {
+    if (registration != null) {
+      return;
+    }
+    // Timestamps are truncated to milliseconds, so the last changes may be read again, which is
+    // harmless, but none is missed.
+    Timestamp watermark = new Timestamp(new Date(store.getWatermarkMillis()));
+    registration =
+        collection
+            .whereGreaterThan(PoiDocuments.UPDATED_AT, watermark)
+            .orderBy(PoiDocuments.UPDATED_AT)
+            .addSnapshotListener(executor, this::onSnapshot);
+  }
+
+  synchronized void stop() {
+    if (registration != null) {
+      registration.remove();
+      registration = null;
+    }
+  }
+
+  private void onSnapshot(QuerySnapshot snapshot, FirebaseFirestoreException e) {
+    if (e != null) {
+      Log.e(TAG, "Could not sync the POIs", e);
+      return;
+    }
+    List<Poi> updated = new ArrayList<>();
+    List<String> deletedIds = new ArrayList<>();
+    long watermarkMillis = store.getWatermarkMillis();
+    for (DocumentChange change : snapshot.getDocumentChanges()) {
+      DocumentSnapshot document = change.getDocument();
+      // Local writes have no server timestamp yet, and are synced once committed.
+      if (document.getMetadata().hasPendingWrites()) {
+        continue;
+      }
+      Poi poi = PoiDocuments.toPoi(document);
+      if (change.getType() == DocumentChange.Type.REMOVED
+          || poi == null
+          || PoiDocuments.isDeleted(document)) {
+        deletedIds.add(document.getId());
+      } else {
+        updated.add(poi);
+      }
+      Timestamp updatedAt = document.getTimestamp(PoiDocuments.UPDATED_AT);
+      if (updatedAt != null && !snapshot.getMetadata().isFromCache()) {
+        watermarkMillis = Math.max(watermarkMillis, updatedAt.toDate().getTime());
+      }
+    }
+    if (updated.isEmpty() && deletedIds.isEmpty()) {
+      return;
+    }
+    try {
+      store.apply(updated, deletedIds, watermarkMillis);
+    } catch (IOException ioException) {
+      Log.e(TAG, "Could not store the POIs", ioException);
+    }
+    listener.onPoisChanged(updated, deletedIds);
+  }
+}
@@ -0,0 +1,205 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable queue of the POI writes not yet committed, so that the writes made offline or before the
+ * app is killed are not lost.
+ *
+ * <p>Writes are appended to a binary {@link AppendOnlyLog} as they are queued, and acknowledged
+ * once committed. The writes still pending are read back when the queue is opened again. The log is
+ * rewritten with the pending writes only once most of its records are acknowledged.
+ *
+ * <p>Does not depend on Android. This class is thread safe.
+ */
+class PoiWriteQueue implements Closeable {
+  private static final int MAGIC = 0x504f4951; // "POIQ"
+  private static final int VERSION = 1;
+
+  private static final byte RECORD_WRITE = 1;
+  private static final byte RECORD_ACKNOWLEDGE = 2;
+
+  // The log is compacted when it holds more acknowledged records than this.
+  private static final int MAX_ACKNOWLEDGED_RECORDS = 1024;
+
+  /** A queued write: the put of a POI, or the deletion of the POI of an id. */
+  static final class Write {
+    /** Increasing number of the write in the queue. */
+    final long sequence;
+    final String id;
+    /** The POI written, or null for a deletion. */
+    final Poi poi;
+    /** Wall clock time the write was queued at, to measure its latency. */
+    final long queuedAtMillis;
+
+    Write(long sequence, String id, Poi poi, long queuedAtMillis) {
+      this.sequence = sequence;
+      this.id = id;
+      this.poi = poi;
+      this.queuedAtMillis = queuedAtMillis;
+    }
+
+    boolean isDelete() {
+      return poi == null;
+    }
+  }
+
+  private final File file;
+  private final ArrayDeque<Write> pending = new ArrayDeque<>();
+  private long nextSequence = 1;
+  private int acknowledgedRecords;
+  private AppendOnlyLog log;
+
+  private PoiWriteQueue(File file) {
+    this.file = file;
+  }
+
+  /** Opens the queue of {@code file}, creating it if it does not exist. */
+  static PoiWriteQueue open(File file) throws IOException {
+    PoiWriteQueue queue = new PoiWriteQueue(file);
+    queue.load();
+    return queue;
+  }
+
+  /**
+   * Queues the put of {@code poi}, or the deletion of the POI of {@code id} if {@code poi} is null,
+   * and returns the queued write once it is in the log.
+   */
+  synchronized Write enqueue(String id, Poi poi, long nowMillis) throws IOException {
+    Write write = new Write(nextSequence++, id, poi, nowMillis);
+    writeRecord(log.getOutput(), write);
+    log.flush();
+    pending.addLast(write);
+    return write;
+  }
+
+  /** Returns the oldest {@code maxCount} pending writes, oldest first. */
+  synchronized List<Write> peek(int maxCount) {
+    List<Write> writes = new ArrayList<>(Math.min(maxCount, pending.size()));
+    for (Write write : pending) {
+      if (writes.size() == maxCount) {
+        break;
+      }
+      writes.add(write);
+    }
+    return writes;
+  }
+
+  /** Removes the pending writes up to {@code sequence} included, once they are committed. */
+  synchronized void acknowledge(long sequence) throws IOException {
+    boolean removed = false;
+    while (!pending.isEmpty() && pending.peekFirst().sequence <= sequence) {
+      pending.removeFirst();
+      acknowledgedRecords++;
+      removed = true;
+    }
+    if (!removed) {
+      return;
+    }
+    if (acknowledgedRecords > MAX_ACKNOWLEDGED_RECORDS) {
+      compact();
+    } else {
+      DataOutputStream out = log.getOutput();
+      out.writeByte(RECORD_ACKNOWLEDGE);
+      out.writeLong(sequence);
+      log.flush();
+      acknowledgedRecords++;
+    }
+  }
+
+  /** Returns the number of pending writes. */
+  synchronized int size() {
+    return pending.size();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (log != null) {
+      log.close();
+      log = null;
+    }
+  }
+
+  /**
+   * Returns the last write of each id among {@code writes}, in the order of these last writes. A
+   * put or deletion replaces the previous writes of the same POI, so only these are committed.
+   */
+  static List<Write> coalesce(List<Write> writes) {
+    Map<String, Integer> lastIndices = new HashMap<>();
+    for (int i = 0; i < writes.size(); i++) {
+      lastIndices.put(writes.get(i).id, i);
+    }
+    if (lastIndices.size() == writes.size()) {
+      return writes;
+    }
+    List<Write> coalesced = new ArrayList<>(lastIndices.size());
+    for (int i = 0; i < writes.size(); i++) {
+      if (lastIndices.get(writes.get(i).id) == i) {
+        coalesced.add(writes.get(i));
+      }
+    }
+    return coalesced;
+  }
+
+  private void load() throws IOException {
+    log = AppendOnlyLog.open(file, MAGIC, VERSION, "POI write queue", this::readRecord);
+    if (acknowledgedRecords > MAX_ACKNOWLEDGED_RECORDS) {
+      compact();
+    }
+  }
+
+  /** Rewrites the log with the pending writes only. */
+  private void compact() throws IOException {
+    log.rewrite(
+        out -> {
+          for (Write write : pending) {
+            writeRecord(out, write);
+          }
+        });
+    acknowledgedRecords = 0;
+  }
+
+  private void readRecord(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case RECORD_WRITE:
+        long sequence = in.readLong();
+        long queuedAtMillis = in.readLong();
+        String id = in.readUTF();
+        Poi poi = in.readBoolean() ? PoiRecords.readPoi(in) : null;
+        pending.addLast(new Write(sequence, id, poi, queuedAtMillis));
+        nextSequence = Math.max(nextSequence, sequence + 1);
+        break;
+      case RECORD_ACKNOWLEDGE:
+        long acknowledged = in.readLong();
+        while (!pending.isEmpty() && pending.peekFirst().sequence <= acknowledged) {
+          pending.removeFirst();
+          acknowledgedRecords++;
+        }
+        acknowledgedRecords++;
+        break;
+      default:
+        throw new IOException("Unknown record type " + type + " in " + file);
+    }
+  }
+
+  private static void writeRecord(DataOutputStream out, Write write) throws IOException {
+    out.writeByte(RECORD_WRITE);
+    out.writeLong(write.sequence);
+    out.writeLong(write.queuedAtMillis);
+    out.writeUTF(write.id);
+    out.writeBoolean(write.poi != null);
+    if (write.poi != null) {
+      PoiRecords.writePoi(out, write.poi);
+    }
+  }
+}
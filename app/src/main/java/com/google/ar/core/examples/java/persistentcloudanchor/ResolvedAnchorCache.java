@@ -0,0 +1,261 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.geo.GeoMath;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Geospatial poses of the cloud anchors where they were last resolved, by cloud anchor id, so that
+ * the anchors of the POIs can be placed at once where they were resolved, in this session or a
+ * previous one, while they are resolved again.
+ *
+ * <p>The poses are kept in memory, and saved to a compact binary file, replaced atomically. The
+ * entries resolved too long ago, or too far from the device, are evicted.
+ *
+ * <p>Does not depend on Android. This class is thread safe.
+ */
+class ResolvedAnchorCache {
+  private static final int MAGIC = 0x52414343; // "RACC"
+  private static final int VERSION = 1;
+
+  /** The geospatial pose of a cloud anchor, when it was last resolved. */
+  static final class Entry {
+    final String cloudAnchorId;
+    final double latitude;
+    final double longitude;
+    final double altitude;
+    /**
+     * Direction of the +Z axis of the anchor, clockwise from north. Unlike {@link Poi#heading}, the
+     * heading of the camera that hosted the anchor, which is about opposite to it.
+     */
+    final double heading;
+    final long resolvedAtMillis;
+    /**
+     * Estimated error of the position, from the accuracy of the geospatial pose of the device when
+     * the anchor was resolved: the lower, the more confident.
+     */
+    final float accuracyMeters;
+
+    Entry(
+        String cloudAnchorId,
+        double latitude,
+        double longitude,
+        double altitude,
+        double heading,
+        long resolvedAtMillis,
+        float accuracyMeters) {
+      this.cloudAnchorId = cloudAnchorId;
+      this.latitude = latitude;
+      this.longitude = longitude;
+      this.altitude = altitude;
+      this.heading = heading;
+      this.resolvedAtMillis = resolvedAtMillis;
+      this.accuracyMeters = accuracyMeters;
+    }
+  }
+
+  private final File file;
+  private final Map<String, Entry> entries = new HashMap<>();
+  private boolean dirty;
+
+  private ResolvedAnchorCache(File file) {
+    this.file = file;
+  }
+
+  /** Opens the cache saved to {@code file}, or an empty one if it does not exist. */
+  static ResolvedAnchorCache open(File file) throws IOException {
+    ResolvedAnchorCache cache = new ResolvedAnchorCache(file);
+    if (file.exists()) {
+      cache.load();
+    }
+    return cache;
+  }
+
+  /** Returns an empty cache, which replaces the content of {@code file} when saved. */
+  static ResolvedAnchorCache create(File file) {
+    ResolvedAnchorCache cache = new ResolvedAnchorCache(file);
+    cache.dirty = true;
+    return cache;
+  }
+
+  /**
+   * Returns the geospatial pose of an anchor, from its pose and the pose of the camera in the world
+   * frame of the session, and the geospatial pose of the camera.
+   *
+   * <p>The world frame is turned to the geospatial heading by matching the horizontal direction the
+   * camera looks at, its -Z axis, with the heading of the camera. The accuracy is that of the
+   * camera position, plus the error the heading accuracy makes at the distance of the anchor.
+   *
+   * @param cameraTranslation the position of the camera in the world frame.
+   * @param cameraZAxis the Z axis of the camera in the world frame.
+   * @param anchorTranslation the position of the anchor in the world frame.
+   * @param anchorZAxis the Z axis of the anchor in the world frame.
+   */
+  static Entry fromCameraRelativePose(
+      String cloudAnchorId,
+      double cameraLatitude,
+      double cameraLongitude,
+      double cameraAltitude,
+      double cameraHeading,
+      double cameraHorizontalAccuracy,
+      double cameraHeadingAccuracy,
+      float[] cameraTranslation,
+      float[] cameraZAxis,
+      float[] anchorTranslation,
+      float[] anchorZAxis,
+      long nowMillis) {
+    // Heading of the world -Z axis, from which the headings of world directions are offset.
+    double worldHeading = cameraHeading - yawDegrees(-cameraZAxis[0], -cameraZAxis[2]);
+    float dx = anchorTranslation[0] - cameraTranslation[0];
+    float dy = anchorTranslation[1] - cameraTranslation[1];
+    float dz = anchorTranslation[2] - cameraTranslation[2];
+    double horizontalDistance = Math.sqrt(dx * dx + dz * dz);
+    double offsetHeading = Math.toRadians(worldHeading + yawDegrees(dx, dz));
+    double east = horizontalDistance * Math.sin(offsetHeading);
+    double north = horizontalDistance * Math.cos(offsetHeading);
+    double heading = worldHeading + yawDegrees(anchorZAxis[0], anchorZAxis[2]);
+    heading = ((heading % 360.0) + 360.0) % 360.0;
+    double accuracy =
+        cameraHorizontalAccuracy
+            + horizontalDistance * Math.sin(Math.toRadians(Math.min(90.0, cameraHeadingAccuracy)));
+    double latitude = GeoMath.offsetLatitude(cameraLatitude, north);
+    return new Entry(
+        cloudAnchorId,
+        latitude,
+        GeoMath.offsetLongitude(cameraLatitude, cameraLongitude, latitude, east),
+        cameraAltitude + dy,
+        heading,
+        nowMillis,
+        (float) accuracy);
+  }
+
+  synchronized Entry get(String cloudAnchorId) {
+    return entries.get(cloudAnchorId);
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Adds the pose of a resolved anchor. Keeps the previous pose of the anchor instead if it is more
+   * accurate, as cloud anchors do not move, with the later of the times they were resolved.
+   */
+  synchronized void put(Entry entry) {
+    Entry previous = entries.get(entry.cloudAnchorId);
+    if (previous != null && previous.accuracyMeters < entry.accuracyMeters) {
+      // The more accurate pose is kept, but the anchor was resolved again, so it is not evicted.
+      if (entry.resolvedAtMillis > previous.resolvedAtMillis) {
+        entries.put(
+            entry.cloudAnchorId,
+            new Entry(
+                previous.cloudAnchorId,
+                previous.latitude,
+                previous.longitude,
+                previous.altitude,
+                previous.heading,
+                entry.resolvedAtMillis,
+                previous.accuracyMeters));
+        dirty = true;
+      }
+      return;
+    }
+    entries.put(entry.cloudAnchorId, entry);
+    dirty = true;
+  }
+
+  /**
+   * Evicts the entries resolved more than {@code maxAgeMillis} ago, or farther than {@code
+   * maxDistanceMeters} from the device. Returns the number of entries evicted.
+   */
+  synchronized int evict(
+      long nowMillis,
+      double latitude,
+      double longitude,
+      long maxAgeMillis,
+      double maxDistanceMeters) {
+    int evicted = 0;
+    for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+      Entry entry = it.next();
+      if (nowMillis - entry.resolvedAtMillis > maxAgeMillis
+          || GeoMath.distanceMeters(latitude, longitude, entry.latitude, entry.longitude)
+              > maxDistanceMeters) {
+        it.remove();
+        evicted++;
+      }
+    }
+    if (evicted > 0) {
+      dirty = true;
+    }
+    return evicted;
+  }
+
+  /** Saves the entries, if they changed, and replaces the previous file atomically. */
+  synchronized void save() throws IOException {
+    if (!dirty) {
+      return;
+    }
+    File saved = new File(file.getPath() + ".tmp");
+    try (FileOutputStream stream = new FileOutputStream(saved)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(entries.size());
+      for (Entry entry : entries.values()) {
+        out.writeUTF(entry.cloudAnchorId);
+        out.writeDouble(entry.latitude);
+        out.writeDouble(entry.longitude);
+        // Centimeters and hundredths of degrees are enough for the altitude and heading.
+        out.writeFloat((float) entry.altitude);
+        out.writeFloat((float) entry.heading);
+        out.writeLong(entry.resolvedAtMillis);
+        out.writeFloat(entry.accuracyMeters);
+      }
+      out.flush();
+      stream.getFD().sync();
+    }
+    if (!saved.renameTo(file)) {
+      throw new IOException("Could not replace " + file);
+    }
+    dirty = false;
+  }
+
+  private void load() throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not a resolved anchor cache: " + file);
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        Entry entry =
+            new Entry(
+                in.readUTF(),
+                in.readDouble(),
+                in.readDouble(),
+                in.readFloat(),
+                in.readFloat(),
+                in.readLong(),
+                in.readFloat());
+        entries.put(entry.cloudAnchorId, entry);
+      }
+    } catch (EOFException e) {
+      throw new IOException("Truncated resolved anchor cache: " + file, e);
+    }
+  }
+
+  /** Returns the angle of a horizontal direction from the world -Z axis, clockwise from above. */
+  private static double yawDegrees(double x, double z) {
+    return Math.toDegrees(Math.atan2(x, -z));
+  }
+}
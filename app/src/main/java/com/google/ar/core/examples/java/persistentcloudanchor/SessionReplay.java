@@ -0,0 +1,250 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.math.Quat;
+import com.google.ar.core.examples.java.common.math.RigidTransform;
+import com.google.ar.core.examples.java.common.profiling.LogLinearHistogram;
+import com.google.ar.core.examples.java.common.recording.SessionFrame;
+import com.google.ar.core.examples.java.common.recording.SessionTraceReader;
+import com.google.ar.core.examples.java.common.rendering.FrustumCuller;
+import com.google.ar.core.examples.java.common.rendering.PlaneMesh;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Feeds the frames of a session trace recorded by {@link CloudAnchorActivity} through the CPU side
+ * of its frame pipeline, on a plain JVM and as fast as possible: the frustum culling, the plane
+ * geometry, the localization state machine and the {@link HostingQualityFlow}, with its sampler
+ * and worker. The OpenGL calls are not replayed.
+ *
+ * <p>The worker estimates on the replaying thread, and returns the last feature map quality
+ * recorded in the trace instead of querying the session, so replaying a trace always makes the
+ * same decisions. The duration of each stage is recorded in a {@link LogLinearHistogram}.
+ */
+class SessionReplay {
+  static final int PLANES_STAGE = 0;
+  static final int LOCALIZATION_STAGE = 1;
+  static final int FEATURE_MAP_QUALITY_STAGE = 2;
+  static final String[] STAGE_NAMES = {
+    "planes", "updateGeospatialState", "updateFeatureMapQualityUi"
+  };
+
+  // Same layout as FeatureMapQualityUi.
+  private static final double BAR_SPACING_RADIANS = Math.toRadians(7.5);
+  private static final int BAR_COUNT = (int) Math.round(Math.PI / BAR_SPACING_RADIANS);
+  private static final float[] UP = {0.0f, 1.0f, 0.0f};
+
+  private final LogLinearHistogram[] histograms = new LogLinearHistogram[STAGE_NAMES.length];
+  private final FrustumCuller culler = new FrustumCuller();
+  private final PlaneMesh planeMesh = new PlaneMesh();
+  private final LocalizationStateMachine localization = new LocalizationStateMachine();
+  private final FeatureMapQualityWorker<
+          FeatureMapQualityTracker.Quality, FeatureMapQualityTracker.Quality>
+      qualityWorker = new FeatureMapQualityWorker<>(quality -> quality);
+  private final HostingQualityFlow<
+          FeatureMapQualityTracker.Quality, FeatureMapQualityTracker.Quality>
+      hostingFlow = new HostingQualityFlow<>(qualityWorker, quality -> quality);
+  private FeatureMapQualityTracker.Quality recordedQuality;
+  private FeatureMapQualityTracker tracker;
+  private boolean hostedAnchor;
+
+  private int frameCount;
+  private int drawnPlaneCount;
+  private int planeVertexCount;
+  private int visibleObjectCount;
+  private int culledObjectCount;
+  private int hostingFrame = -1;
+
+  // Temporary arrays allocated here to reduce number of allocations for each frame.
+  private FloatBuffer polygon = allocatePolygon(64);
+  private final float[] planeNormal = new float[3];
+  private final float[] planeMatrix = new float[16];
+  private final float[] anchorMatrix = new float[16];
+  private final float[] anchorTranslation = new float[4];
+
+  SessionReplay() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LogLinearHistogram();
+    }
+    localization.start();
+  }
+
+  /**
+   * Replays the frames of {@code reader} from its current position, decoding them into {@code
+   * frame}. Returns the number of frames replayed.
+   */
+  int replay(SessionTraceReader reader, SessionFrame frame) throws IOException {
+    int frames = 0;
+    while (reader.read(frame)) {
+      replayFrame(frame);
+      frames++;
+    }
+    return frames;
+  }
+
+  /** Replays the work of {@code CloudAnchorActivity.onDrawFrame} for one recorded frame. */
+  void replayFrame(SessionFrame frame) {
+    frameCount++;
+    // If not tracking, don't draw 3d objects.
+    if (frame.cameraTrackingState == SessionFrame.TRACKING_STATE_PAUSED) {
+      return;
+    }
+
+    long stageBegin = System.nanoTime();
+    culler.update(frame.viewMatrix, frame.projectionMatrix);
+    boolean isAnchorTracking =
+        frame.hasAnchor && frame.anchorTrackingState == SessionFrame.TRACKING_STATE_TRACKING;
+    if (!frame.hasAnchor) {
+      updatePlanes(frame);
+      histograms[PLANES_STAGE].record(System.nanoTime() - stageBegin);
+    } else if (isAnchorTracking) {
+      culler.isSphereVisible(
+          frame.anchorPose[0],
+          frame.anchorPose[1],
+          frame.anchorPose[2],
+          FeatureMapQualityTracker.ANCHOR_BOUNDING_RADIUS);
+      if (tracker == null) {
+        // The UI is created with the anchor, on the plane it was placed on.
+        tracker =
+            new FeatureMapQualityTracker(
+                !frame.isAnchorOnVerticalPlane, BAR_COUNT, BAR_SPACING_RADIANS);
+        hostingFlow.start(tracker, frame.timestampNanos / 1_000_000);
+      }
+    }
+
+    if (frame.earthTrackingState != SessionFrame.NO_EARTH) {
+      stageBegin = System.nanoTime();
+      updateLocalization(frame);
+      histograms[LOCALIZATION_STAGE].record(System.nanoTime() - stageBegin);
+    }
+
+    if (isAnchorTracking && !hostedAnchor && tracker != null) {
+      stageBegin = System.nanoTime();
+      updateFeatureMapQuality(frame);
+      histograms[FEATURE_MAP_QUALITY_STAGE].record(System.nanoTime() - stageBegin);
+    }
+    visibleObjectCount += culler.getVisibleCount();
+    culledObjectCount += culler.getCulledCount();
+  }
+
+  /** Builds the mesh of each tracked plane that faces the camera, as {@code PlaneRenderer} does. */
+  private void updatePlanes(SessionFrame frame) {
+    for (int i = 0; i < frame.planeCount; i++) {
+      if (frame.planeTrackingStates[i] != SessionFrame.TRACKING_STATE_TRACKING) {
+        continue;
+      }
+      int pose = i * RigidTransform.SIZE;
+      Quat.rotateVector(planeNormal, 0, frame.planePoses, pose + 3, UP, 0);
+      float distance =
+          (frame.cameraPose[0] - frame.planePoses[pose]) * planeNormal[0]
+              + (frame.cameraPose[1] - frame.planePoses[pose + 1]) * planeNormal[1]
+              + (frame.cameraPose[2] - frame.planePoses[pose + 2]) * planeNormal[2];
+      if (distance < 0) { // Plane is back-facing.
+        continue;
+      }
+      RigidTransform.toMatrix(planeMatrix, 0, frame.planePoses, pose);
+      if (!culler.isBoxVisible(
+          planeMatrix,
+          0,
+          frame.planeExtents[2 * i] / 2,
+          /*halfExtentY=*/ 0.0f,
+          frame.planeExtents[2 * i + 1] / 2)) {
+        continue;
+      }
+      int length = frame.planePolygonLengths[i];
+      if (polygon.capacity() < length) {
+        polygon = allocatePolygon(Math.max(length, 2 * polygon.capacity()));
+      }
+      polygon.clear();
+      polygon.put(frame.planePolygons, frame.planePolygonOffsets[i], length);
+      polygon.flip();
+      planeMesh.update(frame.planeExtents[2 * i], frame.planeExtents[2 * i + 1], polygon);
+      drawnPlaneCount++;
+      planeVertexCount += planeMesh.getVertexBuffer().limit() / PlaneMesh.COORDS_PER_VERTEX;
+    }
+  }
+
+  private void updateLocalization(SessionFrame frame) {
+    State state = localization.getState();
+    if (state == State.PRETRACKING) {
+      localization.onEarthState(
+          frame.earthTrackingState == SessionFrame.TRACKING_STATE_TRACKING, frame.isEarthEnabled);
+    } else if ((state == State.LOCALIZING || state == State.LOCALIZED)
+        && frame.hasGeospatialPose) {
+      localization.onGeospatialPoseAccuracy(frame.horizontalAccuracy, frame.headingAccuracy);
+    }
+  }
+
+  private void updateFeatureMapQuality(SessionFrame frame) {
+    if (frame.featureMapQuality != SessionFrame.QUALITY_NOT_ESTIMATED) {
+      recordedQuality = toQuality(frame.featureMapQuality);
+    }
+    RigidTransform.toMatrix(anchorMatrix, 0, frame.anchorPose, 0);
+    System.arraycopy(frame.anchorPose, 0, anchorTranslation, 0, 3);
+    anchorTranslation[3] = 1.0f;
+    long nowMillis = frame.timestampNanos / 1_000_000;
+    if (hostingFlow.beginFrame(
+        anchorMatrix, anchorTranslation, frame.viewMatrix, culler, nowMillis)) {
+      // Null until a quality was recorded, which the flow counts as a failed estimate.
+      hostingFlow.submit(recordedQuality, frame.timestampNanos);
+      qualityWorker.estimatePending();
+    }
+    if (hostingFlow.endFrame(
+        localization.getState() == State.LOCALIZED, nowMillis, frame.timestampNanos)) {
+      hostedAnchor = true;
+      hostingFrame = frameCount - 1;
+    }
+  }
+
+  LogLinearHistogram getHistogram(int stage) {
+    return histograms[stage];
+  }
+
+  State getLocalizationState() {
+    return localization.getState();
+  }
+
+  int getFrameCount() {
+    return frameCount;
+  }
+
+  int getDrawnPlaneCount() {
+    return drawnPlaneCount;
+  }
+
+  int getPlaneVertexCount() {
+    return planeVertexCount;
+  }
+
+  /** Returns the number of planes and anchors that passed the frustum culling. */
+  int getVisibleObjectCount() {
+    return visibleObjectCount;
+  }
+
+  /** Returns the number of planes and anchors rejected by the frustum culling. */
+  int getCulledObjectCount() {
+    return culledObjectCount;
+  }
+
+  /** Returns the index of the frame the anchor was hosted on, or -1 if it was not hosted. */
+  int getHostingFrame() {
+    return hostingFrame;
+  }
+
+  private static FeatureMapQualityTracker.Quality toQuality(int quality) {
+    if (quality == SessionFrame.QUALITY_INSUFFICIENT) {
+      return FeatureMapQualityTracker.Quality.INSUFFICIENT;
+    } else if (quality == SessionFrame.QUALITY_SUFFICIENT) {
+      return FeatureMapQualityTracker.Quality.SUFFICIENT;
+    } else {
+      return FeatureMapQualityTracker.Quality.GOOD;
+    }
+  }
+
+  private static FloatBuffer allocatePolygon(int floats) {
+    return ByteBuffer.allocateDirect(Float.SIZE / 8 * floats)
+        .order(ByteOrder.nativeOrder())
+        .asFloatBuffer();
+  }
+}
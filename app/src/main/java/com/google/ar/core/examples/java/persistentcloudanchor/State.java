@@ -0,0 +1,10 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+/** Localization state of the hosting session, see {@link LocalizationStateMachine}. */
+enum State {
+  UNINITIALIZED,
+  EARTH_STATE_ERROR,
+  PRETRACKING,
+  LOCALIZING,
+  LOCALIZED
+}
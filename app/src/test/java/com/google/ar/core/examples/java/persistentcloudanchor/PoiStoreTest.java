@@ -0,0 +1,152 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PoiStoreTest {
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File file;
+  private PoiStore store;
+
+  @Before
+  public void setUp() throws IOException {
+    file = new File(folder.getRoot(), "pois.bin");
+    store = PoiStore.open(file);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    store.close();
+  }
+
+  @Test
+  public void reopen_restoresPoisAndWatermark() throws IOException {
+    Poi kept = poi(0, "Kept");
+    Poi renamed = poi(1, "Renamed");
+    store.apply(list(kept, poi(1, "Before"), poi(2, "Deleted")), list(), 1000L);
+    store.apply(list(renamed), list("poi2"), 2000L);
+
+    reopen();
+
+    assertEquals(2, store.size());
+    assertEquals(kept, store.get("poi0"));
+    assertEquals(renamed, store.get("poi1"));
+    assertNull(store.get("poi2"));
+    assertEquals(renamed, store.getByAnchorId("anchor1"));
+    assertNull(store.getByAnchorId("anchor2"));
+    assertEquals(2, store.findNearest(kept.latitude, kept.longitude, 100.0, 10).size());
+    assertEquals(2000L, store.getWatermarkMillis());
+  }
+
+  @Test
+  public void reopen_dropsTornLastRecord() throws IOException {
+    store.apply(list(poi(0, "Synced")), list(), 1000L);
+    long syncedLength = file.length();
+    store.apply(list(poi(1, "Torn")), list(), 2000L);
+    store.close();
+    // A crash while the last change was written left only part of it.
+    try (RandomAccessFile torn = new RandomAccessFile(file, "rw")) {
+      torn.setLength(syncedLength + (file.length() - syncedLength) / 2);
+    }
+
+    store = PoiStore.open(file);
+
+    assertEquals(1, store.size());
+    assertNull(store.get("poi1"));
+    assertEquals(1000L, store.getWatermarkMillis());
+    assertEquals(syncedLength, file.length());
+    // The changes appended after the torn record was dropped are read back.
+    store.apply(list(poi(2, "Appended")), list(), 3000L);
+    reopen();
+    assertEquals(2, store.size());
+    assertEquals(3000L, store.getWatermarkMillis());
+  }
+
+  @Test
+  public void reopen_keepsLogBelowCompactionThreshold() throws IOException {
+    List<Poi> pois = pois(PoiStore.MIN_OBSOLETE_RECORDS_TO_COMPACT, "First");
+    store.apply(pois, list(), 1000L);
+    // Exactly one obsolete record per POI, counting the watermark records.
+    store.apply(pois(PoiStore.MIN_OBSOLETE_RECORDS_TO_COMPACT - 2, "Second"), list(), 2000L);
+    store.close();
+    long length = file.length();
+
+    store = PoiStore.open(file);
+
+    assertEquals(length, file.length());
+  }
+
+  @Test
+  public void reopen_compactsMostlyObsoleteLog() throws IOException {
+    int count = PoiStore.MIN_OBSOLETE_RECORDS_TO_COMPACT;
+    store.apply(pois(count, "First"), list(), 1000L);
+    store.apply(pois(count, "Second"), list(), 2000L);
+    store.apply(pois(count, "Third"), list(), 3000L);
+    store.close();
+    long length = file.length();
+
+    store = PoiStore.open(file);
+
+    assertTrue(file.length() < length / 2);
+    assertEquals(count, store.size());
+    assertEquals("Third 0", store.get("poi0").name);
+  }
+
+  @Test
+  public void compaction_keepsWatermark() throws IOException {
+    int count = PoiStore.MIN_OBSOLETE_RECORDS_TO_COMPACT;
+    store.apply(pois(count, "First"), list(), 1000L);
+    store.apply(pois(count, "Second"), list(), 2000L);
+    store.apply(pois(count, "Third"), list(), 3000L);
+    // The last change only advances the watermark.
+    store.apply(list(), list(), 5000L);
+    store.close();
+    long length = file.length();
+    store = PoiStore.open(file);
+    assertTrue(file.length() < length);
+
+    reopen();
+
+    assertEquals(5000L, store.getWatermarkMillis());
+    assertEquals(count, store.size());
+  }
+
+  private void reopen() throws IOException {
+    store.close();
+    store = PoiStore.open(file);
+  }
+
+  private static List<Poi> pois(int count, String name) {
+    List<Poi> pois = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      pois.add(poi(i, name + " " + i));
+    }
+    return pois;
+  }
+
+  private static Poi poi(int i, String name) {
+    return new Poi(
+        "poi" + i, "anchor" + i, name, 10.0 + i * 1e-5, 76.0 + i * 1e-5, 20.0, 90.0);
+  }
+
+  @SafeVarargs
+  private static <T> List<T> list(T... values) {
+    List<T> list = new ArrayList<>();
+    Collections.addAll(list, values);
+    return list;
+  }
+}
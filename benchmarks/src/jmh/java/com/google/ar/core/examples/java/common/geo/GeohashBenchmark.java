@@ -0,0 +1,41 @@
+package com.google.ar.core.examples.java.common.geo;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the geohash of a POI, computed on each write, and the cells covering a search radius,
+ * computed on each proximity query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeohashBenchmark {
+  private static final double LATITUDE = 10.0497;
+  private static final double LONGITUDE = 76.3311;
+
+  @Param({"50", "1000"})
+  public double radiusMeters;
+
+  @Benchmark
+  public String encode() {
+    return Geohash.encode(LATITUDE, LONGITUDE, Geohash.MAX_PRECISION);
+  }
+
+  @Benchmark
+  public List<String> coveringCells() {
+    return Geohash.coveringCells(LATITUDE, LONGITUDE, radiusMeters);
+  }
+
+  @Benchmark
+  public double distanceMeters() {
+    return GeoMath.distanceMeters(LATITUDE, LONGITUDE, LATITUDE + 0.001, LONGITUDE + 0.001);
+  }
+}
@@ -0,0 +1,98 @@
+package com.google.ar.core.examples.java.common.math;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the {@code common.math} functions with the {@code android.opengl.Matrix} and {@code
+ * com.google.ar.core.Pose} operations they replace on the rendering thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MathBenchmark {
+  private final float[] transformA = new float[RigidTransform.SIZE];
+  private final float[] transformB = new float[RigidTransform.SIZE];
+  private final float[] transformOut = new float[RigidTransform.SIZE];
+  private final float[] rigidMatrix = new float[16];
+  private final float[] projectionMatrix = new float[16];
+  private final float[] matrixOut = new float[16];
+  private final float[] point = {0.3f, -1.2f, 2.5f, 1.0f};
+  private final float[] vectorOut = new float[4];
+
+  @Setup
+  public void setUp() {
+    Vec3.set(transformA, 0, 0.1f, 0.2f, -0.5f);
+    Quat.setAxisAngle(transformA, 3, 0.0f, 1.0f, 0.0f, 0.7f);
+    Vec3.set(transformB, 0, -1.0f, 0.0f, 2.0f);
+    Quat.setAxisAngle(transformB, 3, 0.6f, 0.0f, 0.8f, -1.1f);
+    RigidTransform.toMatrix(rigidMatrix, 0, transformA, 0);
+    // A perspective projection, as returned by Camera.getProjectionMatrix.
+    Mat4.setIdentity(projectionMatrix, 0);
+    projectionMatrix[0] = 2.4f;
+    projectionMatrix[5] = 1.3f;
+    projectionMatrix[10] = -1.0002f;
+    projectionMatrix[11] = -1.0f;
+    projectionMatrix[14] = -0.2f;
+    projectionMatrix[15] = 0.0f;
+  }
+
+  @Benchmark
+  public float[] multiplyReference() {
+    ReferenceMatrix.multiplyMM(matrixOut, 0, projectionMatrix, 0, rigidMatrix, 0);
+    return matrixOut;
+  }
+
+  @Benchmark
+  public float[] multiply() {
+    Mat4.multiply(matrixOut, 0, projectionMatrix, 0, rigidMatrix, 0);
+    return matrixOut;
+  }
+
+  @Benchmark
+  public float[] multiplyVec4Reference() {
+    ReferenceMatrix.multiplyMV(vectorOut, 0, rigidMatrix, 0, point, 0);
+    return vectorOut;
+  }
+
+  @Benchmark
+  public float[] multiplyVec4() {
+    Mat4.multiplyVec4(vectorOut, 0, rigidMatrix, 0, point, 0);
+    return vectorOut;
+  }
+
+  @Benchmark
+  public float[] invertReference() {
+    ReferenceMatrix.invertM(matrixOut, 0, rigidMatrix, 0);
+    return matrixOut;
+  }
+
+  @Benchmark
+  public float[] invert() {
+    Mat4.invert(matrixOut, 0, rigidMatrix, 0);
+    return matrixOut;
+  }
+
+  @Benchmark
+  public float[] invertRigid() {
+    Mat4.invertRigid(matrixOut, 0, rigidMatrix, 0);
+    return matrixOut;
+  }
+
+  @Benchmark
+  public float[] composeAllocating() {
+    return ReferenceMatrix.compose(transformA, transformB);
+  }
+
+  @Benchmark
+  public float[] compose() {
+    RigidTransform.compose(transformOut, 0, transformA, 0, transformB, 0);
+    return transformOut;
+  }
+}
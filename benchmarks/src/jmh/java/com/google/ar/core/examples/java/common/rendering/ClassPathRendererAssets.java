@@ -0,0 +1,57 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.awt.image.BufferedImage;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import javax.imageio.ImageIO;
+
+/**
+ * {@link RendererAssets} read from the class path, where the build copies the app models and
+ * shaders, with the images decoded by {@link ImageIO}.
+ */
+final class ClassPathRendererAssets implements RendererAssets {
+  @Override
+  public InputStream open(String filename) throws IOException {
+    InputStream inputStream = ClassPathRendererAssets.class.getResourceAsStream("/" + filename);
+    if (inputStream == null) {
+      throw new FileNotFoundException(filename);
+    }
+    return inputStream;
+  }
+
+  @Override
+  public Image readImage(String filename) throws IOException {
+    BufferedImage image;
+    try (InputStream inputStream = open(filename)) {
+      image = ImageIO.read(inputStream);
+    }
+    if (image == null) {
+      throw new IOException("Could not decode " + filename);
+    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    ByteBuffer pixels =
+        ByteBuffer.allocateDirect(4 * width * height).order(ByteOrder.nativeOrder());
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      for (int argb : row) {
+        // Premultiplied by alpha, as Android decodes them.
+        int alpha = argb >>> 24;
+        pixels.put(premultiply((argb >> 16) & 0xFF, alpha));
+        pixels.put(premultiply((argb >> 8) & 0xFF, alpha));
+        pixels.put(premultiply(argb & 0xFF, alpha));
+        pixels.put((byte) alpha);
+      }
+    }
+    pixels.position(0);
+    return new Image(width, height, pixels);
+  }
+
+  private static byte premultiply(int component, int alpha) {
+    return (byte) ((component * alpha + 127) / 255);
+  }
+}
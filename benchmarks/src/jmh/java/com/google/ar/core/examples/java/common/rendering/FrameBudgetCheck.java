@@ -0,0 +1,57 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import com.google.ar.core.examples.java.common.rendering.gl.RecordingGl;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that a frame of a busy {@link RecordedScene}, drawn by the app renderers on a {@link
+ * RecordingGl}, stays within a budget of draw calls and of bytes uploaded to the GPU, and makes no
+ * GL error. Run by {@code ./gradlew :benchmarks:check}, or on its own with:
+ *
+ * <pre>./gradlew :benchmarks:frameBudgetCheck</pre>
+ */
+public final class FrameBudgetCheck {
+  private static final int PLANES = 10;
+  private static final int ANCHORS = 50;
+  private static final int FRAMES = 3;
+
+  // One draw call per plane and per anchor, with headroom for the hosted anchor and the feature map
+  // quality bars.
+  private static final int MAX_DRAW_CALLS = PLANES + ANCHORS + 8;
+  // The plane outlines are read from client memory every frame, at about 2 KB per plane, while the
+  // models and textures stay in GPU buffers once created.
+  private static final long MAX_UPLOADED_BYTES = 32 * 1024;
+
+  private FrameBudgetCheck() {}
+
+  public static void main(String[] args) throws IOException {
+    RecordedScene scene = new RecordedScene(PLANES, ANCHORS);
+    List<String> failures = new ArrayList<>();
+    for (int i = 0; i < FRAMES; i++) {
+      RecordingGl.FrameStats stats = scene.drawFrame();
+      System.out.println("Frame " + i + ": " + stats);
+      if (stats.getDrawCallCount() > MAX_DRAW_CALLS) {
+        failures.add(
+            "frame " + i + " made " + stats.getDrawCallCount() + " > " + MAX_DRAW_CALLS + " draws");
+      }
+      if (stats.getUploadedBytes() > MAX_UPLOADED_BYTES) {
+        failures.add(
+            "frame "
+                + i
+                + " uploaded "
+                + stats.getUploadedBytes()
+                + " > "
+                + MAX_UPLOADED_BYTES
+                + " bytes");
+      }
+      if (stats.getErrorCount() != 0) {
+        failures.add("frame " + i + " made " + stats.getErrorCount() + " GL errors");
+      }
+    }
+    if (!failures.isEmpty()) {
+      throw new AssertionError("Frame budget exceeded: " + failures);
+    }
+  }
+}
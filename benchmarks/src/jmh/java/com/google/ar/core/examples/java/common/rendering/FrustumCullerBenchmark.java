@@ -0,0 +1,86 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.Quat;
+import com.google.ar.core.examples.java.common.math.RigidTransform;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the culling of a frame: the extraction of the frustum planes, then the bounding sphere
+ * test of every anchor and the bounding box test of every plane, scattered around the camera.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrustumCullerBenchmark {
+  private static final float SCENE_RADIUS_METERS = 20.0f;
+
+  @Param({"10", "100", "1000"})
+  public int objects;
+
+  private final FrustumCuller culler = new FrustumCuller();
+  private final float[] viewMatrix = new float[16];
+  private final float[] projectionMatrix = new float[16];
+  private float[] spheres;
+  private float[] boxMatrices;
+  private float[] boxHalfExtents;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    spheres = new float[4 * objects];
+    boxMatrices = new float[16 * objects];
+    boxHalfExtents = new float[2 * objects];
+    float[] pose = new float[RigidTransform.SIZE];
+    for (int i = 0; i < objects; i++) {
+      for (int j = 0; j < 3; j++) {
+        spheres[4 * i + j] = SCENE_RADIUS_METERS * (2 * random.nextFloat() - 1);
+      }
+      spheres[4 * i + 3] = 0.17f;
+      RigidTransform.setTranslation(
+          pose,
+          0,
+          SCENE_RADIUS_METERS * (2 * random.nextFloat() - 1),
+          -1.5f + 3 * random.nextFloat(),
+          SCENE_RADIUS_METERS * (2 * random.nextFloat() - 1));
+      Quat.setAxisAngle(pose, 3, 0.0f, 1.0f, 0.0f, (float) (2 * Math.PI * random.nextFloat()));
+      RigidTransform.toMatrix(boxMatrices, 16 * i, pose, 0);
+      boxHalfExtents[2 * i] = 0.5f + 2 * random.nextFloat();
+      boxHalfExtents[2 * i + 1] = 0.5f + 2 * random.nextFloat();
+    }
+    // A camera at the center of the scene, looking along -z.
+    float[] cameraMatrix = new float[16];
+    Mat4.setIdentity(cameraMatrix, 0);
+    cameraMatrix[13] = 1.4f;
+    Mat4.invertRigid(viewMatrix, 0, cameraMatrix, 0);
+    // A perspective projection, as returned by Camera.getProjectionMatrix.
+    Mat4.setIdentity(projectionMatrix, 0);
+    projectionMatrix[0] = 2.4f;
+    projectionMatrix[5] = 1.3f;
+    projectionMatrix[10] = -1.0002f;
+    projectionMatrix[11] = -1.0f;
+    projectionMatrix[14] = -0.2f;
+    projectionMatrix[15] = 0.0f;
+  }
+
+  @Benchmark
+  public int cullFrame() {
+    culler.update(viewMatrix, projectionMatrix);
+    for (int i = 0; i < objects; i++) {
+      culler.isSphereVisible(
+          spheres[4 * i], spheres[4 * i + 1], spheres[4 * i + 2], spheres[4 * i + 3]);
+      culler.isBoxVisible(
+          boxMatrices, 16 * i, boxHalfExtents[2 * i], 0.0f, boxHalfExtents[2 * i + 1]);
+    }
+    return culler.getVisibleCount();
+  }
+}
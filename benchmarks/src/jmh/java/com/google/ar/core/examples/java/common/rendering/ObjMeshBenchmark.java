@@ -0,0 +1,54 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the OBJ parsing and conversion done by {@link ObjectRenderer#createOnGlThread} for the
+ * models of the app. The files are read into memory first, so that only the CPU work is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ObjMeshBenchmark {
+  @Param({"models/anchor.obj", "models/map_quality_bar.obj"})
+  public String objAssetName;
+
+  private byte[] objBytes;
+
+  @Setup
+  public void setUp() throws IOException {
+    objBytes = readResource(objAssetName);
+  }
+
+  @Benchmark
+  public ObjMesh read() throws IOException {
+    return ObjMesh.read(new ByteArrayInputStream(objBytes));
+  }
+
+  static byte[] readResource(String name) throws IOException {
+    try (InputStream inputStream = ObjMeshBenchmark.class.getResourceAsStream("/" + name)) {
+      if (inputStream == null) {
+        throw new IOException("Missing resource " + name);
+      }
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int count;
+      while ((count = inputStream.read(buffer)) != -1) {
+        outputStream.write(buffer, 0, count);
+      }
+      return outputStream.toByteArray();
+    }
+  }
+}
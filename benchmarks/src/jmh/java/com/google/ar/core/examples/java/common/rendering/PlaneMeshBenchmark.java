@@ -0,0 +1,59 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the fade ring and triangle strip generation done by {@link PlaneRenderer} for each
+ * plane, on a noisy elliptic boundary polygon like the ones ARCore returns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlaneMeshBenchmark {
+  private static final float EXTENT_X = 3.0f;
+  private static final float EXTENT_Z = 2.0f;
+
+  @Param({"16", "64", "256"})
+  public int boundaryVertices;
+
+  @Param({"0", "0.02"})
+  public float simplificationToleranceMeters;
+
+  private final PlaneMesh mesh = new PlaneMesh();
+  private FloatBuffer boundary;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    boundary =
+        ByteBuffer.allocateDirect(Float.SIZE / 8 * 2 * boundaryVertices)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    for (int i = 0; i < boundaryVertices; ++i) {
+      double angle = -2.0 * Math.PI * i / boundaryVertices;
+      float noise = 1.0f + 0.01f * (float) random.nextGaussian();
+      boundary.put(0.5f * EXTENT_X * noise * (float) Math.cos(angle));
+      boundary.put(0.5f * EXTENT_Z * noise * (float) Math.sin(angle));
+    }
+    boundary.rewind();
+    mesh.setSimplificationTolerance(simplificationToleranceMeters);
+  }
+
+  @Benchmark
+  public PlaneMesh update() {
+    mesh.update(EXTENT_X, EXTENT_Z, boundary);
+    return mesh;
+  }
+}
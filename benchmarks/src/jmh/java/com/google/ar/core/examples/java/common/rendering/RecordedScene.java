@@ -0,0 +1,116 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.rendering.gl.RecordingGl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * A scene of the app drawn by its renderers on a {@link RecordingGl}: planes laid out in front of
+ * the camera, with round outlines of {@link #BOUNDARY_VERTICES} vertices, and instances of the
+ * anchor model on them, as drawn for the POIs.
+ */
+final class RecordedScene {
+  static final int BOUNDARY_VERTICES = 64;
+
+  private static final float PLANE_EXTENT_METERS = 2.0f;
+  private static final float FLOOR_HEIGHT_METERS = -1.5f;
+  private static final float ANCHOR_SPACING_METERS = 0.5f;
+  private static final int ANCHORS_PER_ROW = 10;
+  // Same as CloudAnchorActivity.
+  private static final float[] ANCHOR_COLOR = new float[] {52.0f, 168.0f, 82.0f, 255.0f};
+  private static final float[] COLOR_CORRECTION_RGBA = new float[] {1.0f, 1.0f, 1.0f, 1.0f};
+
+  private final RecordingGl gl = new RecordingGl();
+  private final PlaneMeshRenderer planeRenderer = new PlaneMeshRenderer(gl);
+  private final ObjectRenderer anchorRenderer = new ObjectRenderer(gl);
+
+  private final float[][] planeMatrices;
+  private final FloatBuffer boundary;
+  private final float[] anchorMatrices;
+  private final int[] anchorIndices;
+  private final float[] viewMatrix = new float[16];
+  private final float[] projectionMatrix = new float[16];
+
+  /**
+   * Creates the renderers, and the scene of {@code planeCount} planes and {@code anchorCount}
+   * anchors. The counters of the creation, which uploads the models and textures, are dropped.
+   */
+  RecordedScene(int planeCount, int anchorCount) throws IOException {
+    RendererAssets assets = new ClassPathRendererAssets();
+    planeRenderer.createOnGlThread(assets, "models/trigrid.png");
+    anchorRenderer.createOnGlThread(assets, "models/anchor.obj", "models/anchor.png");
+    anchorRenderer.setMaterialProperties(0.0f, 0.75f, 0.1f, 0.5f);
+
+    planeMatrices = new float[planeCount][16];
+    for (int i = 0; i < planeCount; i++) {
+      Mat4.setIdentity(planeMatrices[i], 0);
+      planeMatrices[i][12] = PLANE_EXTENT_METERS * (i % 2 - 0.5f);
+      planeMatrices[i][13] = FLOOR_HEIGHT_METERS;
+      planeMatrices[i][14] = -PLANE_EXTENT_METERS * (i / 2 + 1);
+    }
+    boundary =
+        ByteBuffer.allocateDirect(Float.SIZE / 8 * 2 * BOUNDARY_VERTICES)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    for (int i = 0; i < BOUNDARY_VERTICES; i++) {
+      double angle = -2.0 * Math.PI * i / BOUNDARY_VERTICES;
+      boundary.put(PLANE_EXTENT_METERS / 2 * (float) Math.cos(angle));
+      boundary.put(PLANE_EXTENT_METERS / 2 * (float) Math.sin(angle));
+    }
+    boundary.rewind();
+
+    anchorMatrices = new float[16 * anchorCount];
+    anchorIndices = new int[anchorCount];
+    for (int i = 0; i < anchorCount; i++) {
+      Mat4.setIdentity(anchorMatrices, 16 * i);
+      anchorMatrices[16 * i + 12] = ANCHOR_SPACING_METERS * (i % ANCHORS_PER_ROW - 4.5f);
+      anchorMatrices[16 * i + 13] = FLOOR_HEIGHT_METERS;
+      anchorMatrices[16 * i + 14] = -ANCHOR_SPACING_METERS * (i / ANCHORS_PER_ROW + 2);
+      anchorIndices[i] = i;
+    }
+
+    // The camera is at the origin, looking down -z, with a 60 degree field of view.
+    Mat4.setIdentity(viewMatrix, 0);
+    float near = 0.1f;
+    float far = 100.0f;
+    float focal = 1.0f / (float) Math.tan(Math.toRadians(30.0));
+    projectionMatrix[0] = focal;
+    projectionMatrix[5] = focal;
+    projectionMatrix[10] = -(far + near) / (far - near);
+    projectionMatrix[11] = -1.0f;
+    projectionMatrix[14] = -2.0f * far * near / (far - near);
+
+    gl.endFrame();
+  }
+
+  /** Draws one frame of the scene, and returns its counters. */
+  RecordingGl.FrameStats drawFrame() {
+    if (planeMatrices.length > 0) {
+      planeRenderer.beginDraw();
+      for (int i = 0; i < planeMatrices.length; i++) {
+        planeRenderer.drawPlane(
+            planeMatrices[i],
+            PLANE_EXTENT_METERS,
+            PLANE_EXTENT_METERS,
+            boundary,
+            /*planeIndex=*/ i,
+            viewMatrix,
+            projectionMatrix);
+      }
+      planeRenderer.endDraw();
+    }
+    anchorRenderer.drawInstances(
+        anchorMatrices,
+        anchorIndices,
+        anchorIndices.length,
+        /*scaleFactor=*/ 1.0f,
+        viewMatrix,
+        projectionMatrix,
+        COLOR_CORRECTION_RGBA,
+        ANCHOR_COLOR);
+    return gl.endFrame();
+  }
+}
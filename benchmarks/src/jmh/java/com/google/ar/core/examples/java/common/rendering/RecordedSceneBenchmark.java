@@ -0,0 +1,40 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import com.google.ar.core.examples.java.common.rendering.gl.RecordingGl;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the CPU cost of a frame of the {@link PlaneMeshRenderer} and {@link ObjectRenderer}
+ * drawing a {@link RecordedScene}, including the overhead of the {@link RecordingGl} they run on.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RecordedSceneBenchmark {
+  @Param({"1", "10", "50"})
+  public int planes;
+
+  @Param({"10", "100"})
+  public int anchors;
+
+  private RecordedScene scene;
+
+  @Setup
+  public void setUp() throws IOException {
+    scene = new RecordedScene(planes, anchors);
+  }
+
+  @Benchmark
+  public RecordingGl.FrameStats drawFrame() {
+    return scene.drawFrame();
+  }
+}
@@ -0,0 +1,83 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the shader source preprocessing done by {@link ShaderUtil#loadGLShader} before the
+ * source is handed to the driver. The shaders are served from memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShaderPreprocessorBenchmark {
+  private static final String OBJECT_SHADER_NAME = "shaders/ar_object.frag";
+  // Includes every other shader of the app, to exercise the #include handling.
+  private static final String INCLUDING_SHADER_NAME = "shaders/includes_all.frag";
+  private static final String[] INCLUDED_SHADER_NAMES = {
+    "shaders/ar_object.vert",
+    "shaders/object.frag",
+    "shaders/object.vert",
+    "shaders/plane.frag",
+    "shaders/plane.vert",
+    "shaders/point_cloud.frag",
+    "shaders/point_cloud.vert",
+    "shaders/screenquad.frag",
+    "shaders/screenquad.vert",
+  };
+
+  private final Map<String, byte[]> sources = new HashMap<>();
+  private final Map<String, Integer> defineValuesMap = new TreeMap<>();
+  private final ShaderPreprocessor.SourceOpener opener = this::open;
+  private String objectShaderCode;
+
+  @Setup
+  public void setUp() throws IOException {
+    sources.put(OBJECT_SHADER_NAME, ObjMeshBenchmark.readResource(OBJECT_SHADER_NAME));
+    StringBuilder includes = new StringBuilder();
+    for (String name : INCLUDED_SHADER_NAMES) {
+      sources.put(name, ObjMeshBenchmark.readResource(name));
+      includes.append("#include \"").append(name).append("\"\n");
+    }
+    sources.put(INCLUDING_SHADER_NAME, includes.toString().getBytes(StandardCharsets.UTF_8));
+    // The values set by ObjectRenderer.
+    defineValuesMap.put("USE_DEPTH_FOR_OCCLUSION", 1);
+    objectShaderCode = ShaderPreprocessor.read(opener, OBJECT_SHADER_NAME);
+  }
+
+  @Benchmark
+  public String read() throws IOException {
+    return ShaderPreprocessor.read(opener, OBJECT_SHADER_NAME);
+  }
+
+  @Benchmark
+  public String readWithIncludes() throws IOException {
+    return ShaderPreprocessor.read(opener, INCLUDING_SHADER_NAME);
+  }
+
+  @Benchmark
+  public String prependDefines() {
+    return ShaderPreprocessor.prependDefines(defineValuesMap, objectShaderCode);
+  }
+
+  private ByteArrayInputStream open(String filename) throws IOException {
+    byte[] source = sources.get(filename);
+    if (source == null) {
+      throw new FileNotFoundException(filename);
+    }
+    return new ByteArrayInputStream(source);
+  }
+}
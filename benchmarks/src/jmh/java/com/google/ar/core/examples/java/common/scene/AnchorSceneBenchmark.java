@@ -0,0 +1,116 @@
+package com.google.ar.core.examples.java.common.scene;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.Quat;
+import com.google.ar.core.examples.java.common.math.RigidTransform;
+import com.google.ar.core.examples.java.common.rendering.FrustumCuller;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per frame work of an {@link AnchorScene} of campus points of interest scattered
+ * over 200 m: setting the poses of all the anchors while a few of them moved, updating the changed
+ * ones, culling them against the view frustum, and finding the nearest anchors to the camera.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AnchorSceneBenchmark {
+  private static final float SCENE_RADIUS_METERS = 100.0f;
+  private static final float CELL_SIZE_METERS = 4.0f;
+  private static final float ANCHOR_BOUNDING_RADIUS = 0.17f;
+  // ARCore refines the poses of a few anchors each frame.
+  private static final int MOVED_ANCHORS_PER_FRAME = 8;
+  private static final int NEAREST_COUNT = 10;
+
+  @Param({"500", "2000"})
+  public int anchors;
+
+  private final AnchorScene<Integer> scene = new AnchorScene<>(CELL_SIZE_METERS);
+  private final FrustumCuller culler = new FrustumCuller();
+  private final float[] viewMatrix = new float[16];
+  private final float[] projectionMatrix = new float[16];
+  private final int[] nearest = new int[NEAREST_COUNT];
+  private float[] poses;
+  private int frame;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    poses = new float[anchors * RigidTransform.SIZE];
+    for (int i = 0; i < anchors; i++) {
+      int pose = i * RigidTransform.SIZE;
+      RigidTransform.setTranslation(
+          poses,
+          pose,
+          SCENE_RADIUS_METERS * (2 * random.nextFloat() - 1),
+          -1.5f + 3 * random.nextFloat(),
+          SCENE_RADIUS_METERS * (2 * random.nextFloat() - 1));
+      float angle = (float) (2 * Math.PI * random.nextFloat());
+      Quat.setAxisAngle(poses, pose + 3, 0.0f, 1.0f, 0.0f, angle);
+      scene.setPose(scene.add(i), poses, pose);
+    }
+    scene.update();
+    // A camera at the center of the scene, looking along -z.
+    float[] cameraMatrix = new float[16];
+    Mat4.setIdentity(cameraMatrix, 0);
+    cameraMatrix[13] = 1.4f;
+    Mat4.invertRigid(viewMatrix, 0, cameraMatrix, 0);
+    // A perspective projection, as returned by Camera.getProjectionMatrix.
+    Mat4.setIdentity(projectionMatrix, 0);
+    projectionMatrix[0] = 2.4f;
+    projectionMatrix[5] = 1.3f;
+    projectionMatrix[10] = -1.0002f;
+    projectionMatrix[11] = -1.0f;
+    projectionMatrix[14] = -0.2f;
+    projectionMatrix[15] = 0.0f;
+    culler.setMaxDistance(30.0f);
+  }
+
+  @Benchmark
+  public int updateFrame() {
+    frame++;
+    for (int i = 0; i < MOVED_ANCHORS_PER_FRAME; i++) {
+      int pose = ((frame * MOVED_ANCHORS_PER_FRAME + i) % anchors) * RigidTransform.SIZE;
+      poses[pose + 1] += (frame & 1) == 0 ? 0.01f : -0.01f;
+    }
+    for (int i = 0; i < anchors; i++) {
+      scene.setPose(i, poses, i * RigidTransform.SIZE);
+    }
+    return scene.update();
+  }
+
+  @Benchmark
+  public int collectVisible() {
+    culler.update(viewMatrix, projectionMatrix);
+    return scene.collectVisible(culler, ANCHOR_BOUNDING_RADIUS);
+  }
+
+  @Benchmark
+  public int findNearest() {
+    return scene.findNearest(0.0f, 1.4f, 0.0f, NEAREST_COUNT, SCENE_RADIUS_METERS, nearest);
+  }
+
+  /** The baseline for {@link #collectVisible}: testing every anchor, without the grid. */
+  @Benchmark
+  public int collectVisibleWithoutGrid() {
+    culler.update(viewMatrix, projectionMatrix);
+    int visible = 0;
+    for (int i = 0; i < anchors; i++) {
+      int pose = i * RigidTransform.SIZE;
+      if (culler.isSphereVisible(
+          poses[pose], poses[pose + 1], poses[pose + 2], ANCHOR_BOUNDING_RADIUS)) {
+        visible++;
+      }
+    }
+    return visible;
+  }
+}
@@ -0,0 +1,345 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.Quat;
+import com.google.ar.core.examples.java.common.math.RigidTransform;
+import com.google.ar.core.examples.java.common.math.Vec3;
+import com.google.ar.core.examples.java.common.recording.SessionFrame;
+import com.google.ar.core.examples.java.common.recording.SessionTraceReader;
+import com.google.ar.core.examples.java.common.rendering.FrustumCuller;
+import com.google.ar.core.examples.java.common.rendering.PlaneMesh;
+import com.google.ar.core.examples.java.common.scene.AnchorScene;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Checks that the per frame work replayed on a plain JVM does not allocate once warmed up: the
+ * replay of the synthetic session of {@link SessionReplayBenchmark}, the plane meshes, the frustum
+ * culling, the anchor scene, the POI streaming and the feature map quality tracking. Each of them
+ * runs for a number of frames to grow its buffers, and then for a number of measured frames, over
+ * which the bytes allocated by the thread, as read from {@link com.sun.management.ThreadMXBean},
+ * must not change. Run by {@code ./gradlew :benchmarks:check}, or on its own with:
+ *
+ * <pre>./gradlew :benchmarks:allocationCheck</pre>
+ */
+public final class AllocationCheck {
+  private static final int WARMUP_FRAMES = 300;
+  private static final int MEASURED_FRAMES = 1000;
+
+  // Same layout as FeatureMapQualityUi.
+  private static final double BAR_SPACING_RADIANS = Math.toRadians(7.5);
+  private static final int BAR_COUNT = (int) Math.round(Math.PI / BAR_SPACING_RADIANS);
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  /** The work of one frame. */
+  private interface FrameWork {
+    /** Prepares frame {@code i}, outside of the measured allocations. */
+    default void prepare(int i) throws IOException {}
+
+    /** Does the work of frame {@code i}. */
+    void run(int i);
+  }
+
+  private AllocationCheck() {}
+
+  public static void main(String[] args) throws IOException {
+    if (!THREADS.isThreadAllocatedMemorySupported()) {
+      throw new IllegalStateException("Allocated memory per thread is not supported by this JVM.");
+    }
+    THREADS.setThreadAllocatedMemoryEnabled(true);
+
+    List<String> failures = new ArrayList<>();
+    File trace = File.createTempFile("session_trace", ".bin");
+    try (SessionTraceReader reader = writeTrace(trace)) {
+      int traceFrames = countFrames(reader);
+      // The first pass is the warm up, as the replay creates the quality UI with the anchor.
+      FrameWork replay = sessionReplay(reader, traceFrames);
+      check("SessionReplay", replay, traceFrames, traceFrames, failures);
+    } finally {
+      if (!trace.delete()) {
+        trace.deleteOnExit();
+      }
+    }
+    check("PlaneMesh", planeMesh(), WARMUP_FRAMES, MEASURED_FRAMES, failures);
+    check("FrustumCuller", frustumCuller(), WARMUP_FRAMES, MEASURED_FRAMES, failures);
+    check("AnchorScene", anchorScene(), WARMUP_FRAMES, MEASURED_FRAMES, failures);
+    check("PoiStreamer", new PoiWalk(), 2 * PoiWalk.WALK_FRAMES, MEASURED_FRAMES, failures);
+    check(
+        "FeatureMapQualityTracker",
+        featureMapQualityTracker(),
+        WARMUP_FRAMES,
+        MEASURED_FRAMES,
+        failures);
+    if (!failures.isEmpty()) {
+      throw new AssertionError("Allocations in the per frame work of " + failures);
+    }
+  }
+
+  /**
+   * Runs {@code warmupFrames} and then {@code measuredFrames} frames of {@code work}, and adds
+   * {@code name} to {@code failures} if the measured frames allocated.
+   */
+  private static void check(
+      String name, FrameWork work, int warmupFrames, int measuredFrames, List<String> failures)
+      throws IOException {
+    for (int i = 0; i < warmupFrames; i++) {
+      work.prepare(i);
+      work.run(i);
+    }
+    // Reading the allocated bytes may allocate itself, on older JVMs.
+    long overhead = 0;
+    for (int i = 0; i < 100; i++) {
+      long before = allocatedBytes();
+      overhead = allocatedBytes() - before;
+    }
+    long allocated = 0;
+    for (int i = warmupFrames; i < warmupFrames + measuredFrames; i++) {
+      work.prepare(i);
+      long before = allocatedBytes();
+      work.run(i);
+      allocated += allocatedBytes() - before - overhead;
+    }
+    System.out.println(
+        String.format(
+            Locale.US, "%s: %d bytes allocated in %d frames", name, allocated, measuredFrames));
+    if (allocated != 0) {
+      failures.add(name);
+    }
+  }
+
+  private static long allocatedBytes() {
+    return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static SessionTraceReader writeTrace(File file) throws IOException {
+    SessionReplayBenchmark.writeSyntheticTrace(file);
+    return new SessionTraceReader(file);
+  }
+
+  private static int countFrames(SessionTraceReader reader) throws IOException {
+    SessionFrame frame = new SessionFrame();
+    int frames = 0;
+    while (reader.read(frame)) {
+      frames++;
+    }
+    return frames;
+  }
+
+  /** Replays the trace twice, the frames being decoded outside of the measured allocations. */
+  private static FrameWork sessionReplay(SessionTraceReader reader, int traceFrames) {
+    SessionReplay replay = new SessionReplay();
+    SessionFrame frame = new SessionFrame();
+    return new FrameWork() {
+      @Override
+      public void prepare(int i) throws IOException {
+        if (i % traceFrames == 0) {
+          reader.rewind();
+        }
+        reader.read(frame);
+      }
+
+      @Override
+      public void run(int i) {
+        replay.replayFrame(frame);
+      }
+    };
+  }
+
+  /** Builds the mesh of a plane growing and shrinking, with a simplified boundary. */
+  private static FrameWork planeMesh() {
+    PlaneMesh mesh = new PlaneMesh();
+    mesh.setSimplificationTolerance(0.02f);
+    int boundaryVertices = 64;
+    FloatBuffer boundary =
+        ByteBuffer.allocateDirect(Float.SIZE / 8 * 2 * boundaryVertices)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    Random random = new Random(42);
+    for (int i = 0; i < boundaryVertices; ++i) {
+      double angle = -2.0 * Math.PI * i / boundaryVertices;
+      float noise = 1.0f + 0.01f * (float) random.nextGaussian();
+      boundary.put(1.5f * noise * (float) Math.cos(angle));
+      boundary.put(1.0f * noise * (float) Math.sin(angle));
+    }
+    boundary.rewind();
+    return i -> {
+      float growth = 1.0f + 0.1f * (i % 10);
+      boundary.rewind();
+      mesh.update(3.0f * growth, 2.0f * growth, boundary);
+    };
+  }
+
+  /** Culls spheres and boxes around a turning camera. */
+  private static FrameWork frustumCuller() {
+    FrustumCuller culler = new FrustumCuller();
+    culler.setMaxDistance(30.0f);
+    float[] viewMatrix = new float[16];
+    float[] projectionMatrix = newProjectionMatrix();
+    float[] modelMatrix = new float[16];
+    float[] pose = new float[RigidTransform.SIZE];
+    float[] cameraMatrix = new float[16];
+    return i -> {
+      setTurningCamera(viewMatrix, i, pose, cameraMatrix);
+      culler.update(viewMatrix, projectionMatrix);
+      Mat4.setIdentity(modelMatrix, 0);
+      for (int object = 0; object < 64; object++) {
+        float x = (object % 8) - 3.5f;
+        float z = (object / 8) - 3.5f;
+        culler.isSphereVisible(x, 0.0f, z, 0.17f);
+        modelMatrix[12] = x;
+        modelMatrix[14] = z;
+        culler.isBoxVisible(modelMatrix, 0, 0.5f, 0.0f, 0.5f);
+      }
+    };
+  }
+
+  /**
+   * Sets the poses of anchors of which a few moved, updates the scene, culls it against a turning
+   * camera and finds the nearest anchors, as {@link CloudAnchorActivity} does.
+   */
+  private static FrameWork anchorScene() {
+    int anchors = 500;
+    AnchorScene<Integer> scene = new AnchorScene<>(/*cellSizeMeters=*/ 4.0f);
+    Random random = new Random(42);
+    float[] poses = new float[anchors * RigidTransform.SIZE];
+    for (int i = 0; i < anchors; i++) {
+      int pose = i * RigidTransform.SIZE;
+      RigidTransform.setTranslation(
+          poses,
+          pose,
+          100.0f * (2 * random.nextFloat() - 1),
+          -1.5f + 3 * random.nextFloat(),
+          100.0f * (2 * random.nextFloat() - 1));
+      Quat.setAxisAngle(poses, pose + 3, 0.0f, 1.0f, 0.0f, (float) (2 * Math.PI * i / anchors));
+      scene.setPose(scene.add(i), poses, pose);
+    }
+    scene.update();
+    float[] initialPoses = poses.clone();
+    FrustumCuller culler = new FrustumCuller();
+    culler.setMaxDistance(30.0f);
+    float[] viewMatrix = new float[16];
+    float[] projectionMatrix = newProjectionMatrix();
+    float[] cameraPose = new float[RigidTransform.SIZE];
+    float[] cameraMatrix = new float[16];
+    int[] nearest = new int[10];
+    return i -> {
+      // The anchors move around their initial poses, so that they stay in the same cells.
+      for (int moved = 0; moved < 8; moved++) {
+        int pose = ((i * 8 + moved) % anchors) * RigidTransform.SIZE;
+        poses[pose + 1] = initialPoses[pose + 1] + ((i & 1) == 0 ? 0.01f : -0.01f);
+      }
+      for (int anchor = 0; anchor < anchors; anchor++) {
+        scene.setPose(anchor, poses, anchor * RigidTransform.SIZE);
+      }
+      scene.update();
+      setTurningCamera(viewMatrix, i, cameraPose, cameraMatrix);
+      culler.update(viewMatrix, projectionMatrix);
+      scene.collectVisible(culler, FeatureMapQualityTracker.ANCHOR_BOUNDING_RADIUS);
+      scene.findNearest(0.0f, 1.4f, 0.0f, nearest.length, 100.0f, nearest);
+    };
+  }
+
+  /**
+   * Streams the anchors of the POIs of a campus of 200 m by 200 m, while the device walks across
+   * it and back at 1.4 m/s, with the radii used by {@link CloudAnchorActivity}.
+   */
+  private static final class PoiWalk implements FrameWork {
+    // About 200 m, in degrees.
+    private static final double CAMPUS_SIZE_DEGREES = 0.0018;
+    static final int WALK_FRAMES = (int) (CAMPUS_SIZE_DEGREES / RandomCampus.STEP_DEGREES);
+
+    private final PoiStreamer<Object> streamer;
+
+    PoiWalk() {
+      Object anchor = new Object();
+      streamer =
+          new PoiStreamer<>(
+              new PoiStreamer.AnchorFactory<Object>() {
+                @Override
+                public Object createAnchor(Poi poi) {
+                  return anchor;
+                }
+
+                @Override
+                public void detachAnchor(Poi poi, Object anchor) {}
+              },
+              /*enterRadiusMeters=*/ 50.0,
+              /*exitRadiusMeters=*/ 70.0,
+              /*maxCreationsPerUpdate=*/ 2);
+      streamer.setPois(RandomCampus.createPois(200, CAMPUS_SIZE_DEGREES));
+    }
+
+    @Override
+    public void run(int i) {
+      int step = i % (2 * WALK_FRAMES);
+      double offset =
+          RandomCampus.STEP_DEGREES * (step < WALK_FRAMES ? step : 2 * WALK_FRAMES - step);
+      streamer.update(
+          RandomCampus.ORIGIN_LATITUDE + offset, RandomCampus.ORIGIN_LONGITUDE + offset);
+    }
+  }
+
+  /**
+   * Places the quality UI on the anchor, and estimates the quality of the viewpoint of a camera
+   * walking around it, as {@code CloudAnchorActivity.updateFeatureMapQualityUi} does.
+   */
+  private static FrameWork featureMapQualityTracker() {
+    FeatureMapQualityTracker tracker =
+        new FeatureMapQualityTracker(/*isHorizontal=*/ true, BAR_COUNT, BAR_SPACING_RADIANS);
+    FeatureMapQualityTracker.Quality[] qualities = FeatureMapQualityTracker.Quality.values();
+    float[] anchorMatrix = new float[16];
+    Mat4.setIdentity(anchorMatrix, 0);
+    float[] viewMatrix = new float[16];
+    float[] cameraPose = new float[RigidTransform.SIZE];
+    float[] cameraMatrix = new float[16];
+    float[] cameraPosition = new float[3];
+    return i -> {
+      long nowMillis = i * 33L;
+      setTurningCamera(viewMatrix, i, cameraPose, cameraMatrix);
+      tracker.updateUiMatrix(anchorMatrix);
+      tracker.getCameraPositionInUiFrame(viewMatrix, cameraPosition);
+      int cell = tracker.computeCellIndex(cameraPosition);
+      if (cell >= 0 && tracker.needsQuality(cell, nowMillis)) {
+        tracker.updateQualityForViewpoint(
+            cameraPosition, qualities[i % qualities.length], nowMillis);
+      }
+      tracker.computeOverallQuality(nowMillis);
+      for (int bar = 0; bar < tracker.getBarCount(); bar++) {
+        tracker.getQuality(bar, nowMillis);
+      }
+    };
+  }
+
+  /** Sets the view matrix of a camera walking around the origin at 1.5 m on frame {@code i}. */
+  private static void setTurningCamera(
+      float[] viewMatrix, int i, float[] pose, float[] cameraMatrix) {
+    double angle = 2.0 * Math.PI * (i % 360) / 360;
+    Vec3.set(pose, 0, 1.5f * (float) Math.cos(angle), 1.4f, -1.5f * (float) Math.sin(angle));
+    Quat.setAxisAngle(pose, 3, 0.0f, 1.0f, 0.0f, (float) (angle + Math.PI / 2));
+    Mat4.setRotationTranslation(cameraMatrix, 0, pose, 3, pose, 0);
+    Mat4.invertRigid(viewMatrix, 0, cameraMatrix, 0);
+  }
+
+  /** Returns a perspective projection, as returned by Camera.getProjectionMatrix. */
+  private static float[] newProjectionMatrix() {
+    float[] projectionMatrix = new float[16];
+    Mat4.setIdentity(projectionMatrix, 0);
+    projectionMatrix[0] = 2.4f;
+    projectionMatrix[5] = 1.3f;
+    projectionMatrix[10] = -1.0002f;
+    projectionMatrix[11] = -1.0f;
+    projectionMatrix[14] = -0.2f;
+    projectionMatrix[15] = 0.0f;
+    return projectionMatrix;
+  }
+}
@@ -0,0 +1,102 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.persistentcloudanchor.CloudAnchorScheduler.Kind;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per-frame cost of {@link CloudAnchorManager#onUpdate()}, with a backlog of resolve
+ * operations kept queued: each completed operation is replaced by a new one, of a random priority.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CloudAnchorSchedulerBenchmark {
+  private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+  private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+  // CloudAnchorManager.MAX_ACTIVE_HOSTS and MAX_ACTIVE_RESOLVES, which cannot be compiled without
+  // ARCore.
+  private static final int MAX_ACTIVE_HOSTS = 2;
+  private static final int MAX_ACTIVE_RESOLVES = 8;
+  private static final long MAX_OPERATION_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+  /** Stands for an anchor, whose operation completes at a given time. */
+  private static final class Operation {
+    final long doneNanos;
+
+    Operation(long doneNanos) {
+      this.doneNanos = doneNanos;
+    }
+  }
+
+  // Number of operations submitted and not completed, most of them queued.
+  @Param({"10", "100", "1000"})
+  public int operations;
+
+  private final Random random = new Random(42);
+  private CloudAnchorScheduler<Operation> scheduler;
+  private long nowNanos;
+
+  private final CloudAnchorScheduler.Starter<Operation> starter =
+      () -> new Operation(nowNanos + (long) (random.nextDouble() * MAX_OPERATION_NANOS));
+
+  private final CloudAnchorScheduler.Callback<Operation> callback =
+      new CloudAnchorScheduler.Callback<Operation>() {
+        @Override
+        public void onComplete(Operation operation) {
+          submit();
+        }
+
+        @Override
+        public void onTimeout() {
+          submit();
+        }
+
+        @Override
+        public void onFailed(RuntimeException error) {
+          submit();
+        }
+      };
+
+  @Setup
+  public void setUp() {
+    scheduler =
+        new CloudAnchorScheduler<>(
+            new CloudAnchorScheduler.Operations<Operation>() {
+              @Override
+              public boolean isInProgress(Operation operation) {
+                return nowNanos < operation.doneNanos;
+              }
+
+              @Override
+              public void cancel(Operation operation) {}
+            },
+            MAX_ACTIVE_HOSTS,
+            MAX_ACTIVE_RESOLVES,
+            TIMEOUT_NANOS);
+    for (int i = 0; i < operations; i++) {
+      submit();
+    }
+  }
+
+  /** Updates the scheduler for a frame. */
+  @Benchmark
+  public int update() {
+    nowNanos += FRAME_NANOS;
+    return scheduler.update(nowNanos);
+  }
+
+  private void submit() {
+    // Such as the distance to the POI, in meters.
+    float priority = 1000 * random.nextFloat();
+    scheduler.submit(Kind.RESOLVE, priority, starter, callback, nowNanos);
+  }
+}
@@ -0,0 +1,106 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.Quat;
+import com.google.ar.core.examples.java.common.math.Vec3;
+import com.google.ar.core.examples.java.common.rendering.FrustumCuller;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per-frame work of the feature map quality UI that does not draw: the extraction of
+ * the frustum and the visibility test of the anchor, the lookup of the bar facing the camera and of
+ * the cell of its viewpoint, and the quality aggregation over the coverage grid. Each call uses the
+ * next of a set of precomputed camera viewpoints around the anchor, one frame apart.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FeatureMapQualityTrackerBenchmark {
+  // Same layout as FeatureMapQualityUi.
+  private static final double BAR_SPACING_RADIANS = Math.toRadians(7.5);
+  private static final int BAR_COUNT = (int) Math.round(Math.PI / BAR_SPACING_RADIANS);
+  // Must be a power of two.
+  private static final int VIEWPOINT_COUNT = 256;
+  private static final long FRAME_MILLIS = 16;
+
+  private final FeatureMapQualityTracker tracker =
+      new FeatureMapQualityTracker(/*isHorizontal=*/ true, BAR_COUNT, BAR_SPACING_RADIANS);
+  private final FrustumCuller culler = new FrustumCuller();
+  private final float[][] cameraPositions = new float[VIEWPOINT_COUNT][3];
+  private final float[][] viewMatrices = new float[VIEWPOINT_COUNT][16];
+  private final float[] projectionMatrix = new float[16];
+  private final float[] anchorTranslation = {0.0f, 0.0f, 0.0f, 1.0f};
+  private final FeatureMapQualityTracker.Quality[] qualities =
+      FeatureMapQualityTracker.Quality.values();
+  private int viewpoint;
+  private long nowMillis;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    float[] pose = new float[7];
+    float[] cameraMatrix = new float[16];
+    for (int i = 0; i < VIEWPOINT_COUNT; ++i) {
+      // Cameras on a half circle in front of the anchor, at various heights, looking roughly at
+      // it.
+      double angle = -Math.PI * random.nextDouble();
+      float distance = 0.5f + random.nextFloat();
+      float[] position = cameraPositions[i];
+      float x = distance * (float) Math.cos(angle);
+      float z = distance * (float) Math.sin(angle);
+      Vec3.set(position, 0, x, distance * random.nextFloat(), z);
+      float yaw = (float) (-angle - Math.PI / 2) + 0.5f * (random.nextFloat() - 0.5f);
+      Vec3.set(pose, 0, position[0], position[1], position[2]);
+      Quat.setAxisAngle(pose, 3, 0.0f, 1.0f, 0.0f, yaw);
+      Mat4.setRotationTranslation(cameraMatrix, 0, pose, 3, pose, 0);
+      Mat4.invertRigid(viewMatrices[i], 0, cameraMatrix, 0);
+    }
+    // A perspective projection, as returned by Camera.getProjectionMatrix.
+    Mat4.setIdentity(projectionMatrix, 0);
+    projectionMatrix[0] = 2.4f;
+    projectionMatrix[5] = 1.3f;
+    projectionMatrix[10] = -1.0002f;
+    projectionMatrix[11] = -1.0f;
+    projectionMatrix[14] = -0.2f;
+    projectionMatrix[15] = 0.0f;
+  }
+
+  @Benchmark
+  public boolean isAnchorInView() {
+    float[] viewMatrix = viewMatrices[nextViewpoint()];
+    culler.update(viewMatrix, projectionMatrix);
+    return tracker.isAnchorInView(anchorTranslation, culler);
+  }
+
+  @Benchmark
+  public int computeBarIndex() {
+    return tracker.computeBarIndex(cameraPositions[nextViewpoint()]);
+  }
+
+  @Benchmark
+  public int computeCellIndex() {
+    return tracker.computeCellIndex(cameraPositions[nextViewpoint()]);
+  }
+
+  @Benchmark
+  public float updateQualityAndAggregate() {
+    int i = nextViewpoint();
+    tracker.updateQualityForViewpoint(
+        cameraPositions[i], qualities[i % qualities.length], nowMillis);
+    return tracker.computeOverallQuality(nowMillis);
+  }
+
+  private int nextViewpoint() {
+    viewpoint = (viewpoint + 1) & (VIEWPOINT_COUNT - 1);
+    nowMillis += FRAME_MILLIS;
+    return viewpoint;
+  }
+}
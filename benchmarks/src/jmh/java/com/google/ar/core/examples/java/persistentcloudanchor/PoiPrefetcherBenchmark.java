@@ -0,0 +1,104 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per frame prefetching of {@link CloudAnchorActivity}: querying the POIs near the
+ * device from a {@link PoiStreamer}, then updating a {@link PoiPrefetcher}, while the device walks
+ * across a campus of 1 km by 1 km at 1.4 m/s. Each cloud anchor is resolved 3 s after it is
+ * requested.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PoiPrefetcherBenchmark {
+  private static final int WALK_FRAMES =
+      (int) (RandomCampus.CAMPUS_SIZE_DEGREES / RandomCampus.STEP_DEGREES);
+  private static final long FRAME_NANOS = 1_000_000_000L / 30;
+  private static final int RESOLVE_FRAMES = 3 * 30;
+
+  @Param({"500", "5000"})
+  public int pois;
+
+  private PoiStreamer<Object> streamer;
+  private PoiPrefetcher<Object> prefetcher;
+  private final Poi[] nearbyPois = new Poi[64];
+  // Ids of the POIs being resolved, and the frames they are resolved at.
+  private final Queue<String> resolvingIds = new ArrayDeque<>();
+  private final Queue<Integer> resolvedFrames = new ArrayDeque<>();
+  private final Object anchor = new Object();
+  private int frame;
+
+  @Setup
+  public void setUp() {
+    streamer =
+        new PoiStreamer<>(
+            new PoiStreamer.AnchorFactory<Object>() {
+              @Override
+              public Object createAnchor(Poi poi) {
+                Object resolvedAnchor = prefetcher.takeAnchor(poi.id);
+                return resolvedAnchor != null ? resolvedAnchor : anchor;
+              }
+
+              @Override
+              public void detachAnchor(Poi poi, Object anchor) {
+                prefetcher.onAnchorDetached(poi.id);
+              }
+            },
+            /*enterRadiusMeters=*/ 50.0,
+            /*exitRadiusMeters=*/ 70.0,
+            /*maxCreationsPerUpdate=*/ 2);
+    streamer.setPois(RandomCampus.createPois(pois));
+    prefetcher =
+        new PoiPrefetcher<>(
+            new PoiPrefetcher.Resolver<Object>() {
+              @Override
+              public void resolve(Poi poi, float priority) {
+                resolvingIds.add(poi.id);
+                resolvedFrames.add(frame + RESOLVE_FRAMES);
+              }
+
+              @Override
+              public void cancel(Poi poi) {
+                // The resolution completes anyway, and its anchor is released.
+              }
+
+              @Override
+              public void release(Object anchor) {}
+            },
+            /*enterRadiusMeters=*/ 50.0,
+            /*maxResolving=*/ 6);
+  }
+
+  @Benchmark
+  public int update() {
+    long nowNanos = frame * FRAME_NANOS;
+    while (!resolvedFrames.isEmpty() && resolvedFrames.peek() <= frame) {
+      resolvedFrames.poll();
+      prefetcher.onResolved(resolvingIds.poll(), anchor, nowNanos);
+    }
+    // Walks diagonally across the campus, back and forth.
+    int step = frame++ % (2 * WALK_FRAMES);
+    boolean forth = step < WALK_FRAMES;
+    double offset = RandomCampus.STEP_DEGREES * (forth ? step : 2 * WALK_FRAMES - step);
+    double latitude = RandomCampus.ORIGIN_LATITUDE + offset;
+    double longitude = RandomCampus.ORIGIN_LONGITUDE + offset;
+    int nearbyCount =
+        streamer.queryNearest(latitude, longitude, /*radiusMeters=*/ 150.0, nearbyPois);
+    int started =
+        prefetcher.update(
+            latitude, longitude, forth ? 45.0 : 225.0, nowNanos, nearbyPois, nearbyCount);
+    streamer.update(latitude, longitude);
+    return started;
+  }
+}
@@ -0,0 +1,88 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the reads served by a {@link PoiStore} of POIs spread over a campus of 1 km by 1 km,
+ * the append of a synced change, and the opening of the store when the app starts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PoiStoreBenchmark {
+  @Param({"1000", "10000"})
+  public int pois;
+
+  private File file;
+  private PoiStore store;
+  private Poi[] list;
+  private int next;
+  private long watermarkMillis;
+
+  @Setup
+  public void setUp() throws IOException {
+    List<Poi> all = RandomCampus.createPois(pois);
+    list = all.toArray(new Poi[0]);
+    file = File.createTempFile("pois", ".bin");
+    file.delete();
+    store = PoiStore.open(file);
+    watermarkMillis = 1;
+    store.apply(all, Collections.emptyList(), watermarkMillis);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    store.close();
+    file.delete();
+  }
+
+  @Benchmark
+  public Poi get() {
+    return store.get(nextPoi().id);
+  }
+
+  @Benchmark
+  public Poi getByAnchorId() {
+    return store.getByAnchorId(nextPoi().anchorId);
+  }
+
+  @Benchmark
+  public List<Poi> findNearest() {
+    Poi poi = nextPoi();
+    return store.findNearest(poi.latitude, poi.longitude, /*radiusMeters=*/ 50.0, /*k=*/ 10);
+  }
+
+  /** The change of a single POI, as most synced snapshots are. */
+  @Benchmark
+  public void apply() throws IOException {
+    store.apply(
+        Collections.singletonList(nextPoi()), Collections.emptyList(), ++watermarkMillis);
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int open() throws IOException {
+    try (PoiStore opened = PoiStore.open(file)) {
+      return opened.size();
+    }
+  }
+
+  private Poi nextPoi() {
+    Poi poi = list[next];
+    next = (next + 1) % list.length;
+    return poi;
+  }
+}
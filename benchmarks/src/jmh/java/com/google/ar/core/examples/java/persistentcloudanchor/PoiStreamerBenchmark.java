@@ -0,0 +1,59 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per frame update of a {@link PoiStreamer}, while the device walks across a campus of
+ * 1 km by 1 km at 1.4 m/s, with the radii used by {@link CloudAnchorActivity}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PoiStreamerBenchmark {
+  private static final int WALK_FRAMES =
+      (int) (RandomCampus.CAMPUS_SIZE_DEGREES / RandomCampus.STEP_DEGREES);
+
+  @Param({"500", "5000"})
+  public int pois;
+
+  private PoiStreamer<Object> streamer;
+  private int frame;
+
+  @Setup
+  public void setUp() {
+    Object anchor = new Object();
+    streamer =
+        new PoiStreamer<>(
+            new PoiStreamer.AnchorFactory<Object>() {
+              @Override
+              public Object createAnchor(Poi poi) {
+                return anchor;
+              }
+
+              @Override
+              public void detachAnchor(Poi poi, Object anchor) {}
+            },
+            /*enterRadiusMeters=*/ 50.0,
+            /*exitRadiusMeters=*/ 70.0,
+            /*maxCreationsPerUpdate=*/ 2);
+    streamer.setPois(RandomCampus.createPois(pois));
+  }
+
+  @Benchmark
+  public int update() {
+    // Walks diagonally across the campus, back and forth.
+    int step = frame++ % (2 * WALK_FRAMES);
+    double offset =
+        RandomCampus.STEP_DEGREES * (step < WALK_FRAMES ? step : 2 * WALK_FRAMES - step);
+    streamer.update(RandomCampus.ORIGIN_LATITUDE + offset, RandomCampus.ORIGIN_LONGITUDE + offset);
+    return streamer.getLiveAnchorCount();
+  }
+}
@@ -0,0 +1,77 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the device side of a POI write through {@link FirestorePoiRepository}: queuing it in the
+ * {@link PoiWriteQueue}, and coalescing and acknowledging it with the other writes of its batch.
+ * The throughput of a survey, without the commits, is the inverse of {@link #write()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PoiWriteQueueBenchmark {
+  // FirestorePoiRepository.MAX_BATCH_WRITES, which cannot be compiled without Android.
+  private static final int MAX_BATCH_WRITES = 500;
+
+  // Number of distinct POIs written, fewer than the writes of a batch when POIs are rewritten.
+  @Param({"100", "500"})
+  public int pois;
+
+  private File file;
+  private PoiWriteQueue queue;
+  private Poi[] list;
+  private List<PoiWriteQueue.Write> batch;
+  private int next;
+
+  @Setup
+  public void setUp() throws IOException {
+    list = RandomCampus.createPois(pois).toArray(new Poi[0]);
+    file = File.createTempFile("poi_writes", ".bin");
+    file.delete();
+    queue = PoiWriteQueue.open(file);
+    batch = new ArrayList<>();
+    for (int i = 0; i < MAX_BATCH_WRITES; i++) {
+      Poi poi = list[i % pois];
+      batch.add(new PoiWriteQueue.Write(i, poi.id, poi, 0));
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    queue.close();
+    file.delete();
+  }
+
+  /** Queues a write, and commits the queue as a batch once it is full. */
+  @Benchmark
+  public int write() throws IOException {
+    Poi poi = list[next];
+    next = (next + 1) % list.length;
+    PoiWriteQueue.Write write = queue.enqueue(poi.id, poi, /*nowMillis=*/ 0);
+    if (queue.size() == MAX_BATCH_WRITES) {
+      List<PoiWriteQueue.Write> writes = queue.peek(MAX_BATCH_WRITES);
+      PoiWriteQueue.coalesce(writes);
+      queue.acknowledge(write.sequence);
+    }
+    return queue.size();
+  }
+
+  @Benchmark
+  public List<PoiWriteQueue.Write> coalesceBatch() {
+    return PoiWriteQueue.coalesce(batch);
+  }
+}
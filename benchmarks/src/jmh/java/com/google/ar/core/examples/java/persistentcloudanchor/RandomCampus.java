@@ -0,0 +1,43 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The POIs of the benchmarks, spread at random over a square campus whose south west corner is the
+ * origin. The same count and size always give the same POIs.
+ */
+final class RandomCampus {
+  static final double ORIGIN_LATITUDE = 10.0497;
+  static final double ORIGIN_LONGITUDE = 76.3311;
+  // About 1 km, in degrees.
+  static final double CAMPUS_SIZE_DEGREES = 0.009;
+  // 1.4 m/s at 30 fps, in degrees, the step of the device walking across the campus.
+  static final double STEP_DEGREES = 1.4 / 30 / 111_000;
+
+  /** Returns {@code count} POIs spread over a campus of {@link #CAMPUS_SIZE_DEGREES}. */
+  static List<Poi> createPois(int count) {
+    return createPois(count, CAMPUS_SIZE_DEGREES);
+  }
+
+  /** Returns {@code count} POIs spread over a campus of {@code sizeDegrees} on each side. */
+  static List<Poi> createPois(int count, double sizeDegrees) {
+    Random random = new Random(42);
+    List<Poi> pois = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      pois.add(
+          new Poi(
+              "poi" + i,
+              "anchor" + i,
+              "POI " + i,
+              ORIGIN_LATITUDE + sizeDegrees * random.nextDouble(),
+              ORIGIN_LONGITUDE + sizeDegrees * random.nextDouble(),
+              20.0,
+              360.0 * random.nextDouble()));
+    }
+    return pois;
+  }
+
+  private RandomCampus() {}
+}
@@ -0,0 +1,179 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.math.Mat4;
+import com.google.ar.core.examples.java.common.math.Quat;
+import com.google.ar.core.examples.java.common.math.RigidTransform;
+import com.google.ar.core.examples.java.common.recording.SessionFrame;
+import com.google.ar.core.examples.java.common.recording.SessionTraceReader;
+import com.google.ar.core.examples.java.common.recording.SessionTraceWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the replay of a whole session trace by {@link SessionReplay}. A trace pulled from a
+ * device can be passed with {@code -p tracePath=/path/to/session_trace.bin}. Otherwise a synthetic
+ * hosting session is generated: planes are scanned while the device localizes, then an anchor is
+ * placed and the camera walks around it until the quality is good enough to host it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SessionReplayBenchmark {
+  private static final int SCANNING_FRAMES = 300;
+  private static final int HOSTING_FRAMES = 900;
+  private static final int PLANE_COUNT = 4;
+  private static final int PLANE_BOUNDARY_VERTICES = 48;
+  // Feature map quality is estimated at most every 500 ms by the activity, at 30 fps.
+  private static final int QUALITY_ESTIMATE_PERIOD_FRAMES = 15;
+
+  @Param({""})
+  public String tracePath;
+
+  private final SessionFrame frame = new SessionFrame();
+  private File syntheticTrace;
+  private SessionTraceReader reader;
+
+  @Setup
+  public void setUp() throws IOException {
+    File file;
+    if (tracePath.isEmpty()) {
+      syntheticTrace = File.createTempFile("session_trace", ".bin");
+      writeSyntheticTrace(syntheticTrace);
+      file = syntheticTrace;
+    } else {
+      file = new File(tracePath);
+    }
+    reader = new SessionTraceReader(file);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    reader.close();
+    if (syntheticTrace != null && !syntheticTrace.delete()) {
+      syntheticTrace.deleteOnExit();
+    }
+  }
+
+  @Benchmark
+  public SessionReplay replay() throws IOException {
+    SessionReplay replay = new SessionReplay();
+    reader.rewind();
+    replay.replay(reader, frame);
+    return replay;
+  }
+
+  /** Writes the synthetic hosting session, also replayed by {@link AllocationCheck}. */
+  static void writeSyntheticTrace(File file) throws IOException {
+    Random random = new Random(42);
+    SessionFrame frame = new SessionFrame();
+    float[] cameraMatrix = new float[16];
+    float[] yaw = new float[4];
+    float[] pitch = new float[4];
+    // Tilted down to keep the anchor, on the floor, in view.
+    Quat.setAxisAngle(pitch, 0, 1.0f, 0.0f, 0.0f, -(float) Math.atan2(1.4, 1.5));
+    try (SessionTraceWriter writer = new SessionTraceWriter(file)) {
+      for (int i = 0; i < SCANNING_FRAMES + HOSTING_FRAMES; i++) {
+        frame.clear();
+        frame.timestampNanos = i * 33_333_333L;
+        frame.cameraTrackingState = SessionFrame.TRACKING_STATE_TRACKING;
+
+        // The camera walks around the origin at 1.5 m, looking at it.
+        double angle = Math.PI * i / (SCANNING_FRAMES + HOSTING_FRAMES);
+        float x = 1.5f * (float) Math.cos(angle);
+        float z = 1.5f * (float) Math.sin(angle);
+        RigidTransform.setTranslation(frame.cameraPose, 0, x, 1.4f, z);
+        Quat.setAxisAngle(yaw, 0, 0.0f, 1.0f, 0.0f, (float) (Math.PI / 2 - angle));
+        Quat.multiply(frame.cameraPose, 3, yaw, 0, pitch, 0);
+        RigidTransform.toMatrix(cameraMatrix, 0, frame.cameraPose, 0);
+        Mat4.invertRigid(frame.viewMatrix, 0, cameraMatrix, 0);
+        setProjectionMatrix(frame.projectionMatrix);
+
+        frame.setPointCount(200 + random.nextInt(200));
+        for (int p = 0; p < frame.pointCount * SessionFrame.FLOATS_PER_POINT; p++) {
+          frame.points[p] = random.nextFloat();
+        }
+
+        // Localization gets accurate during the scan.
+        frame.earthTrackingState = SessionFrame.TRACKING_STATE_TRACKING;
+        frame.isEarthEnabled = true;
+        double accuracy = Math.max(1.0, 30.0 * (1.0 - (double) i / SCANNING_FRAMES));
+        frame.setGeospatialPose(
+            10.05, 76.33, 20.0, 90.0 - Math.toDegrees(angle), accuracy, accuracy, 3 * accuracy);
+
+        if (i < SCANNING_FRAMES) {
+          addPlanes(frame, random, /*growth=*/ (float) (i + 1) / SCANNING_FRAMES);
+        } else {
+          if (i == SCANNING_FRAMES) {
+            frame.addTap(540.0f, 1200.0f);
+          }
+          frame.hasAnchor = true;
+          frame.anchorTrackingState = SessionFrame.TRACKING_STATE_TRACKING;
+          RigidTransform.setIdentity(frame.anchorPose, 0);
+          if (i % QUALITY_ESTIMATE_PERIOD_FRAMES == 0) {
+            frame.featureMapQuality =
+                random.nextInt(4) == 0
+                    ? SessionFrame.QUALITY_SUFFICIENT
+                    : SessionFrame.QUALITY_GOOD;
+          }
+        }
+        writer.write(frame);
+      }
+    }
+  }
+
+  /** Adds floor and wall planes, grown to {@code growth} of their final size. */
+  private static void addPlanes(SessionFrame frame, Random random, float growth) {
+    for (int plane = 0; plane < PLANE_COUNT; plane++) {
+      boolean isFloor = plane % 2 == 0;
+      int index =
+          frame.addPlane(
+              isFloor
+                  ? SessionFrame.PLANE_TYPE_HORIZONTAL_UPWARD_FACING
+                  : SessionFrame.PLANE_TYPE_VERTICAL,
+              SessionFrame.TRACKING_STATE_TRACKING,
+              2 * PLANE_BOUNDARY_VERTICES);
+      int pose = index * RigidTransform.SIZE;
+      RigidTransform.setTranslation(frame.planePoses, pose, plane - 1.5f, 0.0f, -1.0f * plane);
+      if (isFloor) {
+        RigidTransform.setRotation(frame.planePoses, pose, 0.0f, 0.0f, 0.0f, 1.0f);
+      } else {
+        Quat.setAxisAngle(frame.planePoses, pose + 3, 1.0f, 0.0f, 0.0f, (float) (Math.PI / 2));
+      }
+      float extentX = 3.0f * growth;
+      float extentZ = 2.0f * growth;
+      frame.planeExtents[2 * index] = extentX;
+      frame.planeExtents[2 * index + 1] = extentZ;
+      int offset = frame.planePolygonOffsets[index];
+      for (int v = 0; v < PLANE_BOUNDARY_VERTICES; v++) {
+        double vertexAngle = -2.0 * Math.PI * v / PLANE_BOUNDARY_VERTICES;
+        float noise = 1.0f + 0.01f * (float) random.nextGaussian();
+        frame.planePolygons[offset + 2 * v] =
+            0.5f * extentX * noise * (float) Math.cos(vertexAngle);
+        frame.planePolygons[offset + 2 * v + 1] =
+            0.5f * extentZ * noise * (float) Math.sin(vertexAngle);
+      }
+    }
+  }
+
+  /** Sets a perspective projection, as returned by Camera.getProjectionMatrix. */
+  private static void setProjectionMatrix(float[] projectionMatrix) {
+    Mat4.setIdentity(projectionMatrix, 0);
+    projectionMatrix[0] = 2.4f;
+    projectionMatrix[5] = 1.3f;
+    projectionMatrix[10] = -1.0002f;
+    projectionMatrix[11] = -1.0f;
+    projectionMatrix[14] = -0.2f;
+    projectionMatrix[15] = 0.0f;
+  }
+}
@@ -0,0 +1,69 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.geo.Geohash;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fields of the POI documents, as read and written with the server client library. They must be
+ * kept in sync with {@link PoiDocuments}, which depends on the Android client library.
+ */
+final class FirestorePoiMapDocuments {
+  static final String ANCHOR_ID = "anchorId";
+  static final String NAME = "name";
+  static final String LATITUDE = "latitude";
+  static final String LONGITUDE = "longitude";
+  static final String ALTITUDE = "altitude";
+  static final String HEADING = "heading";
+  static final String GEOHASH = "geohash";
+  static final String UPDATED_AT = "updatedAt";
+  static final String DELETED = "deleted";
+
+  /** Returns the POI collection of {@code map}. */
+  static CollectionReference getCollection(Firestore firestore, String map) {
+    return firestore.collection(PoiMap.collectionPath(map));
+  }
+
+  /** Returns the fields of the document of {@code poi}, as written by the app. */
+  static Map<String, Object> toData(Poi poi) {
+    Map<String, Object> data = new HashMap<>();
+    data.put(ANCHOR_ID, poi.anchorId);
+    data.put(ALTITUDE, poi.altitude);
+    data.put(LATITUDE, poi.latitude);
+    data.put(LONGITUDE, poi.longitude);
+    data.put(HEADING, poi.heading);
+    data.put(NAME, poi.name);
+    data.put(GEOHASH, Geohash.encode(poi.latitude, poi.longitude, Geohash.MAX_PRECISION));
+    data.put(UPDATED_AT, FieldValue.serverTimestamp());
+    return data;
+  }
+
+  /** Returns the POI of a document, or null if it is deleted or its position is incomplete. */
+  static Poi toPoi(DocumentSnapshot document) {
+    Double latitude = document.getDouble(LATITUDE);
+    Double longitude = document.getDouble(LONGITUDE);
+    Double altitude = document.getDouble(ALTITUDE);
+    Double heading = document.getDouble(HEADING);
+    if (Boolean.TRUE.equals(document.getBoolean(DELETED))
+        || latitude == null
+        || longitude == null
+        || altitude == null
+        || heading == null) {
+      return null;
+    }
+    return new Poi(
+        document.getId(),
+        document.getString(ANCHOR_ID),
+        document.getString(NAME),
+        latitude,
+        longitude,
+        altitude,
+        heading);
+  }
+
+  private FirestorePoiMapDocuments() {}
+}
@@ -0,0 +1,74 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Reads the POIs of a collection in pages ordered by document id, so that only two pages are in
+ * memory at a time: the one being read, and the next one, which is fetched meanwhile. Deleted and
+ * incomplete POIs are skipped.
+ */
+final class FirestorePoiMapReader implements PoiMapReader {
+  private final CollectionReference collection;
+  private final int pageSize;
+
+  private List<QueryDocumentSnapshot> page = Collections.emptyList();
+  private int index;
+  private ApiFuture<QuerySnapshot> nextPage;
+
+  FirestorePoiMapReader(CollectionReference collection, int pageSize) {
+    this.collection = collection;
+    this.pageSize = pageSize;
+    this.nextPage = fetchPageAfter(null);
+  }
+
+  @Override
+  public Poi read() throws IOException {
+    while (true) {
+      while (index < page.size()) {
+        Poi poi = FirestorePoiMapDocuments.toPoi(page.get(index++));
+        if (poi != null) {
+          return poi;
+        }
+      }
+      if (nextPage == null) {
+        return null;
+      }
+      try {
+        page = nextPage.get().getDocuments();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while reading the POIs");
+      } catch (ExecutionException e) {
+        throw new IOException("Could not read the POIs of " + collection.getPath(), e.getCause());
+      }
+      index = 0;
+      nextPage = page.size() < pageSize ? null : fetchPageAfter(page.get(page.size() - 1));
+    }
+  }
+
+  @Override
+  public void close() {
+    if (nextPage != null) {
+      nextPage.cancel(/*mayInterruptIfRunning=*/ true);
+      nextPage = null;
+    }
+  }
+
+  private ApiFuture<QuerySnapshot> fetchPageAfter(QueryDocumentSnapshot last) {
+    Query query = collection.orderBy(FieldPath.documentId()).limit(pageSize);
+    if (last != null) {
+      query = query.startAfter(last);
+    }
+    return query.get();
+  }
+}
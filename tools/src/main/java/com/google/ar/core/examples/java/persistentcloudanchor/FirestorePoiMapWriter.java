@@ -0,0 +1,109 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes POIs to a collection in batches, several of which are committed in parallel. At most a
+ * fixed number of batches are in flight, and {@link #write} blocks when they all are, so that
+ * memory stays bounded however fast the POIs are read. Existing POIs of the same ids are replaced.
+ */
+final class FirestorePoiMapWriter implements PoiMapWriter {
+  /** Maximum number of writes in a Firestore batch. */
+  static final int MAX_BATCH_WRITES = 500;
+
+  private final Firestore firestore;
+  private final CollectionReference collection;
+  private final int batchSize;
+  private final int maxBatchesInFlight;
+  private final Semaphore batchesInFlight;
+  private final AtomicReference<Throwable> error = new AtomicReference<>();
+  private List<Poi> batch;
+
+  /**
+   * @param batchSize the number of POIs per batch, at most {@link #MAX_BATCH_WRITES}.
+   * @param maxBatchesInFlight the maximum number of batches committed in parallel.
+   */
+  FirestorePoiMapWriter(
+      Firestore firestore, CollectionReference collection, int batchSize, int maxBatchesInFlight) {
+    if (batchSize < 1 || batchSize > MAX_BATCH_WRITES) {
+      throw new IllegalArgumentException("Invalid batch size " + batchSize);
+    }
+    this.firestore = firestore;
+    this.collection = collection;
+    this.batchSize = batchSize;
+    this.maxBatchesInFlight = maxBatchesInFlight;
+    this.batchesInFlight = new Semaphore(maxBatchesInFlight);
+    this.batch = new ArrayList<>(batchSize);
+  }
+
+  @Override
+  public void write(Poi poi) throws IOException {
+    checkError();
+    batch.add(poi);
+    if (batch.size() == batchSize) {
+      commitBatch();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!batch.isEmpty()) {
+      commitBatch();
+    }
+    // Waits for all the batches in flight.
+    acquire(maxBatchesInFlight);
+    batchesInFlight.release(maxBatchesInFlight);
+    checkError();
+  }
+
+  private void commitBatch() throws IOException {
+    acquire(1);
+    WriteBatch writeBatch = firestore.batch();
+    for (Poi poi : batch) {
+      writeBatch.set(collection.document(poi.id), FirestorePoiMapDocuments.toData(poi));
+    }
+    batch = new ArrayList<>(batchSize);
+    ApiFuture<List<WriteResult>> commit = writeBatch.commit();
+    commit.addListener(
+        () -> {
+          try {
+            commit.get();
+          } catch (ExecutionException e) {
+            error.compareAndSet(null, e.getCause());
+          } catch (InterruptedException e) {
+            // Not reached, the commit is done when its listeners are run.
+            Thread.currentThread().interrupt();
+          } finally {
+            batchesInFlight.release();
+          }
+        },
+        Runnable::run);
+  }
+
+  private void acquire(int permits) throws IOException {
+    try {
+      batchesInFlight.acquire(permits);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while writing the POIs");
+    }
+  }
+
+  private void checkError() throws IOException {
+    Throwable cause = error.get();
+    if (cause != null) {
+      throw new IOException("Could not write the POIs to " + collection.getPath(), cause);
+    }
+  }
+}
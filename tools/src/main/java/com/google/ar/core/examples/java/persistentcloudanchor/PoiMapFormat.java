@@ -0,0 +1,254 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/** On-disk formats of the POI maps, which are read and written as streams. */
+enum PoiMapFormat {
+  /**
+   * Newline-delimited JSON: one object per line, with the id and the fields of the POI document.
+   * Easy to edit, diff and generate.
+   */
+  JSON {
+    @Override
+    PoiMapReader newReader(InputStream in) {
+      return new JsonPoiMapReader(in);
+    }
+
+    @Override
+    PoiMapWriter newWriter(OutputStream out) {
+      return new JsonPoiMapWriter(out);
+    }
+  },
+
+  /** A header, then one {@link PoiRecords} record per POI, about half the size of the JSON. */
+  BINARY {
+    @Override
+    PoiMapReader newReader(InputStream in) throws IOException {
+      return new BinaryPoiMapReader(in);
+    }
+
+    @Override
+    PoiMapWriter newWriter(OutputStream out) throws IOException {
+      return new BinaryPoiMapWriter(out);
+    }
+  };
+
+  private static final String ID = "id";
+  private static final String ANCHOR_ID = "anchorId";
+  private static final String NAME = "name";
+  private static final String LATITUDE = "latitude";
+  private static final String LONGITUDE = "longitude";
+  private static final String ALTITUDE = "altitude";
+  private static final String HEADING = "heading";
+
+  private static final int BINARY_MAGIC = 0x504f494d; // "POIM"
+  private static final int BINARY_VERSION = 1;
+  // Precedes each record of the binary format, and then the end of the map, so that a truncated
+  // file is detected.
+  private static final byte BINARY_RECORD = 1;
+  private static final byte BINARY_END = 0;
+
+  abstract PoiMapReader newReader(InputStream in) throws IOException;
+
+  abstract PoiMapWriter newWriter(OutputStream out) throws IOException;
+
+  /** Returns the format of a file from its name: binary for ".bin" files, JSON otherwise. */
+  static PoiMapFormat forFileName(String fileName) {
+    return fileName.endsWith(".bin") ? BINARY : JSON;
+  }
+
+  private static final class JsonPoiMapReader implements PoiMapReader {
+    private final BufferedReader in;
+    private int lineNumber;
+
+    JsonPoiMapReader(InputStream in) {
+      this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Poi read() throws IOException {
+      String line;
+      do {
+        line = in.readLine();
+        lineNumber++;
+        if (line == null) {
+          return null;
+        }
+      } while (line.trim().isEmpty());
+      try {
+        return parse(line);
+      } catch (IllegalStateException | NumberFormatException e) {
+        throw new IOException("Invalid POI on line " + lineNumber + ": " + e.getMessage(), e);
+      }
+    }
+
+    private Poi parse(String line) throws IOException {
+      String id = null;
+      String anchorId = null;
+      String name = null;
+      double latitude = Double.NaN;
+      double longitude = Double.NaN;
+      double altitude = Double.NaN;
+      double heading = Double.NaN;
+      try (JsonReader reader = new JsonReader(new StringReader(line))) {
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String field = reader.nextName();
+          if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            continue;
+          }
+          switch (field) {
+            case ID:
+              id = reader.nextString();
+              break;
+            case ANCHOR_ID:
+              anchorId = reader.nextString();
+              break;
+            case NAME:
+              name = reader.nextString();
+              break;
+            case LATITUDE:
+              latitude = reader.nextDouble();
+              break;
+            case LONGITUDE:
+              longitude = reader.nextDouble();
+              break;
+            case ALTITUDE:
+              altitude = reader.nextDouble();
+              break;
+            case HEADING:
+              heading = reader.nextDouble();
+              break;
+            default:
+              // Fields added by later versions are ignored.
+              reader.skipValue();
+          }
+        }
+        reader.endObject();
+      }
+      if (id == null
+          || Double.isNaN(latitude)
+          || Double.isNaN(longitude)
+          || Double.isNaN(altitude)
+          || Double.isNaN(heading)) {
+        throw new IOException("Incomplete POI on line " + lineNumber);
+      }
+      return new Poi(id, anchorId, name, latitude, longitude, altitude, heading);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  private static final class JsonPoiMapWriter implements PoiMapWriter {
+    private final Writer out;
+    // Reused for each line.
+    private final StringWriter line = new StringWriter();
+
+    JsonPoiMapWriter(OutputStream out) {
+      this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void write(Poi poi) throws IOException {
+      line.getBuffer().setLength(0);
+      JsonWriter writer = new JsonWriter(line);
+      writer.beginObject();
+      writer.name(ID).value(poi.id);
+      writer.name(ANCHOR_ID).value(poi.anchorId);
+      writer.name(NAME).value(poi.name);
+      writer.name(LATITUDE).value(poi.latitude);
+      writer.name(LONGITUDE).value(poi.longitude);
+      writer.name(ALTITUDE).value(poi.altitude);
+      writer.name(HEADING).value(poi.heading);
+      writer.endObject();
+      writer.flush();
+      out.write(line.toString());
+      out.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  private static final class BinaryPoiMapReader implements PoiMapReader {
+    private final DataInputStream in;
+    private boolean ended;
+
+    BinaryPoiMapReader(InputStream in) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(in));
+      if (this.in.readInt() != BINARY_MAGIC || this.in.readInt() != BINARY_VERSION) {
+        throw new IOException("Not a binary POI map");
+      }
+    }
+
+    @Override
+    public Poi read() throws IOException {
+      if (ended) {
+        return null;
+      }
+      try {
+        if (in.readByte() == BINARY_END) {
+          ended = true;
+          return null;
+        }
+        return PoiRecords.readPoi(in);
+      } catch (EOFException e) {
+        throw new IOException("Truncated binary POI map", e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  private static final class BinaryPoiMapWriter implements PoiMapWriter {
+    private final DataOutputStream out;
+
+    BinaryPoiMapWriter(OutputStream out) throws IOException {
+      this.out = new DataOutputStream(new BufferedOutputStream(out));
+      this.out.writeInt(BINARY_MAGIC);
+      this.out.writeInt(BINARY_VERSION);
+    }
+
+    @Override
+    public void write(Poi poi) throws IOException {
+      out.writeByte(BINARY_RECORD);
+      PoiRecords.writePoi(out, poi);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        out.writeByte(BINARY_END);
+      } finally {
+        out.close();
+      }
+    }
+  }
+}
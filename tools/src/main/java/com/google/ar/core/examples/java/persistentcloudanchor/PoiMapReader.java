@@ -0,0 +1,10 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/** A stream of the POIs of a map, read one at a time so that the map need not fit in memory. */
+interface PoiMapReader extends Closeable {
+  /** Returns the next POI, or null once all the POIs are read. */
+  Poi read() throws IOException;
+}
@@ -0,0 +1,152 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Command line tool copying the POIs of a map between Firestore and a file, to seed and migrate the
+ * maps:
+ *
+ * <pre>
+ *   export &lt;map&gt; &lt;file&gt; [options]   writes the POIs of maps/&lt;map&gt;/poi to a file
+ *   import &lt;file&gt; &lt;map&gt; [options]   writes the POIs of a file to maps/&lt;map&gt;/poi
+ * </pre>
+ *
+ * <p>Files ending in ".bin" are in the binary {@link PoiMapFormat}, the other ones in
+ * newline-delimited JSON, and "-" is the standard input or output. The POIs are streamed, so the
+ * memory used does not depend on the size of the map. Progress is reported on the standard error.
+ *
+ * <p>Options:
+ *
+ * <pre>
+ *   --project &lt;id&gt;          the Firebase project, by default the one of the credentials
+ *   --emulator &lt;host:port&gt;  uses the Firestore emulator, also set by FIRESTORE_EMULATOR_HOST
+ *   --page-size &lt;n&gt;        POIs read per query, 1000 by default
+ *   --batch-size &lt;n&gt;       POIs written per batch, 500 at most and by default
+ *   --writers &lt;n&gt;          batches committed in parallel, 8 by default
+ * </pre>
+ */
+public final class PoiMapTool {
+  private static final String USAGE =
+      "Usage: PoiMapTool export <map> <file> [options]\n"
+          + "       PoiMapTool import <file> <map> [options]\n"
+          + "Options: --project <id> --emulator <host:port> --page-size <n> --batch-size <n>"
+          + " --writers <n>";
+  private static final String STANDARD_STREAM = "-";
+
+  private String project;
+  private String emulatorHost;
+  private int pageSize = 1000;
+  private int batchSize = FirestorePoiMapWriter.MAX_BATCH_WRITES;
+  private int writers = 8;
+
+  public static void main(String[] args) throws Exception {
+    PoiMapTool tool = new PoiMapTool();
+    try {
+      if (args.length < 3) {
+        throw new IllegalArgumentException("Missing arguments");
+      }
+      tool.parseOptions(args, 3);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(2);
+      return;
+    }
+    switch (args[0]) {
+      case "export":
+        tool.exportMap(args[1], args[2]);
+        break;
+      case "import":
+        tool.importMap(args[1], args[2]);
+        break;
+      default:
+        System.err.println("Unknown command " + args[0]);
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+  }
+
+  private void exportMap(String map, String fileName) throws Exception {
+    try (Firestore firestore = openFirestore()) {
+      CollectionReference collection = FirestorePoiMapDocuments.getCollection(firestore, map);
+      System.err.println("Exporting " + collection.getPath() + " to " + fileName);
+      OutputStream out =
+          fileName.equals(STANDARD_STREAM) ? System.out : new FileOutputStream(fileName);
+      PoiMapTransfer.copy(
+          new FirestorePoiMapReader(collection, pageSize),
+          PoiMapFormat.forFileName(fileName).newWriter(out),
+          System.err);
+    }
+  }
+
+  private void importMap(String fileName, String map) throws Exception {
+    try (Firestore firestore = openFirestore()) {
+      CollectionReference collection = FirestorePoiMapDocuments.getCollection(firestore, map);
+      System.err.println("Importing " + fileName + " to " + collection.getPath());
+      InputStream in = fileName.equals(STANDARD_STREAM) ? System.in : new FileInputStream(fileName);
+      PoiMapTransfer.copy(
+          PoiMapFormat.forFileName(fileName).newReader(in),
+          new FirestorePoiMapWriter(firestore, collection, batchSize, writers),
+          System.err);
+    }
+  }
+
+  private Firestore openFirestore() throws IOException {
+    FirestoreOptions.Builder options = FirestoreOptions.getDefaultInstance().toBuilder();
+    if (project != null) {
+      options.setProjectId(project);
+    }
+    if (emulatorHost != null) {
+      options.setEmulatorHost(emulatorHost);
+    }
+    return options.build().getService();
+  }
+
+  private void parseOptions(String[] args, int start) {
+    for (int i = start; i < args.length; i += 2) {
+      if (i + 1 == args.length) {
+        throw new IllegalArgumentException("Missing value of " + args[i]);
+      }
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--project":
+          project = value;
+          break;
+        case "--emulator":
+          emulatorHost = value;
+          break;
+        case "--page-size":
+          pageSize = parsePositive(args[i], value);
+          break;
+        case "--batch-size":
+          batchSize =
+              Math.min(parsePositive(args[i], value), FirestorePoiMapWriter.MAX_BATCH_WRITES);
+          break;
+        case "--writers":
+          writers = parsePositive(args[i], value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+  }
+
+  private static int parsePositive(String option, String value) {
+    try {
+      int parsed = Integer.parseInt(value);
+      if (parsed > 0) {
+        return parsed;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below.
+    }
+    throw new IllegalArgumentException("Invalid value of " + option + ": " + value);
+  }
+}
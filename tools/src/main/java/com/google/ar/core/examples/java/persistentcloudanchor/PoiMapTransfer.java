@@ -0,0 +1,50 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies a POI map from a {@link PoiMapReader} to a {@link PoiMapWriter}, one POI at a time, and
+ * reports the progress and the throughput.
+ */
+final class PoiMapTransfer {
+  private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * Copies all the POIs of {@code reader} to {@code writer}, and closes both. Returns the number of
+   * POIs copied.
+   *
+   * @param progress receives a progress line every second, and a summary at the end.
+   */
+  static long copy(PoiMapReader reader, PoiMapWriter writer, PrintStream progress)
+      throws IOException {
+    long startNanos = System.nanoTime();
+    long nextReportNanos = startNanos + PROGRESS_INTERVAL_NANOS;
+    long count = 0;
+    try (PoiMapReader in = reader;
+        PoiMapWriter out = writer) {
+      for (Poi poi = in.read(); poi != null; poi = in.read()) {
+        out.write(poi);
+        count++;
+        long nowNanos = System.nanoTime();
+        if (nowNanos >= nextReportNanos) {
+          progress.println(describe("Copied", count, nowNanos - startNanos));
+          nextReportNanos = nowNanos + PROGRESS_INTERVAL_NANOS;
+        }
+      }
+    }
+    // Closing the writer waits for its last writes.
+    progress.println(describe("Done, copied", count, System.nanoTime() - startNanos));
+    return count;
+  }
+
+  private static String describe(String prefix, long count, long elapsedNanos) {
+    double seconds = Math.max(elapsedNanos, 1) / 1e9;
+    return String.format(
+        Locale.US, "%s %d POIs in %.1f s, %.0f POIs/s", prefix, count, seconds, count / seconds);
+  }
+
+  private PoiMapTransfer() {}
+}
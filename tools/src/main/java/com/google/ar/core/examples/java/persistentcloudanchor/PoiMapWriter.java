@@ -0,0 +1,13 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/** Writes the POIs of a map, one at a time. */
+interface PoiMapWriter extends Closeable {
+  void write(Poi poi) throws IOException;
+
+  /** Writes the POIs still buffered, and fails if any write failed. */
+  @Override
+  void close() throws IOException;
+}
@@ -0,0 +1,113 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class PoiMapFormatTest {
+  private static final List<Poi> POIS =
+      Arrays.asList(
+          new Poi("poi0", "anchor0", "Library", 10.0527, 76.3305, 21.5, 90.0),
+          new Poi("poi1", "anchor1", "Caf\u00e9 \"North\"\n", -33.8568, 151.2153, -4.25, 359.9),
+          // The anchor id and the name are optional.
+          new Poi("poi2", null, null, 0.0, -180.0, 0.0, 0.0));
+
+  @Test
+  public void json_roundTrip() throws IOException {
+    assertEquals(POIS, read(PoiMapFormat.JSON, write(PoiMapFormat.JSON, POIS)));
+  }
+
+  @Test
+  public void binary_roundTrip() throws IOException {
+    assertEquals(POIS, read(PoiMapFormat.BINARY, write(PoiMapFormat.BINARY, POIS)));
+  }
+
+  @Test
+  public void emptyMap_roundTrip() throws IOException {
+    for (PoiMapFormat format : PoiMapFormat.values()) {
+      assertEquals(new ArrayList<Poi>(), read(format, write(format, new ArrayList<>())));
+    }
+  }
+
+  @Test
+  public void json_skipsBlankLinesAndUnknownFields() throws IOException {
+    String json =
+        "\n{\"id\":\"poi0\",\"anchorId\":\"anchor0\",\"name\":\"Library\",\"latitude\":10.0527,"
+            + "\"longitude\":76.3305,\"altitude\":21.5,\"heading\":90.0,\"rating\":5}\n  \n";
+
+    assertEquals(
+        POIS.subList(0, 1),
+        read(PoiMapFormat.JSON, json.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void json_incompletePoi_throws() {
+    byte[] json = "{\"id\":\"poi0\",\"latitude\":10.0}\n".getBytes(StandardCharsets.UTF_8);
+
+    assertThrows(IOException.class, () -> read(PoiMapFormat.JSON, json));
+  }
+
+  @Test
+  public void json_truncatedLine_throws() throws IOException {
+    byte[] json = write(PoiMapFormat.JSON, POIS);
+    // Cuts the last POI in the middle of its line.
+    byte[] truncated = Arrays.copyOf(json, json.length - 20);
+
+    assertThrows(IOException.class, () -> read(PoiMapFormat.JSON, truncated));
+  }
+
+  @Test
+  public void binary_truncatedAnywhere_throws() throws IOException {
+    byte[] binary = write(PoiMapFormat.BINARY, POIS);
+    // Any cut is detected, even between two records, as the end of the map is marked.
+    for (int length = 0; length < binary.length; length++) {
+      byte[] truncated = Arrays.copyOf(binary, length);
+      assertThrows(
+          "Truncated to " + length + " bytes",
+          IOException.class,
+          () -> read(PoiMapFormat.BINARY, truncated));
+    }
+  }
+
+  @Test
+  public void binary_otherFile_throws() {
+    byte[] json = "{\"id\":\"poi0\"}\n".getBytes(StandardCharsets.UTF_8);
+
+    assertThrows(IOException.class, () -> read(PoiMapFormat.BINARY, json));
+  }
+
+  @Test
+  public void forFileName_isBinaryOnlyForBinFiles() {
+    assertEquals(PoiMapFormat.BINARY, PoiMapFormat.forFileName("fisat.bin"));
+    assertEquals(PoiMapFormat.JSON, PoiMapFormat.forFileName("fisat.ndjson"));
+    assertEquals(PoiMapFormat.JSON, PoiMapFormat.forFileName("-"));
+  }
+
+  private static byte[] write(PoiMapFormat format, List<Poi> pois) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (PoiMapWriter writer = format.newWriter(out)) {
+      for (Poi poi : pois) {
+        writer.write(poi);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private static List<Poi> read(PoiMapFormat format, byte[] bytes) throws IOException {
+    List<Poi> pois = new ArrayList<>();
+    try (PoiMapReader reader = format.newReader(new ByteArrayInputStream(bytes))) {
+      for (Poi poi = reader.read(); poi != null; poi = reader.read()) {
+        pois.add(poi);
+      }
+    }
+    return pois;
+  }
+}
@@ -0,0 +1,165 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Imports and exports POI maps with {@link PoiMapTool}, against the Firestore emulator. Start the
+ * emulator with {@code firebase emulators:start --only firestore}, then run:
+ *
+ * <pre>
+ * FIRESTORE_EMULATOR_HOST=localhost:8080 ./gradlew :tools:test
+ * </pre>
+ *
+ * <p>The test is skipped without the variable. Each test uses a map of its own.
+ */
+public class PoiMapToolEmulatorTest {
+  private static final String EMULATOR_HOST_VARIABLE = "FIRESTORE_EMULATOR_HOST";
+  private static final String PROJECT = "demo-poi-map-tool";
+  private static final long TIMEOUT_SECONDS = 10;
+  // More POIs than written per batch and read per page, so that several of each are needed.
+  private static final int POI_COUNT = 25;
+  private static final String BATCH_SIZE = "4";
+  private static final String PAGE_SIZE = "6";
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private String emulatorHost;
+  private String map;
+  private Firestore firestore;
+
+  @Before
+  public void setUp() {
+    emulatorHost = System.getenv(EMULATOR_HOST_VARIABLE);
+    assumeTrue("Run with " + EMULATOR_HOST_VARIABLE + " set", emulatorHost != null);
+    map = "test_" + UUID.randomUUID();
+    firestore =
+        FirestoreOptions.getDefaultInstance()
+            .toBuilder()
+            .setProjectId(PROJECT)
+            .setEmulatorHost(emulatorHost)
+            .build()
+            .getService();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (firestore != null) {
+      firestore.close();
+    }
+  }
+
+  @Test
+  public void importThenExport_roundTrip() throws Exception {
+    List<Poi> pois = pois(POI_COUNT);
+    File imported = writeFile("imported.ndjson", pois);
+    File exported = new File(folder.getRoot(), "exported.bin");
+
+    runTool("import", imported.getPath(), map, "--batch-size", BATCH_SIZE, "--writers", "2");
+    runTool("export", map, exported.getPath(), "--page-size", PAGE_SIZE);
+
+    // The POIs are exported in the order of their ids, which is the order they were generated in.
+    assertEquals(pois, readFile(exported));
+  }
+
+  @Test
+  public void import_replacesPoisOfSameIds() throws Exception {
+    runTool("import", writeFile("first.ndjson", pois(2)).getPath(), map);
+    List<Poi> renamed = new ArrayList<>();
+    for (Poi poi : pois(2)) {
+      renamed.add(
+          new Poi(
+              poi.id,
+              poi.anchorId,
+              "Renamed",
+              poi.latitude,
+              poi.longitude,
+              poi.altitude,
+              poi.heading));
+    }
+    File exported = new File(folder.getRoot(), "exported.ndjson");
+
+    runTool("import", writeFile("second.ndjson", renamed).getPath(), map);
+    runTool("export", map, exported.getPath());
+
+    assertEquals(renamed, readFile(exported));
+  }
+
+  @Test
+  public void export_skipsDeletedPois() throws Exception {
+    runTool("import", writeFile("imported.ndjson", pois(3)).getPath(), map);
+    Map<String, Object> deleted = new HashMap<>();
+    deleted.put(FirestorePoiMapDocuments.DELETED, true);
+    FirestorePoiMapDocuments.getCollection(firestore, map)
+        .document("poi01")
+        .set(deleted)
+        .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    File exported = new File(folder.getRoot(), "exported.ndjson");
+
+    runTool("export", map, exported.getPath());
+
+    List<Poi> expected = pois(3);
+    expected.remove(1);
+    assertEquals(expected, readFile(exported));
+  }
+
+  private void runTool(String... args) throws Exception {
+    String[] options = {"--project", PROJECT, "--emulator", emulatorHost};
+    String[] toolArgs = new String[args.length + options.length];
+    System.arraycopy(args, 0, toolArgs, 0, args.length);
+    System.arraycopy(options, 0, toolArgs, args.length, options.length);
+    PoiMapTool.main(toolArgs);
+  }
+
+  private File writeFile(String name, List<Poi> pois) throws IOException {
+    File file = new File(folder.getRoot(), name);
+    try (PoiMapWriter writer =
+        PoiMapFormat.forFileName(name).newWriter(new FileOutputStream(file))) {
+      for (Poi poi : pois) {
+        writer.write(poi);
+      }
+    }
+    return file;
+  }
+
+  private static List<Poi> readFile(File file) throws IOException {
+    List<Poi> pois = new ArrayList<>();
+    try (PoiMapReader reader =
+        PoiMapFormat.forFileName(file.getName()).newReader(new FileInputStream(file))) {
+      for (Poi poi = reader.read(); poi != null; poi = reader.read()) {
+        pois.add(poi);
+      }
+    }
+    return pois;
+  }
+
+  private static List<Poi> pois(int count) {
+    List<Poi> pois = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      // Zero padded, so that the ids sort in the order of i.
+      String id = String.format(Locale.US, "poi%02d", i);
+      pois.add(
+          new Poi(id, "anchor" + i, "POI " + i, 10.05 + i * 1e-4, 76.33 + i * 1e-4, 20.0, i));
+    }
+    return pois;
+  }
+}